@@ -5,6 +5,7 @@ import org.clyze.doop.common.BasicJavaSupport;
 import org.clyze.doop.common.CHA;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.Driver;
+import org.clyze.doop.common.FactGenEvents;
 import org.clyze.utils.TypeUtils;
 import org.jf.dexlib2.dexbacked.DexBackedClassDef;
 
@@ -57,6 +58,7 @@ class DexDriver extends Driver<DexBackedClassDef> {
     protected Runnable getFactGenRunnable() {
         return () -> {
             for (DexBackedClassDef dexClass : _tmpClassGroup) {
+                Object classEvent = FactGenEvents.beginClass();
                 String className = TypeUtils.raiseTypeId(dexClass.getType());
                 java.getArtifactScanner().registerArtifactClass(apkName, className, dexEntry, dexClass.getSize());
                 DexClassFactWriter classWriter = new DexClassFactWriter(db, dexParams);
@@ -66,6 +68,7 @@ class DexDriver extends Driver<DexBackedClassDef> {
                 if (classWriter.superClass != null)
                     cha.registerSuperClass(className, classWriter.superClass);
                 cha.registerDefinedClassFields(className, classWriter.definedFields);
+                FactGenEvents.endClass(classEvent, className);
             }
         };
     }
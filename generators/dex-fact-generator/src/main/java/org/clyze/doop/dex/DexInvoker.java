@@ -7,6 +7,7 @@ import org.clyze.doop.common.CHA;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.DoopErrorCodeException;
 import org.clyze.doop.common.Driver;
+import org.clyze.doop.common.FactGenEvents;
 import org.clyze.doop.common.android.AndroidSupport;
 import org.clyze.utils.JHelper;
 import org.jf.dexlib2.Opcodes;
@@ -43,6 +44,8 @@ public class DexInvoker {
         logger.debug("Using output directory: " + outDir);
 
         BasicJavaSupport java = new BasicJavaSupport(dexParams, new ArtifactScanner());
+        if (dexParams._jfrFile != null)
+            FactGenEvents.start(dexParams._jfrFile);
 
         try (Database db = new Database(outDir)) {
             java.preprocessInputs(db);
@@ -101,6 +104,7 @@ public class DexInvoker {
             throw DoopErrorCodeException.error17(ex);
         } finally {
             Driver.waitForExecutorShutdown(java.getExecutor());
+            FactGenEvents.stop();
         }
     }
 }
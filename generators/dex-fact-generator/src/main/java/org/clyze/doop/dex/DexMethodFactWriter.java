@@ -3,6 +3,7 @@ package org.clyze.doop.dex;
 import org.apache.log4j.Logger;
 import org.checkerframework.checker.nullness.qual.*;
 import org.clyze.doop.common.Database;
+import org.clyze.doop.common.FactGenEvents;
 import org.clyze.doop.common.FieldInfo;
 import org.clyze.doop.common.FieldOp;
 import org.clyze.doop.common.JavaFactWriter;
@@ -175,6 +176,7 @@ class DexMethodFactWriter extends JavaFactWriter {
             }
         }
 
+        Object bodyEvent = FactGenEvents.beginMethodBody();
         DexBackedMethodImplementation mi = m.getImplementation();
         if (mi != null) {
             writeDebugItems(mi.getDebugItems());
@@ -192,6 +194,7 @@ class DexMethodFactWriter extends JavaFactWriter {
             processTryBlocks(mi.getTryBlocks());
             resolveAndWriteBranches();
         }
+        FactGenEvents.endMethodBody(bodyEvent, methId);
     }
 
     /**
@@ -0,0 +1,233 @@
+package org.clyze.doop.common;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+/**
+ * The Flight Recorder implementation of FactGenRecorder. It is only
+ * loaded (reflectively, by FactGenEvents) when --jfr is given.
+ */
+public final class JfrFactGenRecorder implements FactGenRecorder {
+
+    /** Waits for a predicate writer shorter than this are not recorded. */
+    private static final Duration LOCK_WAIT_THRESHOLD = Duration.ofNanos(100_000);
+    /** The number of entries in every list of the summary. */
+    private static final int SUMMARY_SIZE = 10;
+
+    private Recording recording = null;
+    private Path recordingFile = null;
+
+    @Name("org.clyze.doop.ClassBatch")
+    @Label("Class Batch")
+    @Category({"Doop", "Fact Generation"})
+    @StackTrace(false)
+    static class ClassBatch extends Event {
+        @Label("Classes")
+        int classes;
+    }
+
+    @Name("org.clyze.doop.Class")
+    @Label("Class")
+    @Category({"Doop", "Fact Generation"})
+    @StackTrace(false)
+    static class ClassFacts extends Event {
+        @Label("Class")
+        String className;
+    }
+
+    @Name("org.clyze.doop.MethodBody")
+    @Label("Method Body")
+    @Category({"Doop", "Fact Generation"})
+    @StackTrace(false)
+    static class MethodBody extends Event {
+        @Label("Method")
+        String method;
+    }
+
+    @Name("org.clyze.doop.SSA")
+    @Label("SSA Conversion")
+    @Category({"Doop", "Fact Generation"})
+    @StackTrace(false)
+    static class SSA extends Event {
+        @Label("Method")
+        String method;
+    }
+
+    @Name("org.clyze.doop.PredicateLockWait")
+    @Label("Predicate Lock Wait")
+    @Category({"Doop", "Fact Generation"})
+    static class PredicateLockWait extends Event {
+        @Label("Predicate")
+        String predicate;
+    }
+
+    @Name("org.clyze.doop.PredicateVolume")
+    @Label("Predicate Volume")
+    @Category({"Doop", "Fact Generation"})
+    @StackTrace(false)
+    static class PredicateVolume extends Event {
+        @Label("Predicate")
+        String predicate;
+        @Label("Rows")
+        long rows;
+        @Label("Characters")
+        long characters;
+    }
+
+    @Override
+    public void start(Path recordingFile) {
+        this.recordingFile = recordingFile;
+        recording = new Recording();
+        recording.setName("doop-fact-generation");
+        recording.enable(ClassBatch.class);
+        recording.enable(ClassFacts.class);
+        recording.enable(MethodBody.class);
+        recording.enable(SSA.class);
+        recording.enable(PredicateLockWait.class).withThreshold(LOCK_WAIT_THRESHOLD);
+        recording.enable(PredicateVolume.class);
+        recording.enable("jdk.GarbageCollection");
+        recording.enable("jdk.JavaMonitorEnter").withThreshold(Duration.ofMillis(10));
+        recording.start();
+    }
+
+    @Override
+    public void stop(Map<String, long[]> volumes) throws IOException {
+        for (Map.Entry<String, long[]> e : volumes.entrySet()) {
+            PredicateVolume event = new PredicateVolume();
+            event.predicate = e.getKey();
+            event.rows = e.getValue()[0];
+            event.characters = e.getValue()[1];
+            event.commit();
+        }
+        try {
+            recording.stop();
+            recording.dump(recordingFile);
+        } finally {
+            recording.close();
+            recording = null;
+        }
+    }
+
+    @Override
+    public Runnable classBatch(Runnable task, int classes) {
+        return () -> {
+            ClassBatch event = new ClassBatch();
+            event.classes = classes;
+            event.begin();
+            try {
+                task.run();
+            } finally {
+                event.commit();
+            }
+        };
+    }
+
+    @Override
+    public Object begin(Kind kind) {
+        Event event;
+        switch (kind) {
+        case CLASS:
+            event = new ClassFacts();
+            break;
+        case METHOD_BODY:
+            event = new MethodBody();
+            break;
+        case SSA:
+            event = new SSA();
+            break;
+        case LOCK_WAIT:
+            event = new PredicateLockWait();
+            break;
+        default:
+            throw new IllegalArgumentException("Unknown event kind: " + kind);
+        }
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void end(Object event, String label) {
+        if (event instanceof ClassFacts)
+            ((ClassFacts) event).className = label;
+        else if (event instanceof MethodBody)
+            ((MethodBody) event).method = label;
+        else if (event instanceof SSA)
+            ((SSA) event).method = label;
+        else if (event instanceof PredicateLockWait) {
+            PredicateLockWait lockWait = (PredicateLockWait) event;
+            lockWait.end();
+            if (!lockWait.shouldCommit())
+                return;
+            lockWait.predicate = label;
+        }
+        ((Event) event).commit();
+    }
+
+    @Override
+    public void summarize(Path recordingFile, PrintStream out) throws IOException {
+        Map<String, Long> classNanos = new HashMap<>();
+        Map<String, long[]> predicates = new HashMap<>();
+        Map<String, Long> lockWaitNanos = new HashMap<>();
+        Map<String, long[]> totals = new HashMap<>();
+        for (RecordedEvent event : RecordingFile.readAllEvents(recordingFile)) {
+            String type = event.getEventType().getLabel();
+            long nanos = event.getDuration().toNanos();
+            long[] total = totals.computeIfAbsent(type, k -> new long[2]);
+            total[0]++;
+            total[1] += nanos;
+            switch (event.getEventType().getName()) {
+            case "org.clyze.doop.Class":
+                classNanos.merge(event.getString("className"), nanos, Long::sum);
+                break;
+            case "org.clyze.doop.PredicateVolume":
+                predicates.put(event.getString("predicate"), new long[] { event.getLong("rows"), event.getLong("characters") });
+                break;
+            case "org.clyze.doop.PredicateLockWait":
+                lockWaitNanos.merge(event.getString("predicate"), nanos, Long::sum);
+                break;
+            }
+        }
+
+        out.println("== Fact generation summary (" + recordingFile + ") ==");
+        totals.entrySet().stream().sorted(Map.Entry.comparingByKey()).forEach(e ->
+                out.println(e.getKey() + ": " + e.getValue()[0] + " events, " + millis(e.getValue()[1]) + " ms"));
+        out.println("Slowest classes:");
+        for (Map.Entry<String, Long> e : top(classNanos))
+            out.println("  " + millis(e.getValue()) + " ms\t" + e.getKey());
+        out.println("Hottest predicates:");
+        List<Map.Entry<String, long[]>> hottest = predicates.entrySet().stream()
+                .sorted((e1, e2) -> Long.compare(e2.getValue()[1], e1.getValue()[1]))
+                .limit(SUMMARY_SIZE).collect(Collectors.toList());
+        for (Map.Entry<String, long[]> e : hottest)
+            out.println("  " + e.getValue()[0] + " rows\t" + e.getValue()[1] + " chars\t" + e.getKey());
+        if (!lockWaitNanos.isEmpty()) {
+            out.println("Most contended predicates:");
+            for (Map.Entry<String, Long> e : top(lockWaitNanos))
+                out.println("  " + millis(e.getValue()) + " ms\t" + e.getKey());
+        }
+    }
+
+    private static List<Map.Entry<String, Long>> top(Map<String, Long> nanos) {
+        return nanos.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(SUMMARY_SIZE).collect(Collectors.toList());
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1_000_000L;
+    }
+}
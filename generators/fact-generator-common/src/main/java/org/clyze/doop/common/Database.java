@@ -107,9 +107,12 @@ public class Database implements Closeable, Flushable {
             line.append(EOL);
             String strLine = line.toString();
             Writer writer = _writers.get(predicateFile);
+            Object lockWait = FactGenEvents.beginLockWait();
             synchronized(predicateFile) {
+                FactGenEvents.endLockWait(lockWait, predicateFile);
                 writer.write(strLine);
             }
+            FactGenEvents.predicateWritten(predicateFile, strLine.length());
         } catch(IOException exc) {
             throw new RuntimeException(exc);
         }
@@ -98,7 +98,7 @@ public abstract class Driver<C> {
         _tmpClassGroup.add(curClass);
 
         if ((_classCounter % _classSplit == 0) || (_classCounter == _totalClasses)) {
-            _executor.execute(getFactGenRunnable());
+            _executor.execute(FactGenEvents.classBatch(getFactGenRunnable(), _tmpClassGroup.size()));
             initTmpClassGroup();
         }
     }
@@ -0,0 +1,189 @@
+package org.clyze.doop.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Flight Recorder instrumentation of fact generation (front-end option
+ * --jfr). When enabled, class batches, classes, method bodies, SSA
+ * conversion and waits for predicate writers are recorded as events,
+ * together with the rows and characters written per predicate, and a
+ * summary of the recording is printed when fact generation ends.
+ *
+ * The events themselves are in JfrFactGenRecorder, which is compiled
+ * separately and loaded reflectively, since this module targets Java 8.
+ * When disabled, the begin methods return null and the end methods do
+ * nothing, so the Flight Recorder classes are never loaded.
+ */
+public final class FactGenEvents {
+
+    /** The Flight Recorder implementation (src/jfr/java). */
+    static final String JFR_RECORDER = "org.clyze.doop.common.JfrFactGenRecorder";
+
+    private static volatile FactGenRecorder recorder = null;
+    private static Path recordingFile = null;
+    private static final Map<PredicateFile, LongAdder> rows = new EnumMap<>(PredicateFile.class);
+    private static final Map<PredicateFile, LongAdder> chars = new EnumMap<>(PredicateFile.class);
+
+    private FactGenEvents() {}
+
+    public static boolean isEnabled() {
+        return recorder != null;
+    }
+
+    /**
+     * Returns a new Flight Recorder implementation, or null if this JVM
+     * does not support Flight Recorder (Java 11+ or 8u262+ is needed).
+     */
+    static FactGenRecorder newRecorder() {
+        try {
+            return (FactGenRecorder) Class.forName(JFR_RECORDER).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError err) {
+            return null;
+        }
+    }
+
+    /**
+     * Starts recording.
+     *
+     * @param jfrFile   the recording to write when fact generation ends
+     */
+    public static synchronized void start(String jfrFile) {
+        if (recorder != null)
+            return;
+        FactGenRecorder jfr = newRecorder();
+        if (jfr == null) {
+            System.err.println("WARNING: Flight Recorder is not available in this JVM, no events will be recorded.");
+            return;
+        }
+        rows.clear();
+        chars.clear();
+        for (PredicateFile predicateFile : PredicateFile.values()) {
+            rows.put(predicateFile, new LongAdder());
+            chars.put(predicateFile, new LongAdder());
+        }
+        recordingFile = new File(jfrFile).toPath();
+        jfr.start(recordingFile);
+        recorder = jfr;
+        System.out.println("Recording fact generation events to " + jfrFile);
+    }
+
+    /**
+     * Stops recording, writes the recording file and prints a summary.
+     */
+    public static synchronized void stop() {
+        FactGenRecorder jfr = recorder;
+        if (jfr == null)
+            return;
+        recorder = null;
+        Map<String, long[]> volumes = new HashMap<>();
+        for (PredicateFile predicateFile : PredicateFile.values()) {
+            long count = rows.get(predicateFile).sum();
+            if (count > 0)
+                volumes.put(predicateFile.toString(), new long[] { count, chars.get(predicateFile).sum() });
+        }
+        try {
+            jfr.stop(volumes);
+            jfr.summarize(recordingFile, System.out);
+        } catch (IOException ex) {
+            System.err.println("WARNING: could not write fact generation recording: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Wraps the task of a class batch so that it is recorded.
+     *
+     * @param task      the task processing the batch
+     * @param classes   the number of classes in the batch
+     * @return          the task to execute
+     */
+    public static Runnable classBatch(Runnable task, int classes) {
+        FactGenRecorder jfr = recorder;
+        return jfr == null ? task : jfr.classBatch(task, classes);
+    }
+
+    private static Object begin(FactGenRecorder.Kind kind) {
+        FactGenRecorder jfr = recorder;
+        return jfr == null ? null : jfr.begin(kind);
+    }
+
+    private static void end(Object event, String label) {
+        FactGenRecorder jfr = recorder;
+        if (event != null && jfr != null)
+            jfr.end(event, label);
+    }
+
+    public static Object beginClass() {
+        return begin(FactGenRecorder.Kind.CLASS);
+    }
+
+    public static void endClass(Object event, String className) {
+        end(event, className);
+    }
+
+    public static Object beginMethodBody() {
+        return begin(FactGenRecorder.Kind.METHOD_BODY);
+    }
+
+    public static void endMethodBody(Object event, String method) {
+        end(event, method);
+    }
+
+    public static Object beginSSA() {
+        return begin(FactGenRecorder.Kind.SSA);
+    }
+
+    public static void endSSA(Object event, String method) {
+        end(event, method);
+    }
+
+    public static Object beginLockWait() {
+        return begin(FactGenRecorder.Kind.LOCK_WAIT);
+    }
+
+    public static void endLockWait(Object event, PredicateFile predicateFile) {
+        if (event != null)
+            end(event, predicateFile.toString());
+    }
+
+    /**
+     * Counts a row written to a predicate.
+     *
+     * @param predicateFile   the predicate
+     * @param length          the length of the row (in characters)
+     */
+    public static void predicateWritten(PredicateFile predicateFile, int length) {
+        if (recorder == null)
+            return;
+        rows.get(predicateFile).increment();
+        chars.get(predicateFile).add(length);
+    }
+
+    /**
+     * Prints the slowest classes, the hottest predicates and the total
+     * time of every kind of event in a recording.
+     *
+     * @param jfrFile   the recording
+     * @param out       the stream to print to
+     */
+    public static void summarize(Path jfrFile, PrintStream out) throws IOException {
+        FactGenRecorder jfr = newRecorder();
+        if (jfr == null)
+            throw new IOException("Flight Recorder is not available in this JVM, cannot read " + jfrFile);
+        jfr.summarize(jfrFile, out);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: FactGenEvents <recording.jfr>");
+            return;
+        }
+        summarize(new File(args[0]).toPath(), System.out);
+    }
+}
@@ -0,0 +1,45 @@
+package org.clyze.doop.common;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * The recorder behind FactGenEvents. The Flight Recorder implementation
+ * lives in its own source set (src/jfr/java), so that the rest of the
+ * fact generators do not depend on the jdk.jfr module.
+ */
+public interface FactGenRecorder {
+
+    /** The kinds of timed events. */
+    enum Kind { CLASS, METHOD_BODY, SSA, LOCK_WAIT }
+
+    /**
+     * Starts recording.
+     *
+     * @param recordingFile   the recording to write when stopped
+     */
+    void start(Path recordingFile);
+
+    /**
+     * Stops recording and writes the recording file.
+     *
+     * @param volumes   the rows and characters written per predicate
+     */
+    void stop(Map<String, long[]> volumes) throws IOException;
+
+    Runnable classBatch(Runnable task, int classes);
+
+    Object begin(Kind kind);
+
+    /**
+     * Ends an event returned by begin().
+     *
+     * @param event   the event
+     * @param label   the class, method or predicate of the event
+     */
+    void end(Object event, String label);
+
+    void summarize(Path recordingFile, PrintStream out) throws IOException;
+}
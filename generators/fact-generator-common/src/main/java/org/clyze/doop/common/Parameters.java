@@ -42,6 +42,7 @@ public class Parameters {
     public boolean _reportPhantoms = false;
     public boolean _dex = false;
     public boolean _legacyAndroidProcessing = false;
+    public String _jfrFile = null;
 
     public enum FactsSubSet {
         APP, APP_N_DEPS, PLATFORM;
@@ -244,6 +245,10 @@ public class Parameters {
         case "--legacy-android-processing":
             _legacyAndroidProcessing = true;
             break;
+        case "--jfr":
+            i = shift(args, i);
+            _jfrFile = args[i];
+            break;
         default:
             return -1;
         }
@@ -0,0 +1,67 @@
+package org.clyze.doop.common
+
+import java.nio.file.Files
+import java.nio.file.Path
+import spock.lang.IgnoreIf
+import spock.lang.Specification
+
+class FactGenEventsTest extends Specification {
+
+	def cleanup() {
+		FactGenEvents.stop()
+	}
+
+	def "Nothing is recorded when disabled"() {
+		given:
+		Runnable task = { -> }
+
+		expect:
+		!FactGenEvents.isEnabled()
+		FactGenEvents.classBatch(task, 1).is(task)
+		FactGenEvents.beginClass() == null
+		FactGenEvents.beginMethodBody() == null
+		FactGenEvents.beginSSA() == null
+		FactGenEvents.beginLockWait() == null
+
+		when:
+		FactGenEvents.endClass(null, 'A')
+		FactGenEvents.endLockWait(null, PredicateFile.ACTIVITY)
+		FactGenEvents.predicateWritten(PredicateFile.ACTIVITY, 10)
+		FactGenEvents.stop()
+
+		then:
+		notThrown(Exception)
+	}
+
+	@IgnoreIf({ FactGenEvents.newRecorder() == null })
+	def "Recorded classes and predicates are summarized"() {
+		given:
+		Path jfrFile = Files.createTempFile('factgen', '.jfr')
+		ByteArrayOutputStream out = new ByteArrayOutputStream()
+
+		when:
+		FactGenEvents.start(jfrFile.toString())
+		boolean enabled = FactGenEvents.isEnabled()
+		FactGenEvents.classBatch({ ->
+			Object event = FactGenEvents.beginClass()
+			FactGenEvents.predicateWritten(PredicateFile.ACTIVITY, 10)
+			FactGenEvents.predicateWritten(PredicateFile.ACTIVITY, 5)
+			FactGenEvents.endClass(event, 'org.example.A')
+		}, 1).run()
+		FactGenEvents.stop()
+		FactGenEvents.summarize(jfrFile, new PrintStream(out, true))
+		String summary = out.toString()
+
+		then:
+		enabled
+		!FactGenEvents.isEnabled()
+		Files.size(jfrFile) > 0
+		summary.contains('Class Batch: 1 events')
+		summary.contains('Class: 1 events')
+		summary.contains('org.example.A')
+		summary.contains("2 rows\t15 chars\t${PredicateFile.ACTIVITY}")
+
+		cleanup:
+		Files.deleteIfExists(jfrFile)
+	}
+}
@@ -5,6 +5,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicInteger;
+import org.clyze.doop.common.FactGenEvents;
 import org.clyze.doop.common.Phantoms;
 import soot.*;
 import soot.jimple.*;
@@ -46,6 +47,7 @@ class FactGenerator implements Runnable {
             return;
 
         for (SootClass _sootClass : _sootClasses) {
+            Object classEvent = FactGenEvents.beginClass();
             _writer.writeClassOrInterfaceType(_sootClass);
 
             for (String mod : getModifiers(_sootClass.getModifiers(), false))
@@ -88,6 +90,7 @@ class FactGenerator implements Runnable {
                     }
                 }
             }
+            FactGenEvents.endClass(classEvent, _sootClass.getName());
         }
     }
 
@@ -208,7 +211,9 @@ class FactGenerator implements Runnable {
                 // This instruction is the bottleneck of
                 // soot-fact-generation.
                 // synchronized(Scene.v()) {
+                Object bodyEvent = FactGenEvents.beginMethodBody();
                 m.retrieveActiveBody();
+                FactGenEvents.endMethodBody(bodyEvent, m.getSignature());
                 // } // synchronizing so broadly = giving up on Soot's races
 
                 // System.err.println("Found method without active body: " + m.getSignature());
@@ -220,7 +225,9 @@ class FactGenerator implements Runnable {
                 if (b0 != null) {
                     Body b = b0;
                     if (_ssa) {
+                        Object ssaEvent = FactGenEvents.beginSSA();
                         b = Shimple.v().newBody(b);
+                        FactGenEvents.endSSA(ssaEvent, m.getSignature());
                         m.setActiveBody(b);
                     }
                     DoopRenamer.transform(b);
@@ -13,6 +13,7 @@ import org.clyze.doop.common.ArtifactEntry;
 import org.clyze.doop.common.ArtifactScanner;
 import org.clyze.doop.common.Database;
 import org.clyze.doop.common.DoopErrorCodeException;
+import org.clyze.doop.common.FactGenEvents;
 import org.clyze.doop.common.Phantoms;
 import org.clyze.doop.soot.android.AndroidSupport_Soot;
 import org.clyze.utils.ContainerUtils;
@@ -107,6 +108,9 @@ public class Main {
             android = null;
         }
 
+        if (sootParameters._jfrFile != null)
+            FactGenEvents.start(sootParameters._jfrFile);
+
         boolean writeFacts = !sootParameters.noFacts();
         try (Database db = new Database(outDir, writeFacts)) {
             java.preprocessInputs(db);
@@ -152,6 +156,7 @@ public class Main {
         } finally {
             // Clean up any temporary directories used for AAR extraction.
             JHelper.cleanUp(tmpDirs);
+            FactGenEvents.stop();
         }
     }
 
@@ -110,6 +110,7 @@ public class SootParameters extends Parameters {
         System.err.println("  --log-dir <dir>                       Write logs in directory <dir>.");
         System.err.println("  --args-file <file>                    Read command-line arguments from <file> (one per line).");
         System.err.println("  --write-artifacts-map                 Write artifacts map.");
+        System.err.println("  --jfr <file>                          Record fact generation events to a Flight Recorder <file>.");
         System.err.println("Jimple/Shimple generation:");
         System.err.println("  --generate-jimple                     Generate Jimple/Shimple files in addition to other facts.");
         System.err.println("  --stdout                              Write Jimple/Shimple to stdout.");
@@ -0,0 +1,131 @@
+package org.clyze.doop.bench;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Inputs of the benchmarks: synthetic data generated with a fixed seed
+ * (so that every run sees the same data) and small corpora checked in
+ * under src/main/resources/corpus.
+ */
+public final class Corpus {
+
+    public static final long SEED = 0x5EEDL;
+    public static final String SYNTHETIC = "synthetic";
+    public static final String CHECKED_IN = "checked-in";
+
+    private static final String[] PACKAGES = { "java.lang", "java.util", "java.util.concurrent", "android.app", "com.example.app", "org.clyze.doop" };
+    private static final String[] CLASSES = { "Object", "String", "HashMap", "ArrayList", "Activity", "Main", "Config", "Builder$Inner" };
+    private static final String[] METHODS = { "<init>", "<clinit>", "toString", "get", "put", "run", "onCreate", "lambda$main$0" };
+    private static final String[] WORDS = { "error", "user", "id", "http://example.com/api", "%s", "value", "SELECT * FROM t", "ok" };
+
+    private Corpus() {}
+
+    /**
+     * Returns string constants like the ones found in bytecode: names,
+     * messages, strings with surrounding spaces, tabs, newlines or quotes,
+     * and some long strings that are hashed by the fact writer.
+     */
+    public static List<String> stringConstants(int count) {
+        Random random = new Random(SEED);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int kind = random.nextInt(10);
+            StringBuilder sb = new StringBuilder();
+            int words = 1 + random.nextInt(kind < 5 ? 2 : 8);
+            for (int w = 0; w < words; w++) {
+                if (w > 0)
+                    sb.append(' ');
+                sb.append(pick(random, WORDS));
+            }
+            switch (kind) {
+            case 6: sb.append('\n'); break;
+            case 7: sb.insert(0, "\"").append("\"\t"); break;
+            case 8: sb.insert(0, ' '); break;
+            case 9: while (sb.length() <= 300) sb.append(sb); break;
+            default: break;
+            }
+            result.add(sb.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Returns method signatures in the format used by the facts.
+     */
+    public static List<String> methodSignatures(int count) {
+        Random random = new Random(SEED);
+        List<String> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++)
+            result.add("<" + type(random) + ": " + type(random) + " " + pick(random, METHODS) + "(" + type(random) + "," + type(random) + ")>");
+        return result;
+    }
+
+    /**
+     * Writes a relation with two columns (heap, variable), like the
+     * points-to results read by the pre-analyses.
+     *
+     * @param rows   the number of rows
+     * @return       the (temporary) relation file
+     */
+    public static File pointsToRelation(int rows) throws IOException {
+        Random random = new Random(SEED);
+        List<String> sigs = methodSignatures(Math.max(1, rows / 20));
+        File f = File.createTempFile("relation", ".csv");
+        f.deleteOnExit();
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(f.toPath(), StandardCharsets.UTF_8))) {
+            for (int i = 0; i < rows; i++) {
+                String method = sigs.get(random.nextInt(sigs.size()));
+                out.print(method + "/new " + type(random) + "/" + random.nextInt(50));
+                out.print('\t');
+                out.println(method + "/$v" + random.nextInt(200));
+            }
+        }
+        return f;
+    }
+
+    /**
+     * Reads the lines of a checked-in corpus.
+     *
+     * @param name   the name of the corpus file (under /corpus)
+     */
+    public static List<String> checkedIn(String name) throws IOException {
+        InputStream in = Corpus.class.getResourceAsStream("/corpus/" + name);
+        if (in == null)
+            throw new IOException("Missing corpus: " + name);
+        List<String> lines = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Copies a checked-in corpus to a temporary file.
+     */
+    public static File checkedInFile(String name) throws IOException {
+        File f = File.createTempFile("corpus", ".csv");
+        f.deleteOnExit();
+        Files.write(f.toPath(), checkedIn(name), StandardCharsets.UTF_8);
+        return f;
+    }
+
+    private static String type(Random random) {
+        return pick(random, PACKAGES) + "." + pick(random, CLASSES);
+    }
+
+    private static String pick(Random random, String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+}
@@ -0,0 +1,290 @@
+package org.clyze.doop.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Generates a synthetic Java program of configurable size and shape and
+ * packages it as a runnable jar, to test fact generation and the analyses
+ * at scale without sharing real applications. The program is generated
+ * from a seed, so the same options always give the same jar.
+ *
+ * The classes form groups: an abstract class BaseN with the methods mJ and
+ * "fan-out" subclasses CN_K overriding them. A factory BaseN.make() may
+ * return any subclass, so every call through it has fan-out targets. Each
+ * method allocates objects, stores them in fields, calls methods of other
+ * groups (through the factory) and, with the given probabilities, passes
+ * values through collections or calls methods via reflection. Main calls
+ * every group, and a depth argument bounds the calls, so the program also
+ * runs to completion.
+ *
+ * Needs a JDK (the generated sources are compiled in-process).
+ */
+public final class SyntheticProgram {
+
+    /** The maximum depth of calls, so that the generated program terminates. */
+    private static final int MAX_DEPTH = 3;
+    /** Groups called by one method of Main (methods must stay below 64KB). */
+    private static final int GROUPS_PER_RUNNER = 500;
+    /** The time of all jar entries, so that jars are reproducible. */
+    private static final long ENTRY_TIME = 315532800000L;
+
+    private int classes = 1000;
+    private int methods = 10;
+    private int allocations = 4;
+    private int calls = 3;
+    private int fanOut = 4;
+    private double collections = 0.3;
+    private double reflection = 0.05;
+    private long seed = Corpus.SEED;
+    private String pkg = "synthetic";
+    private File out = new File("synthetic.jar");
+
+    private Random random;
+    private int groups;
+    private long allocationSites;
+    private long callSites;
+
+    public static void main(String[] args) throws IOException {
+        SyntheticProgram program = new SyntheticProgram();
+        try {
+            program.parse(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println("ERROR: " + ex.getMessage());
+            usage();
+            System.exit(1);
+        }
+        program.generate();
+    }
+
+    private static void usage() {
+        System.err.println("Usage: SyntheticProgram [options]");
+        System.err.println("  --out <jar>             the jar to write (default: synthetic.jar)");
+        System.err.println("  --classes <n>           approximate number of classes (default: 1000)");
+        System.err.println("  --methods <n>           methods per class (default: 10)");
+        System.err.println("  --allocations <n>       allocation sites per method (default: 4)");
+        System.err.println("  --calls <n>             virtual call sites per method (default: 3)");
+        System.err.println("  --fan-out <n>           possible targets of every virtual call (default: 4)");
+        System.err.println("  --collections <p>       fraction of methods using collections (default: 0.3)");
+        System.err.println("  --reflection <p>        fraction of methods using reflection (default: 0.05)");
+        System.err.println("  --seed <n>              the random seed (default: " + Corpus.SEED + ")");
+        System.err.println("  --package <name>        the package of the generated classes (default: synthetic)");
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String opt = args[i];
+            if (i + 1 >= args.length)
+                throw new IllegalArgumentException("missing value of " + opt);
+            String value = args[++i];
+            try {
+                switch (opt) {
+                case "--out": out = new File(value); break;
+                case "--classes": classes = positive(opt, Integer.parseInt(value)); break;
+                case "--methods": methods = positive(opt, Integer.parseInt(value)); break;
+                case "--allocations": allocations = Integer.parseInt(value); break;
+                case "--calls": calls = Integer.parseInt(value); break;
+                case "--fan-out": fanOut = positive(opt, Integer.parseInt(value)); break;
+                case "--collections": collections = Double.parseDouble(value); break;
+                case "--reflection": reflection = Double.parseDouble(value); break;
+                case "--seed": seed = Long.parseLong(value); break;
+                case "--package": pkg = value; break;
+                default: throw new IllegalArgumentException("unknown option " + opt);
+                }
+            } catch (NumberFormatException ex) {
+                throw new IllegalArgumentException("bad value of " + opt + ": " + value);
+            }
+        }
+        if (allocations < 0 || calls < 0)
+            throw new IllegalArgumentException("negative allocations or calls");
+    }
+
+    private static int positive(String opt, int value) {
+        if (value <= 0)
+            throw new IllegalArgumentException(opt + " must be positive");
+        return value;
+    }
+
+    private void generate() throws IOException {
+        random = new Random(seed);
+        groups = Math.max(1, classes / (fanOut + 1));
+        Path work = Files.createTempDirectory("synthetic");
+        try {
+            Path srcDir = work.resolve("src");
+            Path pkgDir = srcDir.resolve(pkg.replace('.', File.separatorChar));
+            Files.createDirectories(pkgDir);
+            List<File> sources = new ArrayList<>();
+            for (int g = 0; g < groups; g++) {
+                sources.add(write(pkgDir, "Base" + g, base(g)));
+                for (int k = 0; k < fanOut; k++)
+                    sources.add(write(pkgDir, "C" + g + "_" + k, subclass(g, k)));
+            }
+            sources.add(write(pkgDir, "Main", mainClass()));
+
+            Path classesDir = work.resolve("classes");
+            Files.createDirectories(classesDir);
+            compile(sources, classesDir.toFile());
+            writeJar(classesDir);
+            System.out.println("Generated " + out + ": " + sources.size() + " classes, " +
+                               (groups * fanOut * methods) + " methods, " + allocationSites +
+                               " allocation sites, " + callSites + " virtual call sites.");
+        } finally {
+            try (Stream<Path> paths = Files.walk(work)) {
+                paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+            }
+        }
+    }
+
+    private static File write(Path dir, String className, String code) throws IOException {
+        Path file = dir.resolve(className + ".java");
+        Files.write(file, code.getBytes(StandardCharsets.UTF_8));
+        return file.toFile();
+    }
+
+    private String header() {
+        return "package " + pkg + ";\n\n";
+    }
+
+    private String base(int g) {
+        StringBuilder sb = new StringBuilder(header());
+        sb.append("public abstract class Base").append(g).append(" {\n");
+        sb.append("    public Object f0;\n    public Object f1;\n\n");
+        sb.append("    public static Base").append(g).append(" make(int k) {\n");
+        sb.append("        switch (k % ").append(fanOut).append(") {\n");
+        for (int k = 1; k < fanOut; k++)
+            sb.append("        case ").append(k).append(": return new C").append(g).append('_').append(k).append("();\n");
+        sb.append("        default: return new C").append(g).append("_0();\n");
+        sb.append("        }\n    }\n\n");
+        allocationSites += fanOut;
+        for (int j = 0; j < methods; j++)
+            sb.append("    public abstract Object m").append(j).append("(Object p, int d);\n");
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String subclass(int g, int k) {
+        String name = "C" + g + "_" + k;
+        StringBuilder sb = new StringBuilder(header());
+        sb.append("public class ").append(name).append(" extends Base").append(g).append(" {\n");
+        for (int j = 0; j < methods; j++) {
+            sb.append("\n    @Override\n    public Object m").append(j).append("(Object p, int d) {\n");
+            sb.append("        if (d > ").append(MAX_DEPTH).append(")\n            return p;\n");
+            sb.append("        Object r = p;\n");
+            for (int a = 0; a < allocations; a++) {
+                int h = random.nextInt(groups);
+                sb.append("        Base").append(h).append(" v").append(a).append(" = new C").append(h).append('_')
+                  .append(random.nextInt(fanOut)).append("();\n");
+                sb.append("        v").append(a).append(".f").append(a % 2).append(" = r;\n");
+                allocationSites++;
+            }
+            for (int c = 0; c < calls; c++) {
+                int h = random.nextInt(groups);
+                String arg = allocations > 0 ? "v" + random.nextInt(allocations) : "r";
+                sb.append("        r = Base").append(h).append(".make(d + ").append(c).append(").m")
+                  .append(random.nextInt(methods)).append('(').append(arg).append(", d + 1);\n");
+                callSites++;
+            }
+            if (random.nextDouble() < collections) {
+                sb.append("        java.util.List<Object> l = new java.util.ArrayList<>();\n");
+                sb.append("        l.add(r);\n");
+                sb.append("        java.util.Map<Object, Object> m = new java.util.HashMap<>();\n");
+                sb.append("        m.put(p, l.get(0));\n");
+                sb.append("        for (Object o : m.values())\n            r = o;\n");
+                allocationSites += 2;
+            }
+            if (random.nextDouble() < reflection) {
+                int h = random.nextInt(groups);
+                sb.append("        try {\n");
+                sb.append("            Object o = Class.forName(\"").append(pkg).append(".C").append(h).append('_')
+                  .append(random.nextInt(fanOut)).append("\").newInstance();\n");
+                sb.append("            r = o.getClass().getMethod(\"m").append(random.nextInt(methods))
+                  .append("\", Object.class, int.class).invoke(o, r, d + 1);\n");
+                sb.append("        } catch (Exception ex) {\n            r = ex;\n        }\n");
+            }
+            if (allocations > 0)
+                sb.append("        if (r == null)\n            r = v0.f0;\n");
+            sb.append("        return r;\n    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private String mainClass() {
+        StringBuilder sb = new StringBuilder(header());
+        sb.append("public class Main {\n");
+        sb.append("    public static void main(String[] args) {\n        Object r = args;\n");
+        int runners = (groups + GROUPS_PER_RUNNER - 1) / GROUPS_PER_RUNNER;
+        for (int n = 0; n < runners; n++)
+            sb.append("        r = run").append(n).append("(r);\n");
+        sb.append("        System.out.println(r != null);\n    }\n");
+        for (int n = 0; n < runners; n++) {
+            sb.append("\n    private static Object run").append(n).append("(Object r) {\n");
+            for (int g = n * GROUPS_PER_RUNNER; g < Math.min(groups, (n + 1) * GROUPS_PER_RUNNER); g++) {
+                sb.append("        r = Base").append(g).append(".make(").append(g).append(").m0(r, 0);\n");
+                callSites++;
+            }
+            sb.append("        return r;\n    }\n");
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+
+    private static void compile(List<File> sources, File classesDir) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null)
+            throw new IllegalStateException("No Java compiler found, run the generator with a JDK.");
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, StandardCharsets.UTF_8)) {
+            Iterable<? extends JavaFileObject> units = fileManager.getJavaFileObjectsFromFiles(sources);
+            List<String> options = Arrays.asList("-d", classesDir.getPath(), "-source", "8", "-target", "8",
+                                                 "-encoding", "UTF-8", "-nowarn", "-Xlint:-options");
+            if (!compiler.getTask(null, fileManager, null, options, null, units).call())
+                throw new IllegalStateException("Compilation of the generated program failed.");
+        }
+    }
+
+    private void writeJar(Path classesDir) throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+        manifest.getMainAttributes().put(Attributes.Name.MAIN_CLASS, pkg + ".Main");
+        List<Path> files;
+        try (Stream<Path> paths = Files.walk(classesDir)) {
+            files = paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+        }
+        if (out.getParentFile() != null)
+            Files.createDirectories(out.getParentFile().toPath());
+        try (OutputStream os = Files.newOutputStream(out.toPath());
+             JarOutputStream jar = new JarOutputStream(os)) {
+            JarEntry manifestEntry = new JarEntry("META-INF/MANIFEST.MF");
+            manifestEntry.setTime(ENTRY_TIME);
+            jar.putNextEntry(manifestEntry);
+            manifest.write(jar);
+            jar.closeEntry();
+            for (Path file : files) {
+                JarEntry entry = new JarEntry(classesDir.relativize(file).toString().replace(File.separatorChar, '/'));
+                entry.setTime(ENTRY_TIME);
+                jar.putNextEntry(entry);
+                Files.copy(file, jar);
+                jar.closeEntry();
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package org.clyze.doop.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+import java.util.concurrent.TimeUnit;
+import org.clyze.doop.bench.Corpus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Throughput of writing facts: Database.add (with column escaping) and
+ * JavaFactWriter.writeStringConstant, from one and from many threads.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+
+    @Param({ Corpus.SYNTHETIC, Corpus.CHECKED_IN })
+    public String corpus;
+
+    private File dir;
+    private Database db;
+    private StringConstantWriter writer;
+    private String[] constants;
+
+    /** Exposes the string constant writer of the fact writers. */
+    private static class StringConstantWriter extends JavaFactWriter {
+        StringConstantWriter(Database db) {
+            super(db, new Parameters());
+        }
+
+        String write(String constant) {
+            return writeStringConstant(constant);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next = 0;
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<String> values = Corpus.SYNTHETIC.equals(corpus) ? Corpus.stringConstants(10_000) : Corpus.checkedIn("string-constants.txt");
+        constants = values.toArray(new String[0]);
+        dir = Files.createTempDirectory("facts").toFile();
+        db = new Database(dir.getCanonicalPath());
+        writer = new StringConstantWriter(db);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        db.close();
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            files.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    private String nextConstant(Cursor cursor) {
+        String c = constants[cursor.next];
+        cursor.next = (cursor.next + 1) % constants.length;
+        return c;
+    }
+
+    @Benchmark
+    public void add(Cursor cursor) {
+        String c = nextConstant(cursor);
+        db.add(PredicateFile.STRING_RAW, c, c);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void addContended(Cursor cursor) {
+        String c = nextConstant(cursor);
+        db.add(PredicateFile.STRING_RAW, c, c);
+    }
+
+    @Benchmark
+    public void writeStringConstant(Cursor cursor, Blackhole bh) {
+        bh.consume(writer.write(nextConstant(cursor)));
+    }
+}
@@ -0,0 +1,54 @@
+package org.clyze.doop.ptatoolkit.doop;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.clyze.doop.bench.Corpus;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Time to read a whole relation through the query iterator of the
+ * pre-analyses (line reading and column splitting), and through the
+ * memory-mapped reader interning the symbols of both columns.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class QueryResultItrBenchmark {
+
+    @Param({ Corpus.SYNTHETIC, Corpus.CHECKED_IN })
+    public String corpus;
+
+    private File relation;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        relation = Corpus.SYNTHETIC.equals(corpus) ? Corpus.pointsToRelation(200_000) : Corpus.checkedInFile("InsensVarPointsTo.csv");
+    }
+
+    @Benchmark
+    public void readRelation(Blackhole bh) {
+        Iterator<List<String>> itr = new QueryResultItr(Query.Stats_Simple_InsensVarPointsTo, relation);
+        while (itr.hasNext())
+            bh.consume(itr.next());
+    }
+
+    @Benchmark
+    public void scanRelation(Blackhole bh) throws IOException {
+        SymbolTable<String> heaps = new SymbolTable<>();
+        SymbolTable<String> vars = new SymbolTable<>();
+        Relation.scan(relation, t -> {
+            if (heaps.get(t, 0) == null)
+                heaps.put(t, 0, t.get(0));
+            if (vars.get(t, 1) == null)
+                vars.put(t, 1, t.get(1));
+        });
+        bh.consume(heaps.size() + vars.size());
+    }
+}
@@ -0,0 +1,70 @@
+package org.clyze.doop.soot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import soot.ArrayType;
+import soot.RefType;
+import soot.SootClass;
+import soot.SootMethod;
+import soot.Type;
+import soot.VoidType;
+
+/**
+ * Cost of the method signature caches of Representation: cold lookups
+ * (every method seen for the first time) and warm lookups (the common
+ * case, as every statement of a method asks for its signature).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RepresentationBenchmark {
+
+    @Param({ "1000", "20000" })
+    public int methods;
+
+    private List<SootMethod> sootMethods;
+    private Representation warm;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        sootMethods = new ArrayList<>(methods);
+        List<Type> params = Arrays.asList(RefType.v("java.lang.String"), ArrayType.v(RefType.v("java.lang.Object"), 1));
+        SootClass c = null;
+        for (int i = 0; i < methods; i++) {
+            if (i % 50 == 0)
+                c = new SootClass("bench.pkg" + (i % 7) + ".Class" + i);
+            SootMethod m = new SootMethod("method" + i, params, i % 2 == 0 ? VoidType.v() : RefType.v("java.util.List"));
+            c.addMethod(m);
+            sootMethods.add(m);
+        }
+        warm = new Representation();
+        for (SootMethod m : sootMethods)
+            warm.signature(m);
+    }
+
+    @Benchmark
+    public void coldSignatures(Blackhole bh) {
+        Representation rep = new Representation();
+        for (SootMethod m : sootMethods)
+            bh.consume(rep.signature(m));
+    }
+
+    @Benchmark
+    public void warmSignatures(Blackhole bh) {
+        for (SootMethod m : sootMethods)
+            bh.consume(warm.signature(m));
+    }
+
+    @Benchmark
+    public void warmSimpleNames(Blackhole bh) {
+        for (SootMethod m : sootMethods)
+            bh.consume(warm.simpleName(m));
+    }
+}
@@ -0,0 +1,23 @@
+package org.clyze.doop.bench
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class SyntheticProgramTest extends Specification {
+
+    private static byte[] generate(long seed) {
+        File out = new File(Files.createTempDirectory('synthetic').toFile(), 'synthetic.jar')
+        SyntheticProgram.main(['--classes', '40', '--methods', '3', '--seed', seed as String,
+                               '--out', out.path] as String[])
+        return out.bytes
+    }
+
+    def "The same seed generates the same jar"() {
+        when:
+        byte[] jar = generate(7L)
+
+        then:
+        generate(7L) == jar
+        generate(8L) != jar
+    }
+}
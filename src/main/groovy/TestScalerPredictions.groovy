@@ -1,8 +1,25 @@
+import org.clyze.doop.core.Doop
+import org.clyze.doop.utils.PreAnalysisStore
+import org.clyze.doop.utils.scaler.ScalerPostAnalysis
+
 class TestScalerPredictions {
 
 	static void main(String[] args) {
-		// read all the lines into a list, each line is an element in the list
 		File scalerFile = new File("scaler-context.csv")
+		// Given the facts of the analysis, make the predictions from a stored
+		// context-insensitive pre-analysis of them, instead of running one.
+		if (args.length > 0) {
+			Doop.initDoopFromEnv()
+			String factsChecksum = PreAnalysisStore.factsChecksum(new File(args[0]))
+			File database = PreAnalysisStore.shared().latest(factsChecksum, "Method_TotalVPT")
+			if (database == null) {
+				System.err.println("No stored pre-analysis for facts " + args[0])
+				System.exit(1)
+			}
+			new ScalerPostAnalysis(database).selectContexts(scalerFile)
+		}
+
+		// read all the lines into a list, each line is an element in the list
 		def scalerLines = scalerFile.readLines()
 
 		def scalerPredictions = [:]
@@ -0,0 +1,303 @@
+package org.clyze.doop
+
+import groovy.json.JsonSlurper
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import org.clyze.doop.command.CommandLineAnalysisFactory
+import org.clyze.doop.core.DoopAnalysis
+import org.clyze.doop.core.DoopAnalysisFactory
+import org.clyze.doop.utils.RuntimeHistory
+import org.clyze.utils.Helper
+
+/**
+ * Runs the analyses of a manifest (option --batch) in one JVM, under a
+ * budget of cores and memory, and writes one table with the runtime
+ * metrics, statistics and relation sizes of all of them. A manifest is a
+ * JSON file:
+ *
+ *   {
+ *     "cores": 16, "memory": "64g",
+ *     "defaults": { "cores": 4, "memory": "12g", "options": ["--platform", "java_8"] },
+ *     "entries": [
+ *       { "id": "securibench-2objH", "analysis": "2-object-sensitive+heap",
+ *         "inputs": ["securibench.jar"], "options": ["--information-flow", "webapps"],
+ *         "relations": ["mainAnalysis.configuration.mFlow.B"] }
+ *     ]
+ *   }
+ *
+ * The cores and memory of an entry become its --souffle-jobs and
+ * --max-memory, unless its options already give them. Entries start in
+ * manifest order as soon as their share of the budget is free; a later
+ * entry never starts before an earlier one, even if it fits. All entries
+ * use the facts cache (--cache), so entries with the same inputs generate
+ * facts once; compiled analyses are shared through the analysis cache.
+ */
+@CompileStatic
+@Log4j
+class BatchRunner {
+
+	static final String BATCH_FLAG = '--batch'
+	static final String RESULTS_SUFFIX = '-results.csv'
+	static final String STATUS_DONE = 'done'
+	static final String STATUS_FAILED = 'failed'
+
+	static class Entry {
+		String id
+		String analysis
+		List<String> inputs = []
+		List<String> options = []
+		/** Relations whose sizes are reported. */
+		List<String> relations = []
+		int cores
+		long memory
+
+		/** Results. */
+		String status
+		long wallTime
+		DoopAnalysis result
+
+		String[] toArgs() {
+			List<String> args = ['-a', analysis, '--id', id] as List<String>
+			inputs.each { String input -> args.addAll(['-i', input]) }
+			if (!options.contains('--souffle-jobs'))
+				args.addAll(['--souffle-jobs', cores as String])
+			if (memory > 0 && !options.contains('--max-memory'))
+				args.addAll(['--max-memory', "${memory.intdiv(1024L * 1024L)}m" as String])
+			if (!options.contains('--cache'))
+				args.add('--cache')
+			args.addAll(options)
+			return args as String[]
+		}
+	}
+
+	final int cores
+	final long memory
+	final List<Entry> entries
+	/** The budget taken by running entries (guarded by this). */
+	private int usedCores = 0
+	private long usedMemory = 0L
+	/** The facts cache directories being generated (guarded by this). */
+	private final Set<String> factsInProgress = new HashSet<>()
+
+	BatchRunner(int cores, long memory, List<Entry> entries) {
+		this.cores = cores
+		this.memory = memory
+		this.entries = entries
+	}
+
+	/**
+	 * Reads a manifest. Entries that ask for more cores or memory than the
+	 * budget are limited to the budget (and run alone).
+	 *
+	 * @param manifest   the manifest file
+	 * @return           the runner
+	 */
+	static BatchRunner load(File manifest) {
+		Map json = new JsonSlurper().parse(manifest) as Map
+		int cores = (json.cores ?: Runtime.runtime.availableProcessors()) as int
+		long memory = json.memory ? DoopAnalysisFactory.parseMemorySize(json.memory as String) : 0L
+		Map defaults = (json.defaults ?: [:]) as Map
+		Set<String> ids = new HashSet<>()
+		List<Entry> entries = (json.entries as List<Map>).collect { Map e ->
+			Entry entry = new Entry(id: e.id as String, analysis: (e.analysis ?: defaults.analysis) as String)
+			if (!entry.id || !entry.analysis)
+				throw new RuntimeException("Batch entry without id or analysis: ${e}")
+			if (!ids.add(entry.id))
+				throw new RuntimeException("Duplicate batch entry id: ${entry.id}")
+			entry.inputs = (e.inputs ?: defaults.inputs ?: []) as List<String>
+			entry.options = ((defaults.options ?: []) as List<String>) + ((e.options ?: []) as List<String>)
+			entry.relations = (e.relations ?: defaults.relations ?: []) as List<String>
+			// Jobs given as an option take the cores of the entry.
+			int jobsIndex = entry.options.lastIndexOf('--souffle-jobs')
+			Integer jobs = (jobsIndex >= 0 && jobsIndex + 1 < entry.options.size()) ? entry.options[jobsIndex + 1].toInteger() : null
+			entry.cores = Math.max(1, Math.min(cores, (e.cores ?: jobs ?: defaults.cores ?: 1) as int))
+			String entryMemory = (e.memory ?: defaults.memory) as String
+			entry.memory = entryMemory ? DoopAnalysisFactory.parseMemorySize(entryMemory) : 0L
+			if (memory > 0)
+				entry.memory = Math.min(memory, entry.memory)
+			return entry
+		}
+		return new BatchRunner(cores, memory, entries)
+	}
+
+	/**
+	 * Runs all entries and writes the results table.
+	 *
+	 * @param results   the table to write
+	 */
+	void run(File results) {
+		log.info "Running ${entries.size()} analyses (cores: ${cores}, memory: ${memory ? memory.intdiv(1024L * 1024L) + ' MB' : 'unlimited'})"
+		List<Entry> pending = new LinkedList<>(entries)
+		ExecutorService pool = Executors.newCachedThreadPool()
+		try {
+			synchronized (this) {
+				while (!pending.isEmpty()) {
+					Entry next = nextEntry(pending, cores - usedCores, memory - usedMemory, memory > 0)
+					if (next == null) {
+						wait()
+						continue
+					}
+					pending.remove(next)
+					usedCores += next.cores
+					usedMemory += next.memory
+					pool.submit(new Runnable() {
+						@Override
+						void run() {
+							runEntry(next)
+						}
+					})
+				}
+				while (usedCores > 0)
+					wait()
+			}
+		} finally {
+			pool.shutdownNow()
+		}
+		writeResults(results)
+		log.info "Batch results: ${results}"
+	}
+
+	/**
+	 * Returns the first pending entry if it fits in the free budget, or
+	 * null if it does not. Later entries do not overtake it, so that large
+	 * entries are not starved by smaller ones. When nothing else runs, the
+	 * first entry always fits (entries are limited to the budget when
+	 * loaded).
+	 */
+	static Entry nextEntry(List<Entry> pending, int freeCores, long freeMemory, boolean memoryBudget) {
+		Entry e = pending ? pending.get(0) : null
+		return (e != null && e.cores <= freeCores && (!memoryBudget || e.memory <= freeMemory)) ? e : null
+	}
+
+	private void runEntry(Entry entry) {
+		log.info "[Batch] Starting ${entry.id}"
+		Set<String> generatedFacts = new HashSet<>()
+		try {
+			entry.wallTime = Helper.timing {
+				DoopAnalysis analysis = createAnalysis(entry, generatedFacts)
+				entry.result = analysis
+				entry.status = (analysis && Main.runAnalysis(analysis)) ? STATUS_DONE : STATUS_FAILED
+			}
+		} catch (Throwable t) {
+			log.error "ERROR: batch entry ${entry.id} failed: ${t.message}"
+			entry.status = STATUS_FAILED
+		} finally {
+			log.info "[Batch] Finished ${entry.id}: ${entry.status}"
+			releaseFacts(generatedFacts)
+			synchronized (this) {
+				usedCores -= entry.cores
+				usedMemory -= entry.memory
+				notifyAll()
+			}
+		}
+	}
+
+	/**
+	 * Creates the analysis of an entry. Entries that share facts wait for
+	 * the entry that generates them and then read them from the cache.
+	 *
+	 * @param entry            the batch entry
+	 * @param generatedFacts   receives the facts cache directory that the
+	 *                         analysis will generate, if any
+	 * @return                 the analysis (null if there is nothing to run)
+	 */
+	private synchronized DoopAnalysis createAnalysis(Entry entry, Set<String> generatedFacts) {
+		while (true) {
+			DoopAnalysis analysis = Main.newAnalysis(entry.toArgs(), new CommandLineAnalysisFactory(), false)
+			if (analysis == null || analysis.options.get('CACHE').value)
+				return analysis
+			String cacheDir = (analysis.options.get('CACHE_DIR').value as File).canonicalPath
+			if (!factsInProgress.contains(cacheDir)) {
+				if (!analysis.options.get('DONT_CACHE_FACTS').value) {
+					factsInProgress.add(cacheDir)
+					generatedFacts.add(cacheDir)
+					// Entries waiting for the facts may start once they are cached.
+					analysis.factsListener = { releaseFacts(generatedFacts) }
+				}
+				return analysis
+			}
+			log.info "[Batch] ${entry.id} waits for the facts of another entry"
+			wait()
+		}
+	}
+
+	private synchronized void releaseFacts(Set<String> generatedFacts) {
+		if (generatedFacts) {
+			factsInProgress.removeAll(generatedFacts)
+			generatedFacts.clear()
+			notifyAll()
+		}
+	}
+
+	/**
+	 * Writes a tab-separated table with one row per entry: id, analysis,
+	 * status, wall time, then every runtime metric, statistic and relation
+	 * size reported by any entry.
+	 */
+	void writeResults(File results) {
+		List<Map<String, String>> rows = entries.collect { Entry e -> collectResults(e) }
+		LinkedHashSet<String> columns = new LinkedHashSet<>(['id', 'analysis', 'status', 'wall time (sec)'])
+		rows.each { Map<String, String> row -> columns.addAll(row.keySet()) }
+		results.withWriter { BufferedWriter w ->
+			w.write(columns.join('\t') + '\n')
+			rows.each { Map<String, String> row ->
+				w.write(columns.collect { String c -> row.get(c) ?: '' }.join('\t') + '\n')
+			}
+		}
+	}
+
+	static Map<String, String> collectResults(Entry e) {
+		Map<String, String> row = new LinkedHashMap<>()
+		row.put('id', e.id)
+		row.put('analysis', e.analysis)
+		row.put('status', e.status)
+		row.put('wall time (sec)', e.wallTime as String)
+		File database = e.result?.database
+		if (database == null)
+			return row
+		File runtime = new File(database, RuntimeHistory.STATS_RUNTIME)
+		if (runtime.exists())
+			RuntimeHistory.parse(runtime).each { String metric, Long value -> row.put(metric, value as String) }
+		File metrics = new File(database, 'Stats_Metrics.csv')
+		if (metrics.exists()) {
+			metrics.eachLine { String line ->
+				String[] parts = line.split('\t')
+				if (parts.length == 3)
+					row.put(parts[1], parts[2])
+			}
+		}
+		e.relations.each { String relation ->
+			File f = new File(database, "${relation}.csv")
+			row.put("${relation} (rows)" as String, f.exists() ? countLines(f) as String : '')
+		}
+		return row
+	}
+
+	private static long countLines(File f) {
+		long count = 0L
+		f.eachLine { count++ }
+		return count
+	}
+
+	/**
+	 * Entry point for option --batch: runs a manifest and writes the
+	 * results next to it.
+	 *
+	 * @param args   the arguments after --batch: the manifest and,
+	 *               optionally, the results file
+	 */
+	static void main(String[] args) {
+		if (args.length < 1 || args.length > 2) {
+			println "Usage: doop ${BATCH_FLAG} <manifest.json> [results.csv]"
+			return
+		}
+		File manifest = new File(args[0])
+		if (!manifest.exists())
+			throw new RuntimeException("Batch manifest does not exist: ${manifest}")
+		File results = args.length > 1 ? new File(args[1]) :
+				new File(manifest.absoluteFile.parentFile, manifest.name.replaceAll(/\.json$/, '') + RESULTS_SUFFIX)
+		load(manifest).run(results)
+	}
+}
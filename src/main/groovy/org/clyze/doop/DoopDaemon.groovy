@@ -0,0 +1,187 @@
+package org.clyze.doop
+
+import groovy.json.JsonSlurper
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Semaphore
+import java.util.concurrent.atomic.AtomicInteger
+import org.clyze.analysis.AnalysisOption
+import org.clyze.doop.command.CommandLineAnalysisFactory
+import org.clyze.doop.core.Doop
+import org.clyze.doop.core.DoopAnalysis
+import org.codehaus.groovy.runtime.StackTraceUtils
+
+/**
+ * A long-lived Doop process that runs analyses on request, so that
+ * batches of analyses do not pay for JVM startup and class loading every
+ * time. Analyses share the in-memory caches of the JVM (platform files,
+ * compiled logic lookups) and run concurrently, up to a limit.
+ *
+ * The daemon listens on a localhost port. A client connects, sends one
+ * line and reads the response lines until the connection is closed:
+ *
+ *   ["-a", "context-insensitive", "-i", "app.jar", "--id", "app"]
+ *       Runs an analysis with the given (JSON array of) Doop arguments.
+ *       Responses: ACCEPTED, STARTED id, and DONE id outDir or FAILED message.
+ *   STATUS
+ *       Responds with the number of running and waiting analyses.
+ *   SHUTDOWN
+ *       Stops the daemon after the running analyses finish.
+ *
+ * For example: echo '["-a", "micro", "-i", "app.jar"]' | nc localhost 7040
+ */
+@CompileStatic
+@Log4j
+class DoopDaemon {
+
+	static final int DEFAULT_PORT = 7040
+	static final int DEFAULT_MAX_CONCURRENT = 2
+
+	final int port
+	final int maxConcurrent
+	private final Semaphore slots
+	private final AtomicInteger waiting = new AtomicInteger()
+	private final AtomicInteger running = new AtomicInteger()
+	/** The output directories of the analyses being run. */
+	private final Set<String> activeOutDirs = ConcurrentHashMap.newKeySet()
+	private final ExecutorService connections = Executors.newCachedThreadPool()
+	private volatile boolean stopping = false
+	private ServerSocket server
+
+	DoopDaemon(int port, int maxConcurrent) {
+		this.port = port
+		this.maxConcurrent = maxConcurrent
+		this.slots = new Semaphore(maxConcurrent, true)
+	}
+
+	/**
+	 * Accepts requests until a SHUTDOWN request arrives.
+	 */
+	void serve() {
+		server = new ServerSocket(port, 50, InetAddress.loopbackAddress)
+		log.info "Doop daemon listening on localhost:${port} (max concurrent analyses: ${maxConcurrent})"
+		try {
+			while (!stopping) {
+				Socket socket
+				try {
+					socket = server.accept()
+				} catch (SocketException ex) {
+					if (stopping)
+						break
+					throw ex
+				}
+				connections.submit(new Runnable() {
+					@Override
+					void run() {
+						handle(socket)
+					}
+				})
+			}
+		} finally {
+			connections.shutdown()
+			server.close()
+		}
+		log.info "Doop daemon stopped."
+	}
+
+	private void handle(Socket socket) {
+		try {
+			socket.withCloseable {
+				BufferedReader reader = new BufferedReader(new InputStreamReader(socket.inputStream, 'UTF-8'))
+				PrintWriter writer = new PrintWriter(new OutputStreamWriter(socket.outputStream, 'UTF-8'), true)
+				String request = reader.readLine()?.trim()
+				if (!request)
+					writer.println('FAILED empty request')
+				else if (request == 'STATUS')
+					writer.println("RUNNING ${running.get()} WAITING ${waiting.get()}")
+				else if (request == 'SHUTDOWN')
+					shutdown(writer)
+				else if (stopping)
+					writer.println('FAILED daemon is shutting down')
+				else
+					runRequest(request, writer)
+			}
+		} catch (IOException ex) {
+			log.warn "WARNING: daemon connection error: ${ex.message}"
+		}
+	}
+
+	private void runRequest(String request, PrintWriter writer) {
+		String[] args
+		try {
+			args = (new JsonSlurper().parseText(request) as List).collect { it as String } as String[]
+		} catch (Exception ex) {
+			writer.println("FAILED request is not a JSON array of arguments: ${ex.message}")
+			return
+		}
+		writer.println('ACCEPTED')
+
+		waiting.incrementAndGet()
+		slots.acquireUninterruptibly()
+		waiting.decrementAndGet()
+		running.incrementAndGet()
+		DaemonAnalysisFactory factory = new DaemonAnalysisFactory()
+		try {
+			DoopAnalysis analysis = Main.newAnalysis(args, factory, false)
+			if (analysis == null) {
+				writer.println('FAILED no analysis to run')
+				return
+			}
+			writer.println("STARTED ${analysis.id}")
+			if (Main.runAnalysis(analysis))
+				writer.println("DONE ${analysis.id} ${analysis.outDir.canonicalPath}")
+			else
+				writer.println("FAILED analysis ${analysis.id} did not finish, see the daemon log")
+		} catch (Throwable t) {
+			Throwable cause = StackTraceUtils.deepSanitize(t.cause ?: t)
+			log.error(cause.message, cause)
+			writer.println("FAILED ${cause.message}")
+		} finally {
+			if (factory.claimedDir != null)
+				activeOutDirs.remove(factory.claimedDir)
+			running.decrementAndGet()
+			slots.release()
+		}
+	}
+
+	/**
+	 * Creating an analysis clears its output directory, so analyses with
+	 * the same id must not run at the same time.
+	 */
+	private class DaemonAnalysisFactory extends CommandLineAnalysisFactory {
+		String claimedDir = null
+
+		@Override
+		protected File createOutputDirectory(Map<String, AnalysisOption<?>> options) {
+			String dir = new File(getOutputDirectory(options)).canonicalPath
+			if (!activeOutDirs.add(dir))
+				throw new RuntimeException("Analysis ${options.USER_SUPPLIED_ID.value} is already running")
+			claimedDir = dir
+			return super.createOutputDirectory(options)
+		}
+	}
+
+	private void shutdown(PrintWriter writer) {
+		stopping = true
+		// Wait for the running analyses by taking all slots.
+		slots.acquireUninterruptibly(maxConcurrent)
+		writer.println('STOPPED')
+		server.close()
+	}
+
+	static void main(String[] args) {
+		if (args.length > 2 || args.any { it == '-h' || it == '--help' }) {
+			println "Usage: DoopDaemon [port] [maxConcurrent]"
+			println "  port            the localhost port to listen on (default: ${DEFAULT_PORT})"
+			println "  maxConcurrent   the maximum number of analyses to run at the same time (default: ${DEFAULT_MAX_CONCURRENT})"
+			return
+		}
+		int port = args.length > 0 ? args[0].toInteger() : DEFAULT_PORT
+		int maxConcurrent = args.length > 1 ? args[1].toInteger() : DEFAULT_MAX_CONCURRENT
+		Doop.initDoopWithLoggingFromEnv()
+		new DoopDaemon(port, Math.max(1, maxConcurrent)).serve()
+	}
+}
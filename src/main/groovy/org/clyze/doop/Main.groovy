@@ -7,6 +7,7 @@ import org.clyze.doop.command.Help
 import java.util.concurrent.Executors
 import java.util.concurrent.TimeUnit
 import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicBoolean
 import org.apache.log4j.Level
 import org.apache.log4j.Logger
 import org.clyze.doop.command.CommandLineAnalysisFactory
@@ -14,6 +15,7 @@ import org.clyze.doop.command.CommandLineAnalysisPostProcessor
 import org.clyze.doop.common.DoopErrorCodeException
 import org.clyze.doop.core.Doop
 import org.clyze.doop.core.DoopAnalysis
+import org.clyze.doop.utils.ChildProcesses
 import org.clyze.utils.FileOps
 import org.clyze.utils.JHelper
 import org.codehaus.groovy.runtime.StackTraceUtils
@@ -50,88 +52,13 @@ class Main {
 		Doop.initDoopWithLoggingFromEnv()
 
 		try {
-			// The builder for displaying usage and parsing the arguments
-			def clidBuilder = CommandLineAnalysisFactory.createCliBuilder()
-
-			if (!args) {
-				Help.usage(null, clidBuilder)
-				return
-			}
-
-			def argsToParse
-			def bloxOptions
-			def index = args.findIndexOf { it == "--" }
-			if (index == -1) {
-				argsToParse = args
-				bloxOptions = null
-			} else {
-				argsToParse = args[0..(index - 1)]
-				bloxOptions = args[(index + 1)..(args.length - 1)].join(' ')
-			}
-
-			def cli = clidBuilder.parse(argsToParse)
-			if (!cli) {
-				// We assume usage has already been displayed by the CliBuilder.
-				return
-			} else if (cli.arguments().size() != 0) {
-				def msg = "Invalid argument specified: " + cli.arguments()[0]
-				log.error msg
-				Help.usage(cli, clidBuilder)
-				return
-			} else if (cli['h']) {
-				Help.usage(cli, clidBuilder)
+			if (args && args[0] == BatchRunner.BATCH_FLAG) {
+				BatchRunner.main(args.drop(1))
 				return
-			} else if (cli['v']) {
-				println JHelper.getVersionInfo(Main.class)
-				return
-			}
-
-			String userTimeout
-			if (cli['p']) {
-				//create analysis from the properties file & the cli options
-				def file = cli['p'] as String
-				def f = FileOps.findFileOrThrow(file, "Not a valid file: $file")
-				def propsBaseDir = f.absoluteFile.parentFile
-				def props = FileOps.loadProperties(f)
-
-				changeLogLevel(cli['L'] ?: props.getProperty("level"))
-				userTimeout = cli['t'] ?: props.getProperty("timeout")
-				analysis = new CommandLineAnalysisFactory().newAnalysis(propsBaseDir, props, cli)
-			} else {
-				changeLogLevel(cli['L'])
-				userTimeout = cli['t']
-				analysis = new CommandLineAnalysisFactory().newAnalysis(cli)
-			}
-
-			analysis.options.BLOX_OPTS.value = bloxOptions
-
-			if (userTimeout != "false")
-				analysis.options.TIMEOUT.value = parseTimeoutOrDefault(userTimeout, analysis.options.TIMEOUT.value as int)
-			log.info "Using a timeout of ${analysis.options.TIMEOUT.value} min."
-
-			def executorService = Executors.newSingleThreadExecutor()
-			try {
-				executorService.submit(new Runnable() {
-					@Override
-					void run() {
-						try {
-							log.debug analysis
-							analysis.run()
-							new CommandLineAnalysisPostProcessor().process(analysis)
-						} catch (DoopErrorCodeException e) {
-							log.error(e.message)
-							log.debug(e.message, e)
-						} catch (e) {
-							log.error "Generic exception $e"
-							throw e
-						}
-					}
-				}).get(analysis.options.TIMEOUT.value as int, TimeUnit.MINUTES)
-			} catch (TimeoutException e) {
-				log.error "Timeout has expired (${analysis.options.TIMEOUT.value} min)."
-			} finally {
-				executorService.shutdownNow()
 			}
+			analysis = newAnalysis(args, new CommandLineAnalysisFactory(), true)
+			if (analysis)
+				runAnalysis(analysis)
 		} catch (e) {
 			// DoopErrorCodeException is a special wrapper that must
 			// be propagated above, so we don't extract its cause yet.
@@ -147,6 +74,124 @@ class Main {
 		}
 	}
 
+	/**
+	 * Creates an analysis from command line arguments.
+	 *
+	 * @param args            the command line arguments
+	 * @param factory         the factory that creates the analysis
+	 * @param setLogLevel     if true, the log level of the arguments is applied
+	 *                        (the daemon keeps its own log level)
+	 * @return                the analysis, or null if the arguments only
+	 *                        asked for usage/version information
+	 */
+	static DoopAnalysis newAnalysis(String[] args, CommandLineAnalysisFactory factory, boolean setLogLevel) {
+		// The builder for displaying usage and parsing the arguments
+		def clidBuilder = CommandLineAnalysisFactory.createCliBuilder()
+
+		if (!args) {
+			Help.usage(null, clidBuilder)
+			return null
+		}
+
+		def argsToParse
+		def bloxOptions
+		def index = args.findIndexOf { it == "--" }
+		if (index == -1) {
+			argsToParse = args
+			bloxOptions = null
+		} else {
+			argsToParse = args[0..(index - 1)]
+			bloxOptions = args[(index + 1)..(args.length - 1)].join(' ')
+		}
+
+		def cli = clidBuilder.parse(argsToParse)
+		if (!cli) {
+			// We assume usage has already been displayed by the CliBuilder.
+			return null
+		} else if (cli.arguments().size() != 0) {
+			def msg = "Invalid argument specified: " + cli.arguments()[0]
+			log.error msg
+			Help.usage(cli, clidBuilder)
+			return null
+		} else if (cli['h']) {
+			Help.usage(cli, clidBuilder)
+			return null
+		} else if (cli['v']) {
+			println JHelper.getVersionInfo(Main.class)
+			return null
+		}
+
+		DoopAnalysis doopAnalysis
+		String userTimeout
+		if (cli['p']) {
+			//create analysis from the properties file & the cli options
+			def file = cli['p'] as String
+			def f = FileOps.findFileOrThrow(file, "Not a valid file: $file")
+			def propsBaseDir = f.absoluteFile.parentFile
+			def props = FileOps.loadProperties(f)
+
+			if (setLogLevel)
+				changeLogLevel(cli['L'] ?: props.getProperty("level"))
+			userTimeout = cli['t'] ?: props.getProperty("timeout")
+			doopAnalysis = factory.newAnalysis(propsBaseDir, props, cli)
+		} else {
+			if (setLogLevel)
+				changeLogLevel(cli['L'])
+			userTimeout = cli['t']
+			doopAnalysis = factory.newAnalysis(cli)
+		}
+
+		doopAnalysis.options.BLOX_OPTS.value = bloxOptions
+
+		if (userTimeout != "false")
+			doopAnalysis.options.TIMEOUT.value = parseTimeoutOrDefault(userTimeout, doopAnalysis.options.TIMEOUT.value as int)
+		log.info "Using a timeout of ${doopAnalysis.options.TIMEOUT.value} min."
+		return doopAnalysis
+	}
+
+	/**
+	 * Runs an analysis and its post-processing, within the analysis timeout.
+	 *
+	 * @param analysis   the analysis to run
+	 * @return           true if the analysis finished, false if it failed
+	 *                   with an error code or the timeout expired
+	 */
+	static boolean runAnalysis(DoopAnalysis analysis) {
+		AtomicBoolean finished = new AtomicBoolean(false)
+		def executorService = Executors.newSingleThreadExecutor()
+		try {
+			executorService.submit(new Runnable() {
+				@Override
+				void run() {
+					try {
+						log.debug analysis
+						analysis.runWithTelemetry()
+						new CommandLineAnalysisPostProcessor().process(analysis)
+						finished.set(true)
+					} catch (DoopErrorCodeException e) {
+						log.error(e.message)
+						log.debug(e.message, e)
+					} catch (e) {
+						log.error "Generic exception $e"
+						throw e
+					}
+				}
+			}).get(analysis.options.TIMEOUT.value as int, TimeUnit.MINUTES)
+		} catch (TimeoutException e) {
+			log.error "Timeout has expired (${analysis.options.TIMEOUT.value} min)."
+			// Interrupting the analysis does not stop its external processes.
+			int killed = ChildProcesses.kill(analysis.outDir)
+			if (killed > 0)
+				log.info "Killed ${killed} process(es) of analysis ${analysis.id}"
+		} finally {
+			executorService.shutdownNow()
+			// Callers (e.g. the daemon) may reuse the resources of the analysis.
+			if (!executorService.awaitTermination(ChildProcesses.KILL_WAIT, TimeUnit.SECONDS))
+				log.warn "WARNING: analysis ${analysis.id} is still running"
+		}
+		return finished.get()
+	}
+
 	private static void changeLogLevel(def logLevel) {
 		Level lvl = null
 		if (logLevel) {
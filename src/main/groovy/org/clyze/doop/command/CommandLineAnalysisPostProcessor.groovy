@@ -6,6 +6,7 @@ import org.apache.commons.io.FilenameUtils
 import org.clyze.analysis.AnalysisPostProcessor
 import org.clyze.doop.core.Doop
 import org.clyze.doop.core.DoopAnalysis
+import org.clyze.doop.utils.SouffleProfile
 import org.clyze.utils.OS
 
 import java.nio.file.Files
@@ -14,12 +15,17 @@ import java.nio.file.Path
 @Log4j
 class CommandLineAnalysisPostProcessor implements AnalysisPostProcessor<DoopAnalysis> {
 
+	/** The number of rules shown from the profile report. */
+	static final int PROFILE_HOTSPOTS = 15
+
 	@Override
 	void process(DoopAnalysis analysis) {
 		if (!analysis.options.get('FACTS_ONLY').value)
 			printStats(analysis)
 		if (analysis.options.get('SANITY').value && !analysis.options.get('DRY_RUN').value)
 			printSanityResults(analysis)
+		if (analysis.options.get('SOUFFLE_PROFILE').value && !analysis.options.get('DRY_RUN').value)
+			printProfileHotspots(analysis)
 		linkResult(analysis)
 	}
 
@@ -67,6 +73,17 @@ class CommandLineAnalysisPostProcessor implements AnalysisPostProcessor<DoopAnal
 		}
 	}
 
+	void printProfileHotspots(DoopAnalysis analysis) {
+		def file = new File(analysis.database, SouffleProfile.RULES_REPORT)
+		if (!file.exists())
+			return
+		log.info "-- Profile hotspots (rules by evaluation time) --"
+		file.readLines().take(PROFILE_HOTSPOTS)*.split("\t").each {
+			log.info String.format("%-60s %,12d ms %,16d tuples  %s", it[3] ?: it[0], it[1] as long, it[2] as long, it[0])
+		}
+		log.info "Full reports: ${file}, ${new File(analysis.database, SouffleProfile.RELATIONS_REPORT)}"
+	}
+
 	void linkResult(DoopAnalysis analysis) {
 		def factsOnly = analysis.options.get('FACTS_ONLY').value
 		if (factsOnly) {
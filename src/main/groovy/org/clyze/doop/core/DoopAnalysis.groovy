@@ -12,12 +12,14 @@ import org.clyze.doop.common.DoopErrorCodeException
 import org.clyze.doop.util.ClassPathHelper
 import org.clyze.doop.util.Resource
 import org.clyze.doop.utils.CPreprocessor
+import org.clyze.doop.utils.Telemetry
 import org.clyze.input.InputResolutionContext
 import org.clyze.utils.*
 import org.codehaus.groovy.runtime.StackTraceUtils
 
 import java.lang.reflect.Field
 import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Method
 import java.nio.file.FileSystems
 import java.nio.file.Files
 import java.nio.file.Path
@@ -52,6 +54,14 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
      */
     protected Executor executor
 
+    /** The environment of the external commands. */
+    protected final Map<String, String> commandsEnvironment
+
+    /**
+     * Called when the facts have been generated and cached (may be null).
+     */
+    Closure factsListener = null
+
     /**
      * Used for invoking the C preprocessor
      */
@@ -62,11 +72,26 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
      */
     protected long factGenTime
 
+    /**
+     * Records resource use per phase (option --telemetry), null if disabled
+     */
+    protected Telemetry telemetry
+
     /**
      * The suffix of information flow platforms.
      */
     static final String INFORMATION_FLOW_SUFFIX = "-sources-and-sinks"
 
+    /**
+     * The Flight Recorder file of fact generation (option --fact-gen-jfr).
+     */
+    static final String FACT_GEN_JFR_FILE = "fact-generation.jfr"
+
+    /**
+     * Serializes fact generators invoked as linked libraries.
+     */
+    private static final Object LINKED_FACTGEN_LOCK = new Object()
+
     @Override
     String getId() { options.USER_SUPPLIED_ID.value as String }
 
@@ -94,6 +119,7 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
                            Map<String, String> commandsEnvironment) {
         super(new DoopAnalysisFamily(), options)
         this.ctx = ctx
+        this.commandsEnvironment = commandsEnvironment
 
         if (!options.INPUT_ID.value) {
             log.info "New $name analysis"
@@ -195,6 +221,22 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
         generateFacts0()
     }
 
+    /**
+     * Runs the analysis. With option --telemetry, the resource use of the
+     * analysis phases is sampled and written to the output directory.
+     */
+    void runWithTelemetry() {
+        if (options.TELEMETRY.value) {
+            telemetry = new Telemetry(outDir, options.TELEMETRY_INTERVAL.value as long)
+            telemetry.start()
+        }
+        try {
+            run()
+        } finally {
+            telemetry?.stop()
+        }
+    }
+
     protected void generateFacts() throws DoopErrorCodeException {
 
         if (options.CACHE.value) {
@@ -258,12 +300,14 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
 
             if (options.UNIQUE_FACTS.value) {
                 def timing = Helper.timing {
-                    factsDir.eachFileMatch(~/.*.facts/) { file ->
-                        def uniqueLines = file.readLines() as SortedSet<String>
-                        uniqueLines.sort()
-                        def tmp = new File(factsDir, "${file.name}.tmp")
-                        tmp.withWriter { w -> uniqueLines.each { w.writeLine(it) } }
-                        tmp.renameTo(file)
+                    Telemetry.phase(telemetry, 'facts-unique') {
+                        factsDir.eachFileMatch(~/.*.facts/) { file ->
+                            def uniqueLines = file.readLines() as SortedSet<String>
+                            uniqueLines.sort()
+                            def tmp = new File(factsDir, "${file.name}.tmp")
+                            tmp.withWriter { w -> uniqueLines.each { w.writeLine(it) } }
+                            tmp.renameTo(file)
+                        }
                     }
                 }
                 log.info "Time to make facts unique: $timing"
@@ -271,22 +315,27 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
 
             if (!options.INPUT_ID.value && !options.CACHE.value) {
                 if (options.HEAPDLS.value) {
-                    runHeapDL(options.HEAPDLS.value.collect { File f -> f.canonicalPath })
+                    Telemetry.phase(telemetry, 'facts-heapdl') {
+                        runHeapDL(options.HEAPDLS.value.collect { File f -> f.canonicalPath })
+                    }
                 }
 
                 if (options.DONT_CACHE_FACTS.value)
                     log.info "Facts will not be cached."
                 else {
                     log.info "Caching facts in $cacheDir"
-                    deleteQuietly(cacheDir)
-                    cacheDir.mkdirs()
-                    FileOps.copyDirContentsWithRetry(factsDir, cacheDir)
-                    new File(cacheDir, "meta").withWriter { BufferedWriter w -> w.write(cacheMeta()) }
+                    Telemetry.phase(telemetry, 'facts-caching') {
+                        deleteQuietly(cacheDir)
+                        cacheDir.mkdirs()
+                        FileOps.copyDirContentsWithRetry(factsDir, cacheDir)
+                        new File(cacheDir, "meta").withWriter { BufferedWriter w -> w.write(cacheMeta()) }
+                    }
                 }
             } else {
                 log.warn "WARNING: Imported facts are not cached."
             }
             log.info "----"
+            factsListener?.call()
         }
 
         if (options.SPECIAL_CONTEXT_SENSITIVITY_METHODS.value) {
@@ -307,6 +356,25 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             Files.copy(origPartitionsFile.toPath(), destPartitionsFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
         }
 
+        writeRuntimeOptions()
+    }
+
+    /**
+     * Writes the enabled runtime options (see DoopAnalysisFamily.RUNTIME_OPTIONS)
+     * to the facts directory. The file is always created, since the logic
+     * declares it as an input. Reused facts may be symbolic links (option
+     * --Xsymlink-cached-facts), so the file is deleted first, to never write
+     * to the facts of another analysis.
+     */
+    protected void writeRuntimeOptions() {
+        File runtimeOptions = new File(factsDir, "RuntimeOption.facts")
+        Files.deleteIfExists(runtimeOptions.toPath())
+        runtimeOptions.withWriter { BufferedWriter w ->
+            for (String id : DoopAnalysisFamily.RUNTIME_OPTIONS) {
+                if (options[id]?.value)
+                    w.write("${id}\n")
+            }
+        }
     }
 
     private List<String> getInputArgsJars(Set<String> tmpDirs) {
@@ -406,6 +474,13 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
             params += ["--legacy-android-processing"]
         }
 
+        if (options.FACT_GEN_JFR.value) {
+            if (frontEnd == FrontEnd.WALA)
+                log.warn "WARNING: option --${options.FACT_GEN_JFR.name} is not supported by the WALA front end"
+            else
+                params += ["--jfr", new File(outDir, FACT_GEN_JFR_FILE).canonicalPath]
+        }
+
         params.addAll(["--log-dir", Doop.doopLog])
         params.addAll(["-d", factsDir.toString()] + inputArgs)
         deps.addAll(platforms.collect { lib -> ["-l", lib.toString()] }.flatten() as Collection<String>)
@@ -782,7 +857,7 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
     void invokeFactGenerator(String TAG, Resource generator, String[] jvmArgs,
                              Collection<String> params, String mainClass) {
         // Detect if generator main is available.
-        def main = null
+        Method main = null
         try {
             main = Class.forName(mainClass).getDeclaredMethod("main", String[].class)
         } catch(all) {
@@ -809,11 +884,16 @@ abstract class DoopAnalysis extends Analysis implements Runnable {
         args.addAll([ "--args-file", argsFile ])
         String[] args0 = args as String[]
 
+        String phase = 'facts-' + TAG.toLowerCase().replace('_fact_gen', '')
         if ((!main) || options.X_ISOLATE_FACTGEN.value) {
-            invokeExtFactGenerator(TAG, jvmArgs, generator, args0)
+            Telemetry.phase(telemetry, phase) { invokeExtFactGenerator(TAG, jvmArgs, generator, args0) }
         } else {
             try {
-                main.invoke(null, [args0] as Object[])
+                // Front ends keep global state (e.g. the Soot Scene), so
+                // analyses sharing a JVM take turns in linked mode.
+                synchronized (LINKED_FACTGEN_LOCK) {
+                    Telemetry.phase(telemetry, phase) { main.invoke(null, [args0] as Object[]) }
+                }
             } catch (ex) {
                 ex.printStackTrace()
                 throw new RuntimeException("Could not invoke '${generator}' as a linked library, try --${options.X_ISOLATE_FACTGEN.name}: ${ex.message}")
@@ -1,6 +1,8 @@
 package org.clyze.doop.core
 
 import groovy.util.logging.Log4j
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
 import java.util.jar.Attributes
 import java.util.jar.JarFile
 import org.apache.commons.io.FileUtils
@@ -26,6 +28,11 @@ import org.clyze.utils.FileOps
 class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 
 	static final char[] EXTRA_ID_CHARACTERS = '_-+.'.toCharArray()
+	/**
+	 * The platform files found so far, by platform and platform locations.
+	 * Analyses created in the same JVM (e.g. by the daemon) share them.
+	 */
+	private static final ConcurrentMap<String, List<String>> platformFilesCache = new ConcurrentHashMap<>()
 	static final String HASH_ALGO = "SHA-256"
 	static final availableConfigurations = [
 			"dependency-analysis"                : "TwoObjectSensitivePlusHeapConfiguration",
@@ -46,6 +53,7 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 			"2-type-sensitive+heap"              : "TwoTypeSensitivePlusHeapConfiguration",
 			"2-object-sensitive"                 : "TwoObjectSensitiveConfiguration",
 			"2-object-sensitive+heap"            : "TwoObjectSensitivePlusHeapConfiguration",
+			"mahjong-2-object-sensitive+heap"    : "TwoObjectSensitivePlusHeapConfiguration",
 			"fully-guided-context-sensitive"     : "FullyGuidedContextSensitiveConfiguration",
 			"special-2-type-sensitive+heap"      : "SpecialTwoTypeSensitivePlusHeapConfiguration",
 			"2-object-sensitive+2-heap"          : "TwoObjectSensitivePlusTwoHeapConfiguration",
@@ -96,11 +104,13 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 			log.warn("WARNING: Using custom platforms library in ${platformsLib}. Unset environment variable ${DoopAnalysisFamily.DOOP_PLATFORMS_LIB_ENV} for default platform discovery.")
 		}
 		try {
-			PlatformManager pm = new PlatformManager(platformsLib, sdkDir, Doop.doopCache)
 			String localJavaPlatform = options.get('USE_LOCAL_JAVA_PLATFORM').value as String
 			if (localJavaPlatform)
 				println "Using local Java platform from ${localJavaPlatform}"
-			List<String> platformFiles = pm.find(platformName, true, localJavaPlatform)
+			String platformKey = [platformsLib, sdkDir, platformName, localJavaPlatform].join('|')
+			List<String> platformFiles = platformFilesCache.computeIfAbsent(platformKey) {
+				new PlatformManager(platformsLib, sdkDir, Doop.doopCache).find(platformName, true, localJavaPlatform)
+			}
 			platformFiles.findAll { !it.startsWith(PlatformManager.ARTIFACTORY_PLATFORMS_URL) && !(new File(it)).exists() }.each {
 				if (platformName.startsWith("android_")) {
 					log.warn "WARNING: Android platform file ${it} does not exist. Please install it via the Android SDK Manager."
@@ -159,6 +169,12 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 			} else if (options.ANALYSIS.value == "fully-guided-context-sensitive") {
 				return new SouffleScalerMultiPhaseAnalysis(options, context, commandsEnv)
 			}
+			else if (runsZipper(options)) {
+				return new SouffleZipperMultiPhaseAnalysis(options, context, commandsEnv)
+			}
+			else if (options.ANALYSIS.value == "mahjong-2-object-sensitive+heap") {
+				return new SouffleMahjongMultiPhaseAnalysis(options, context, commandsEnv)
+			}
 //			else if (options.ANALYSIS.value == "adaptive-2-object-sensitive+heap") {
 //				return new SouffleGenericsMultiPhaseAnalysis(options, context, commandsEnv)
 //			}
@@ -168,6 +184,16 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 		}
 	}
 
+	/**
+	 * Returns true if Zipper selects the precision-critical methods
+	 * in-process: with option --Xzipper-guided, or with option --Xzipper
+	 * when its file does not exist yet (it then gets the selection).
+	 */
+	static boolean runsZipper(Map<String, AnalysisOption<?>> options) {
+		return options.X_ZIPPER_GUIDED.value ||
+				(options.X_ZIPPER.value && !new File(options.X_ZIPPER.value as String).exists())
+	}
+
 	/**
 	 * Checks that, when reusing facts, options that modify facts do not cause
 	 * problems.
@@ -221,7 +247,7 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 	}
 
 	// This method may not be static, see [Note] above.
-	private String getOutputDirectory(Map<String, AnalysisOption<?>> options) {
+	protected String getOutputDirectory(Map<String, AnalysisOption<?>> options) {
 		return "${Doop.doopOut}/${options.USER_SUPPLIED_ID.value}"
 	}
 
@@ -265,6 +291,9 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 		Collection<AnalysisOption<?>> miscFileOpts = options.values()
 			.findAll { it.forCacheID && it.argInputType == InputType.MISC && it.value }
 		for (AnalysisOption opt : miscFileOpts) {
+			// The file of --Xzipper may be an output of in-process Zipper.
+			if (opt == options.X_ZIPPER && runsZipper(options))
+				continue
 			if (opt != options.TAMIFLEX || opt.value != "dummy") {
 				checksums += [CheckSum.checksum(new File(opt.value as String), HASH_ALGO)]
 			}
@@ -305,6 +334,27 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 		}
 	}
 
+	/**
+	 * Converts a memory size with a unit suffix (such as "512m" or "4g")
+	 * to bytes.
+	 *
+	 * @param size  the memory size
+	 * @return      the number of bytes
+	 * @throws IllegalArgumentException if the size is not well-formed
+	 */
+	static long parseMemorySize(String size) {
+		long multiplier = 0
+		if (size.endsWith("k") || size.endsWith("K"))
+			multiplier = 1024
+		else if (size.endsWith("m") || size.endsWith("M"))
+			multiplier = 1024 * 1024
+		else if (size.endsWith("g") || size.endsWith("G"))
+			multiplier = 1024 * 1024 * 1024
+		if (multiplier == 0)
+			throw new IllegalArgumentException("wrong format.")
+		return multiplier * Integer.parseInt(size.substring(0, size.length() - 1))
+	}
+
 	/**
 	 * Processes the options of the analysis.
 	 */
@@ -410,25 +460,12 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 
 		String maxMemory = options.MAX_MEMORY.value
 		if (maxMemory) {
-			long multiplier = 0
-			if (maxMemory.endsWith("k") || maxMemory.endsWith("K"))
-				multiplier = 1024
-			else if (maxMemory.endsWith("m") || maxMemory.endsWith("M"))
-				multiplier = 1024 * 1024
-			else if (maxMemory.endsWith("g") || maxMemory.endsWith("G"))
-				multiplier = 1024 * 1024 * 1024
-			if (multiplier == 0) {
-				log.error "ERROR: Could not process memory size ${maxMemory}: wrong format."
+			try {
+				options.MAX_MEMORY.value = String.valueOf(parseMemorySize(maxMemory))
+				log.info "Maximum memory size: ${options.MAX_MEMORY.value}"
+			} catch (Exception ex) {
+				log.error "ERROR: Could not process memory size ${maxMemory}: ${ex.message}"
 				options.MAX_MEMORY.value = null
-			} else {
-				maxMemory = maxMemory.substring(0, maxMemory.length()-1)
-				try {
-					options.MAX_MEMORY.value = String.valueOf(multiplier * Integer.parseInt(maxMemory))
-					log.info "Maximum memory size: ${options.MAX_MEMORY.value}"
-				} catch (Exception ex) {
-					log.error "ERROR: Could not process memory size ${maxMemory}: ${ex.message}"
-					options.MAX_MEMORY.value = null
-				}
 			}
 		}
 
@@ -506,6 +543,35 @@ class DoopAnalysisFactory implements AnalysisFactory<DoopAnalysis> {
 			throw new RuntimeException("Error: options --" + options.CACHE.name + " and --" + options.SOUFFLE_PROFILE.name + " are not compatible when running via the DDlog converter.")
 		}
 
+		List<String> tsts = options.X_SCALER_TST_SWEEP.value as List<String>
+		if (tsts) {
+			if (options.ANALYSIS.value != "fully-guided-context-sensitive")
+				throw new RuntimeException("Error: option --" + options.X_SCALER_TST_SWEEP.name + " is only supported by analysis fully-guided-context-sensitive.")
+			if (!tsts.every { it.isLong() && (it as long) > 0L })
+				throw new RuntimeException("Error: option --" + options.X_SCALER_TST_SWEEP.name + " takes positive numbers, not: " + tsts.join(' '))
+		}
+
+		if (runsZipper(options) && options.ANALYSIS.value in ["fully-guided-context-sensitive", "mahjong-2-object-sensitive+heap"]) {
+			throw new RuntimeException("Error: Zipper cannot run in-process (option --" + options.X_ZIPPER_GUIDED.name + ", or --" + options.X_ZIPPER.name + " with a file that does not exist) with analysis " + options.ANALYSIS.value + ", which runs its own pre-analysis.")
+		}
+
+		[options.X_SCALER_RANK, options.X_SCALER_TST, options.X_SCALER_CALIBRATE_TST].each { AnalysisOption option ->
+			if (option.value && options.ANALYSIS.value != "fully-guided-context-sensitive")
+				throw new RuntimeException("Error: option --" + option.name + " is only supported by analysis fully-guided-context-sensitive.")
+		}
+
+		String tst = options.X_SCALER_TST.value as String
+		if (tst) {
+			if (!(tst.isLong() && (tst as long) > 0L))
+				throw new RuntimeException("Error: option --" + options.X_SCALER_TST.name + " takes a positive number, not: " + tst)
+			if (options.X_SCALER_CALIBRATE_TST.value)
+				throw new RuntimeException("Error: options --" + options.X_SCALER_TST.name + " and --" + options.X_SCALER_CALIBRATE_TST.name + " are not compatible.")
+		}
+
+		if (options.TELEMETRY.value && (options.TELEMETRY_INTERVAL.value as int) <= 0) {
+			throw new RuntimeException("Error: option --" + options.TELEMETRY_INTERVAL.name + " must be a positive number of milliseconds.")
+		}
+
 		if (options.X_NO_SSA.value) {
 			options.SSA.value = false
 		}
@@ -45,6 +45,7 @@ class DoopAnalysisFamily implements AnalysisFamily {
 	static final String SOUFFLE_COMPILED = 'compiled'
 	static final String SOUFFLE_INTERPRETED = 'interpreted'
 	static final String SOUFFLE_TRANSLATED = 'translated'
+	static final String SOUFFLE_AUTO = 'auto'
 
 	/**
 	 * Special value of open programs that disables their automatic activation.
@@ -53,6 +54,18 @@ class DoopAnalysisFamily implements AnalysisFamily {
 	 */
 	static final String FORCE_OPEN_PROGRAMS_DISABLED = 'disabled'
 
+	/**
+	 * Options that are not passed to cpp but written to RuntimeOption.facts
+	 * and joined against by the logic. Toggling them does not change the
+	 * checksum of the analysis, so an already compiled binary is reused.
+	 */
+	static final List<String> RUNTIME_OPTIONS = [
+			"DISTINGUISH_ALL_STRING_CONSTANTS",
+			"DISTINGUISH_ALL_STRING_BUFFERS",
+			"DISTINGUISH_STRING_BUFFERS_PER_PACKAGE",
+			"REFLECTION_HIGH_SOUNDNESS_MODE"
+	].asImmutable()
+
 	@Override
 	String getName() { "doop" }
 
@@ -410,6 +423,12 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					description: "Number of cores to use for parallel fact generation.",
 					argName: "NUMBER"
 			),
+			new BooleanAnalysisOption(
+					id: "FACT_GEN_JFR",
+					name: "fact-gen-jfr",
+					group: GROUP_FACTS,
+					description: "Record Flight Recorder events of fact generation (classes, method bodies, SSA conversion, fact writes) to fact-generation.jfr in the output directory and print a summary. Needs a JVM with Flight Recorder support."
+			),
 			new AnalysisOption<String>(
 					id: "APP_REGEX",
 					name: "regex",
@@ -459,6 +478,14 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					description: "Enable the analysis to be the pre-analysis of Scaler, and outputs the information required by Scaler.",
 					forPreprocessor: true
 			),
+			new BooleanAnalysisOption(
+					id: "X_MAHJONG_PRE_ANALYSIS",
+					name: "Xmahjong-pre",
+					group: GROUP_EXPERIMENTAL,
+					description: "With --Xscaler-pre, also output the field points-to graph required by Mahjong (set by analysis mahjong-2-object-sensitive+heap).",
+					forPreprocessor: true,
+					cli: false
+			),
 			new BooleanAnalysisOption(
 					id: "GENERICS_PRE_ANALYSIS",
 					name: "Xgenerics-pre",
@@ -466,6 +493,36 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					description: "Enable precise generics pre-analysis to infer content types for Collections and Maps.",
 					forPreprocessor: true
 			),
+			new AnalysisOption<List<String>>(
+					id: "X_SCALER_TST_SWEEP",
+					name: "Xscaler-tst-sweep",
+					group: GROUP_EXPERIMENTAL,
+					description: "With analysis fully-guided-context-sensitive, also select context-sensitivity for each of these TST values after the pre-analysis. The selections are written to directory scaler-sweep of the output (with several values, to one tst-TST directory per value, listed in ScalerSweep.csv), so that the analysis can be rerun with any of them.",
+					value: [],
+					multipleValues: true,
+					argName: "TST",
+					forPreprocessor: true
+			),
+			new BooleanAnalysisOption(
+					id: "X_SCALER_RANK",
+					name: "Xscaler-rank",
+					group: GROUP_EXPERIMENTAL,
+					description: "With analysis fully-guided-context-sensitive, select context-sensitivity with ScalerRank, which also weighs every method by its rank in the call graph of the pre-analysis, so that central methods lose precision first.",
+					forPreprocessor: true
+			),
+			new AnalysisOption<String>(
+					id: "X_SCALER_TST",
+					name: "Xscaler-tst",
+					group: GROUP_EXPERIMENTAL,
+					description: "With analysis fully-guided-context-sensitive, the total scalability threshold (TST) of Scaler (default: 20000000).",
+					argName: "TST"
+			),
+			new BooleanAnalysisOption(
+					id: "X_SCALER_CALIBRATE_TST",
+					name: "Xscaler-calibrate-tst",
+					group: GROUP_EXPERIMENTAL,
+					description: "With analysis fully-guided-context-sensitive, set the TST of Scaler to the most precise selection expected to fit the memory limit (--max-memory) and the time left before the timeout, as predicted from earlier runs of the analysis. Selections larger than any earlier run are never predicted to fit."
+			),
 			/* End Scaler related options */
 
 			/* Start Zipper related options */
@@ -480,12 +537,18 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					id: "X_ZIPPER",
 					name: "Xzipper",
 					group: GROUP_EXPERIMENTAL,
-					description: "Use file with precision-critical methods selected by Zipper, these methods are analyzed context-sensitively.",
+					description: "Use file with precision-critical methods selected by Zipper, these methods are analyzed context-sensitively. If the file does not exist, Zipper runs in-process after a context-insensitive pre-analysis (as with --Xzipper-guided) and its selection is saved to the file.",
 					argName: "FILE",
 					argInputType: InputType.MISC,
 					forCacheID: true,
 					forPreprocessor: true
 			),
+			new BooleanAnalysisOption(
+					id: "X_ZIPPER_GUIDED",
+					name: "Xzipper-guided",
+					group: GROUP_EXPERIMENTAL,
+					description: "Run a context-insensitive pre-analysis and Zipper before the analysis; the methods selected by Zipper are analyzed context-sensitively. With --Xzipper, the selection is also saved to its file."
+			),
 			/* End Zipper related options */
 
 			/* Start Python related options */
@@ -536,21 +599,18 @@ class DoopAnalysisFamily implements AnalysisFamily {
 			new BooleanAnalysisOption(
 					id: "DISTINGUISH_ALL_STRING_CONSTANTS",
 					name: "distinguish-all-string-constants",
-					description: "Treat string constants as regular objects.",
-					forPreprocessor: true
+					description: "Treat string constants as regular objects."
 			),
 			new BooleanAnalysisOption(
 					id: "DISTINGUISH_ALL_STRING_BUFFERS",
 					name: "distinguish-all-string-buffers",
-					description: "Avoids merging string buffer objects (not recommended).",
-					forPreprocessor: true
+					description: "Avoids merging string buffer objects (not recommended)."
 			),
 			new BooleanAnalysisOption(
 					id: "DISTINGUISH_STRING_BUFFERS_PER_PACKAGE",
 					name: "distinguish-string-buffers-per-package",
 					group: GROUP_REFLECTION,
-					description: "Merges string buffer objects only on a per-package basis (default behavior for reflection-classic).",
-					forPreprocessor: true
+					description: "Merges string buffer objects only on a per-package basis (default behavior for reflection-classic)."
 			),
 			new BooleanAnalysisOption(
 					id: "EXCLUDE_IMPLICITLY_REACHABLE_CODE",
@@ -613,8 +673,7 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					id: "REFLECTION_HIGH_SOUNDNESS_MODE",
 					name: "reflection-high-soundness-mode",
 					group: GROUP_REFLECTION,
-					description: "Enable extra rules for more sound handling of reflection.",
-					forPreprocessor: true
+					description: "Enable extra rules for more sound handling of reflection."
 			),
 			new BooleanAnalysisOption(
 					id: "REFLECTION_SPECULATIVE_USE_BASED_ANALYSIS",
@@ -719,6 +778,12 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					argName: "NUMBER",
 					value: DEFAULT_JOBS
 			),
+			new BooleanAnalysisOption(
+					id: "SOUFFLE_AUTO_JOBS",
+					name: "souffle-auto-jobs",
+					group: GROUP_ENGINE,
+					description: "Choose the number of Souffle jobs from the available cores, the memory limit (--max-memory) and the peak memory of earlier runs of the analysis (overrides --souffle-jobs)."
+			),
 			new BooleanAnalysisOption(
 					id: "SOUFFLE_DEBUG",
 					name: "souffle-debug",
@@ -731,6 +796,14 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					group: GROUP_ENGINE,
 					description: "Enable profiling in the Souffle binary."
 			),
+			new AnalysisOption<String>(
+					id: "SOUFFLE_PLANS",
+					name: "souffle-plans",
+					group: GROUP_ENGINE,
+					description: "Use a file with join-order plans for rules of the logic (generated by the soufflePlans task).",
+					argName: "FILE",
+					argInputType: InputType.MISC
+			),
 			new BooleanAnalysisOption(
 					id: "SOUFFLE_LIVE_PROFILE",
 					name: "souffle-live-profile",
@@ -760,8 +833,8 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					id: "SOUFFLE_MODE",
 					name: "souffle-mode",
 					group: GROUP_ENGINE,
-					description: "How to run Souffle: compile to binary, use interpreter, only translate to C++.",
-					validValues: [SOUFFLE_COMPILED, SOUFFLE_INTERPRETED, SOUFFLE_TRANSLATED] as Set<String>,
+					description: "How to run Souffle: compile to binary, use interpreter, only translate to C++, or decide automatically (from the facts size and earlier runs).",
+					validValues: [SOUFFLE_COMPILED, SOUFFLE_INTERPRETED, SOUFFLE_TRANSLATED, SOUFFLE_AUTO] as Set<String>,
 					value: SOUFFLE_COMPILED,
 					argName: "MODE"
 			),
@@ -1000,6 +1073,20 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					description: "Run extra metrics logic under addons/statistics.",
 					forPreprocessor: false
 			),
+			new BooleanAnalysisOption(
+					id: "TELEMETRY",
+					name: "telemetry",
+					group: GROUP_STATS,
+					description: "Sample memory and CPU use (of Doop and its child processes) during every analysis phase and write them to telemetry.csv and telemetry-phases.csv in the output directory. Heap, GC and Doop CPU figures cover the whole JVM, including other analyses run by the same daemon or batch."
+			),
+			new IntegerAnalysisOption(
+					id: "TELEMETRY_INTERVAL",
+					name: "telemetry-interval",
+					group: GROUP_STATS,
+					description: "The sampling interval of option --telemetry, a positive number (default: 1000).",
+					argName: "MILLISECONDS",
+					value: 1000
+			),
 			new BooleanAnalysisOption(
 					id: "X_ORACULAR_HEURISTICS",
 					name: "Xoracular-heuristics",
@@ -1053,7 +1140,7 @@ class DoopAnalysisFamily implements AnalysisFamily {
 					id: "X_SERIALIZE_FACTGEN_COMPILATION",
 					name: "Xserialize-factgen-compilation",
 					group: GROUP_EXPERIMENTAL,
-					description: "Do not run fact generation and compilation in parallel.",
+					description: "Do not run fact generation and compilation in parallel. Multi-phase analyses (e.g., fully-guided-context-sensitive) otherwise compile their pre-analysis and main analysis at the same time as fact generation, so that two C++ compilers (each taking a few GB of memory for the larger analyses) run next to the fact generator; with this option, the two compilations run one after the other, before fact generation.",
 					cli: false
 			),
 			new IntegerAnalysisOption(
@@ -3,6 +3,7 @@ package org.clyze.doop.core
 import groovy.transform.CompileStatic
 import groovy.transform.InheritConstructors
 import groovy.util.logging.Log4j
+import org.clyze.doop.utils.CPreprocessor
 import org.clyze.doop.utils.LBBuilder
 import org.clyze.utils.Executor
 import org.clyze.utils.FileOps
@@ -29,7 +30,14 @@ class LB3Analysis extends DoopAnalysis {
 	@Override
 	void run() {
 		//Initialize the instance here and not in the constructor, in order to allow an analysis to be re-runnable.
+		// The LB logic still tests the runtime options as cpp macros, added
+		// to a new preprocessor so that they are not repeated on every run.
+		cpp = new CPreprocessor(this, executor)
 		lbBuilder = new LBBuilder(cpp, outDir)
+		for (String id : DoopAnalysisFamily.RUNTIME_OPTIONS) {
+			if (options[id]?.value)
+				cpp.macroCli << ("-D${id}" as String)
+		}
 		database = new File("${database.canonicalPath}-lb")
 
 		generateFacts()
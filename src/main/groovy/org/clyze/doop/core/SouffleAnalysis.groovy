@@ -6,16 +6,23 @@ import groovy.util.logging.Log4j
 import java.nio.file.Files
 import java.nio.file.StandardCopyOption
 import java.util.concurrent.Callable
+import java.util.concurrent.ExecutionException
 import java.util.concurrent.Executors
 import java.util.concurrent.Future
 import org.clyze.doop.common.DoopErrorCodeException
 import org.clyze.doop.jimple.JimpleProcessor
 import org.clyze.doop.soot.DoopConventions
 import org.clyze.doop.utils.ConfigurationGenerator
+import org.clyze.doop.utils.CppLineMap
 import org.clyze.doop.utils.DDlog
+import org.clyze.doop.utils.SouffleJobTuner
+import org.clyze.doop.utils.RuntimeHistory
+import org.clyze.doop.utils.SouffleModePlanner
 import org.clyze.doop.utils.SouffleOptions
+import org.clyze.doop.utils.SouffleProfile
 import org.clyze.doop.utils.SouffleScript
 import org.clyze.doop.utils.TACGenerator
+import org.clyze.doop.utils.Telemetry
 import org.clyze.doop.utils.XTractor
 import org.clyze.utils.Executor
 import org.clyze.utils.JHelper
@@ -29,14 +36,32 @@ import static org.apache.commons.io.FilenameUtils.getBaseName
 @Log4j
 class SouffleAnalysis extends DoopAnalysis {
 
+	/** How often (in ms) a race between interpretation and compilation is checked. */
+	private static final long RACE_POLL_INTERVAL = 500L
+
+	static final String PROFILE_FILE = 'profile.txt'
+
+	private long compilationStart = 0L
+	private long raceExecutionTime = 0L
+	private long racePeakMemory = 0L
+	/** The preprocessed script that Souffle evaluated, if known. */
+	private File generatedScript = null
+
 	@Override
 	void run() {
 		File analysis = new File(outDir, "${name}.dl")
 		deleteQuietly(analysis)
 		analysis.createNewFile()
 
-		initDatabase(analysis)
-		runAnalysisAndProduceStats(analysis)
+		// Keep the origin of every line, to map profile locations and
+		// join plans to the original logic.
+		if (options.SOUFFLE_PROFILE.value || options.SOUFFLE_PLANS.value)
+			cpp.enableLineMarkers()
+
+		Telemetry.phase(telemetry, 'preprocess') {
+			initDatabase(analysis)
+			runAnalysisAndProduceStats(analysis)
+		}
 
 		File runtimeMetricsFile = File.createTempFile('Stats_Runtime', '.csv')
 		log.debug "Using intermediate runtime metrics file: ${runtimeMetricsFile.canonicalPath}"
@@ -49,6 +74,8 @@ class SouffleAnalysis extends DoopAnalysis {
 		def executorService = Executors.newSingleThreadExecutor()
 		String analysisBinaryPath = options.USE_ANALYSIS_BINARY.value as String
 		boolean runInterpreted = options.SOUFFLE_MODE.value == DoopAnalysisFamily.SOUFFLE_INTERPRETED
+		boolean autoMode = options.SOUFFLE_MODE.value == DoopAnalysisFamily.SOUFFLE_AUTO && !options.VIA_DDLOG.value
+		boolean interpretedInRace = false
 		int jobs = options.SOUFFLE_JOBS.value as int
 		long monitorInterval = (options.X_MONITORING_INTERVAL.value as long) * 1000
 		SouffleOptions souffleOpts = new SouffleOptions(options)
@@ -59,6 +86,7 @@ class SouffleAnalysis extends DoopAnalysis {
 				// compilation and fact post-processing.
 				DDlog.copyDDlogConverter(log, outDir)
 			}
+			compilationStart = System.currentTimeMillis()
 			compilationFuture = executorService.submit(new Callable<File>() {
 				@Override
 				File call() {
@@ -78,8 +106,10 @@ class SouffleAnalysis extends DoopAnalysis {
 
 		try {
 			log.info "[Task FACTS...]"
-			generateFacts()
-			script.postprocessFacts(outDir, souffleOpts.profile)
+			Telemetry.phase(telemetry, 'facts') {
+				generateFacts()
+				script.postprocessFacts(outDir, souffleOpts.profile)
+			}
 			log.info "[Task FACTS Done]"
 			runtimeMetricsFile.append("fact generation time (sec)\t${factGenTime}\n")
 
@@ -99,6 +129,25 @@ class SouffleAnalysis extends DoopAnalysis {
 
 			if (options.FACTS_ONLY.value) return
 
+			long factsSize = factsSizeKB()
+			runtimeMetricsFile.append("${SouffleModePlanner.FACTS_SIZE}\t${factsSize}\n")
+			if (options.SOUFFLE_AUTO_JOBS.value)
+				jobs = tuneJobs(factsSize, runInterpreted)
+			SouffleScript interpreter = script
+			if (autoMode && compilationFuture && !options.DRY_RUN.value) {
+				SouffleModePlanner.Mode mode = planExecution(compilationFuture, factsSize)
+				if (mode == SouffleModePlanner.Mode.INTERPRETED) {
+					// Cancelling only interrupts the waiting thread, the compiler is killed.
+					compilationFuture.cancel(true)
+					script.kill()
+					interpreter = newScriptForAnalysis(executor)
+					runInterpreted = true
+				} else if (mode == SouffleModePlanner.Mode.RACE) {
+					interpretedInRace = raceInterpretation(analysis, script, compilationFuture, jobs, souffleOpts)
+					runInterpreted = interpretedInRace
+				}
+			}
+
 			if (!analysisBinaryPath && !runInterpreted) {
 				if (!options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
 					generatedFile = compilationFuture.get()
@@ -107,28 +156,174 @@ class SouffleAnalysis extends DoopAnalysis {
 			}
 
 			if (!options.DRY_RUN.value) {
-				if (runInterpreted) {
-					script.interpretScript(analysis, outDir, factsDir, jobs, souffleOpts)
+				long executionTime
+				long peakMemory
+				if (interpretedInRace) {
+					executionTime = raceExecutionTime
+					peakMemory = racePeakMemory
+				} else if (runInterpreted) {
+					interpreter.interpretScript(analysis, outDir, factsDir, jobs, souffleOpts)
+					executionTime = interpreter.executionTime
+					peakMemory = interpreter.peakMemoryKB
+					generatedScript = interpreter.scriptFile
 				} else {
 				    File analysisBinary = analysisBinaryPath ? new File(analysisBinaryPath) : generatedFile
 				    script.run(analysisBinary, factsDir, outDir, jobs, 
 						       monitorInterval, monitorClosure, souffleOpts)
+					executionTime = script.executionTime
+					peakMemory = script.peakMemoryKB
+					generatedScript = analysisBinaryPath ? null : script.scriptFile
 				}
 
-				runtimeMetricsFile.append("analysis execution time (sec)\t${script.executionTime}\n")
+				runtimeMetricsFile.append("${SouffleModePlanner.EXECUTION_TIME}\t${executionTime}\n")
+				runtimeMetricsFile.append("${SouffleModePlanner.INTERPRETED}\t${runInterpreted ? 1 : 0}\n")
+				runtimeMetricsFile.append("${SouffleJobTuner.JOBS}\t${jobs}\n")
+				if (peakMemory > 0)
+					runtimeMetricsFile.append("${SouffleJobTuner.PEAK_MEMORY}\t${peakMemory}\n")
 				int dbSize = (sizeOfDirectory(database) / 1024).intValue()
 				runtimeMetricsFile.append("disk footprint (KB)\t${dbSize}\n")
-				postprocess()
+				Telemetry.phase(telemetry, 'postprocess') { postprocess() }
 
-				if (this.name == "xtractor") XTractor.run(this)
+				if (this.name == "xtractor")
+					Telemetry.phase(telemetry, 'postprocess-xtractor') { XTractor.run(this) }
 			}
 
-			Files.move(runtimeMetricsFile.toPath(), new File(database, "Stats_Runtime.csv").toPath(), StandardCopyOption.REPLACE_EXISTING)
+			File statsRuntime = new File(database, RuntimeHistory.STATS_RUNTIME)
+			Files.move(runtimeMetricsFile.toPath(), statsRuntime.toPath(), StandardCopyOption.REPLACE_EXISTING)
+			if (!options.DRY_RUN.value)
+				RuntimeHistory.forAnalysis(name).record(id, statsRuntime)
 		} finally {
+			// Stops a compilation still running after a failure.
+			script.kill()
 			executorService.shutdownNow()
 		}
 	}
 
+	/**
+	 * Chooses between waiting for compilation and interpreting the logic
+	 * (SOUFFLE_MODE "auto"). A finished compilation (e.g. a cached binary)
+	 * is always used.
+	 */
+	private SouffleModePlanner.Mode planExecution(Future<File> compilationFuture, long factsSize) {
+		SouffleModePlanner.Mode mode
+		if (compilationFuture.isDone()) {
+			mode = SouffleModePlanner.Mode.COMPILED
+		} else {
+			long compilingFor = (System.currentTimeMillis() - compilationStart).intdiv(1000L) as long
+			List<Map<String, Long>> history = RuntimeHistory.forAnalysis(name).entries()
+			mode = new SouffleModePlanner(history).plan(factsSize, compilingFor)
+		}
+		log.info "Souffle execution mode: ${mode.name().toLowerCase()} (facts: ${factsSize} KB)"
+		return mode
+	}
+
+	/**
+	 * Interprets the analysis while it is still being compiled and keeps
+	 * the result of whichever finishes first. The interpreter writes to a
+	 * separate directory, so a slow interpreter never touches the database.
+	 * The losing process is killed before its directory is deleted.
+	 *
+	 * @param compiler  the script that compiles the analysis
+	 * @return true if interpretation finished first (its relations have
+	 *         then been moved to the database), false if compilation did
+	 */
+	private boolean raceInterpretation(File analysis, SouffleScript compiler, Future<File> compilationFuture,
+									   int jobs, SouffleOptions souffleOpts) {
+		File raceDir = new File(outDir, 'interpreted')
+		deleteQuietly(raceDir)
+		File raceDatabase = new File(raceDir, 'database')
+		raceDatabase.mkdirs()
+
+		SouffleScript interpreter = newScriptForAnalysis(executor)
+		def raceExecutor = Executors.newSingleThreadExecutor()
+		try {
+			log.info "[Task INTERPRET (while compiling)...]"
+			Future<?> interpretation = raceExecutor.submit(new Runnable() {
+				@Override
+				void run() {
+					interpreter.interpretScript(analysis, raceDir, factsDir, jobs, souffleOpts)
+				}
+			})
+			while (true) {
+				if (interpretation.isDone()) {
+					try {
+						interpretation.get()
+					} catch (ExecutionException ex) {
+						log.warn "WARNING: interpretation failed, waiting for compilation: ${ex.cause?.message}"
+						return false
+					}
+					log.info "[Task INTERPRET Done] before compilation"
+					compilationFuture.cancel(true)
+					compiler.kill()
+					raceDatabase.listFiles().each { File f ->
+						Files.move(f.toPath(), new File(database, f.name).toPath(), StandardCopyOption.REPLACE_EXISTING)
+					}
+					raceExecutionTime = interpreter.executionTime
+					racePeakMemory = interpreter.peakMemoryKB
+					if (souffleOpts.profile) {
+						for (File f : [new File(raceDir, PROFILE_FILE), interpreter.scriptFile]) {
+							if (f?.exists())
+								Files.move(f.toPath(), new File(outDir, f.name).toPath(), StandardCopyOption.REPLACE_EXISTING)
+						}
+						generatedScript = new File(outDir, interpreter.scriptFile.name)
+					}
+					return true
+				}
+				if (compilationFuture.isDone() && compiledSuccessfully(compilationFuture)) {
+					log.info "[Task COMPILE Done] before interpretation"
+					interpretation.cancel(true)
+					return false
+				}
+				Thread.sleep(RACE_POLL_INTERVAL)
+			}
+		} finally {
+			// No-op if interpretation finished, otherwise the interpreter
+			// must exit before its output directory is deleted.
+			interpreter.kill()
+			raceExecutor.shutdownNow()
+			deleteQuietly(raceDir)
+		}
+	}
+
+	/**
+	 * Chooses the number of Souffle jobs (option --souffle-auto-jobs) from
+	 * the available cores, the memory limit and earlier runs.
+	 */
+	private int tuneJobs(long factsSize, boolean interpreted) {
+		String maxMemory = options.MAX_MEMORY.value as String
+		Long budgetKB = maxMemory ? (maxMemory as long).intdiv(1024L) as Long : null
+		int cores = Runtime.runtime.availableProcessors()
+		List<Map<String, Long>> history = RuntimeHistory.forAnalysis(name).entries()
+		int jobs = new SouffleJobTuner(history, cores).jobs(factsSize, budgetKB, interpreted)
+		log.info "Souffle jobs: ${jobs} (cores: ${cores}, memory limit: ${budgetKB ? "${budgetKB} KB" : 'none'})"
+		return jobs
+	}
+
+	private static boolean compiledSuccessfully(Future<File> compilationFuture) {
+		try {
+			compilationFuture.get()
+			return true
+		} catch (ExecutionException ignored) {
+			return false
+		}
+	}
+
+	/**
+	 * Returns the total size of the facts (in KB). Symbolic links to cached
+	 * facts are followed.
+	 */
+	private long factsSizeKB() {
+		File[] facts = factsDir.listFiles()
+		long size = 0L
+		if (facts != null) {
+			for (File f : facts) {
+				if (f.name.endsWith('.facts'))
+					size += f.length()
+			}
+		}
+		return size.intdiv(1024L) as long
+	}
+
 	void initDatabase(File analysis) {
 		cpp.includeAtEnd("$analysis", "${Doop.souffleLogicPath}/facts/facts.dl")
 		handleImportDynamicFacts()
@@ -230,15 +425,20 @@ class SouffleAnalysis extends DoopAnalysis {
 	protected SouffleScript newScriptForAnalysis(Executor executor) {
 		boolean viaDDlog = options.VIA_DDLOG.value as Boolean
 		File cacheDir = new File(Doop.souffleAnalysesCache, name)
-		return SouffleScript.newScript(executor, cacheDir, viaDDlog)
+		SouffleScript script = SouffleScript.newScript(executor, cacheDir, viaDDlog)
+		script.telemetry = telemetry
+		script.environment = commandsEnvironment
+		return script
 	}
 
 	protected void postprocess() {
 		try {
 			if (options.GENERATE_OPTIMIZATION_DIRECTIVES.value) {
-				File configurationsDir = new File(database, 'configurations')
-				configurationsDir.mkdirs()
-				new ConfigurationGenerator(outDir.canonicalPath, configurationsDir.canonicalPath).generateConfigurations()
+				Telemetry.phase(telemetry, 'postprocess-configurations') {
+					File configurationsDir = new File(database, 'configurations')
+					configurationsDir.mkdirs()
+					new ConfigurationGenerator(outDir.canonicalPath, configurationsDir.canonicalPath).generateConfigurations()
+				}
 			}
 		} catch (Throwable t) {
 			log.error "ERROR: configuration generation failed: ${t.message}"
@@ -246,15 +446,45 @@ class SouffleAnalysis extends DoopAnalysis {
 
 		try {
 			if (options.SARIF.value && options.GENERATE_JIMPLE.value) {
-				String version = JHelper.getVersionInfo(Doop.class)
-				new JimpleProcessor(DoopConventions.jimpleDir(factsDir.canonicalPath), database, database, version, false).process()
+				Telemetry.phase(telemetry, 'postprocess-sarif') {
+					String version = JHelper.getVersionInfo(Doop.class)
+					new JimpleProcessor(DoopConventions.jimpleDir(factsDir.canonicalPath), database, database, version, false).process()
+				}
 			}
 		} catch (Throwable t) {
 			log.error "ERROR: SARIF generation failed: ${t.message}"
 		}
 
+		try {
+			if (options.SOUFFLE_PROFILE.value)
+				Telemetry.phase(telemetry, 'postprocess-profile') { writeProfileReport() }
+		} catch (Throwable t) {
+			log.error "ERROR: profile report generation failed: ${t.message}"
+		}
+
 		if (options.GENERATE_TAC.value) {
-			TACGenerator.run(factsDir, new File(factsDir, "Methods.tac"))
+			Telemetry.phase(telemetry, 'postprocess-tac') {
+				TACGenerator.run(factsDir, new File(factsDir, "Methods.tac"))
+			}
+		}
+	}
+
+	/**
+	 * Ranks the relations and rules of the Souffle profile and writes the
+	 * report to the database, with locations in the original logic files.
+	 */
+	protected void writeProfileReport() {
+		File profileFile = new File(outDir, PROFILE_FILE)
+		if (!profileFile.exists()) {
+			log.warn "WARNING: no Souffle profile found at ${profileFile}"
+			return
 		}
+		SouffleProfile profile = SouffleProfile.parse(profileFile)
+		File markedScript = new File(outDir, "${name}.dl")
+		if (generatedScript?.exists() && markedScript.exists())
+			profile.mapSources(new CppLineMap(generatedScript, markedScript, Doop.souffleLogicPath))
+		else
+			profile.mapSources(null)
+		profile.writeReport(database)
 	}
 }
@@ -0,0 +1,39 @@
+package org.clyze.doop.core
+
+import groovy.transform.CompileStatic
+import groovy.transform.InheritConstructors
+import groovy.transform.TypeChecked
+import groovy.util.logging.Log4j
+import org.clyze.doop.ptatoolkit.mahjong.Driver
+
+/**
+ * The mahjong-2-object-sensitive+heap analysis: the context-insensitive
+ * pre-analysis of Scaler also outputs the field points-to graph (option
+ * X_MAHJONG_PRE_ANALYSIS), Mahjong merges the type-consistent allocation
+ * sites in-process and writes the merged objects to the facts, and the
+ * analysis then allocates every merged object as its representative.
+ */
+@CompileStatic
+@InheritConstructors
+@Log4j
+@TypeChecked
+class SouffleMahjongMultiPhaseAnalysis extends SouffleMultiPhaseAnalysis {
+
+	@Override
+	protected Map<String, Object> preAnalysisOptions() {
+		return SHARED_PRE_ANALYSIS + ([X_MAHJONG_PRE_ANALYSIS: true] as Map<String, Object>)
+	}
+
+	@Override
+	protected Map<String, Object> mainAnalysisOptions() {
+		return [CONFIGURATION: options.CONFIGURATION.value,
+				SCALER_PRE_ANALYSIS: null,
+				X_ZIPPER_PRE_ANALYSIS: false,
+				X_MAHJONG_PRE_ANALYSIS: false] as Map<String, Object>
+	}
+
+	@Override
+	protected void guideMainAnalysis() {
+		Driver.runMahjong(factsDir, database)
+	}
+}
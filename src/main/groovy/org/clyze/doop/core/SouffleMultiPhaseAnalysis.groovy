@@ -0,0 +1,364 @@
+package org.clyze.doop.core
+
+import groovy.transform.CompileStatic
+import groovy.transform.InheritConstructors
+import groovy.transform.TypeChecked
+import groovy.util.logging.Log4j
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import org.clyze.analysis.AnalysisOption
+import org.clyze.doop.utils.CPreprocessor
+import org.clyze.doop.utils.DDlog
+import org.clyze.doop.utils.PreAnalysisStore
+import org.clyze.doop.utils.SouffleOptions
+import org.clyze.doop.utils.SouffleScript
+import org.clyze.utils.Executor
+
+import static org.apache.commons.io.FileUtils.deleteQuietly
+import static org.apache.commons.io.FileUtils.sizeOfDirectory
+import static org.apache.commons.io.FilenameUtils.getBaseName
+
+/**
+ * An analysis that first runs a context-insensitive pre-analysis and then
+ * uses its results to guide the main analysis. Pre-analyses of the same
+ * facts with the same logic are shared through the {@link PreAnalysisStore}.
+ */
+@CompileStatic
+@InheritConstructors
+@Log4j
+@TypeChecked
+abstract class SouffleMultiPhaseAnalysis extends SouffleAnalysis {
+
+	/**
+	 * The directory where the main analysis is compiled, apart from the
+	 * pre-analysis that compiles in the output directory at the same time.
+	 */
+	static final String MAIN_COMPILATION_DIR = 'main-compilation'
+
+	/**
+	 * The options of the context-insensitive pre-analysis of Scaler and
+	 * Zipper. It outputs the relations of both, so that its database, once
+	 * stored, is reused by either analysis of the same facts.
+	 */
+	static final Map<String, Object> SHARED_PRE_ANALYSIS =
+			([CONFIGURATION: "ContextInsensitiveConfiguration",
+			  SCALER_PRE_ANALYSIS: true,
+			  X_ZIPPER_PRE_ANALYSIS: true] as Map<String, Object>).asImmutable()
+
+	/**
+	 * The checksum of the facts, once the pre-analysis has computed it
+	 * (see {@link PreAnalysisStore#factsChecksum}), or null.
+	 */
+	protected String factsChecksum
+	/** The key of the pre-analysis in the {@link PreAnalysisStore}, or null. */
+	private String preAnalysisKey
+
+	@Override
+	void run() {
+		runPhases(preAnalysisOptions(), mainAnalysisOptions())
+	}
+
+	/**
+	 * Returns the ids and values of the options of the pre-analysis.
+	 */
+	protected abstract Map<String, Object> preAnalysisOptions()
+
+	/**
+	 * Returns the ids and values of the options that differ in the main
+	 * analysis. They are known before the pre-analysis runs, as the logic
+	 * of the main analysis is set up first (see {@link #prepareMainAnalysis}).
+	 */
+	protected abstract Map<String, Object> mainAnalysisOptions()
+
+	/**
+	 * Runs the pre-analysis and then the main analysis. The main analysis
+	 * compiles while the facts are generated and the pre-analysis runs, as
+	 * the pre-analysis only adds facts for it (see {@link #guideMainAnalysis}).
+	 * The C++ compilers of both analyses then run next to the fact
+	 * generator; option --Xserialize-factgen-compilation runs them one
+	 * after the other, before fact generation, where memory is short.
+	 *
+	 * @param preOptions    the ids and values of the options of the pre-analysis
+	 * @param mainOptions   the ids and values of the options that differ in
+	 *                      the main analysis
+	 */
+	protected void runPhases(Map<String, Object> preOptions, Map<String, Object> mainOptions) {
+		File preAnalysis = new File(outDir, "context-insensitive.dl")
+		deleteQuietly(preAnalysis)
+		preAnalysis.createNewFile()
+		File analysis = new File(outDir, "${name}.dl")
+		deleteQuietly(analysis)
+		analysis.createNewFile()
+
+		applyOptions(preOptions)
+		def commandsEnv = initExternalCommandsEnvironment(options)
+
+		executor = new Executor(outDir, commandsEnv)
+		cpp = new CPreprocessor(this, executor)
+
+		def script = newScriptForAnalysis(executor)
+		SouffleOptions souffleOpts = new SouffleOptions(options)
+		prepareMainAnalysis(analysis, mainOptions)
+		def mainScript = newScriptForAnalysis(executor)
+
+		Future<File> compilationFuture = null
+		def executorService = Executors.newSingleThreadExecutor()
+		try {
+			if (!options.FACTS_ONLY.value && !options.VIA_DDLOG.value) {
+				compilationFuture = compileMainAnalysis(analysis, mainScript, souffleOpts, executorService)
+				if (options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
+					compilationFuture.get()
+					System.gc()
+				}
+			}
+
+			if (!runPreAnalysis(preAnalysis, script, souffleOpts)) return
+			guideMainAnalysis()
+			// Keep the models that guiding built from the pre-analysis.
+			if (preAnalysisKey && !options.DRY_RUN.value)
+				PreAnalysisStore.shared().update(preAnalysisKey, database)
+
+			applyOptions(mainOptions)
+			executor = new Executor(outDir, commandsEnv)
+			cpp = new CPreprocessor(this, executor)
+			if (compilationFuture == null)
+				compilationFuture = compileMainAnalysis(analysis, mainScript, souffleOpts, executorService)
+
+			File runtimeMetricsFile = new File(database, "Stats_Runtime.csv")
+			mainScript.run(compilationFuture.get(), factsDir, outDir, options.SOUFFLE_JOBS.value as int,
+					(options.X_MONITORING_INTERVAL.value as long) * 1000, monitorClosure, souffleOpts)
+			recordMetrics(runtimeMetricsFile, mainScript)
+		} finally {
+			executorService.shutdownNow()
+		}
+	}
+
+	/**
+	 * Runs after the pre-analysis, with its database, and adds the facts
+	 * that guide the main analysis (see {@link #runPhases}). The model
+	 * snapshots that it writes to the database are kept with the stored
+	 * pre-analysis (see {@link PreAnalysisStore#update}).
+	 */
+	protected void guideMainAnalysis() {}
+
+	/**
+	 * Records the runtime metrics of the main analysis (see {@link #runPhases}).
+	 */
+	protected void recordMetrics(File runtimeMetricsFile, SouffleScript mainScript) {
+		appendMetrics(runtimeMetricsFile, mainScript.compilationTime, mainScript.executionTime)
+	}
+
+	/**
+	 * Sets up the logic of the main analysis before the pre-analysis runs.
+	 * The main analysis gets the results of the pre-analysis only as facts,
+	 * so its logic is known up front and can compile while the pre-analysis
+	 * runs (see {@link #compileMainAnalysis}).
+	 *
+	 * @param analysis      the main analysis logic
+	 * @param mainOptions   the ids and values of the options that differ in
+	 *                      the main analysis, restored afterwards
+	 */
+	protected void prepareMainAnalysis(File analysis, Map<String, Object> mainOptions) {
+		Map<String, Object> preOptions = [:]
+		mainOptions.keySet().each { String id -> preOptions[id] = options[id].value }
+		applyOptions(mainOptions)
+		CPreprocessor preCpp = cpp
+		try {
+			cpp = new CPreprocessor(this, executor)
+			initDatabase(analysis)
+			log.debug("analysis: ${getBaseName(analysis.name)}")
+			runAnalysisAndProduceStats(analysis)
+		} finally {
+			cpp = preCpp
+			applyOptions(preOptions)
+		}
+	}
+
+	/**
+	 * Sets the values of some options, given by their ids.
+	 */
+	protected void applyOptions(Map<String, Object> values) {
+		values.each { String id, Object value -> options[id].value = value }
+	}
+
+	/**
+	 * Starts compiling the main analysis. Unless DDlog is used (its
+	 * compilations share working directories), the main analysis compiles
+	 * in its own directory, so that it may overlap the compilation of the
+	 * pre-analysis.
+	 *
+	 * @param analysis          the main analysis logic, already set up
+	 * @param script            the script that compiles and runs the main analysis
+	 * @param souffleOpts       the Souffle options
+	 * @param executorService   the executor that compiles the logic
+	 * @return                  the compiled binary
+	 */
+	protected Future<File> compileMainAnalysis(File analysis, SouffleScript script, SouffleOptions souffleOpts,
+											   ExecutorService executorService) {
+		File compilationDir = outDir
+		if (!options.VIA_DDLOG.value) {
+			compilationDir = new File(outDir, MAIN_COMPILATION_DIR)
+			deleteQuietly(compilationDir)
+			compilationDir.mkdirs()
+		}
+		return executorService.submit(new Callable<File>() {
+			@Override
+			File call() {
+				log.info "[Task COMPILE (main analysis)...]"
+				def generatedFile = script.compile(analysis, compilationDir, souffleOpts)
+				log.info "[Task COMPILE (main analysis) Done]"
+				return generatedFile
+			}
+		})
+	}
+
+	/**
+	 * Generates the facts and runs the pre-analysis, the facts and logic of
+	 * which have already been set up. If an identical pre-analysis has run
+	 * on the same facts before, its stored database is copied instead.
+	 *
+	 * @param preAnalysis   the pre-analysis logic
+	 * @param script        the script that compiles and runs the logic
+	 * @param souffleOpts   the Souffle options
+	 * @return              false if only the facts were to be generated
+	 */
+	protected boolean runPreAnalysis(File preAnalysis, SouffleScript script, SouffleOptions souffleOpts) {
+		initDatabase(preAnalysis)
+		log.debug("analysis: ${getBaseName(preAnalysis.name)}")
+		runAnalysisAndProduceStats(preAnalysis)
+
+		// DDlog databases are dumps, not relations, so they are never stored.
+		String logicChecksum = null
+		Future<File> compilationFuture = null
+		def executorService = Executors.newSingleThreadExecutor()
+		if (!options.FACTS_ONLY.value) {
+			if (options.VIA_DDLOG.value) {
+				// Copy the DDlog converter, needed both for logic
+				// compilation and fact post-processing.
+				DDlog.copyDDlogConverter(log, outDir)
+			} else
+				logicChecksum = script.logicChecksum(preAnalysis, outDir, souffleOpts)
+			compilationFuture = executorService.submit(new Callable<File>() {
+				@Override
+				File call() {
+					log.info "[Task COMPILE...]"
+					def generatedFile0 = script.compile(preAnalysis, outDir, souffleOpts)
+					log.info "[Task COMPILE Done]"
+					return generatedFile0
+				}
+			})
+		}
+
+		File generatedFile0 = null
+		if (options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
+			generatedFile0 = compilationFuture.get()
+			System.gc()
+		}
+
+		try {
+			log.info "[Task FACTS...]"
+			generateFacts()
+			script.postprocessFacts(outDir, souffleOpts.profile)
+			log.info "[Task FACTS Done]"
+
+			if (options.FACTS_ONLY.value) return false
+
+			PreAnalysisStore store = PreAnalysisStore.shared()
+			factsChecksum = logicChecksum ? PreAnalysisStore.factsChecksum(factsDir) : null
+			preAnalysisKey = factsChecksum ? PreAnalysisStore.key(factsChecksum, logicChecksum) : null
+			if (preAnalysisKey && store.attach(preAnalysisKey, database)) {
+				// The facts are known only now, so the pre-analysis that the
+				// stored database replaces may still be compiling.
+				if (!compilationFuture.isDone()) {
+					script.kill()
+					compilationFuture.cancel(true)
+					log.info "[Task COMPILE Cancelled]"
+				}
+				return true
+			}
+
+			if (!options.X_SERIALIZE_FACTGEN_COMPILATION.value)
+				generatedFile0 = compilationFuture.get()
+			script.run(generatedFile0, factsDir, outDir, options.SOUFFLE_JOBS.value as int,
+					(options.X_MONITORING_INTERVAL.value as long) * 1000, monitorClosure, souffleOpts)
+			appendMetrics(new File(database, "Stats_Runtime.csv"), script.compilationTime, script.executionTime)
+
+			if (factsChecksum && !options.DRY_RUN.value)
+				store.store(factsChecksum, logicChecksum, database)
+			return true
+		} finally {
+			executorService.shutdownNow()
+		}
+	}
+
+	protected void appendMetrics(File runtimeMetricsFile, long compilationTime, long executionTime) {
+		int dbSize = (sizeOfDirectory(database) / 1024).intValue()
+		runtimeMetricsFile.createNewFile()
+		runtimeMetricsFile.append("analysis compilation time (sec)\t${compilationTime}\n")
+		runtimeMetricsFile.append("analysis execution time (sec)\t${executionTime}\n")
+		runtimeMetricsFile.append("disk footprint (KB)\t$dbSize\n")
+		runtimeMetricsFile.append("fact generation time (sec)\t$factGenTime\n")
+	}
+
+	/**
+	 * Initializes the external commands environment of the given analysis, by:
+	 * <ul>
+	 *     <li>adding the LD_LIBRARY_PATH option to the current environment
+	 *     <li>modifying PATH to also include the LD_LIBRARY_PATH option
+	 *     <li>adding the LOGICBLOX_HOME option to the current environment
+	 *     <li>adding the DOOP_HOME to the current environment
+	 *     <li>adding the LB_PAGER_FORCE_START and the LB_MEM_NOWARN to the current environment
+	 *     <li>adding the variables/paths/tweaks to meet the lb-env-bin.sh requirements of the pa-datalog distro
+	 * </ul>
+	 */
+	protected static Map<String, String> initExternalCommandsEnvironment(Map<String, AnalysisOption<?>> options) {
+		log.debug "Initializing the environment of the external commands"
+
+		Map<String, String> env = [:]
+		env.putAll(System.getenv())
+
+		env.LC_ALL = "en_US.UTF-8"
+
+		if (options.X_LB3.value) {
+			def lbHome = options.LOGICBLOX_HOME.value
+			env.LOGICBLOX_HOME = lbHome
+			//We add these LB specific env vars here to make the server deployment more flexible (and the cli user's life easier)
+			env.LB_PAGER_FORCE_START = "true"
+			env.LB_MEM_NOWARN = "true"
+			env.DOOP_HOME = Doop.doopHome
+
+			//We add the following for pa-datalog to function properly (copied from the lib-env-bin.sh script)
+			def path = env.PATH
+			env.PATH = "${lbHome}/bin:${path ?: ""}" as String
+
+			def ldLibraryPath = options.LD_LIBRARY_PATH.value
+			env.LD_LIBRARY_PATH = "${lbHome}/lib/cpp:${ldLibraryPath ?: ""}" as String
+		}
+
+		return env
+	}
+
+	void printStats() {
+		List<String> lines = []
+
+		File file = new File("${this.outDir}/database/Stats_Runtime.csv")
+		file.eachLine { String line -> lines << line.replace("\t", ", ") }
+
+		log.info "-- Runtime metrics --"
+		lines.sort()*.split(", ").each {
+			printf("%-80s %,d\n", it[0], it[1] as long)
+		}
+
+		lines = []
+
+		file = new File("${this.outDir}/database/Stats_Metrics.csv")
+		file.eachLine { String line -> lines.add(line.replace("\t", ", ")) }
+
+		log.info "-- Statistics --"
+		lines.sort()*.split(", ").each {
+			printf("%-80s %,d\n", it[1], it[2] as long)
+		}
+	}
+}
@@ -4,211 +4,146 @@ import groovy.transform.CompileStatic
 import groovy.transform.InheritConstructors
 import groovy.transform.TypeChecked
 import groovy.util.logging.Log4j
-import java.util.concurrent.Callable
-import java.util.concurrent.Executors
-import java.util.concurrent.Future
-import org.clyze.analysis.AnalysisOption
-import org.clyze.doop.utils.CPreprocessor
-import org.clyze.doop.utils.DDlog
-import org.clyze.doop.utils.SouffleOptions
+import org.clyze.doop.ptatoolkit.scaler.Driver
+import org.clyze.doop.utils.PreAnalysisStore
+import org.clyze.doop.utils.RuntimeHistory
+import org.clyze.doop.utils.SouffleJobTuner
+import org.clyze.doop.utils.SouffleModePlanner
+import org.clyze.doop.utils.SouffleScript
+import org.clyze.doop.utils.scaler.ScalerCostModel
 import org.clyze.doop.utils.scaler.ScalerPostAnalysis
-import org.clyze.utils.Executor
 
-import static org.apache.commons.io.FileUtils.deleteQuietly
 import static org.apache.commons.io.FileUtils.sizeOfDirectory
-import static org.apache.commons.io.FilenameUtils.getBaseName
 
 @CompileStatic
 @InheritConstructors
 @Log4j
 @TypeChecked
-class SouffleScalerMultiPhaseAnalysis extends SouffleAnalysis {
+class SouffleScalerMultiPhaseAnalysis extends SouffleMultiPhaseAnalysis {
 
-	@Override
-	void run() {
-		File preAnalysis = new File(outDir, "context-insensitive.dl")
-		deleteQuietly(preAnalysis)
-		preAnalysis.createNewFile()
-		File analysis = new File(outDir, "${name}.dl")
-		deleteQuietly(analysis)
-		analysis.createNewFile()
-
-		options.CONFIGURATION.value = "ContextInsensitiveConfiguration"
-		def commandsEnv = initExternalCommandsEnvironment(options)
-
-		executor = new Executor(outDir, commandsEnv)
-		cpp = new CPreprocessor(this, executor)
-
-		initDatabase(preAnalysis)
-		log.debug("analysis: ${getBaseName(preAnalysis.name)}")
-		runAnalysisAndProduceStats(preAnalysis)
-
-		def script = newScriptForAnalysis(executor)
+	/** The directory (under the output) of the selections of --Xscaler-tst-sweep. */
+	static final String SWEEP_DIR = "scaler-sweep"
 
-		Future<File> compilationFuture = null
-		def executorService = Executors.newSingleThreadExecutor()
-		SouffleOptions souffleOpts = new SouffleOptions(options)
-		if (!options.FACTS_ONLY.value) {
-			if (options.VIA_DDLOG.value) {
-				// Copy the DDlog converter, needed both for logic
-				// compilation and fact post-processing.
-				DDlog.copyDDlogConverter(log, outDir)
-			}
-			compilationFuture = executorService.submit(new Callable<File>() {
-				@Override
-				File call() {
-					log.info "[Task COMPILE...]"
-					def generatedFile0 = script.compile(preAnalysis, outDir, souffleOpts)
-					log.info "[Task COMPILE Done]"
-					return generatedFile0
-				}
-			})
-		}
-
-		File runtimeMetricsFile = new File(database, "Stats_Runtime.csv")
-
-		def generatedFile0
-		if (options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
-			generatedFile0 = compilationFuture.get()
-			System.gc()
-		}
+	private long startTime
+	/** The predicted total accumulative points-to size of the selection. */
+	private long worstCaseVPT
 
-		try {
-			log.info "[Task FACTS...]"
-			generateFacts()
-			script.postprocessFacts(outDir, souffleOpts.profile)
-			log.info "[Task FACTS Done]"
+	@Override
+	void run() {
+		startTime = System.currentTimeMillis()
+		super.run()
+	}
 
-			if (options.FACTS_ONLY.value) return
+	@Override
+	protected Map<String, Object> preAnalysisOptions() {
+		return SHARED_PRE_ANALYSIS
+	}
 
-			if (!options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
-			    generatedFile0 = compilationFuture.get()
-            }
-			script.run(generatedFile0, factsDir, outDir, options.SOUFFLE_JOBS.value as int,
-					(options.X_MONITORING_INTERVAL.value as long) * 1000, monitorClosure, souffleOpts)
+	@Override
+	protected Map<String, Object> mainAnalysisOptions() {
+		return [CONFIGURATION: "FullyGuidedContextSensitiveConfiguration",
+				SCALER_PRE_ANALYSIS: null,
+				X_ZIPPER_PRE_ANALYSIS: false] as Map<String, Object>
+	}
 
-			int dbSize = (sizeOfDirectory(database) / 1024).intValue()
-			runtimeMetricsFile.createNewFile()
-			runtimeMetricsFile.append("analysis compilation time (sec)\t${script.compilationTime}\n")
-			runtimeMetricsFile.append("analysis execution time (sec)\t${script.executionTime}\n")
-			runtimeMetricsFile.append("disk footprint (KB)\t$dbSize\n")
-			runtimeMetricsFile.append("fact generation time (sec)\t$factGenTime\n")
-		} finally {
-			executorService.shutdownNow()
-		}
+	@Override
+	protected void guideMainAnalysis() {
 		printStats()
 		//Scaler Execution
 		ScalerPostAnalysis scalerPostAnalysis = new ScalerPostAnalysis(database)
-		scalerPostAnalysis.run(factsDir)
+		if (options.X_SCALER_TST.value)
+			scalerPostAnalysis.setTST(Long.parseLong(options.X_SCALER_TST.value as String))
+		else if (options.X_SCALER_CALIBRATE_TST.value)
+			calibrateTST(scalerPostAnalysis, startTime)
+		worstCaseVPT = scalerPostAnalysis.run(factsDir)
+		if (options.X_SCALER_RANK.value)
+			worstCaseVPT = runScalerRank(scalerPostAnalysis.getTST())
+		List<String> sweep = options.X_SCALER_TST_SWEEP.value as List<String>
+		if (sweep)
+			runTSTSweep(sweep.collect { it as long })
 
 		options.INPUT_ID.value = factsDir
-		options.CONFIGURATION.value = "FullyGuidedContextSensitiveConfiguration"
-		options.SCALER_PRE_ANALYSIS.value = null
-		executor = new Executor(outDir, commandsEnv)
-		cpp = new CPreprocessor(this, executor)
-
-		initDatabase(analysis)
-		log.debug("analysis: ${getBaseName(analysis.name)}")
-		runAnalysisAndProduceStats(analysis)
-
-		compilationFuture = null
-		executorService = Executors.newSingleThreadExecutor()
-		if (!options.FACTS_ONLY.value) {
-			compilationFuture = executorService.submit(new Callable<File>() {
-				@Override
-				File call() {
-					log.info "[Task COMPILE...]"
-					def generatedFile = script.compile(analysis, outDir, souffleOpts)
-					log.info "[Task COMPILE Done]"
-					return generatedFile
-				}
-			})
-		}
-
-		runtimeMetricsFile = new File(database, "Stats_Runtime.csv")
-
-		def generatedFile
-		if (options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
-			generatedFile = compilationFuture.get()
-			System.gc()
-		}
-		try {
-			if (options.FACTS_ONLY.value) return
-
-			if (!options.X_SERIALIZE_FACTGEN_COMPILATION.value) {
-				generatedFile = compilationFuture.get()
-			}
-			script.run(generatedFile, factsDir, outDir, options.SOUFFLE_JOBS.value as int,
-					   (options.X_MONITORING_INTERVAL.value as long) * 1000, monitorClosure, souffleOpts)
+	}
 
-			int dbSize = (sizeOfDirectory(database) / 1024).intValue()
-			runtimeMetricsFile.createNewFile()
-			runtimeMetricsFile.append("analysis compilation time (sec)\t${script.compilationTime}\n")
-			runtimeMetricsFile.append("analysis execution time (sec)\t${script.executionTime}\n")
-			runtimeMetricsFile.append("disk footprint (KB)\t$dbSize\n")
-			runtimeMetricsFile.append("fact generation time (sec)\t$factGenTime\n")
-		} finally {
-			executorService.shutdownNow()
-		}
+	@Override
+	protected void recordMetrics(File runtimeMetricsFile, SouffleScript mainScript) {
+		int dbSize = (sizeOfDirectory(database) / 1024).intValue()
+		runtimeMetricsFile.createNewFile()
+		runtimeMetricsFile.append("analysis compilation time (sec)\t${mainScript.compilationTime}\n")
+		runtimeMetricsFile.append("${SouffleModePlanner.EXECUTION_TIME}\t${mainScript.executionTime}\n")
+		if (mainScript.peakMemoryKB > 0)
+			runtimeMetricsFile.append("${SouffleJobTuner.PEAK_MEMORY}\t${mainScript.peakMemoryKB}\n")
+		runtimeMetricsFile.append("${ScalerCostModel.WORST_CASE_VPT}\t${worstCaseVPT}\n")
+		runtimeMetricsFile.append("disk footprint (KB)\t$dbSize\n")
+		runtimeMetricsFile.append("fact generation time (sec)\t$factGenTime\n")
+		if (!options.DRY_RUN.value)
+			history().record(id, runtimeMetricsFile)
 	}
 
 	/**
-	 * Initializes the external commands environment of the given analysis, by:
-	 * <ul>
-	 *     <li>adding the LD_LIBRARY_PATH option to the current environment
-	 *     <li>modifying PATH to also include the LD_LIBRARY_PATH option
-	 *     <li>adding the LOGICBLOX_HOME option to the current environment
-	 *     <li>adding the DOOP_HOME to the current environment
-	 *     <li>adding the LB_PAGER_FORCE_START and the LB_MEM_NOWARN to the current environment
-	 *     <li>adding the variables/paths/tweaks to meet the lb-env-bin.sh requirements of the pa-datalog distro
-	 * </ul>
+	 * Returns the runtime history of this analysis on the same facts, as
+	 * the cost of a worst case VPT differs between programs.
 	 */
-	protected static Map<String, String> initExternalCommandsEnvironment(Map<String, AnalysisOption<?>> options) {
-		log.debug "Initializing the environment of the external commands"
-
-		Map<String, String> env = [:]
-		env.putAll(System.getenv())
-
-		env.LC_ALL = "en_US.UTF-8"
-
-		if (options.X_LB3.value) {
-			def lbHome = options.LOGICBLOX_HOME.value
-			env.LOGICBLOX_HOME = lbHome
-			//We add these LB specific env vars here to make the server deployment more flexible (and the cli user's life easier)
-			env.LB_PAGER_FORCE_START = "true"
-			env.LB_MEM_NOWARN = "true"
-			env.DOOP_HOME = Doop.doopHome
-
-			//We add the following for pa-datalog to function properly (copied from the lib-env-bin.sh script)
-			def path = env.PATH
-			env.PATH = "${lbHome}/bin:${path ?: ""}" as String
-
-			def ldLibraryPath = options.LD_LIBRARY_PATH.value
-			env.LD_LIBRARY_PATH = "${lbHome}/lib/cpp:${ldLibraryPath ?: ""}" as String
-		}
-
-		return env
+	private RuntimeHistory history() {
+		if (factsChecksum == null)
+			factsChecksum = PreAnalysisStore.factsChecksum(factsDir)
+		return RuntimeHistory.forFacts(name, factsChecksum)
 	}
 
-	void printStats() {
-		List<String> lines = []
+	/**
+	 * Selects context-sensitivity for the TST values of option
+	 * --Xscaler-tst-sweep, with the in-process Scaler, which reads the
+	 * pre-analysis and computes the contexts once for all of them. The
+	 * selections are written to SWEEP_DIR; the main analysis keeps the
+	 * selection of its own TST.
+	 */
+	private void runTSTSweep(List<Long> tsts) {
+		File sweepDir = new File(outDir, SWEEP_DIR)
+		if (!sweepDir.isDirectory() && !sweepDir.mkdirs())
+			throw new RuntimeException("Cannot create ${sweepDir}")
+		Driver.runScaler(sweepDir, database, tsts)
+	}
 
-		File file = new File("${this.outDir}/database/Stats_Runtime.csv")
-		file.eachLine { String line -> lines << line.replace("\t", ", ") }
+	/**
+	 * Replaces the selection of Scaler with that of ScalerRank (option
+	 * --Xscaler-rank), for the same TST.
+	 *
+	 * @return the predicted total accumulative points-to size of the selection
+	 */
+	private long runScalerRank(long tst) {
+		return Driver.runScalerRank(factsDir, database, [tst])[0].worstCaseVPT
+	}
 
-		log.info "-- Runtime metrics --"
-		lines.sort()*.split(", ").each {
-			printf("%-80s %,d\n", it[0], it[1] as long)
+	/**
+	 * Sets the TST of Scaler to the most precise selection whose main
+	 * analysis is expected to fit the memory limit and the time left before
+	 * the timeout (option --Xscaler-calibrate-tst). The expected cost of a
+	 * selection comes from the peak memory and execution time of earlier
+	 * runs of the same facts (see {@link ScalerCostModel}), and is never
+	 * extrapolated beyond the largest of them: when the budgets allow more,
+	 * the TST is not lowered below the default. Without such runs, the
+	 * default TST is kept.
+	 */
+	private void calibrateTST(ScalerPostAnalysis scaler, long startTime) {
+		String maxMemory = options.MAX_MEMORY.value as String
+		Long memoryKB = maxMemory ? (maxMemory as long).intdiv(1024L) as Long : null
+		Long timeSec = null
+		if (options.TIMEOUT.value) {
+			long elapsed = (System.currentTimeMillis() - startTime).intdiv(1000L) as long
+			timeSec = Math.max(1L, (options.TIMEOUT.value as long) * 60L - elapsed)
 		}
-
-			lines = []
-
-			file = new File("${this.outDir}/database/Stats_Metrics.csv")
-			file.eachLine { String line -> lines.add(line.replace("\t", ", ")) }
-
-			log.info "-- Statistics --"
-			lines.sort()*.split(", ").each {
-				printf("%-80s %,d\n", it[1], it[2] as long)
-			}
+		ScalerCostModel costModel = new ScalerCostModel(history().entries())
+		Long maxVPT = costModel.maxWorstCaseVPT(memoryKB, timeSec)
+		if (maxVPT == null) {
+			log.info "No Scaler cost history, using the default TST: ${scaler.getTST()}"
+			return
+		}
+		long tst = scaler.tstFor(maxVPT)
+		if (costModel.fitsBeyondMeasurements(memoryKB, timeSec))
+			tst = Math.max(tst, scaler.getTST())
+		if (tst == 0L)
+			log.warn "WARNING: the analysis is expected to exceed its budget (memory: ${memoryKB ? "${memoryKB} KB" : 'none'}, time: ${timeSec} sec) with any context-sensitivity"
+		scaler.setTST(tst)
+		log.info "Scaler TST: ${tst} (worst case VPT within budget: ${maxVPT}, memory limit: ${memoryKB ? "${memoryKB} KB" : 'none'}, time left: ${timeSec} sec)"
 	}
 }
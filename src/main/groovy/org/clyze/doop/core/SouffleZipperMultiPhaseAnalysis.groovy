@@ -0,0 +1,59 @@
+package org.clyze.doop.core
+
+import groovy.transform.CompileStatic
+import groovy.transform.InheritConstructors
+import groovy.transform.TypeChecked
+import groovy.util.logging.Log4j
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import org.clyze.doop.ptatoolkit.zipper.Driver
+
+/**
+ * A Zipper-guided analysis: a context-insensitive pre-analysis (the one of
+ * Scaler, see {@link #SHARED_PRE_ANALYSIS}) outputs the flows that Zipper
+ * needs, Zipper selects the precision-critical methods in-process and
+ * writes them to the facts, and the analysis then runs with
+ * context-sensitivity only for these methods. It runs with option
+ * --Xzipper-guided, or with option --Xzipper when its file does not exist
+ * yet; the selection is then also saved to that file, for later runs.
+ */
+@CompileStatic
+@InheritConstructors
+@Log4j
+@TypeChecked
+class SouffleZipperMultiPhaseAnalysis extends SouffleMultiPhaseAnalysis {
+
+	static final String ZIPPER_FACTS = 'ZipperPrecisionCriticalMethod.facts'
+
+	/** The file of option --Xzipper, where the selection is saved. */
+	private File selectionFile
+
+	@Override
+	void run() {
+		selectionFile = options.X_ZIPPER.value ? new File(options.X_ZIPPER.value as String) : null
+		super.run()
+	}
+
+	@Override
+	protected Map<String, Object> preAnalysisOptions() {
+		return SHARED_PRE_ANALYSIS + ([X_ZIPPER: null] as Map<String, Object>)
+	}
+
+	@Override
+	protected Map<String, Object> mainAnalysisOptions() {
+		return [CONFIGURATION: options.CONFIGURATION.value,
+				SCALER_PRE_ANALYSIS: null,
+				X_ZIPPER_PRE_ANALYSIS: false,
+				X_ZIPPER: new File(factsDir, ZIPPER_FACTS).path] as Map<String, Object>
+	}
+
+	@Override
+	protected void guideMainAnalysis() {
+		Driver.runZipper(factsDir, database)
+		if (selectionFile) {
+			selectionFile.absoluteFile.parentFile.mkdirs()
+			Files.copy(new File(factsDir, ZIPPER_FACTS).toPath(), selectionFile.toPath(), StandardCopyOption.REPLACE_EXISTING)
+			log.info "Zipper selection saved to ${selectionFile}"
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileDynamic
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.regex.Pattern
+import java.util.stream.Collectors
+
+/**
+ * The child processes of the JVM that belong to an analysis: Souffle, the
+ * C++ compiler, isolated fact generators and the processes they start. An
+ * analysis passes its output directory to all of them, so they are told
+ * apart from the processes of other analyses running in the same JVM (in
+ * the daemon or the batch runner) by their command lines.
+ */
+@CompileStatic
+@Log4j
+class ChildProcesses {
+
+	/** How long to wait (in sec) for a killed process to exit. */
+	static final long KILL_WAIT = 30L
+
+	/**
+	 * Returns true if a command line refers to a directory or a file in it.
+	 * The path of the directory must be followed by a separator, a quote,
+	 * a space or the end of the command line, so that the directories of
+	 * other analyses with the same prefix (e.g. out/app-2 for out/app) do
+	 * not match.
+	 */
+	static boolean refersTo(String commandLine, File dir) {
+		return commandLine != null &&
+				(mentions(commandLine, dir.absolutePath) || mentions(commandLine, dir.canonicalPath))
+	}
+
+	private static boolean mentions(String commandLine, String path) {
+		return Pattern.compile(Pattern.quote(path) + '(?=[\\\\/"\'\\s]|$)').matcher(commandLine).find()
+	}
+
+	/**
+	 * Kills the child processes (and their descendants) that refer to a
+	 * directory and waits for them to exit. Needs Java 9 or later.
+	 *
+	 * @param dir   the output directory of an analysis
+	 * @return      the number of killed processes
+	 */
+	@CompileDynamic
+	static int kill(File dir) {
+		def processHandle
+		try {
+			processHandle = Class.forName('java.lang.ProcessHandle')
+		} catch (ClassNotFoundException ignored) {
+			log.warn "WARNING: the processes of ${dir} cannot be killed before Java 9"
+			return 0
+		}
+		List handles = processHandle.current().descendants()
+				.filter { h -> refersTo(h.info().commandLine().orElse(null) as String, dir) }
+				.collect(Collectors.toList())
+		List killed = []
+		handles.each { h ->
+			killed.addAll(h.descendants().collect(Collectors.toList()))
+			killed.add(h)
+		}
+		killed.each { h -> h.destroyForcibly() }
+		killed.each { h ->
+			try {
+				h.onExit().get(KILL_WAIT, TimeUnit.SECONDS)
+			} catch (TimeoutException ignored) {
+				log.warn "WARNING: process ${h.pid()} did not exit"
+			}
+		}
+		return handles.size()
+	}
+}
@@ -0,0 +1,79 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import java.nio.file.InvalidPathException
+import java.nio.file.Paths
+
+/**
+ * Maps the lines of a script preprocessed without line markers (cpp -P)
+ * back to the original sources, using a version of the same script that
+ * still contains the cpp line markers. The two versions only differ in
+ * markers and blank lines, so their non-blank lines are matched in order.
+ * Plan directives are skipped in both versions, as the generated script
+ * may have received extra plans (see {@link SoufflePlans}).
+ */
+@CompileStatic
+class CppLineMap {
+
+	private static final String MARKER = /^#\s*(\d+)\s+"([^"]*)".*/
+
+	/** Original location of every line of the generated script (0-based). */
+	private final List<String> locations = new ArrayList<>()
+
+	/**
+	 * @param generated   the script without line markers
+	 * @param marked      the script with line markers
+	 * @param basePath    a prefix to strip from source paths (may be null)
+	 */
+	CppLineMap(File generated, File marked, String basePath) {
+		List<String> origins = new ArrayList<>()
+		String currentFile = marked.name
+		int currentLine = 1
+		marked.eachLine { String line ->
+			def m = line =~ MARKER
+			if (m.matches()) {
+				currentLine = (m.group(1) as String).toInteger()
+				currentFile = stripBase(m.group(2) as String, basePath)
+			} else {
+				if (!line.trim().isEmpty() && !isPlan(line))
+					origins.add("${currentFile}:${currentLine}" as String)
+				currentLine++
+			}
+		}
+
+		int next = 0
+		generated.eachLine { String line ->
+			if (!line.trim().isEmpty() && !isPlan(line) && next < origins.size())
+				locations.add(origins.get(next++))
+			else
+				locations.add(null)
+		}
+	}
+
+	/**
+	 * Returns the original "file:line" of a line of the generated script.
+	 *
+	 * @param line   a 1-based line number of the generated script
+	 * @return       the original location or null if it is not known
+	 */
+	String originalLocation(int line) {
+		return (line >= 1 && line <= locations.size()) ? locations.get(line - 1) : null
+	}
+
+	private static boolean isPlan(String line) {
+		return line.trim().startsWith('.plan')
+	}
+
+	private static String stripBase(String path, String basePath) {
+		try {
+			path = Paths.get(path).normalize().toString()
+		} catch (InvalidPathException ignored) {
+			// Keep special names such as "<built-in>" as they are.
+		}
+		if (basePath && path.startsWith(basePath)) {
+			String rel = path.substring(basePath.length())
+			return rel.startsWith(File.separator) ? rel.substring(1) : rel
+		}
+		return path
+	}
+}
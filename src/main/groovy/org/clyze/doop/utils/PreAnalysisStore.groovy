@@ -0,0 +1,298 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.nio.file.AtomicMoveNotSupportedException
+import java.nio.file.DirectoryNotEmptyException
+import java.nio.file.FileAlreadyExistsException
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.security.MessageDigest
+import org.clyze.doop.core.Doop
+import org.clyze.doop.core.DoopAnalysisFactory
+import org.clyze.utils.CheckSum
+
+/**
+ * Keeps the databases of context-insensitive pre-analyses, so that the
+ * multi-phase analyses of the same facts share them instead of running
+ * the pre-analysis again. A database is keyed by the checksum of the
+ * facts and the checksum of the (preprocessed) pre-analysis logic, see
+ * {@link SouffleScript#logicChecksum}. Only the relations output by the
+ * pre-analysis (its .csv files) and the snapshots of the models built from
+ * them (e.g. ScalerModel.snapshot) are stored, and the least recently used
+ * databases are evicted when there are too many or they are too large.
+ */
+@CompileStatic
+@Log4j
+class PreAnalysisStore {
+
+	/** The file of a stored database that records its checksums. */
+	static final String INFO = 'pre-analysis.properties'
+	static final String FACTS_CHECKSUM = 'facts'
+	static final String LOGIC_CHECKSUM = 'logic'
+	/** The suffixes of the files of a database that are stored. */
+	static final List<String> STORED_SUFFIXES = ['.csv', '.snapshot'].asImmutable()
+	/** The maximum number of databases kept. */
+	static final int MAX_ENTRIES = 10
+	/** The default maximum total size of the databases kept (in bytes). */
+	static final long MAX_SIZE = 4L << 30
+
+	final File dir
+	/** The maximum total size of the databases kept (in bytes). */
+	final long maxSize
+
+	PreAnalysisStore(File dir, long maxSize = MAX_SIZE) {
+		this.dir = dir
+		this.maxSize = maxSize
+	}
+
+	/**
+	 * Returns the store shared by all analyses, kept next to the cached
+	 * analysis binaries.
+	 */
+	static PreAnalysisStore shared() {
+		return new PreAnalysisStore(new File(Doop.souffleAnalysesCache, 'pre-analyses'))
+	}
+
+	/**
+	 * Calculates the checksum of the facts of an analysis: the names,
+	 * sizes and contents of the files of the facts directory.
+	 *
+	 * @param factsDir   the facts directory
+	 * @return           the checksum
+	 */
+	static String factsChecksum(File factsDir) {
+		MessageDigest digest = MessageDigest.getInstance(DoopAnalysisFactory.HASH_ALGO)
+		byte[] buf = new byte[1 << 16]
+		List<File> files = (factsDir.listFiles() ?: new File[0]).findAll { File f -> f.isFile() }
+		for (File f : files.sort { File file -> file.name }) {
+			digest.update("${f.name}\t${f.length()}\n".getBytes('UTF-8'))
+			f.withInputStream { InputStream is ->
+				int n
+				while ((n = is.read(buf)) > 0)
+					digest.update(buf, 0, n)
+			}
+		}
+		return digest.digest().encodeHex().toString()
+	}
+
+	/**
+	 * Returns the key of the database of a pre-analysis.
+	 */
+	static String key(String factsChecksum, String logicChecksum) {
+		return CheckSum.checksum(factsChecksum + logicChecksum, DoopAnalysisFactory.HASH_ALGO)
+	}
+
+	/**
+	 * Returns the stored database of a key, or null if there is none.
+	 */
+	File find(String key) {
+		File stored = new File(dir, key)
+		return new File(stored, INFO).exists() ? stored : null
+	}
+
+	/**
+	 * Returns the most recently stored database of some facts that has
+	 * a relation, or null if there is none.
+	 *
+	 * @param factsChecksum   the checksum of the facts
+	 * @param relation        the name of the relation (its .csv file)
+	 */
+	File latest(String factsChecksum, String relation) {
+		return entries().find { File stored ->
+			info(stored).getProperty(FACTS_CHECKSUM) == factsChecksum &&
+					new File(stored, "${relation}.csv").exists()
+		}
+	}
+
+	/**
+	 * Copies the stored database of a key to the database directory of an
+	 * analysis. The files are copied (not linked), as later phases write
+	 * to the same directory. As another analysis may evict the database
+	 * meanwhile, the files are first copied to a temporary directory and
+	 * only moved to the database if the stored database was still there
+	 * after the copy (see {@link #evict}).
+	 *
+	 * @param key        the key of the pre-analysis
+	 * @param database   the database directory of the analysis
+	 * @return           true if there was a stored database
+	 */
+	boolean attach(String key, File database) {
+		File stored = find(key)
+		if (stored == null)
+			return false
+		File tmp = null
+		try {
+			database.mkdirs()
+			tmp = Files.createTempDirectory(database.toPath(), ".pre-analysis").toFile()
+			for (File f : storedFiles(stored))
+				Files.copy(f.toPath(), new File(tmp, f.name).toPath())
+			if (find(key) == null) {
+				log.debug "Stored pre-analysis database ${key} was evicted while in use"
+				return false
+			}
+			for (File f : tmp.listFiles())
+				Files.move(f.toPath(), new File(database, f.name).toPath(), StandardCopyOption.REPLACE_EXISTING)
+			stored.setLastModified(System.currentTimeMillis())
+			log.info "Using stored pre-analysis database ${stored.canonicalPath}"
+			return true
+		} catch (IOException ex) {
+			log.warn "WARNING: could not use stored pre-analysis database ${stored}: ${ex.message}"
+			return false
+		} finally {
+			tmp?.deleteDir()
+		}
+	}
+
+	/**
+	 * Stores the output relations of a finished pre-analysis, unless they
+	 * are larger than the store. Databases are stored under a temporary
+	 * name and then renamed, so that analyses running at the same time
+	 * never see a partial database.
+	 *
+	 * @param factsChecksum   the checksum of the facts
+	 * @param logicChecksum   the checksum of the pre-analysis logic
+	 * @param database        the database directory of the pre-analysis
+	 */
+	void store(String factsChecksum, String logicChecksum, File database) {
+		String key = key(factsChecksum, logicChecksum)
+		if (find(key) != null)
+			return
+		List<File> files = storedFiles(database)
+		long size = sizeOf(files)
+		if (size > maxSize) {
+			log.debug "Pre-analysis database ${key} (${size} bytes) is too large to store"
+			return
+		}
+		File tmp = null
+		try {
+			dir.mkdirs()
+			tmp = Files.createTempDirectory(dir.toPath(), ".${key}").toFile()
+			for (File f : files)
+				Files.copy(f.toPath(), new File(tmp, f.name).toPath())
+			Properties props = new Properties()
+			props.setProperty(FACTS_CHECKSUM, factsChecksum)
+			props.setProperty(LOGIC_CHECKSUM, logicChecksum)
+			new File(tmp, INFO).withOutputStream { OutputStream os -> props.store(os, null) }
+			try {
+				Files.move(tmp.toPath(), new File(dir, key).toPath(), StandardCopyOption.ATOMIC_MOVE)
+			} catch (AtomicMoveNotSupportedException ignored) {
+				Files.move(tmp.toPath(), new File(dir, key).toPath())
+			}
+			tmp = null
+			new File(dir, key).setLastModified(System.currentTimeMillis())
+			log.debug "Stored pre-analysis database ${key}"
+			evict()
+		} catch (FileAlreadyExistsException | DirectoryNotEmptyException ignored) {
+			// Another analysis stored the same database.
+		} catch (IOException ex) {
+			log.warn "WARNING: could not store pre-analysis database: ${ex.message}"
+		} finally {
+			tmp?.deleteDir()
+		}
+	}
+
+	/**
+	 * Adds the snapshots that an analysis has built after the pre-analysis
+	 * to the stored database of the pre-analysis, if it is stored and they
+	 * are not. Every snapshot is copied under a temporary name and then
+	 * renamed, so that analyses attaching the database at the same time
+	 * never see a partial snapshot.
+	 *
+	 * @param key        the key of the pre-analysis
+	 * @param database   the database directory of the analysis
+	 */
+	void update(String key, File database) {
+		File stored = find(key)
+		if (stored == null)
+			return
+		List<File> snapshots = storedFiles(database).findAll { File f ->
+			!f.name.endsWith('.csv') && !new File(stored, f.name).exists()
+		}
+		if (!snapshots)
+			return
+		try {
+			for (File f : snapshots) {
+				File tmp = Files.createTempFile(stored.toPath(), ".${f.name}", '.tmp').toFile()
+				try {
+					Files.copy(f.toPath(), tmp.toPath(), StandardCopyOption.REPLACE_EXISTING)
+					try {
+						Files.move(tmp.toPath(), new File(stored, f.name).toPath(), StandardCopyOption.ATOMIC_MOVE)
+					} catch (AtomicMoveNotSupportedException ignored) {
+						Files.move(tmp.toPath(), new File(stored, f.name).toPath(), StandardCopyOption.REPLACE_EXISTING)
+					}
+				} finally {
+					tmp.delete()
+				}
+			}
+			stored.setLastModified(System.currentTimeMillis())
+			log.debug "Stored snapshots ${snapshots*.name} of pre-analysis database ${key}"
+			evict()
+		} catch (IOException ex) {
+			// The database may have been evicted meanwhile.
+			log.debug "Could not store the snapshots of pre-analysis database ${key}: ${ex.message}"
+		}
+	}
+
+	/**
+	 * Deletes the least recently used databases, so that at most
+	 * {@link #MAX_ENTRIES} databases of at most {@link #maxSize} bytes in
+	 * total are kept. A database is first renamed and then deleted, so that
+	 * an analysis copying it at the same time notices (see {@link #attach}).
+	 */
+	private void evict() {
+		int count = 0
+		long total = 0
+		for (File stored : entries()) {
+			long size = sizeOf(storedFiles(stored))
+			if (count < MAX_ENTRIES && total + size <= maxSize) {
+				count++
+				total += size
+			} else {
+				log.debug "Evicting pre-analysis database ${stored.name}"
+				File evicted = new File(dir, ".evicted-${stored.name}-${System.nanoTime()}")
+				try {
+					Files.move(stored.toPath(), evicted.toPath(), StandardCopyOption.ATOMIC_MOVE)
+					evicted.deleteDir()
+				} catch (IOException ex) {
+					// Another analysis evicted it first.
+					log.debug "Could not evict pre-analysis database ${stored.name}: ${ex.message}"
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the stored databases, most recently used first.
+	 */
+	private List<File> entries() {
+		File[] files = dir.listFiles()
+		if (files == null)
+			return []
+		return files.findAll { File f -> !f.name.startsWith('.') && new File(f, INFO).exists() }
+				.sort { File f1, File f2 -> Long.compare(f2.lastModified(), f1.lastModified()) }
+	}
+
+	/**
+	 * Returns the files of a database that are stored: its output
+	 * relations (.csv files) and model snapshots (.snapshot files).
+	 */
+	private static List<File> storedFiles(File database) {
+		return (database.listFiles() ?: new File[0]).findAll { File f ->
+			f.isFile() && STORED_SUFFIXES.any { String suffix -> f.name.endsWith(suffix) }
+		}
+	}
+
+	private static long sizeOf(List<File> files) {
+		long size = 0
+		for (File f : files)
+			size += f.length()
+		return size
+	}
+
+	private static Properties info(File stored) {
+		Properties props = new Properties()
+		new File(stored, INFO).withInputStream { InputStream is -> props.load(is) }
+		return props
+	}
+}
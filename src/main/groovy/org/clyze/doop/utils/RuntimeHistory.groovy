@@ -0,0 +1,101 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import org.clyze.doop.core.Doop
+
+/**
+ * Keeps copies of the runtime metrics (Stats_Runtime.csv) of earlier runs
+ * of an analysis, so that later runs can base decisions on them.
+ */
+@CompileStatic
+@Log4j
+class RuntimeHistory {
+
+	static final String STATS_RUNTIME = 'Stats_Runtime.csv'
+	/** The maximum number of runs kept per analysis. */
+	static final int MAX_ENTRIES = 50
+
+	final File dir
+
+	RuntimeHistory(File dir) {
+		this.dir = dir
+	}
+
+	/**
+	 * Returns the history of an analysis, kept next to its cached binaries.
+	 *
+	 * @param analysisName   the name of the analysis
+	 * @return               the history object
+	 */
+	static RuntimeHistory forAnalysis(String analysisName) {
+		return new RuntimeHistory(new File(new File(Doop.souffleAnalysesCache, analysisName), 'history'))
+	}
+
+	/**
+	 * Returns the history of an analysis of some facts, for decisions that
+	 * depend on the program analyzed and not only on the size of its facts.
+	 *
+	 * @param analysisName    the name of the analysis
+	 * @param factsChecksum   the checksum of the facts (see
+	 *                        {@link PreAnalysisStore#factsChecksum})
+	 * @return                the history object
+	 */
+	static RuntimeHistory forFacts(String analysisName, String factsChecksum) {
+		return new RuntimeHistory(new File(forAnalysis(analysisName).dir, factsChecksum))
+	}
+
+	/**
+	 * Records the metrics of a finished run.
+	 *
+	 * @param id          the analysis id
+	 * @param statsFile   the Stats_Runtime.csv file of the run
+	 */
+	void record(String id, File statsFile) {
+		if (!statsFile.exists())
+			return
+		try {
+			dir.mkdirs()
+			Files.copy(statsFile.toPath(), new File(dir, "${id}.csv").toPath(), StandardCopyOption.REPLACE_EXISTING)
+			List<File> old = historyFiles()
+			if (old.size() > MAX_ENTRIES)
+				old.subList(MAX_ENTRIES, old.size()).each { File f -> f.delete() }
+		} catch (IOException ex) {
+			log.warn "WARNING: could not record runtime history: ${ex.message}"
+		}
+	}
+
+	/**
+	 * Returns the metrics of earlier runs, most recent first.
+	 */
+	List<Map<String, Long>> entries() {
+		return historyFiles().collect { File f -> parse(f) }
+	}
+
+	private List<File> historyFiles() {
+		File[] files = dir.listFiles()
+		if (files == null)
+			return []
+		return files.findAll { File f -> f.name.endsWith('.csv') }
+				.sort { File f1, File f2 -> Long.compare(f2.lastModified(), f1.lastModified()) }
+	}
+
+	/**
+	 * Reads a runtime metrics file. Lines that do not have a numeric value
+	 * are ignored.
+	 *
+	 * @param statsFile   a file with tab-separated metric/value lines
+	 * @return            a map from metric names to values
+	 */
+	static Map<String, Long> parse(File statsFile) {
+		Map<String, Long> metrics = new HashMap<>()
+		statsFile.eachLine { String line ->
+			String[] parts = line.split('\t')
+			if (parts.length == 2 && parts[1].isLong())
+				metrics.put(parts[0], parts[1] as Long)
+		}
+		return metrics
+	}
+}
@@ -0,0 +1,129 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+
+/**
+ * Chooses the number of Souffle jobs for an analysis run. More jobs raise
+ * the peak memory of parallel relations, so the job count is the largest
+ * one (up to the available cores) whose estimated peak memory fits the
+ * memory budget. The estimate is a linear model (base + per-job memory)
+ * fitted on the peak resident set size of earlier runs, scaled by the
+ * size of the facts.
+ */
+@CompileStatic
+@Log4j
+class SouffleJobTuner {
+
+	static final String JOBS = 'analysis jobs'
+	static final String PEAK_MEMORY = 'analysis peak memory (KB)'
+
+	/** The part of the memory budget that is never planned for. */
+	static final double MEMORY_HEADROOM = 0.15d
+
+	private final List<Map<String, Long>> history
+	private final int cores
+
+	SouffleJobTuner(List<Map<String, Long>> history, int cores) {
+		this.history = history
+		this.cores = Math.max(1, cores)
+	}
+
+	/**
+	 * Returns the number of jobs to use.
+	 *
+	 * @param factsKB       the size of the facts (in KB)
+	 * @param budgetKB      the memory budget (in KB), or null if there is none
+	 * @param interpreted   true if the logic will be interpreted
+	 * @return              a job count between 1 and the number of cores
+	 */
+	int jobs(long factsKB, Long budgetKB, boolean interpreted) {
+		if (budgetKB == null || budgetKB <= 0) {
+			log.debug "No memory budget, using all ${cores} cores"
+			return cores
+		}
+		double[] model = fit(factsKB, interpreted)
+		if (model == null) {
+			log.debug "No peak memory history, using all ${cores} cores"
+			return cores
+		}
+		double base = model[0]
+		double perJob = model[1]
+		double available = budgetKB * (1.0d - MEMORY_HEADROOM) - base
+		log.debug "Estimated peak memory (KB): ${(long) base} + ${(long) perJob} per job, budget: ${budgetKB}"
+		if (perJob <= 0.0d)
+			return available > 0.0d ? cores : 1
+		int fitting = (int) Math.floor(available / perJob)
+		if (fitting < 1)
+			log.warn "WARNING: the analysis is expected to exceed the memory budget (${budgetKB} KB) even with one job"
+		return Math.max(1, Math.min(cores, fitting))
+	}
+
+	/**
+	 * Fits peak memory = base + perJob * jobs on earlier runs of the same
+	 * execution mode, with peak memory scaled to the current facts size.
+	 * With a single job count in the history, all memory is attributed to
+	 * the jobs, which overestimates the per-job memory.
+	 *
+	 * @return {base, perJob} in KB, or null if there are no measurements
+	 */
+	private double[] fit(long factsKB, boolean interpreted) {
+		List<double[]> points = new ArrayList<>()
+		for (Map<String, Long> run : history) {
+			Long jobs = run.get(JOBS)
+			Long peak = run.get(PEAK_MEMORY)
+			if (jobs == null || jobs <= 0 || peak == null || peak <= 0)
+				continue
+			if ((run.get(SouffleModePlanner.INTERPRETED) == 1L) != interpreted)
+				continue
+			Long facts = run.get(SouffleModePlanner.FACTS_SIZE)
+			double scale = (facts != null && facts > 0 && factsKB > 0) ? factsKB / (double) facts : 1.0d
+			points.add([jobs as double, peak * scale] as double[])
+		}
+		if (points.isEmpty())
+			return null
+
+		int n = points.size()
+		double sumX = 0.0d, sumY = 0.0d
+		for (double[] p : points) {
+			sumX += p[0]
+			sumY += p[1]
+		}
+		double meanX = sumX / n
+		double meanY = sumY / n
+		double sxx = 0.0d, sxy = 0.0d
+		for (double[] p : points) {
+			sxx += (p[0] - meanX) * (p[0] - meanX)
+			sxy += (p[0] - meanX) * (p[1] - meanY)
+		}
+		if (sxx > 0.0d) {
+			double perJob = sxy / sxx
+			double base = meanY - perJob * meanX
+			if (perJob > 0.0d && base >= 0.0d)
+				return [base, perJob] as double[]
+		}
+		// Not enough variation in job counts (or a noisy fit): charge
+		// everything to the jobs, using the most expensive run.
+		double perJob = 0.0d
+		for (double[] p : points)
+			perJob = Math.max(perJob, p[1] / p[0])
+		return [0.0d, perJob] as double[]
+	}
+
+	/**
+	 * Extracts the peak resident set size (in KB) from a line printed by
+	 * GNU time or by the timeout utility.
+	 *
+	 * @param line   a line of output
+	 * @return       the peak memory, or null if the line does not report it
+	 */
+	static Long parsePeakMemory(String line) {
+		def m = line =~ /(\d+)maxresident\)k/
+		if (m.find())
+			return m.group(1) as Long
+		m = line =~ /\bMAXMEM_RSS (\d+)/
+		if (m.find())
+			return m.group(1) as Long
+		return null
+	}
+}
@@ -0,0 +1,115 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+
+/**
+ * Decides whether an analysis should be compiled or interpreted, based on
+ * the size of its facts and the runtime metrics of earlier runs.
+ */
+@CompileStatic
+@Log4j
+class SouffleModePlanner {
+
+	enum Mode {
+		/** Wait for the compiled binary. */
+		COMPILED,
+		/** Interpret the logic and drop compilation. */
+		INTERPRETED,
+		/** Interpret while compiling, keep whichever finishes first. */
+		RACE
+	}
+
+	static final String FACTS_SIZE = 'facts size (KB)'
+	static final String INTERPRETED = 'analysis interpreted'
+	static final String COMPILATION_TIME = 'analysis compilation time (sec)'
+	static final String EXECUTION_TIME = 'analysis execution time (sec)'
+
+	/** Assumed interpreter slowdown when only one execution mode has been seen. */
+	static final double INTERPRETER_SLOWDOWN = 4.0d
+	/** Estimates closer than this ratio are too close to call. */
+	static final double MARGIN = 0.25d
+	/** Without history, facts larger than this (in KB) are always compiled. */
+	static final long LARGE_FACTS_KB = 512L * 1024L
+
+	private final List<Map<String, Long>> history
+
+	SouffleModePlanner(List<Map<String, Long>> history) {
+		this.history = history
+	}
+
+	/**
+	 * Plans the execution of an analysis whose compilation has not finished yet.
+	 *
+	 * @param factsKB           the size of the facts (in KB)
+	 * @param compilingForSec   how long the analysis has been compiling
+	 * @return                  the execution mode to use
+	 */
+	Mode plan(long factsKB, long compilingForSec) {
+		Double compiledRate = medianRate(false)
+		Double interpretedRate = medianRate(true)
+		Long compilationTime = medianCompilationTime()
+
+		if (compiledRate == null && interpretedRate != null)
+			compiledRate = interpretedRate / INTERPRETER_SLOWDOWN
+		else if (interpretedRate == null && compiledRate != null)
+			interpretedRate = compiledRate * INTERPRETER_SLOWDOWN
+
+		if (compiledRate == null || compilationTime == null) {
+			Mode mode = factsKB >= LARGE_FACTS_KB ? Mode.COMPILED : Mode.RACE
+			log.debug "No history for facts of ${factsKB} KB, mode: ${mode}"
+			return mode
+		}
+
+		double remainingCompilation = Math.max(0L, compilationTime - compilingForSec)
+		double estCompiled = remainingCompilation + compiledRate * factsKB
+		double estInterpreted = interpretedRate * factsKB
+		log.debug "Estimated time (sec): compiled = ${estCompiled}, interpreted = ${estInterpreted}"
+
+		if (estInterpreted < estCompiled * (1.0d - MARGIN))
+			return Mode.INTERPRETED
+		else if (estCompiled < estInterpreted * (1.0d - MARGIN))
+			return Mode.COMPILED
+		else
+			return Mode.RACE
+	}
+
+	/**
+	 * Returns the median execution time per KB of facts, for interpreted or
+	 * compiled runs, or null if there are no such runs.
+	 */
+	private Double medianRate(boolean interpreted) {
+		List<Double> rates = new ArrayList<>()
+		for (Map<String, Long> run : history) {
+			Long facts = run.get(FACTS_SIZE)
+			Long time = run.get(EXECUTION_TIME)
+			if (facts == null || facts <= 0 || time == null)
+				continue
+			if ((run.get(INTERPRETED) == 1L) == interpreted)
+				rates.add(time / (double) facts)
+		}
+		return median(rates)
+	}
+
+	/**
+	 * Returns the median compilation time of runs that actually compiled the
+	 * logic (cached binaries report zero), or null if there are no such runs.
+	 */
+	private Long medianCompilationTime() {
+		List<Double> times = new ArrayList<>()
+		for (Map<String, Long> run : history) {
+			Long time = run.get(COMPILATION_TIME)
+			if (time != null && time > 0)
+				times.add(time as double)
+		}
+		Double m = median(times)
+		return m == null ? null : m.longValue()
+	}
+
+	private static Double median(List<Double> values) {
+		if (values.isEmpty())
+			return null
+		Collections.sort(values)
+		return values.get(values.size().intdiv(2) as int)
+	}
+}
@@ -24,6 +24,8 @@ class SouffleOptions {
     boolean useFunctors
     /** Maximum memory to use. */
     String maxMemory
+    /** Join-order plans to add to the rules (see SoufflePlans). */
+    File plans
 
     SouffleOptions() {}
 
@@ -37,5 +39,7 @@ class SouffleOptions {
         this.removeContexts = options.X_CONTEXT_REMOVER?.value as boolean
         this.useFunctors = options.SOUFFLE_USE_FUNCTORS?.value as boolean
         this.maxMemory = options.MAX_MEMORY?.value as String
+        String plansPath = options.SOUFFLE_PLANS?.value as String
+        this.plans = plansPath ? new File(plansPath) : null
     }
 }
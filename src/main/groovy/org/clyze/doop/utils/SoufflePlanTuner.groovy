@@ -0,0 +1,220 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.nio.file.Files
+import java.security.MessageDigest
+import org.clyze.doop.core.Doop
+import org.clyze.utils.Executor
+import org.clyze.utils.JHelper
+
+import static org.apache.commons.io.FileUtils.deleteQuietly
+
+/**
+ * Profile-guided search for join-order plans. Starting from a profiled
+ * analysis (see SouffleProfile), the rules that spend the most time per
+ * produced tuple get alternative join orders; every candidate is evaluated
+ * with the Souffle interpreter on the same facts and kept only if it is
+ * faster and all output relations stay identical. The result is a plan
+ * file for option --souffle-plans.
+ */
+@CompileStatic
+@Log4j
+class SoufflePlanTuner {
+
+	/** Expensive rules examined, relative to the number of rules tuned. */
+	static final int CANDIDATE_RULES_FACTOR = 3
+	/** Maximum alternative join orders tried per rule. */
+	static final int MAX_ORDERS = 6
+	/** A candidate must be this much faster to be kept. */
+	static final double MIN_SPEEDUP = 0.03d
+
+	final File script
+	final File database
+	final int jobs
+	final File workDir
+	final SouffleScript souffle
+
+	SoufflePlanTuner(File script, File database, int jobs, File workDir) {
+		this.script = script
+		this.database = database
+		this.jobs = jobs
+		this.workDir = workDir
+		this.souffle = new SouffleScript(new Executor(workDir, System.getenv()), new File(workDir, 'cache'))
+	}
+
+	/**
+	 * Tunes the most expensive rules and returns the plans that were kept.
+	 *
+	 * @param maxRules   the number of rules to tune
+	 */
+	SoufflePlans tune(int maxRules) {
+		Map<String, String> best = new LinkedHashMap<>()
+		Trial baseline = evaluate(best)
+		log.info "Baseline: ${baseline.millis} ms, ${baseline.outputs.size()} output relations"
+		long bestMillis = baseline.millis
+
+		for (SouffleProfile.Entry rule : selectRules(maxRules)) {
+			int atoms = countAtoms(rule.rule)
+			log.info "Rule at ${rule.source} (${rule.timeMillis} ms, ${rule.tuples} tuples, ${atoms} atoms)"
+			for (String plan : candidatePlans(atoms)) {
+				Map<String, String> plans = new LinkedHashMap<>(best)
+				plans.put(rule.source, plan)
+				Trial trial = evaluate(plans)
+				if (trial.outputs != baseline.outputs) {
+					log.warn "WARNING: plan ${plan} changes the output, rejected"
+				} else if (trial.millis < bestMillis * (1.0d - MIN_SPEEDUP)) {
+					log.info "  plan ${plan}: ${trial.millis} ms, kept"
+					best.put(rule.source, plan)
+					bestMillis = trial.millis
+				} else {
+					log.info "  plan ${plan}: ${trial.millis} ms"
+				}
+			}
+		}
+		log.info "Tuned time: ${bestMillis} ms (baseline: ${baseline.millis} ms)"
+		return new SoufflePlans(best)
+	}
+
+	/**
+	 * Returns the rules with the worst ratio of tuples to time, among the
+	 * most expensive rules that have a known source location.
+	 */
+	List<SouffleProfile.Entry> selectRules(int maxRules) {
+		List<SouffleProfile.Entry> rules = new ArrayList<>()
+		new File(database, SouffleProfile.RULES_REPORT).eachLine { String line ->
+			String[] parts = line.split('\t')
+			if (parts.length == 5 && parts[1].toLong() > 0 && parts[3] =~ /^[^\[\]]+:\d+$/)
+				rules.add(new SouffleProfile.Entry(relation: parts[0], time: parts[1].toLong() * 1000L,
+						tuples: parts[2].toLong(), source: parts[3], rule: parts[4]))
+		}
+		// The report is sorted by time; plans are per source location.
+		Set<String> seen = new HashSet<>()
+		List<SouffleProfile.Entry> expensive = rules.findAll { SouffleProfile.Entry e -> seen.add(e.source) }
+				.take(maxRules * CANDIDATE_RULES_FACTOR)
+		return expensive.sort { SouffleProfile.Entry e -> (e.tuples + 1) / (double) e.time }.take(maxRules)
+	}
+
+	/**
+	 * Counts the positive atoms in the body of a rule, as printed by Souffle.
+	 */
+	static int countAtoms(String rule) {
+		int idx = rule.indexOf(':-')
+		if (idx < 0)
+			return 0
+		int count = 0
+		for (String literal : splitTopLevel(rule.substring(idx + 2)))
+			if (literal =~ /^[A-Za-z_][\w.]*\s*\(/)
+				count++
+		return count
+	}
+
+	private static List<String> splitTopLevel(String body) {
+		List<String> literals = new ArrayList<>()
+		int depth = 0
+		boolean inString = false
+		StringBuilder current = new StringBuilder()
+		for (char c : body.toCharArray()) {
+			if (inString) {
+				if (c == '"' as char) inString = false
+			} else if (c == '"' as char) {
+				inString = true
+			} else if (c == '(' as char || c == '{' as char) {
+				depth++
+			} else if (c == ')' as char || c == '}' as char) {
+				depth--
+			} else if (c == ',' as char && depth == 0) {
+				literals.add(current.toString().trim())
+				current.setLength(0)
+				continue
+			}
+			current.append(c)
+		}
+		literals.add(current.toString().trim())
+		return literals
+	}
+
+	/**
+	 * Returns alternative join orders of a body with the given number of
+	 * atoms: each atom moved to the front, and the reverse order.
+	 */
+	static List<String> candidatePlans(int atoms) {
+		if (atoms < 2)
+			return []
+		List<Integer> identity = (1..atoms).toList()
+		Set<List<Integer>> orders = new LinkedHashSet<>()
+		for (int i = 2; i <= atoms; i++) {
+			List<Integer> order = [i] + identity.findAll { int j -> j != i }
+			orders.add(order)
+		}
+		orders.add(identity.reverse())
+		return orders.take(MAX_ORDERS).collect { List<Integer> order -> "0:(${order.join(',')})" as String }
+	}
+
+	private static class Trial {
+		long millis
+		Map<String, String> outputs
+	}
+
+	private Trial evaluate(Map<String, String> plans) {
+		File trialDir = Files.createTempDirectory(workDir.toPath(), 'trial').toFile()
+		try {
+			SouffleOptions opts = new SouffleOptions()
+			if (plans) {
+				opts.plans = new File(trialDir, 'plans.tsv')
+				new SoufflePlans(plans).write(opts.plans, null)
+			}
+			long start = System.currentTimeMillis()
+			souffle.interpretScript(script, trialDir, database, jobs, opts)
+			long millis = System.currentTimeMillis() - start
+			return new Trial(millis: millis, outputs: digestOutputs(new File(trialDir, 'database')))
+		} finally {
+			deleteQuietly(trialDir)
+		}
+	}
+
+	/**
+	 * Computes an order-independent digest of every output relation.
+	 */
+	static Map<String, String> digestOutputs(File dir) {
+		Map<String, String> digests = new TreeMap<>()
+		dir.listFiles()?.each { File f ->
+			if (!f.name.endsWith('.csv'))
+				return
+			MessageDigest md = MessageDigest.getInstance('SHA-256')
+			f.readLines().sort().each { String line -> md.update((line + '\n').getBytes('UTF-8')) }
+			digests.put(f.name, md.digest().encodeHex().toString())
+		}
+		return digests
+	}
+
+	static void main(String[] args) {
+		if (args.length < 3) {
+			println "Usage:"
+			println "  ./gradlew soufflePlans -Pargs='<analysisScript> <databaseDir> <planFile> [rules] [jobs]'"
+			println "Parameters:"
+			println "  analysisScript   the <analysis>.dl file of a run with --souffle-profile (it has cpp line markers)"
+			println "  databaseDir      the database of that run (facts and ${SouffleProfile.RULES_REPORT})"
+			println "  planFile         the plan file to write (for option --souffle-plans)"
+			println "  rules            the number of rules to tune (default: 10)"
+			println "  jobs             the number of Souffle jobs (default: 4)"
+			return
+		}
+		Doop.initDoopFromEnv()
+		JHelper.tryInitLogging("INFO", Doop.doopLog, true, Doop.LOG_NAME)
+
+		File script = new File(args[0])
+		File database = new File(args[1])
+		File planFile = new File(args[2])
+		int rules = args.length > 3 ? args[3].toInteger() : 10
+		int jobs = args.length > 4 ? args[4].toInteger() : 4
+		File workDir = Files.createTempDirectory('souffle-plans').toFile()
+		try {
+			SoufflePlans plans = new SoufflePlanTuner(script, database, jobs, workDir).tune(rules)
+			plans.write(planFile, "Join plans for ${script.name}, tuned on ${database}")
+			println "Wrote ${plans.plans.size()} plan(s) to ${planFile}"
+		} finally {
+			deleteQuietly(workDir)
+		}
+	}
+}
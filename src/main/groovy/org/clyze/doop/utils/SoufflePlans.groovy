@@ -0,0 +1,167 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+
+/**
+ * Join-order plans for rules of the logic, keyed by the original location
+ * (file:line) of each rule. A plan file has one tab-separated line per
+ * rule:
+ *
+ *   main/string-constants.dl:412	0:(2,1,3)
+ *
+ * Lines starting with '#' are comments. Plans are added as Souffle .plan
+ * directives to the preprocessed script, replacing any existing plan of
+ * the same rule.
+ */
+@CompileStatic
+@Log4j
+class SoufflePlans {
+
+	final Map<String, String> plans
+
+	SoufflePlans(Map<String, String> plans) {
+		this.plans = plans
+	}
+
+	static SoufflePlans load(File planFile) {
+		Map<String, String> plans = new LinkedHashMap<>()
+		planFile.eachLine { String line ->
+			if (line.trim().isEmpty() || line.startsWith('#'))
+				return
+			String[] parts = line.split('\t')
+			if (parts.length == 2)
+				plans.put(parts[0].trim(), parts[1].trim())
+			else
+				log.warn "WARNING: ignoring malformed plan line: ${line}"
+		}
+		return new SoufflePlans(plans)
+	}
+
+	void write(File planFile, String header) {
+		planFile.withWriter { BufferedWriter w ->
+			if (header)
+				header.readLines().each { String line -> w.write("# ${line}\n") }
+			plans.each { String location, String plan -> w.write("${location}\t${plan}\n") }
+		}
+	}
+
+	/**
+	 * Adds the plans to the rules of a preprocessed script (in place).
+	 *
+	 * @param script    the script, as given to Souffle
+	 * @param lineMap   the map from script lines to original locations
+	 * @return          the number of rules that received a plan
+	 */
+	int apply(File script, CppLineMap lineMap) {
+		String text = script.text
+		StringBuilder sb = new StringBuilder(text.length() + plans.size() * 32)
+		int applied = 0
+		int last = 0
+		boolean dropNextPlan = false
+		for (Statement st : statements(text)) {
+			if (dropNextPlan && st.directive && text.startsWith('.plan', st.start)) {
+				// Replaced by the plan we just added.
+				sb.append(text, last, st.start)
+				last = st.end
+				dropNextPlan = false
+				continue
+			}
+			dropNextPlan = false
+			if (st.directive || !text.substring(st.start, st.end).contains(':-'))
+				continue
+			String plan = plans.get(lineMap.originalLocation(st.line))
+			if (plan == null)
+				continue
+			sb.append(text, last, st.end)
+			sb.append("\n.plan ").append(plan)
+			last = st.end
+			applied++
+			dropNextPlan = true
+		}
+		sb.append(text, last, text.length())
+		script.text = sb.toString()
+		return applied
+	}
+
+	/** A top-level statement: a directive or a clause. */
+	static class Statement {
+		int start
+		/** The offset right after the last character. */
+		int end
+		/** The 1-based line where the statement starts. */
+		int line
+		boolean directive
+	}
+
+	/**
+	 * Splits a script into directives (which start with '.' and end at the
+	 * end of the line) and clauses (which end at a top-level '.'), skipping
+	 * comments and component braces.
+	 */
+	static List<Statement> statements(String text) {
+		List<Statement> result = new ArrayList<>()
+		int n = text.length()
+		int i = 0
+		int line = 1
+		while (i < n) {
+			char c = text.charAt(i)
+			if (c == '\n' as char) {
+				line++; i++
+			} else if (Character.isWhitespace(c) || c == '{' as char || c == '}' as char) {
+				i++
+			} else if (text.startsWith('//', i)) {
+				while (i < n && text.charAt(i) != '\n' as char) i++
+			} else if (text.startsWith('/*', i)) {
+				int close = text.indexOf('*/', i + 2)
+				int stop = close < 0 ? n : close + 2
+				line += countLines(text, i, stop)
+				i = stop
+			} else if (c == '.' as char) {
+				Statement st = new Statement(start: i, line: line, directive: true)
+				int depth = 0
+				while (i < n && (text.charAt(i) != '\n' as char || depth > 0)) {
+					char d = text.charAt(i)
+					if (d == '(' as char) depth++
+					else if (d == ')' as char) depth--
+					else if (d == '\n' as char) line++
+					i++
+				}
+				st.end = i
+				result.add(st)
+			} else {
+				Statement st = new Statement(start: i, line: line, directive: false)
+				int depth = 0
+				boolean inString = false
+				while (i < n) {
+					char d = text.charAt(i)
+					if (d == '\n' as char) line++
+					if (inString) {
+						if (d == '\\' as char) i++
+						else if (d == '"' as char) inString = false
+					} else if (d == '"' as char) {
+						inString = true
+					} else if (d == '(' as char || d == '{' as char) {
+						depth++
+					} else if (d == ')' as char || d == '}' as char) {
+						depth--
+					} else if (d == '.' as char && depth == 0 && (i + 1 == n || !Character.isLetterOrDigit(text.charAt(i + 1)))) {
+						i++
+						break
+					}
+					i++
+				}
+				st.end = i
+				result.add(st)
+			}
+		}
+		return result
+	}
+
+	private static int countLines(String text, int from, int to) {
+		int count = 0
+		for (int i = from; i < to; i++)
+			if (text.charAt(i) == '\n' as char) count++
+		return count
+	}
+}
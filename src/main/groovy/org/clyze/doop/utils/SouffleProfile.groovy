@@ -0,0 +1,154 @@
+package org.clyze.doop.utils
+
+import groovy.json.JsonSlurper
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+
+/**
+ * Reads the profile written by Souffle (option -p, JSON format of Souffle
+ * 2.x) and ranks relations and rules by evaluation time. The reports are
+ * tab-separated files without a header:
+ *
+ *   Profile_Relations.csv: relation, time (ms), tuples, memory (KB), source
+ *   Profile_Rules.csv:     relation, time (ms), tuples, source, rule
+ *
+ * Memory is the growth of the peak resident set size while evaluating a
+ * relation. Sources are "file:line" when a CppLineMap is available and
+ * the Souffle source locator otherwise.
+ */
+@CompileStatic
+@Log4j
+class SouffleProfile {
+
+	static final String RELATIONS_REPORT = 'Profile_Relations.csv'
+	static final String RULES_REPORT = 'Profile_Rules.csv'
+
+	private static final String LOCATOR = /.*\[(\d+):\d+-\d+:\d+\].*/
+
+	static class Entry {
+		String relation
+		/** The rule text, null for relation entries. */
+		String rule
+		/** Evaluation time (microseconds). */
+		long time
+		long tuples
+		/** Growth of peak RSS (KB). */
+		long memory
+		String locator
+		String source
+
+		long getTimeMillis() { time.intdiv(1000L) as long }
+	}
+
+	final List<Entry> relations = new ArrayList<>()
+	final List<Entry> rules = new ArrayList<>()
+
+	static SouffleProfile parse(File profileFile) {
+		Map json = new JsonSlurper().parse(profileFile) as Map
+		Map program = map(map(json.get('root')).get('program'))
+		Map relations = map(program.get('relation'))
+
+		SouffleProfile profile = new SouffleProfile()
+		relations.each { Object name, Object data -> profile.addRelation(name as String, map(data)) }
+		profile.relations.sort(BY_COST)
+		profile.rules.sort(BY_COST)
+		return profile
+	}
+
+	private void addRelation(String name, Map data) {
+		Entry rel = new Entry(relation: name, locator: data.get('source-locator') as String)
+		rel.time = duration(data.get('runtime'))
+		rel.tuples = size(data.get('num-tuples'))
+		rel.memory = memory(data.get('maxRSS'))
+
+		map(data.get('non-recursive-rule')).each { Object rule, Object ruleData ->
+			Map r = map(ruleData)
+			rules.add(new Entry(relation: name, rule: normalize(rule as String),
+					time: duration(r.get('runtime')), tuples: size(r.get('num-tuples')),
+					locator: r.get('source-locator') as String))
+		}
+
+		// Recursive relations: aggregate over iterations and rule versions.
+		Map<String, Entry> recursiveRules = new LinkedHashMap<>()
+		map(data.get('iteration')).each { Object iteration, Object iterationData ->
+			Map it = map(iterationData)
+			rel.time += duration(it.get('runtime'))
+			rel.tuples += size(it.get('num-tuples'))
+			rel.memory = Math.max(rel.memory, memory(it.get('maxRSS')))
+			map(it.get('recursive-rule')).each { Object rule, Object versions ->
+				String ruleText = normalize(rule as String)
+				Entry r = recursiveRules.get(ruleText)
+				if (r == null) {
+					r = new Entry(relation: name, rule: ruleText)
+					recursiveRules.put(ruleText, r)
+				}
+				map(versions).each { Object version, Object versionData ->
+					Map v = map(versionData)
+					r.time += duration(v.get('runtime'))
+					r.tuples += size(v.get('num-tuples'))
+					if (r.locator == null)
+						r.locator = v.get('source-locator') as String
+				}
+			}
+		}
+		rules.addAll(recursiveRules.values())
+		relations.add(rel)
+	}
+
+	/**
+	 * Fills in the original source locations of relations and rules.
+	 */
+	void mapSources(CppLineMap lineMap) {
+		(relations + rules).each { Entry e ->
+			if (e.locator == null)
+				return
+			def m = e.locator =~ LOCATOR
+			if (m.matches() && lineMap != null)
+				e.source = lineMap.originalLocation((m.group(1) as String).toInteger())
+			if (e.source == null)
+				e.source = e.locator
+		}
+	}
+
+	/**
+	 * Writes the ranked relation and rule reports to a directory.
+	 */
+	void writeReport(File dir) {
+		new File(dir, RELATIONS_REPORT).withWriter { BufferedWriter w ->
+			relations.each { Entry e -> w.write("${e.relation}\t${e.timeMillis}\t${e.tuples}\t${e.memory}\t${e.source ?: ''}\n") }
+		}
+		new File(dir, RULES_REPORT).withWriter { BufferedWriter w ->
+			rules.each { Entry e -> w.write("${e.relation}\t${e.timeMillis}\t${e.tuples}\t${e.source ?: ''}\t${e.rule}\n") }
+		}
+		log.info "Profile report: ${relations.size()} relations, ${rules.size()} rules in ${dir}"
+	}
+
+	private static final Comparator<Entry> BY_COST = { Entry e1, Entry e2 ->
+		e1.time != e2.time ? Long.compare(e2.time, e1.time) : Long.compare(e2.tuples, e1.tuples)
+	} as Comparator<Entry>
+
+	private static Map map(Object o) {
+		return o instanceof Map ? (Map) o : Collections.emptyMap()
+	}
+
+	private static long duration(Object o) {
+		Map d = map(o)
+		Object start = d.get('start')
+		Object end = d.get('end')
+		return (start instanceof Number && end instanceof Number) ? ((Number) end).longValue() - ((Number) start).longValue() : 0L
+	}
+
+	private static long size(Object o) {
+		return o instanceof Number ? ((Number) o).longValue() : 0L
+	}
+
+	private static long memory(Object o) {
+		Map rss = map(o)
+		return Math.max(0L, size(rss.get('post')) - size(rss.get('pre')))
+	}
+
+	/** Keep the rule text on a single line of the report. */
+	private static String normalize(String rule) {
+		return rule.replaceAll(/\s+/, ' ').trim()
+	}
+}
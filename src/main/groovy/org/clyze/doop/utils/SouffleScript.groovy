@@ -1,5 +1,6 @@
 package org.clyze.doop.utils
 
+import groovy.transform.CompileDynamic
 import groovy.transform.CompileStatic
 import groovy.util.logging.Log4j
 import java.nio.file.FileAlreadyExistsException
@@ -7,7 +8,11 @@ import java.nio.file.Files
 import java.nio.file.FileSystems
 import java.nio.file.Path
 import java.nio.file.StandardCopyOption
+import java.util.concurrent.CancellationException
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ConcurrentMap
 import org.clyze.doop.common.DoopErrorCodeException
+import org.clyze.doop.core.Doop
 import org.clyze.doop.core.DoopAnalysisFactory
 import org.clyze.doop.core.DoopAnalysisFamily
 import org.clyze.doop.util.Resource
@@ -21,6 +26,7 @@ import org.clyze.utils.OS
 class SouffleScript {
 
 	static final String EXE_NAME = "analysis-binary"
+	private static final ConcurrentMap<String, Object> COMPILATION_LOCKS = new ConcurrentHashMap<>()
 	protected static final String TIME_UTIL = "/usr/bin/time"
 	protected static final String CHPST_UTIL = '/usr/bin/chpst'
 
@@ -28,7 +34,16 @@ class SouffleScript {
 	File cacheDir
 	long compilationTime = 0L
 	long executionTime = 0L
+	/** Peak resident set size of the last execution (KB), 0 if unknown. */
+	long peakMemoryKB = 0L
 	File scriptFile = null
+	/** Records the compilation and execution phases, if set. */
+	Telemetry telemetry = null
+	/** The environment of the compilation and interpretation commands. */
+	Map<String, String> environment = null
+	/** The running compilation or interpretation command, if any. */
+	private volatile Process process = null
+	private volatile boolean killed = false
 
 	SouffleScript(Executor executor, File cacheDir) {
 		this.executor = executor
@@ -55,6 +70,24 @@ class SouffleScript {
 		this.scriptFile = output
 	}
 
+	/**
+	 * Adds the join-order plans of the options to the preprocessed script.
+	 * The original script must contain cpp line markers, so that plans can
+	 * be matched with the rules they were written for.
+	 *
+	 * @param origScriptFile   the script given to cpp
+	 * @param options          the Souffle options
+	 */
+	protected void applyPlans(File origScriptFile, SouffleOptions options) {
+		if (!options.plans)
+			return
+		if (!options.plans.exists())
+			throw new RuntimeException("Plan file does not exist: ${options.plans}")
+		CppLineMap lineMap = new CppLineMap(scriptFile, origScriptFile, Doop.souffleLogicPath)
+		int applied = SoufflePlans.load(options.plans).apply(scriptFile, lineMap)
+		log.info "Applied ${applied} join plan(s) from ${options.plans}"
+	}
+
 	/**
 	 * Calculates the checksum of the cached compiled analysis binary.
 	 *
@@ -71,10 +104,26 @@ class SouffleScript {
 		return CheckSum.checksum(c2, DoopAnalysisFactory.HASH_ALGO)
 	}
 
+	/**
+	 * Calculates the checksum of the logic of a script (after cpp and join
+	 * plans), without compiling it. Unlike the checksum of the binary, it
+	 * does not depend on the compilation modes.
+	 *
+	 * @param origScriptFile   the script given to cpp
+	 * @param outDir           the directory of the preprocessed script
+	 * @param options          the Souffle options
+	 */
+	String logicChecksum(File origScriptFile, File outDir, SouffleOptions options) {
+		setScriptFileViaCPP(origScriptFile, outDir)
+		applyPlans(origScriptFile, options)
+		return CheckSum.checksum(scriptFile, DoopAnalysisFactory.HASH_ALGO)
+	}
+
 	File compile(File origScriptFile, File outDir,
                  SouffleOptions options) {
 
 		setScriptFileViaCPP(origScriptFile, outDir)
+		applyPlans(origScriptFile, options)
 
 		if (options.useFunctors) {
 			detectFunctors(outDir)
@@ -82,6 +131,15 @@ class SouffleScript {
 
 		def checksum = calcChecksum(options.profile, options.provenance, options.liveProf)
 		def cacheFile = new File(cacheDir, checksum)
+		// Analyses running in the same JVM (see DoopDaemon) compile the
+		// same logic only once; the others wait and use the cached binary.
+		synchronized (compilationLock(checksum)) {
+			return Telemetry.phase(telemetry, 'compile') { compileOrReuse(cacheFile, checksum, outDir, options) }
+		}
+	}
+
+	private File compileOrReuse(File cacheFile, String checksum, File outDir,
+								SouffleOptions options) {
 		if (!cacheFile.exists() || options.debug || options.forceRecompile) {
 
 			if (options.removeContexts) {
@@ -123,7 +181,7 @@ class SouffleScript {
 				Path tmpFile = Files.createTempFile("", "")
 				File tmpFile0 = tmpFile.toFile()
 				tmpFile0.deleteOnExit()
-				executor.executeWithRedirectedOutput(compilationCommand, tmpFile0) { String line ->
+				Closure lineProcessor = { String line ->
 					if (ignoreCounter != 0) ignoreCounter--
 					else if (line.startsWith("Warning: No rules/facts defined for relation") ||
 							line.startsWith("Warning: Deprecated output qualifier was used")) {
@@ -132,6 +190,10 @@ class SouffleScript {
 					} else if (line.startsWith("Warning: Record types in output relations are not printed verbatim")) ignoreCounter = 2
 					else log.info line
 				}
+				if (OS.win)
+					executor.executeWithRedirectedOutput(compilationCommand, tmpFile0, lineProcessor)
+				else
+					executeKillable(compilationCommand, lineProcessor)
 				if (OS.win) {
 					prepareSourcesForWindowsCompilation(executable, tmpFile0)
 					return null
@@ -150,6 +212,12 @@ class SouffleScript {
 		return cacheFile
 	}
 
+	private static Object compilationLock(String checksum) {
+		Object lock = new Object()
+		Object existing = COMPILATION_LOCKS.putIfAbsent(checksum, lock)
+		return existing != null ? existing : lock
+	}
+
 	protected void logCachedExecutable(File cacheFile) {
 		log.info "Using cached analysis executable ${cacheFile.absolutePath}"
 	}
@@ -181,6 +249,9 @@ class SouffleScript {
 			} else if (new File(CHPST_UTIL).exists()) {
 				println "Using ${CHPST_UTIL} to limit memory usage..."
 				ret.addAll([CHPST_UTIL, "-d ${options.maxMemory}" as String] as List<String>)
+				// chpst does not report memory usage.
+				if (new File(TIME_UTIL).exists())
+					ret.add(TIME_UTIL)
 			} else
 				println "Could not find mechanism to limit analysis memory consumption."
 		} else if (new File(TIME_UTIL).exists()) {
@@ -190,6 +261,64 @@ class SouffleScript {
 		return ret
 	}
 
+	/**
+	 * Kills the compilation or interpretation command of this script and
+	 * waits for it to exit, so that its output directory may be removed.
+	 * A command that has not started yet fails when it starts, so the
+	 * script should not be used afterwards.
+	 */
+	void kill() {
+		killed = true
+		Process p = process
+		if (p != null) {
+			destroyDescendants(p)
+			p.destroyForcibly()
+			p.waitFor()
+		}
+	}
+
+	/**
+	 * Runs a command that {@link #kill} may stop. Unlike the executor,
+	 * this keeps the process, as Souffle compilations fork C++ compilers
+	 * that outlive an interrupted thread.
+	 */
+	private void executeKillable(List<String> command, Closure lineProcessor) {
+		ProcessBuilder pb = new ProcessBuilder(command).redirectErrorStream(true)
+		if (executor.currWorkingDir)
+			pb.directory(executor.currWorkingDir)
+		if (environment)
+			pb.environment().putAll(environment)
+		Process p
+		synchronized (this) {
+			if (killed)
+				throw new CancellationException("Killed: ${command.join(' ')}")
+			p = process = pb.start()
+		}
+		try {
+			p.inputStream.withReader { Reader r -> r.eachLine { String line -> lineProcessor.call(line) } }
+			int exitCode = p.waitFor()
+			if (killed)
+				throw new CancellationException("Killed: ${command.join(' ')}")
+			if (exitCode != 0)
+				throw new RuntimeException("Command exited with non-zero status (${exitCode}): ${command.join(' ')}")
+		} finally {
+			process = null
+		}
+	}
+
+	/**
+	 * Kills the child processes of a process (e.g. the C++ compiler of
+	 * souffle), where the JVM can list them (Java 9 or later).
+	 */
+	@CompileDynamic
+	private static void destroyDescendants(Process p) {
+		try {
+			p.toHandle().descendants().forEach { it.destroyForcibly() }
+		} catch (MissingMethodException ignored) {
+			// Java 8: only the process itself is killed.
+		}
+	}
+
 	def run(File analysisBinary, File factsDir, File outDir,
 	        int jobs, long monitoringInterval, Closure monitorClosure,
 			SouffleOptions options) {
@@ -216,8 +345,14 @@ class SouffleScript {
 
 		log.debug "Execution command: ${cmd}"
 		log.info "Running analysis"
+		peakMemoryKB = 0L
 		executionTime = Helper.timing {
-			executor.enableMonitor(monitoringInterval, monitorClosure).execute(executionCommand).disableMonitor()
+			Telemetry.phase(telemetry, 'run') {
+				executor.enableMonitor(monitoringInterval, monitorClosure).execute(executionCommand) { String line ->
+					Executor.STDOUT_PRINTER.call(line)
+					recordPeakMemory(line)
+				}.disableMonitor()
+			}
 		}
 		log.info "Analysis execution time (sec): $executionTime"
 
@@ -228,6 +363,7 @@ class SouffleScript {
                         int jobs, SouffleOptions options) {
 
 		setScriptFileViaCPP(origScriptFile, outDir)
+		applyPlans(origScriptFile, options)
 
 	    def db = new File(outDir, "database")
 
@@ -248,17 +384,21 @@ class SouffleScript {
         log.debug "Interpretation command: ${cmd}"
 
         def ignoreCounter = 0
+        peakMemoryKB = 0L
         executionTime = Helper.timing {
             Path tmpFile = Files.createTempFile("", "")
             tmpFile.toFile().deleteOnExit()
-            executor.executeWithRedirectedOutput(interpretationCommand, tmpFile.toFile()) { String line ->
-                if (ignoreCounter != 0) ignoreCounter--
-                else if (line.startsWith("Warning: No rules/facts defined for relation") ||
-                        line.startsWith("Warning: Deprecated output qualifier was used")) {
-                    log.info line
-                    ignoreCounter = 2
-                } else if (line.startsWith("Warning: Record types in output relations are not printed verbatim")) ignoreCounter = 2
-                else log.info line
+            Telemetry.phase(telemetry, 'interpret') {
+                executeKillable(interpretationCommand) { String line ->
+                    recordPeakMemory(line)
+                    if (ignoreCounter != 0) ignoreCounter--
+                    else if (line.startsWith("Warning: No rules/facts defined for relation") ||
+                            line.startsWith("Warning: Deprecated output qualifier was used")) {
+                        log.info line
+                        ignoreCounter = 2
+                    } else if (line.startsWith("Warning: Record types in output relations are not printed verbatim")) ignoreCounter = 2
+                    else log.info line
+                }
             }
             Files.delete(tmpFile)
         }
@@ -267,6 +407,16 @@ class SouffleScript {
         return [compilationTime, executionTime]
     }
 
+	/**
+	 * Keeps the peak memory reported by the time/timeout wrapper of the
+	 * execution command (see getUtilsPrefix()).
+	 */
+	private void recordPeakMemory(String line) {
+		Long peak = SouffleJobTuner.parsePeakMemory(line)
+		if (peak != null)
+			peakMemoryKB = Math.max(peakMemoryKB, peak)
+	}
+
 	// Detect libfunctors.so and create corresponding symbolic link.
 	private void detectFunctors(File outDir) {
 		String envVar = "LD_LIBRARY_PATH"
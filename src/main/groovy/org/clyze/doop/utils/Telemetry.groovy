@@ -0,0 +1,304 @@
+package org.clyze.doop.utils
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import java.lang.management.GarbageCollectorMXBean
+import java.lang.management.ManagementFactory
+import java.lang.management.MemoryUsage
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.TimeUnit
+
+/**
+ * Samples the resources used by an analysis while it runs: JVM heap, GC
+ * time, CPU used by the JVM and its child processes (Souffle, external
+ * fact generators) and the resident memory of the child processes. Every
+ * sample is tagged with the phases active at that time (phases can
+ * overlap, e.g. fact generation and logic compilation). Two tab-separated
+ * files are written:
+ *
+ *   telemetry.csv:         one line per sample
+ *   telemetry-phases.csv:  per phase, its duration, peak heap, peak child
+ *                          memory and average number of busy cores
+ *
+ * Child process information is read from /proc and is only available on
+ * Linux (other systems report -1). Only the child processes of this
+ * analysis are sampled (see {@link ChildProcesses}), as other analyses
+ * may share the JVM. The heap, GC and JVM CPU figures cannot be split
+ * that way: in the daemon or the batch runner they also include the
+ * analyses running at the same time.
+ */
+@CompileStatic
+@Log4j
+class Telemetry {
+
+	static final String SAMPLES_FILE = 'telemetry.csv'
+	static final String PHASES_FILE = 'telemetry-phases.csv'
+
+	/** Clock ticks per second of /proc/[pid]/stat times (USER_HZ). */
+	private static final int CLOCK_TICKS = 100
+	private static final String SAMPLES_HEADER = 'time (ms)\tphases\theap used (KB)\theap committed (KB)\t' +
+			'gc count\tgc time (ms)\tjvm cpu (cores)\tchildren cpu (cores)\tchildren rss (KB)\tchildren'
+
+	static class Sample {
+		long time
+		String phases
+		long heapUsed
+		long heapCommitted
+		long gcCount
+		long gcTime
+		double jvmCores
+		double childCores
+		long childRss
+		int children
+
+		String toString() {
+			return [time, phases, heapUsed, heapCommitted, gcCount, gcTime, String.format('%.2f', jvmCores),
+					String.format('%.2f', childCores), childRss, children].join('\t')
+		}
+	}
+
+	static class Phase {
+		String name
+		long start
+		long end = -1L
+	}
+
+	final File outDir
+	final long interval
+	private final long startTime = System.currentTimeMillis()
+	private final List<Sample> samples = new CopyOnWriteArrayList<>()
+	private final List<Phase> phases = new CopyOnWriteArrayList<>()
+	private final String pid = ManagementFactory.runtimeMXBean.name.split('@')[0]
+	private ScheduledExecutorService sampler
+	private long lastJvmCpu = -1L
+	private long lastChildTicks = -1L
+	private long lastSampleTime = 0L
+
+	Telemetry(File outDir, long interval) {
+		if (interval <= 0)
+			throw new IllegalArgumentException("Telemetry interval must be positive: ${interval}")
+		this.outDir = outDir
+		this.interval = interval
+	}
+
+	void start() {
+		sampler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			@Override
+			Thread newThread(Runnable r) {
+				Thread t = new Thread(r, 'telemetry')
+				t.daemon = true
+				return t
+			}
+		})
+		sampler.scheduleAtFixedRate(new Runnable() {
+			@Override
+			void run() {
+				trySample()
+			}
+		}, 0L, interval, TimeUnit.MILLISECONDS)
+	}
+
+	/**
+	 * Stops sampling and writes the time series and the phase summary.
+	 */
+	void stop() {
+		if (sampler == null)
+			return
+		sampler.shutdownNow()
+		sampler = null
+		try {
+			sample()
+			write()
+		} catch (IOException ex) {
+			log.warn "WARNING: could not write telemetry: ${ex.message}"
+		}
+	}
+
+	/**
+	 * Runs code as a phase. Phases may be nested or run in parallel. A
+	 * sample is also taken when a phase starts and ends, so that short
+	 * phases are not missed.
+	 *
+	 * @param telemetry   the telemetry object (may be null, then the code
+	 *                    just runs)
+	 * @param name        the name of the phase
+	 * @param body        the code of the phase
+	 * @return            the result of the code
+	 */
+	static <T> T phase(Telemetry telemetry, String name, Closure<T> body) {
+		if (telemetry == null)
+			return body.call()
+		Phase p = new Phase(name: name, start: telemetry.now())
+		telemetry.phases.add(p)
+		telemetry.trySample()
+		try {
+			return body.call()
+		} finally {
+			telemetry.trySample()
+			p.end = telemetry.now()
+		}
+	}
+
+	private long now() {
+		return System.currentTimeMillis() - startTime
+	}
+
+	private void trySample() {
+		try {
+			sample()
+		} catch (Throwable t) {
+			log.debug "Telemetry sampling failed: ${t.message}"
+		}
+	}
+
+	private synchronized void sample() {
+		long time = now()
+		Sample s = new Sample(time: time)
+		s.phases = phases.findAll { Phase p -> p.end < 0 }.collect { Phase p -> p.name }.join('+')
+
+		MemoryUsage heap = ManagementFactory.memoryMXBean.heapMemoryUsage
+		s.heapUsed = heap.used.intdiv(1024L) as long
+		s.heapCommitted = heap.committed.intdiv(1024L) as long
+		for (GarbageCollectorMXBean gc : ManagementFactory.garbageCollectorMXBeans) {
+			s.gcCount += Math.max(0L, gc.collectionCount)
+			s.gcTime += Math.max(0L, gc.collectionTime)
+		}
+
+		double elapsedSec = (time - lastSampleTime) / 1000.0d
+		long jvmCpu = jvmCpuTime()
+		if (jvmCpu >= 0 && lastJvmCpu >= 0 && elapsedSec > 0)
+			s.jvmCores = (jvmCpu - lastJvmCpu) / 1.0e9d / elapsedSec
+		lastJvmCpu = jvmCpu
+
+		Collection<String> children = descendants()
+		if (children == null) {
+			s.childRss = -1L
+			s.children = -1
+		} else {
+			long ticks = 0L
+			for (String child : children) {
+				s.childRss += rssKB(child)
+				ticks += cpuTicks(child)
+			}
+			s.children = children.size()
+			// Exited children take their ticks with them, never go below zero.
+			if (lastChildTicks >= 0 && elapsedSec > 0)
+				s.childCores = Math.max(0L, ticks - lastChildTicks) / (double) CLOCK_TICKS / elapsedSec
+			lastChildTicks = ticks
+		}
+		lastSampleTime = time
+		samples.add(s)
+	}
+
+	private static long jvmCpuTime() {
+		def os = ManagementFactory.operatingSystemMXBean
+		if (os instanceof com.sun.management.OperatingSystemMXBean)
+			return ((com.sun.management.OperatingSystemMXBean) os).processCpuTime
+		return -1L
+	}
+
+	/**
+	 * Returns the ids of the descendant processes of the JVM that belong to
+	 * this analysis, or null if /proc is not available.
+	 */
+	private Collection<String> descendants() {
+		File[] procs = new File('/proc').listFiles()
+		if (procs == null || !new File("/proc/${pid}").exists())
+			return null
+		Map<String, List<String>> childrenOf = new HashMap<>()
+		for (File proc : procs) {
+			if (!proc.name.isNumber())
+				continue
+			String ppid = parentOf(proc)
+			if (ppid == null)
+				continue
+			List<String> siblings = childrenOf.get(ppid)
+			if (siblings == null) {
+				siblings = new ArrayList<>()
+				childrenOf.put(ppid, siblings)
+			}
+			siblings.add(proc.name)
+		}
+		List<String> result = new ArrayList<>()
+		Deque<String> todo = new ArrayDeque<>(childrenOf.get(pid) ?: [])
+		while (!todo.isEmpty()) {
+			String p = todo.poll()
+			// The descendants of a process of the analysis also belong to it.
+			if (ChildProcesses.refersTo(commandLine(p), outDir)) {
+				Deque<String> owned = new ArrayDeque<>([p])
+				while (!owned.isEmpty()) {
+					String q = owned.poll()
+					result.add(q)
+					owned.addAll(childrenOf.get(q) ?: [])
+				}
+			} else
+				todo.addAll(childrenOf.get(p) ?: [])
+		}
+		return result
+	}
+
+	/** Reads a field of /proc/[pid]/stat (1-based, as in proc(5)). */
+	private static String statField(File proc, int field) {
+		try {
+			String stat = new File(proc, 'stat').text
+			// The command name (field 2) may contain spaces.
+			String[] rest = stat.substring(stat.lastIndexOf(')') + 2).split(' ')
+			return rest[field - 3]
+		} catch (IOException | IndexOutOfBoundsException ignored) {
+			return null
+		}
+	}
+
+	private static String commandLine(String pid) {
+		try {
+			return new File("/proc/${pid}/cmdline").text.replace('\u0000' as char, ' ' as char)
+		} catch (IOException ignored) {
+			return null
+		}
+	}
+
+	private static String parentOf(File proc) {
+		return statField(proc, 4)
+	}
+
+	private static long cpuTicks(String pid) {
+		File proc = new File("/proc/${pid}")
+		String utime = statField(proc, 14)
+		String stime = statField(proc, 15)
+		return (utime?.isLong() && stime?.isLong()) ? (utime as long) + (stime as long) : 0L
+	}
+
+	private static long rssKB(String pid) {
+		try {
+			for (String line : new File("/proc/${pid}/status").readLines()) {
+				if (line.startsWith('VmRSS:'))
+					return line.split(/\s+/)[1] as long
+			}
+		} catch (IOException ignored) { }
+		return 0L
+	}
+
+	private void write() {
+		new File(outDir, SAMPLES_FILE).withWriter { BufferedWriter w ->
+			w.write(SAMPLES_HEADER + '\n')
+			samples.each { Sample s -> w.write(s.toString() + '\n') }
+		}
+		new File(outDir, PHASES_FILE).withWriter { BufferedWriter w ->
+			w.write('phase\tstart (ms)\tduration (ms)\tpeak heap (KB)\tpeak children rss (KB)\tavg jvm cpu (cores)\tavg children cpu (cores)\n')
+			phases.each { Phase p ->
+				long end = p.end < 0 ? now() : p.end
+				List<Sample> during = samples.findAll { Sample s -> s.time >= p.start && s.time <= end }
+				long peakHeap = during.collect { Sample s -> s.heapUsed }.max() ?: 0L
+				long peakRss = during.collect { Sample s -> s.childRss }.max() ?: 0L
+				double jvmCores = during ? (double) during.sum { Sample s -> s.jvmCores } / during.size() : 0.0d
+				double childCores = during ? (double) during.sum { Sample s -> s.childCores } / during.size() : 0.0d
+				w.write([p.name, p.start, end - p.start, peakHeap, peakRss,
+						 String.format('%.2f', jvmCores), String.format('%.2f', childCores)].join('\t') + '\n')
+			}
+		}
+		log.info "Telemetry: ${samples.size()} samples, ${phases.size()} phases in ${outDir}"
+	}
+}
@@ -0,0 +1,142 @@
+package org.clyze.doop.utils.scaler
+
+import groovy.transform.CompileStatic
+import groovy.util.logging.Log4j
+import org.clyze.doop.utils.SouffleJobTuner
+import org.clyze.doop.utils.SouffleModePlanner
+
+/**
+ * Predicts the cost of the main analysis of a Scaler-guided run from the
+ * total worst case VPT (accumulative points-to size) of the selected
+ * context-sensitivity. Peak memory and execution time are modeled as
+ * power laws of the worst case VPT (cost = c * vpt^k), fitted by least
+ * squares on the logarithms of earlier runs. Inverting the models gives
+ * the largest worst case VPT whose run is expected to fit a memory and a
+ * time budget; it is capped at the largest worst case VPT measured, as
+ * the models are not trusted beyond the runs they were fitted on (see
+ * {@link #fitsBeyondMeasurements} for budgets that allow more).
+ */
+@CompileStatic
+@Log4j
+class ScalerCostModel {
+
+	static final String WORST_CASE_VPT = 'scaler worst case VPT'
+
+	/** The part of every budget that is never planned for. */
+	static final double HEADROOM = 0.15d
+
+	private final double[] memoryModel
+	private final double[] timeModel
+
+	ScalerCostModel(List<Map<String, Long>> history) {
+		this.memoryModel = fit(history, SouffleJobTuner.PEAK_MEMORY)
+		this.timeModel = fit(history, SouffleModePlanner.EXECUTION_TIME)
+	}
+
+	/**
+	 * Returns the largest worst case VPT expected to fit the budgets.
+	 *
+	 * @param memoryKB   the memory budget (in KB), or null if there is none
+	 * @param timeSec    the time budget (in seconds), or null if there is none
+	 * @return           the worst case VPT (at most the largest one
+	 *                   measured), or null if no budget can be checked
+	 *                   (no budget, or no history for it)
+	 */
+	Long maxWorstCaseVPT(Long memoryKB, Long timeSec) {
+		Double vpt = budgetVPT(memoryKB, timeSec, true)
+		log.debug "Worst case VPT within the budgets: ${vpt}"
+		// A saturating cast, as for budgets far above the measurements.
+		return vpt != null ? (long) vpt.doubleValue() : null
+	}
+
+	/**
+	 * Returns true if the budgets are expected to fit a larger worst case
+	 * VPT than the runs measured, so that {@link #maxWorstCaseVPT} is only
+	 * bounded by the measurements and not by the budgets.
+	 */
+	boolean fitsBeyondMeasurements(Long memoryKB, Long timeSec) {
+		Double vpt = budgetVPT(memoryKB, timeSec, false)
+		return vpt != null && vpt > budgetVPT(memoryKB, timeSec, true)
+	}
+
+	private Double budgetVPT(Long memoryKB, Long timeSec, boolean capped) {
+		Double memoryVPT = invert(memoryModel, memoryKB, capped)
+		Double timeVPT = invert(timeModel, timeSec, capped)
+		if (memoryVPT == null && timeVPT == null)
+			return null
+		return Math.min(memoryVPT != null ? memoryVPT : Double.MAX_VALUE,
+				timeVPT != null ? timeVPT : Double.MAX_VALUE)
+	}
+
+	/**
+	 * Predicts the peak memory (in KB) of a run, or returns null without history.
+	 */
+	Long peakMemoryKB(long worstCaseVPT) {
+		return predict(memoryModel, worstCaseVPT)
+	}
+
+	/**
+	 * Predicts the execution time (in seconds) of a run, or returns null without history.
+	 */
+	Long executionTime(long worstCaseVPT) {
+		return predict(timeModel, worstCaseVPT)
+	}
+
+	private static Long predict(double[] model, long worstCaseVPT) {
+		if (model == null || worstCaseVPT <= 0L)
+			return null
+		return Math.round(Math.exp(model[0] + model[1] * Math.log(worstCaseVPT as double)))
+	}
+
+	private static Double invert(double[] model, Long budget, boolean capped) {
+		if (model == null || budget == null || budget <= 0L)
+			return null
+		double available = budget * (1.0d - HEADROOM)
+		double vpt = Math.exp((Math.log(available) - model[0]) / model[1])
+		return capped ? Math.min(vpt, model[2]) : vpt
+	}
+
+	/**
+	 * Fits log(cost) = c + k * log(vpt) on the runs that recorded both.
+	 * With a single worst case VPT in the history (or a fit where cost
+	 * does not grow with the VPT) the cost is taken to be proportional to
+	 * the VPT, using the most expensive run.
+	 *
+	 * @return {c, k, the largest worst case VPT measured}, or null if
+	 *         there are no measurements
+	 */
+	private static double[] fit(List<Map<String, Long>> history, String metric) {
+		List<double[]> points = new ArrayList<>()
+		for (Map<String, Long> run : history) {
+			Long vpt = run.get(WORST_CASE_VPT)
+			Long cost = run.get(metric)
+			if (vpt != null && vpt > 0L && cost != null && cost > 0L)
+				points.add([Math.log(vpt as double), Math.log(cost as double), vpt as double] as double[])
+		}
+		if (points.isEmpty())
+			return null
+
+		int n = points.size()
+		double sumX = 0.0d, sumY = 0.0d, maxVPT = 0.0d
+		for (double[] p : points) {
+			sumX += p[0]
+			sumY += p[1]
+			maxVPT = Math.max(maxVPT, p[2])
+		}
+		double meanX = sumX / n
+		double meanY = sumY / n
+		double sxx = 0.0d, sxy = 0.0d
+		for (double[] p : points) {
+			sxx += (p[0] - meanX) * (p[0] - meanX)
+			sxy += (p[0] - meanX) * (p[1] - meanY)
+		}
+		if (sxx > 0.0d && sxy > 0.0d) {
+			double k = sxy / sxx
+			return [meanY - k * meanX, k, maxVPT] as double[]
+		}
+		double c = -Double.MAX_VALUE
+		for (double[] p : points)
+			c = Math.max(c, p[1] - p[0])
+		return [c, 1.0d, maxVPT] as double[]
+	}
+}
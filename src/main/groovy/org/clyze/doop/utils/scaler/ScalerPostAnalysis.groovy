@@ -152,14 +152,45 @@ class ScalerPostAnalysis {
 		}
 	}
 
-	void run(File factsDir) throws FileNotFoundException {
+	long getTST() {
+		return tst
+	}
+
+	void setTST(long tst) {
+		this.tst = tst
+	}
+
+	/**
+	 * Returns the largest TST whose selection is expected to have at most
+	 * the given total worst case VPT. Methods of java.util are always
+	 * analyzed with the most precise analysis, so their VPT is added to
+	 * the one that the TST bounds.
+	 *
+	 * @param worstCaseVPT  the total worst case VPT to stay within
+	 * @return              the TST, or 0 if even the java.util methods exceed it
+	 */
+	long tstFor(long worstCaseVPT) {
+		long specialVPT = 0L
+		for (String method : reachableMethods) {
+			if (isSpecialMethod(method))
+				specialVPT += getFactor(method, contextCounters[0])
+		}
+		return Math.max(0L, worstCaseVPT - specialVPT)
+	}
+
+	/**
+	 * Selects context-sensitivity for the TST and writes it to the facts.
+	 *
+	 * @return the total worst case VPT of the selection
+	 */
+	long run(File factsDir) throws FileNotFoundException {
 		Timer scalerTimer = new Timer("Scaler Timer")
 		System.out.println(ANSIColor.BOLD + ANSIColor.YELLOW + "Scaler starts ..." + ANSIColor.RESET)
 		scalerTimer.start()
 		File scalerOutput = new File(factsDir, "SpecialContextSensitivityMethod.facts")
 		File insensitiveVariableOutput = new File(factsDir, "InsensitiveVar.facts")
 
-		selectContexts(scalerOutput)
+		long worstCaseVPT = selectContexts(scalerOutput)
 
 		scalerTimer.stop()
 		System.out.print(ANSIColor.BOLD + ANSIColor.YELLOW +
@@ -167,9 +198,10 @@ class ScalerPostAnalysis {
 		System.out.print(ANSIColor.BOLD + ANSIColor.GREEN)
 		System.out.printf("%.2fs", scalerTimer.inSecond())
 		System.out.println(ANSIColor.RESET)
+		return worstCaseVPT
 	}
 
-	void selectContexts(File scalerOutput) throws FileNotFoundException {
+	long selectContexts(File scalerOutput) throws FileNotFoundException {
 		results = new ArrayList<>()
 		System.out.println("Given TST value: " + ANSIColor.BOLD + ANSIColor.GREEN + tst + ANSIColor.RESET)
 		long st = binarySearch(tst)
@@ -201,6 +233,7 @@ class ScalerPostAnalysis {
 
 		writer.close()
 		System.out.println("Total worst case VPT: " + worstCaseVPT + " for " + numberOfMethods + " methods")
+		return worstCaseVPT
 	}
 
 	/**
@@ -2,6 +2,13 @@ package org.clyze.doop.ptatoolkit;
 
 public class Global {
 
+    /**
+     * The settings below are shared by the whole JVM, so runs of the tools
+     * from analyses that share it (e.g. in the Doop daemon) take turns,
+     * holding this lock while they read the settings and run.
+     */
+    public static final Object RUN_LOCK = new Object();
+
     private static boolean debug = false;
 
     public static void setDebug(boolean debug) {
@@ -4,8 +4,15 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.Iterator;
 import java.util.List;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
 
 /**
  * A class that represents the database of Doop.
@@ -27,12 +34,55 @@ public class DataBase {
 		return new QueryResultItr(query, resultFile);
 	}
 
+	/**
+	 * Pass the results of the given query to a consumer. Faster than
+	 * {@link #query(Query)} for large results: the result file is memory
+	 * mapped and parsed in parallel, and columns are only decoded when
+	 * needed (see {@link Relation}). The tuple object is reused, it is only
+	 * valid during the call.
+	 */
+	public void scan(Query query, Consumer<Relation.Tuple> action) {
+		try {
+			Relation.scan(getResultFile(query), action);
+		} catch (IOException e) {
+			throw new RuntimeException("Query " + query + " fails, " +
+					"caused by " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Return a checksum of the results of the given queries (their names,
+	 * sizes and contents), to tell whether data derived from them is stale.
+	 */
+	public long checksum(Query... queries) {
+		CRC32 crc = new CRC32();
+		for (Query query : queries) {
+			File file = getResultFile(query);
+			crc.update(query.name().getBytes(StandardCharsets.UTF_8));
+			crc.update(Long.toString(file.length()).getBytes(StandardCharsets.UTF_8));
+			if (!file.isFile())
+				continue;
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				for (long pos = 0; pos < size; pos += Relation.CHUNK_SIZE) {
+					MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,
+							pos, Math.min(Relation.CHUNK_SIZE, size - pos));
+					crc.update(buf);
+				}
+			} catch (IOException e) {
+				throw new RuntimeException("Query " + query + " fails, " +
+						"caused by " + e.getMessage());
+			}
+		}
+		return crc.getValue();
+	}
+
 	/**
 	 * Get the result file according to given query.
 	 * @param query
 	 * @return
 	 */
-	private File getResultFile(Query query) {
+	File getResultFile(Query query) {
 		String queryName = query.name();
 		return new File(getResultFilePath(queryName));
 	}
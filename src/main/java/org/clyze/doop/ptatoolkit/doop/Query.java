@@ -6,7 +6,7 @@ package org.clyze.doop.ptatoolkit.doop;
 public enum Query {
 
     // points-to set
-    Stats_Simple_InsensVarPointsTo,
+    VAR_POINTS_TO,
 
     // field points-to graph
 	OBJ,
@@ -11,9 +11,10 @@ import java.util.NoSuchElementException;
 
 /**
  * Iterator on the result file of given query. Each "next" element
- * corresponds to a line of the result file.
+ * corresponds to a line of the result file. The file is closed when the
+ * last line has been read (or by close(), if iteration stops early).
  */
-class QueryResultItr implements Iterator<List<String>> {
+class QueryResultItr implements Iterator<List<String>>, AutoCloseable {
 
     private static final String SEP = "\t";
 
@@ -26,7 +27,10 @@ class QueryResultItr implements Iterator<List<String>> {
         try {
             reader = new BufferedReader(new FileReader(resultFile));
             nextLine = reader.readLine();
+            if (nextLine == null)
+                close();
         } catch (IOException e) {
+            close();
             throw new RuntimeException("Query " + query + " fails, " +
                     "caused by " + e.getMessage());
         }
@@ -43,7 +47,10 @@ class QueryResultItr implements Iterator<List<String>> {
             String line = nextLine;
             try {
                 nextLine = reader.readLine();
+                if (nextLine == null)
+                    close();
             } catch (IOException e) {
+                close();
                 throw new RuntimeException("Query " + query + " fails, " +
                         "caused by " + e.getMessage());
             }
@@ -54,17 +61,13 @@ class QueryResultItr implements Iterator<List<String>> {
     }
 
     @Override
-    protected void finalize() throws Throwable {
-        try {
-            if(reader != null) {
-                try {
-                    reader.close();
-                } catch (Exception ignored) {
-                }
+    public void close() {
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
             }
             reader = null;
-        } finally {
-            super.finalize();
         }
     }
 
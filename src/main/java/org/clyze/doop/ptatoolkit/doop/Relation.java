@@ -0,0 +1,286 @@
+package org.clyze.doop.ptatoolkit.doop;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * A tab-separated relation of the Doop database, read through a memory
+ * mapping. The file is split into chunks at line boundaries; the lines and
+ * columns of the chunks are located in parallel, while the tuples are
+ * passed to the consumer in file order, on the calling thread.
+ *
+ * Tuples are views of the mapped file: columns are byte slices that are
+ * only decoded to strings on demand, and symbols can be interned (by
+ * their bytes) in a {@link SymbolTable}. As in the old line reader, every
+ * line is trimmed before being split at tabs.
+ */
+public final class Relation implements AutoCloseable {
+
+    /** The default (approximate) size of the chunks that are parsed in parallel. */
+    static final int CHUNK_SIZE = 16 << 20;
+
+    private final File file;
+    private final FileChannel channel;
+    private final int chunkSize;
+
+    public Relation(File file) throws IOException {
+        this(file, CHUNK_SIZE);
+    }
+
+    /**
+     * @param file        the relation file
+     * @param chunkSize   the (approximate) size of the chunks that are
+     *                    parsed in parallel, in bytes
+     */
+    public Relation(File file, int chunkSize) throws IOException {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Chunk size must be positive: " + chunkSize);
+        this.file = file;
+        this.chunkSize = chunkSize;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+    }
+
+    /**
+     * Reads a relation file and closes it.
+     *
+     * @param file     the relation file
+     * @param action   the consumer of the tuples (the tuple object is
+     *                 reused, it is only valid during the call)
+     */
+    public static void scan(File file, Consumer<Tuple> action) throws IOException {
+        try (Relation relation = new Relation(file)) {
+            relation.forEach(action);
+        }
+    }
+
+    /**
+     * Passes every tuple of the relation to a consumer, in file order.
+     */
+    public void forEach(Consumer<Tuple> action) throws IOException {
+        List<MappedByteBuffer> chunks = chunks();
+        if (chunks.size() == 1) {
+            parse(chunks.get(0)).forEach(action);
+            return;
+        }
+        // Parse ahead as many chunks as there are workers, consume in order.
+        int ahead = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        Deque<CompletableFuture<Chunk>> pending = new ArrayDeque<>();
+        int next = 0;
+        while (next < chunks.size() || !pending.isEmpty()) {
+            while (next < chunks.size() && pending.size() <= ahead) {
+                MappedByteBuffer buf = chunks.get(next++);
+                pending.add(CompletableFuture.supplyAsync(() -> parse(buf)));
+            }
+            pending.poll().join().forEach(action);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Maps the file as chunks of about chunkSize bytes that end at line
+     * boundaries.
+     */
+    private List<MappedByteBuffer> chunks() throws IOException {
+        List<MappedByteBuffer> chunks = new ArrayList<>();
+        long size = channel.size();
+        long start = 0;
+        while (start < size) {
+            long window = chunkSize;
+            long end;
+            while (true) {
+                end = Math.min(size, start + window);
+                if (end == size)
+                    break;
+                // Cut after the last newline of the window.
+                MappedByteBuffer probe = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+                int i = (int) (end - start) - 1;
+                while (i >= 0 && probe.get(i) != '\n')
+                    i--;
+                if (i >= 0) {
+                    end = start + i + 1;
+                    break;
+                }
+                if (window >= Integer.MAX_VALUE / 2)
+                    throw new IOException("Line too long in " + file);
+                window *= 2;
+            }
+            chunks.add(channel.map(FileChannel.MapMode.READ_ONLY, start, end - start));
+            start = end;
+        }
+        return chunks;
+    }
+
+    /**
+     * Locates the lines and columns of a chunk. Every line is stored as its
+     * number of columns followed by the start and end of every column.
+     */
+    private static Chunk parse(MappedByteBuffer buf) {
+        int limit = buf.limit();
+        int[] bounds = new int[Math.max(16, limit / 8)];
+        int n = 0;
+        int pos = 0;
+        while (pos < limit) {
+            int eol = pos;
+            while (eol < limit && buf.get(eol) != '\n')
+                eol++;
+            int next = eol + 1;
+            // Trim, as String.trim() does.
+            while (pos < eol && (buf.get(pos) & 0xff) <= ' ')
+                pos++;
+            while (eol > pos && (buf.get(eol - 1) & 0xff) <= ' ')
+                eol--;
+            int countIdx = n;
+            int columns = 1;
+            if (n + 3 > bounds.length)
+                bounds = Arrays.copyOf(bounds, bounds.length * 2);
+            bounds[n + 1] = pos;
+            n += 2;
+            for (int i = pos; i < eol; i++) {
+                if (buf.get(i) == '\t') {
+                    if (n + 3 > bounds.length)
+                        bounds = Arrays.copyOf(bounds, bounds.length * 2);
+                    bounds[n++] = i;
+                    bounds[n++] = i + 1;
+                    columns++;
+                }
+            }
+            bounds[n++] = eol;
+            bounds[countIdx] = columns;
+            pos = next;
+        }
+        return new Chunk(buf, bounds, n);
+    }
+
+    private static final class Chunk {
+        private final MappedByteBuffer buf;
+        private final int[] bounds;
+        private final int length;
+
+        Chunk(MappedByteBuffer buf, int[] bounds, int length) {
+            this.buf = buf;
+            this.bounds = bounds;
+            this.length = length;
+        }
+
+        void forEach(Consumer<Tuple> action) {
+            Tuple tuple = new Tuple(buf, bounds);
+            for (int i = 0; i < length; i += 1 + 2 * bounds[i]) {
+                tuple.row = i;
+                action.accept(tuple);
+            }
+        }
+    }
+
+    /**
+     * A line of a relation. The columns are slices of the mapped file.
+     */
+    public static final class Tuple {
+        private final MappedByteBuffer buf;
+        private final int[] bounds;
+        private int row;
+
+        Tuple(MappedByteBuffer buf, int[] bounds) {
+            this.buf = buf;
+            this.bounds = bounds;
+        }
+
+        public int arity() {
+            return bounds[row];
+        }
+
+        private int start(int column) {
+            if (column < 0 || column >= bounds[row])
+                throw new IndexOutOfBoundsException("Column " + column + " of " + bounds[row]);
+            return bounds[row + 1 + 2 * column];
+        }
+
+        private int end(int column) {
+            return bounds[row + 2 + 2 * column];
+        }
+
+        /** The length of a column, in bytes. */
+        public int length(int column) {
+            return end(column) - start(column);
+        }
+
+        public byte[] bytes(int column) {
+            int start = start(column);
+            byte[] bytes = new byte[end(column) - start];
+            for (int i = 0; i < bytes.length; i++)
+                bytes[i] = buf.get(start + i);
+            return bytes;
+        }
+
+        public String get(int column) {
+            return new String(bytes(column), StandardCharsets.UTF_8);
+        }
+
+        public long getLong(int column) {
+            int start = start(column);
+            int end = end(column);
+            if (start == end)
+                throw new NumberFormatException("Empty column " + column);
+            boolean negative = buf.get(start) == '-';
+            long value = 0;
+            for (int i = negative ? start + 1 : start; i < end; i++) {
+                int digit = buf.get(i) - '0';
+                if (digit < 0 || digit > 9)
+                    throw new NumberFormatException("Not a number: " + get(column));
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
+        }
+
+        public int getInt(int column) {
+            return Math.toIntExact(getLong(column));
+        }
+
+        /** Whether a column has exactly these bytes. */
+        public boolean matches(int column, byte[] key) {
+            int start = start(column);
+            if (end(column) - start != key.length)
+                return false;
+            for (int i = 0; i < key.length; i++)
+                if (buf.get(start + i) != key[i])
+                    return false;
+            return true;
+        }
+
+        /** The hash of a column, consistent with {@link SymbolTable#hash(byte[])}. */
+        public int hash(int column) {
+            int h = 1;
+            for (int i = start(column), end = end(column); i < end; i++)
+                h = 31 * h + buf.get(i);
+            return h;
+        }
+
+        /** The columns of the tuple as strings (allocates, for compatibility). */
+        public List<String> toList() {
+            List<String> list = new ArrayList<>(arity());
+            for (int i = 0; i < arity(); i++)
+                list.add(get(i));
+            return list;
+        }
+
+        @Override
+        public String toString() {
+            return String.join("\t", toList());
+        }
+    }
+}
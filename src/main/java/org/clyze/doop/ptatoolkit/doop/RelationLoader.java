@@ -0,0 +1,190 @@
+package org.clyze.doop.ptatoolkit.doop;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.clyze.doop.ptatoolkit.doop.factory.ElementFactory;
+
+/**
+ * Loads query results of the Doop database in the background, several
+ * relations at a time, so that a consumer can join them in its own order
+ * while the rest are still being read: {@link #take(Query)} only waits for
+ * the relation it asks for. Larger relations are started first.
+ *
+ * Relations are read with {@link DataBase#scan}, and only the distinct
+ * symbols of every column are copied (as bytes); the rows are kept as
+ * symbol ids. Symbols are decoded to strings, and mapped to elements, on
+ * the consumer's thread, once per symbol and in row order, so element ids
+ * do not depend on the load order.
+ */
+public final class RelationLoader implements AutoCloseable {
+
+    private final ExecutorService executor;
+    private final Map<Query, Future<Table>> tables = new EnumMap<>(Query.class);
+
+    /**
+     * Starts loading relations.
+     *
+     * @param db        the database
+     * @param threads   the number of relations to load at the same time
+     * @param queries   the relations to load
+     */
+    public RelationLoader(DataBase db, int threads, Query... queries) {
+        AtomicInteger workers = new AtomicInteger(0);
+        this.executor = Executors.newFixedThreadPool(Math.max(1, threads), r -> {
+            Thread t = new Thread(r, "relation-loader-" + workers.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        Query[] bySize = queries.clone();
+        Arrays.sort(bySize, Comparator.comparingLong((Query q) -> db.getResultFile(q).length()).reversed());
+        for (Query query : bySize)
+            tables.put(query, executor.submit(() -> load(db, query)));
+    }
+
+    private static Table load(DataBase db, Query query) {
+        Table table = new Table(query);
+        db.scan(query, table::add);
+        table.symbolIds = null;
+        return table;
+    }
+
+    /**
+     * Returns a relation, waiting for it to be loaded. The loader forgets
+     * the relation, so that it can be collected once it has been joined.
+     */
+    public Table take(Query query) {
+        Future<Table> table = tables.remove(query);
+        if (table == null)
+            throw new IllegalArgumentException("Query " + query + " was not requested or was already taken");
+        try {
+            return table.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Query " + query + " interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            throw new RuntimeException("Query " + query + " fails, " +
+                    "caused by " + cause.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The rows of a relation, stored row by row as the ids of the symbols
+     * of every column. A table is not thread-safe: it is filled by one
+     * loader thread and then read by the thread that took it.
+     */
+    public static final class Table {
+        private final Query query;
+        private int arity = -1;
+        private int[] cells = new int[64];
+        private int length = 0;
+        /** The symbols of every column, by id. */
+        private List<List<byte[]>> symbols;
+        /** The ids of the symbols of every column (only while loading). */
+        private List<SymbolTable<Integer>> symbolIds;
+        /** The decoded symbols and the elements of every column, by id. */
+        private String[][] strings;
+        private Object[][] elements;
+
+        Table(Query query) {
+            this.query = query;
+        }
+
+        private void add(Relation.Tuple t) {
+            if (arity < 0) {
+                arity = t.arity();
+                symbols = new ArrayList<>(arity);
+                symbolIds = new ArrayList<>(arity);
+                for (int i = 0; i < arity; i++) {
+                    symbols.add(new ArrayList<>());
+                    symbolIds.add(new SymbolTable<>());
+                }
+                strings = new String[arity][];
+                elements = new Object[arity][];
+            } else if (t.arity() != arity)
+                throw new RuntimeException("Query " + query + " fails, " +
+                        "caused by rows with " + arity + " and " + t.arity() + " columns");
+            for (int i = 0; i < arity; i++) {
+                SymbolTable<Integer> ids = symbolIds.get(i);
+                Integer id = ids.get(t, i);
+                if (id == null) {
+                    List<byte[]> columnSymbols = symbols.get(i);
+                    id = columnSymbols.size();
+                    byte[] symbol = t.bytes(i);
+                    columnSymbols.add(symbol);
+                    ids.put(symbol, id);
+                }
+                if (length == cells.length)
+                    cells = Arrays.copyOf(cells, cells.length * 2);
+                cells[length++] = id;
+            }
+        }
+
+        public int size() {
+            return arity <= 0 ? 0 : length / arity;
+        }
+
+        /** The id of the symbol of a column, among the symbols of the column. */
+        public int symbol(int row, int column) {
+            if (column < 0 || column >= arity)
+                throw new IndexOutOfBoundsException("Column " + column + " of " + query);
+            return cells[row * arity + column];
+        }
+
+        /** The bytes of a column (shared, they must not be modified). */
+        public byte[] bytes(int row, int column) {
+            return symbols.get(column).get(symbol(row, column));
+        }
+
+        public String get(int row, int column) {
+            int id = symbol(row, column);
+            if (strings[column] == null)
+                strings[column] = new String[symbols.get(column).size()];
+            String s = strings[column][id];
+            if (s == null) {
+                s = new String(symbols.get(column).get(id), StandardCharsets.UTF_8);
+                strings[column][id] = s;
+            }
+            return s;
+        }
+
+        public int getInt(int row, int column) {
+            return Integer.parseInt(get(row, column));
+        }
+
+        /**
+         * Returns the element named by a column. The factory is only asked
+         * the first time a symbol is seen, so every column must always be
+         * read with the same factory.
+         */
+        @SuppressWarnings("unchecked")
+        public <T> T get(int row, int column, ElementFactory<T> factory) {
+            int id = symbol(row, column);
+            if (elements[column] == null)
+                elements[column] = new Object[symbols.get(column).size()];
+            Object item = elements[column][id];
+            if (item == null) {
+                item = factory.get(get(row, column));
+                elements[column][id] = item;
+            }
+            return (T) item;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package org.clyze.doop.ptatoolkit.doop;
+
+import java.util.Arrays;
+
+/**
+ * A hash table keyed by the bytes of symbols, so that columns of a
+ * {@link Relation} can be looked up without decoding them to strings.
+ * Keys are only copied when a new symbol is added.
+ *
+ * @param <T>   the type of the values
+ */
+public final class SymbolTable<T> {
+
+    private byte[][] keys = new byte[64][];
+    private int[] hashes = new int[64];
+    private Object[] values = new Object[64];
+    private int size = 0;
+
+    public static int hash(byte[] key) {
+        int h = 1;
+        for (byte b : key)
+            h = 31 * h + b;
+        return h;
+    }
+
+    private static int spread(int h) {
+        return h ^ (h >>> 16);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(Relation.Tuple tuple, int column) {
+        int hash = tuple.hash(column);
+        int mask = keys.length - 1;
+        for (int i = spread(hash) & mask; keys[i] != null; i = (i + 1) & mask)
+            if (hashes[i] == hash && tuple.matches(column, keys[i]))
+                return (T) values[i];
+        return null;
+    }
+
+    /**
+     * Maps the symbol of a column to a value, if it has no value yet.
+     */
+    public void put(Relation.Tuple tuple, int column, T value) {
+        if (get(tuple, column) == null)
+            insert(tuple.bytes(column), tuple.hash(column), value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(byte[] key) {
+        int hash = hash(key);
+        int mask = keys.length - 1;
+        for (int i = spread(hash) & mask; keys[i] != null; i = (i + 1) & mask)
+            if (hashes[i] == hash && Arrays.equals(keys[i], key))
+                return (T) values[i];
+        return null;
+    }
+
+    /**
+     * Maps a symbol to a value, if it has no value yet. The key is not
+     * copied.
+     */
+    public void put(byte[] key, T value) {
+        if (get(key) == null)
+            insert(key, hash(key), value);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private void insert(byte[] key, int hash, Object value) {
+        if (2 * (size + 1) > keys.length)
+            resize();
+        int mask = keys.length - 1;
+        int i = spread(hash) & mask;
+        while (keys[i] != null)
+            i = (i + 1) & mask;
+        keys[i] = key;
+        hashes[i] = hash;
+        values[i] = value;
+        size++;
+    }
+
+    private void resize() {
+        byte[][] oldKeys = keys;
+        int[] oldHashes = hashes;
+        Object[] oldValues = values;
+        keys = new byte[oldKeys.length * 2][];
+        hashes = new int[oldKeys.length * 2];
+        values = new Object[oldKeys.length * 2];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++)
+            if (oldKeys[i] != null)
+                insert(oldKeys[i], oldHashes[i], oldValues[i]);
+    }
+}
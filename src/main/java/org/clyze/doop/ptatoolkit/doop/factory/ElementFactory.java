@@ -3,10 +3,13 @@ package org.clyze.doop.ptatoolkit.doop.factory;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import org.clyze.doop.ptatoolkit.doop.Relation;
+import org.clyze.doop.ptatoolkit.doop.SymbolTable;
 
 public abstract class ElementFactory<T> {
 
 	private Map<String, T> name2elem = new HashMap<>();
+	private final SymbolTable<T> bytes2elem = new SymbolTable<>();
 	protected int count = 0;
 	
 	public T get(String name) {
@@ -18,6 +21,19 @@ public abstract class ElementFactory<T> {
 		return item;
 	}
 
+	/**
+	 * Returns the element named by a column of a relation tuple. The
+	 * column is only decoded the first time its symbol is seen.
+	 */
+	public T get(Relation.Tuple tuple, int column) {
+		T item = bytes2elem.get(tuple, column);
+		if (item == null) {
+			item = get(tuple.get(column));
+			bytes2elem.put(tuple, column, item);
+		}
+		return item;
+	}
+
 	public boolean has(String name) {
 		return name2elem.containsKey(name);
 	}
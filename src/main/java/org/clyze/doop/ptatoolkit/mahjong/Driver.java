@@ -0,0 +1,70 @@
+package org.clyze.doop.ptatoolkit.mahjong;
+
+import org.clyze.doop.ptatoolkit.Global;
+import org.clyze.doop.ptatoolkit.mahjong.analysis.Mahjong;
+import org.clyze.doop.ptatoolkit.mahjong.graph.FieldPointsToGraph;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+import org.clyze.doop.ptatoolkit.util.ANSIColor;
+import org.clyze.doop.ptatoolkit.util.Timer;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+public class Driver {
+
+    private static final char EOL = '\n';
+
+    public static SortedMap<String, String> runMahjong(File factsDir, File database) throws FileNotFoundException {
+        synchronized (Global.RUN_LOCK) {
+            int threads = Global.getThread() != Global.UNDEFINE ?
+                    Global.getThread() : Runtime.getRuntime().availableProcessors();
+            return runMahjong(factsDir, database, threads);
+        }
+    }
+
+    /**
+     * Runs Mahjong on the results of a context-insensitive pre-analysis
+     * (run with --Xscaler-pre) and writes the merged objects with their
+     * representatives to MahjongHeapRepresentative.facts in factsDir,
+     * where the analysis reads them (with MAHJONG).
+     *
+     * @param threads  the number of types to handle at the same time
+     * @return the representatives of the merged objects, by object
+     */
+    public static SortedMap<String, String> runMahjong(File factsDir, File database, int threads) throws FileNotFoundException {
+        synchronized (Global.RUN_LOCK) {
+            DoopPointsToAnalysis pta = new DoopPointsToAnalysis(database, "mahjong");
+
+            Timer mahjongTimer = new Timer("Mahjong Timer");
+            System.out.println(ANSIColor.BOLD + ANSIColor.YELLOW + "Mahjong starts ..." + ANSIColor.RESET);
+            mahjongTimer.start();
+            FieldPointsToGraph fpg = new FieldPointsToGraph(pta);
+            Map<Obj, Obj> representatives = new Mahjong(fpg).merge(threads);
+            mahjongTimer.stop();
+            System.out.print(ANSIColor.BOLD + ANSIColor.YELLOW +
+                    "Mahjong finishes, analysis time: " + ANSIColor.RESET);
+            System.out.print(ANSIColor.BOLD + ANSIColor.GREEN);
+            System.out.printf("%.2fs", mahjongTimer.inSecond());
+            System.out.println(ANSIColor.RESET);
+
+            SortedMap<String, String> merged = new TreeMap<>();
+            representatives.forEach((obj, rep) -> merged.put(obj.toString(), rep.toString()));
+            File mahjongOutput = new File(factsDir, "MahjongHeapRepresentative.facts");
+            System.out.printf("Writing Mahjong heap representatives to %s...\n", mahjongOutput.getPath());
+            PrintWriter writer = new PrintWriter(mahjongOutput);
+            merged.forEach((obj, rep) -> {
+                writer.write(obj);
+                writer.write('\t');
+                writer.write(rep);
+                writer.write(EOL);
+            });
+            writer.close();
+            return merged;
+        }
+    }
+}
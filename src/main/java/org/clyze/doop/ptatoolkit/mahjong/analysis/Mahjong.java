@@ -0,0 +1,92 @@
+package org.clyze.doop.ptatoolkit.mahjong.analysis;
+
+import org.clyze.doop.ptatoolkit.mahjong.graph.FieldPointsToGraph;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+import org.clyze.doop.ptatoolkit.util.ANSIColor;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Builds the Mahjong heap abstraction of a context-insensitive
+ * pre-analysis: the objects allocated in reachable methods are split into
+ * classes of type-consistent objects (see {@link TypeConsistencyChecker}),
+ * and every class is merged into one object, its representative. Merged
+ * objects keep the types of their fields, so casts and virtual calls are
+ * resolved as precisely as without merging. Objects of different types
+ * are never type-consistent, so the types are handled in parallel.
+ */
+public class Mahjong {
+
+    private final FieldPointsToGraph fpg;
+
+    public Mahjong(FieldPointsToGraph fpg) {
+        this.fpg = fpg;
+    }
+
+    /**
+     * @param threads  the number of types to handle at the same time
+     * @return the representative of every merged object (representatives
+     * and objects that are not merged are left out)
+     */
+    public Map<Obj, Obj> merge(int threads) {
+        Map<Integer, List<Integer>> typeObjects = new HashMap<>();
+        for (int obj : fpg.allocatedObjects()) {
+            typeObjects.computeIfAbsent(fpg.typeOf(obj), t -> new ArrayList<>()).add(obj);
+        }
+        System.out.println("Merging " + fpg.allocatedObjects().length + " objects of " +
+                typeObjects.size() + " types ...");
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        Map<Obj, Obj> representatives;
+        try {
+            representatives = pool.submit(() -> typeObjects.values().parallelStream()
+                    .filter(objs -> objs.size() > 1)
+                    .flatMap(objs -> mergeTypeConsistent(objs).entrySet().stream())
+                    .collect(Collectors.toMap(e -> fpg.objectOf(e.getKey()),
+                            e -> fpg.objectOf(e.getValue())))).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Mahjong was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Mahjong fails, caused by " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        System.out.println("#Objects after merging: " +
+                ANSIColor.BOLD + ANSIColor.GREEN +
+                (fpg.allocatedObjects().length - representatives.size()) + ANSIColor.RESET +
+                " (" + representatives.size() + " merged)");
+        return representatives;
+    }
+
+    /**
+     * Splits objects of the same type into classes. Type-consistency is an
+     * equivalence, so an object only has to be compared with the first
+     * object (the representative) of every class.
+     *
+     * @param objs  objects, in the order of their names
+     * @return the representative of every object that is not one
+     */
+    private Map<Integer, Integer> mergeTypeConsistent(List<Integer> objs) {
+        TypeConsistencyChecker checker = new TypeConsistencyChecker(fpg);
+        List<Integer> reps = new ArrayList<>();
+        Map<Integer, Integer> merged = new HashMap<>();
+        for (int obj : objs) {
+            Integer rep = null;
+            for (int r : reps) {
+                if (checker.isConsistent(r, obj)) {
+                    rep = r;
+                    break;
+                }
+            }
+            if (rep == null) {
+                reps.add(obj);
+            } else {
+                merged.put(obj, rep);
+            }
+        }
+        return merged;
+    }
+}
@@ -0,0 +1,182 @@
+package org.clyze.doop.ptatoolkit.mahjong.analysis;
+
+import org.clyze.doop.ptatoolkit.mahjong.graph.FieldPointsToGraph;
+
+import java.util.*;
+
+/**
+ * Decides whether two objects are type-consistent: the types of the
+ * objects reachable through every path of fields are the same. Every
+ * object is seen as the automaton of its field points-to graph (objects
+ * are states, fields are transitions, types are outputs); the automata
+ * are made deterministic on the fly (a state is a set of objects, whose
+ * output is the set of their types) and compared by the algorithm of
+ * Hopcroft and Karp. An object that does not have a field that another
+ * object of the same state has points to null through it.
+ *
+ * The deterministic states and their transitions are kept between
+ * checks. A checker is not thread-safe.
+ */
+class TypeConsistencyChecker {
+
+    private final FieldPointsToGraph fpg;
+    private final Map<StateKey, Integer> stateNumbers = new HashMap<>();
+    private final List<int[]> stateObjects = new ArrayList<>();
+    private final List<int[]> stateTypes = new ArrayList<>();
+    private final List<int[]> stateFields = new ArrayList<>();
+    /** The transitions of the states, (state << 32 | field) to state. */
+    private final Map<Long, Integer> transitions = new HashMap<>();
+
+    TypeConsistencyChecker(FieldPointsToGraph fpg) {
+        this.fpg = fpg;
+    }
+
+    boolean isConsistent(int obj1, int obj2) {
+        if (fpg.typeOf(obj1) != fpg.typeOf(obj2)) {
+            return false;
+        }
+        Map<Integer, Integer> parents = new HashMap<>();
+        Deque<int[]> pairs = new ArrayDeque<>();
+        int s1 = stateOf(new int[]{ obj1 });
+        int s2 = stateOf(new int[]{ obj2 });
+        union(parents, s1, s2);
+        pairs.push(new int[]{ s1, s2 });
+        while (!pairs.isEmpty()) {
+            int[] pair = pairs.pop();
+            int p = pair[0], q = pair[1];
+            if (!Arrays.equals(stateTypes.get(p), stateTypes.get(q)) ||
+                    !Arrays.equals(stateFields.get(p), stateFields.get(q))) {
+                return false;
+            }
+            for (int field : stateFields.get(p)) {
+                int r1 = next(p, field);
+                int r2 = next(q, field);
+                if (find(parents, r1) != find(parents, r2)) {
+                    union(parents, r1, r2);
+                    pairs.push(new int[]{ r1, r2 });
+                }
+            }
+        }
+        return true;
+    }
+
+    private int next(int state, int field) {
+        long key = ((long) state << 32) | field;
+        Integer next = transitions.get(key);
+        if (next == null) {
+            IntList succ = new IntList();
+            for (int obj : stateObjects.get(state)) {
+                int[] pts = fpg.pointsToOf(obj, field);
+                if (pts.length == 0) {
+                    succ.add(FieldPointsToGraph.NULL);
+                }
+                succ.addAll(pts);
+            }
+            next = stateOf(succ.toSortedSet());
+            transitions.put(key, next);
+        }
+        return next;
+    }
+
+    /**
+     * @param objects  sorted objects
+     */
+    private int stateOf(int[] objects) {
+        StateKey key = new StateKey(objects);
+        Integer state = stateNumbers.get(key);
+        if (state == null) {
+            state = stateObjects.size();
+            IntList types = new IntList();
+            IntList fields = new IntList();
+            for (int obj : objects) {
+                types.add(fpg.typeOf(obj));
+                fields.addAll(fpg.fieldsOf(obj));
+            }
+            stateObjects.add(objects);
+            stateTypes.add(types.toSortedSet());
+            stateFields.add(fields.toSortedSet());
+            stateNumbers.put(key, state);
+        }
+        return state;
+    }
+
+    private static int find(Map<Integer, Integer> parents, int state) {
+        int root = state;
+        Integer parent;
+        while ((parent = parents.get(root)) != null && parent != root) {
+            root = parent;
+        }
+        // path compression
+        while (state != root) {
+            int p = parents.get(state);
+            parents.put(state, root);
+            state = p;
+        }
+        return root;
+    }
+
+    private static void union(Map<Integer, Integer> parents, int s1, int s2) {
+        int r1 = find(parents, s1);
+        int r2 = find(parents, s2);
+        if (r1 != r2) {
+            parents.put(r1, r2);
+        }
+    }
+
+    /** A growable array of ints. */
+    private static final class IntList {
+
+        private int[] elems = new int[8];
+        private int size;
+
+        void add(int e) {
+            if (size == elems.length) {
+                elems = Arrays.copyOf(elems, size * 2);
+            }
+            elems[size++] = e;
+        }
+
+        void addAll(int[] es) {
+            if (size + es.length > elems.length) {
+                elems = Arrays.copyOf(elems, Math.max(size * 2, size + es.length));
+            }
+            System.arraycopy(es, 0, elems, size, es.length);
+            size += es.length;
+        }
+
+        /** Returns the elements sorted, without duplicates. */
+        int[] toSortedSet() {
+            int[] sorted = Arrays.copyOf(elems, size);
+            Arrays.sort(sorted);
+            int n = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (n == 0 || sorted[i] != sorted[n - 1]) {
+                    sorted[n++] = sorted[i];
+                }
+            }
+            return Arrays.copyOf(sorted, n);
+        }
+    }
+
+    /** A set of objects, compared by content. */
+    private static final class StateKey {
+
+        private final int[] objects;
+        private final int hash;
+
+        StateKey(int[] objects) {
+            this.objects = objects;
+            this.hash = Arrays.hashCode(objects);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StateKey && Arrays.equals(objects, ((StateKey) o).objects);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package org.clyze.doop.ptatoolkit.mahjong.graph;
+
+import org.clyze.doop.ptatoolkit.pta.basic.Field;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+import org.clyze.doop.ptatoolkit.pta.basic.Type;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+import org.clyze.doop.ptatoolkit.util.Pair;
+
+import java.util.*;
+
+/**
+ * The field points-to graph of a (context-insensitive) points-to analysis,
+ * in primitive arrays. Objects are numbered, and number {@link #NULL}
+ * stands for the null object; every object has its fields sorted and, for
+ * every field, the sorted numbers of the objects it points to. Objects
+ * are numbered in the order of their names, so that the graph does not
+ * depend on the order of the relations.
+ */
+public class FieldPointsToGraph {
+
+    /** The number of the null object. */
+    public static final int NULL = 0;
+
+    private static final int[] NONE = new int[0];
+
+    private final List<Obj> objects = new ArrayList<>();
+    private final Map<Obj, Integer> numbers = new HashMap<>();
+    private final int[] types;
+    private final int[][] fields;
+    private final int[][][] targets;
+    /** The objects that may be merged. */
+    private final int[] allocated;
+
+    public FieldPointsToGraph(DoopPointsToAnalysis pta) {
+        objects.add(null);
+        SortedSet<Obj> sorted = new TreeSet<>(Comparator.comparing(Obj::toString));
+        sorted.addAll(pta.allObjects());
+        for (Obj obj : pta.allObjects()) {
+            for (Pair<Field, Obj> fpt : pta.fieldPointsToOf(obj)) {
+                sorted.add(fpt.getSecond());
+            }
+        }
+        for (Obj obj : sorted) {
+            numbers.put(obj, objects.size());
+            objects.add(obj);
+        }
+
+        int n = objects.size();
+        types = new int[n];
+        fields = new int[n][];
+        targets = new int[n][][];
+        fields[NULL] = NONE;
+        targets[NULL] = new int[0][];
+        Map<String, Integer> typeNumbers = new HashMap<>();
+        typeNumbers.put("null", NULL);
+        Map<Field, Integer> fieldNumbers = new HashMap<>();
+        for (int o = 1; o < n; o++) {
+            Obj obj = objects.get(o);
+            Type type = pta.typeOf(obj);
+            // An object without a type is only consistent with itself.
+            String typeName = type != null ? type.toString() : "<untyped " + obj + ">";
+            types[o] = typeNumbers.computeIfAbsent(typeName, t -> typeNumbers.size());
+
+            SortedMap<Integer, SortedSet<Integer>> fpts = new TreeMap<>();
+            for (Pair<Field, Obj> fpt : pta.fieldPointsToOf(obj)) {
+                int field = fieldNumbers.computeIfAbsent(fpt.getFirst(), f -> fieldNumbers.size());
+                fpts.computeIfAbsent(field, f -> new TreeSet<>()).add(numbers.get(fpt.getSecond()));
+            }
+            fields[o] = new int[fpts.size()];
+            targets[o] = new int[fpts.size()][];
+            int i = 0;
+            for (Map.Entry<Integer, SortedSet<Integer>> e : fpts.entrySet()) {
+                fields[o][i] = e.getKey();
+                targets[o][i] = e.getValue().stream().mapToInt(Integer::intValue).toArray();
+                i++;
+            }
+        }
+        allocated = pta.allObjects().stream()
+                .mapToInt(numbers::get)
+                .sorted()
+                .toArray();
+    }
+
+    public int objectCount() {
+        return objects.size();
+    }
+
+    public Obj objectOf(int obj) {
+        return objects.get(obj);
+    }
+
+    /**
+     * @return the numbers of the objects allocated in reachable methods,
+     * in the order of their names.
+     */
+    public int[] allocatedObjects() {
+        return allocated;
+    }
+
+    public int typeOf(int obj) {
+        return types[obj];
+    }
+
+    /**
+     * @return the sorted fields of an object that point to some object
+     */
+    public int[] fieldsOf(int obj) {
+        return fields[obj];
+    }
+
+    /**
+     * @param obj    an object
+     * @param field  a field of the object
+     * @return the sorted objects that the field points to, or an empty
+     * array if the object does not have the field
+     */
+    public int[] pointsToOf(int obj, int field) {
+        int i = Arrays.binarySearch(fields[obj], field);
+        return i >= 0 ? targets[obj][i] : NONE;
+    }
+}
@@ -2,125 +2,197 @@ package org.clyze.doop.ptatoolkit.scaler;
 
 import org.clyze.doop.ptatoolkit.Global;
 import org.clyze.doop.ptatoolkit.pta.basic.Method;
-import org.clyze.doop.ptatoolkit.pta.basic.Type;
-import org.clyze.doop.ptatoolkit.scaler.analysis.ContextComputer;
 import org.clyze.doop.ptatoolkit.scaler.analysis.Scaler;
+import org.clyze.doop.ptatoolkit.scaler.analysis.ScalerModel;
+import org.clyze.doop.ptatoolkit.scaler.analysis.ScalerRank;
 import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
-import org.clyze.doop.ptatoolkit.scaler.pta.PointsToAnalysis;
 import org.clyze.doop.ptatoolkit.util.ANSIColor;
 import org.clyze.doop.ptatoolkit.util.Timer;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.*;
+import java.util.function.BiFunction;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Driver {
 
     private static final char SEP = '\t';
     private static final char EOL = '\n';
+    /** The snapshot of the Scaler model, in the pre-analysis database. */
+    private static final String SNAPSHOT = "ScalerModel.snapshot";
+    /** The snapshot of the ScalerRank model (with the method graph). */
+    private static final String RANK_SNAPSHOT = "ScalerRankModel.snapshot";
 
 
     public static void runScaler(File factsDir, File database) throws FileNotFoundException {
-        DoopPointsToAnalysis pta = new DoopPointsToAnalysis(database, "scaler");
-        if (Global.isDebug()) {
-            System.out.printf("%d objects in (pre) points-to analysis.\n",
-                    pta.allObjects().size());
+        synchronized (Global.RUN_LOCK) {
+            List<Long> tsts = Global.getTST() != Global.UNDEFINE
+                    ? Collections.singletonList((long) Global.getTST())
+                    : Collections.emptyList();
+            runScaler(factsDir, database, tsts);
         }
+    }
+
+    /**
+     * Runs Scaler for several TST values. The pre-analysis is read and the
+     * contexts are computed once; only the ST search and the selection are
+     * repeated for every TST.
+     *
+     * With no TST (the default one is used) or a single one, the selection
+     * is written to SpecialContextSensitivityMethod.facts in factsDir. With
+     * more, every selection is written to its own directory tst-TST under
+     * factsDir, and the TST, selected ST and predicted total accumulative
+     * points-to size of every selection are listed in ScalerSweep.csv, so
+     * that the main analysis can be run with any of them.
+     *
+     * The Scaler model (the contexts of every method) is saved in the
+     * database and restored by later runs, as long as the relations it
+     * was built from have not changed.
+     */
+    public static List<Scaler.Selection> runScaler(File factsDir, File database, List<Long> tsts) throws FileNotFoundException {
+        return run("Scaler", "scaler", SNAPSHOT, factsDir, database, tsts, Scaler::new);
+    }
 
-        Timer scalerTimer = new Timer("Scaler Timer");
-        System.out.println(ANSIColor.BOLD + ANSIColor.YELLOW + "Scaler starts ..." + ANSIColor.RESET);
-        scalerTimer.start();
-        File scalerOutput = new File(factsDir, "SpecialContextSensitivityMethod.facts");
+    /**
+     * Runs ScalerRank, which weighs the cost of every method by its rank
+     * in the graph of relation Method_Neighbor of the pre-analysis (see
+     * {@link ScalerRank}), like {@link #runScaler(File, File, List)}.
+     */
+    public static List<Scaler.Selection> runScalerRank(File factsDir, File database, List<Long> tsts) throws FileNotFoundException {
+        return run("Scaler Rank", "scalerRank", RANK_SNAPSHOT, factsDir, database, tsts, ScalerRank::new);
+    }
 
-        Scaler scaler = new Scaler(pta, scalerOutput);
+    private static List<Scaler.Selection> run(String name, String option, String snapshotName,
+                                              File factsDir, File database, List<Long> tsts,
+                                              BiFunction<ScalerModel, File, Scaler> newScaler) throws FileNotFoundException {
+        synchronized (Global.RUN_LOCK) {
+            File snapshot = new File(database, snapshotName);
+            long key = DoopPointsToAnalysis.checksum(database, option);
+            ScalerModel model = restore(snapshot, key);
+            DoopPointsToAnalysis pta = null;
+            if (model == null) {
+                pta = new DoopPointsToAnalysis(database, option);
+                if (Global.isDebug()) {
+                    System.out.printf("%d objects in (pre) points-to analysis.\n",
+                            pta.allObjects().size());
+                }
+            }
 
-        if (Global.getTST() != Global.UNDEFINE) {
-            scaler.setTST(Global.getTST());
-        }
-        Map<Method, String> scalerResults = scaler.selectContext();
-        scalerTimer.stop();
-        System.out.print(ANSIColor.BOLD + ANSIColor.YELLOW +
-                "Scaler finishes, analysis time: " + ANSIColor.RESET);
-        System.out.print(ANSIColor.BOLD + ANSIColor.GREEN);
-        System.out.printf("%.2fs", scalerTimer.inSecond());
-        System.out.println(ANSIColor.RESET);
-        if (Global.isDebug()) {
-            for (ContextComputer cc : scaler.getContextComputers()) {
-                outputMethodContext(pta, cc, scaler);
-                outputContextByType(pta, cc);
+            Timer scalerTimer = new Timer("Scaler Timer");
+            System.out.println(ANSIColor.BOLD + ANSIColor.YELLOW + name + " starts ..." + ANSIColor.RESET);
+            scalerTimer.start();
+            File scalerOutput = new File(factsDir, "SpecialContextSensitivityMethod.facts");
+
+            if (pta != null) {
+                model = ScalerModel.build(pta);
+                save(model, snapshot, key);
+            }
+            Scaler scaler = newScaler.apply(model, scalerOutput);
+
+            List<Scaler.Selection> selections = new ArrayList<>();
+            if (tsts.isEmpty()) {
+                selections.add(scaler.selectContext(scaler.getTST(), scalerOutput));
+            } else if (tsts.size() == 1) {
+                scaler.setTST(tsts.get(0));
+                selections.add(scaler.selectContext(scaler.getTST(), scalerOutput));
+            } else {
+                for (long tst : tsts) {
+                    File dir = new File(factsDir, "tst-" + tst);
+                    if (!dir.isDirectory() && !dir.mkdirs())
+                        throw new FileNotFoundException("Cannot create " + dir);
+                    selections.add(scaler.selectContext(tst, new File(dir, scalerOutput.getName())));
+                }
+                writeSweep(selections, new File(factsDir, "ScalerSweep.csv"));
             }
+            scalerTimer.stop();
+            System.out.print(ANSIColor.BOLD + ANSIColor.YELLOW +
+                    name + " finishes, analysis time: " + ANSIColor.RESET);
+            System.out.print(ANSIColor.BOLD + ANSIColor.GREEN);
+            System.out.printf("%.2fs", scalerTimer.inSecond());
+            System.out.println(ANSIColor.RESET);
+            if (Global.isDebug()) {
+                for (int analysis = 0; analysis < scaler.getModel().analysisCount() - 1; analysis++) {
+                    outputMethodContext(scaler.getModel(), analysis);
+                    outputContextByType(scaler.getModel(), analysis);
+                }
+            }
+
+            System.out.printf("Writing " + name + " method context sensitivities to %s...\n",
+                    tsts.size() > 1 ? factsDir.getPath() : scalerOutput.getPath());
+
+            //writeScalerResults(scalerResults, scalerOutput);
+            return selections;
         }
+    }
 
-        System.out.printf("Writing Scaler method context sensitivities to %s...\n",
-                scalerOutput.getPath());
+    private static ScalerModel restore(File snapshot, long key) {
+        try {
+            ScalerModel model = ScalerModel.read(snapshot, key);
+            if (model != null) {
+                System.out.printf("Restored Scaler model from %s\n", snapshot.getPath());
+            }
+            return model;
+        } catch (IOException e) {
+            System.out.printf("Ignoring Scaler model snapshot %s: %s\n", snapshot.getPath(), e.getMessage());
+            return null;
+        }
+    }
 
-        //writeScalerResults(scalerResults, scalerOutput);
+    private static void save(ScalerModel model, File snapshot, long key) {
+        try {
+            model.write(snapshot, key);
+        } catch (IOException e) {
+            System.out.printf("Cannot write Scaler model snapshot %s: %s\n", snapshot.getPath(), e.getMessage());
+        }
     }
 
-//    public static void runScalerRank(File factsDir, File database) throws FileNotFoundException {
-//        PointsToAnalysis pta = new DoopPointsToAnalysis(database, "scalerRank");
-//        if (Global.isDebug()) {
-//            System.out.printf("%d objects in (pre) points-to analysis.\n",
-//                    pta.allObjects().size());
-//        }
-//
-//        Timer scalerTimer = new Timer("Scaler Timer");
-//        System.out.println(ANSIColor.BOLD + ANSIColor.YELLOW + "Scaler Rank starts ..." + ANSIColor.RESET);
-//        scalerTimer.start();
-//        //Scaler scalerRank = new ScalerRank(pta);
-//
-//        scalerTimer.stop();
-//        System.out.print(ANSIColor.BOLD + ANSIColor.YELLOW +
-//                "Scaler finishes, analysis time: " + ANSIColor.RESET);
-//        System.out.print(ANSIColor.BOLD + ANSIColor.GREEN);
-//        System.out.printf("%.2fs", scalerTimer.inSecond());
-//        System.out.println(ANSIColor.RESET);
-//
-//
-//        //Map<Method, String> scalerResults = scalerRank.selectContext();
-//
-//        File scalerOutput = new File(factsDir, "SpecialContextSensitivityMethod.facts");
-//        System.out.printf("Writing Scaler method context sensitivities to %s...\n",
-//                scalerOutput.getPath());
-//        writeScalerResults(scalerResults, scalerOutput);
-//    }
-
-    private static void outputMethodContext(PointsToAnalysis pta, ContextComputer cc, Scaler scaler) {
-        System.out.println("Method context, analysis: " + cc.getAnalysisName());
-        pta.reachableMethods().stream()
-                .sorted((m1, m2) -> Long.compare(cc.contextNumberOf(m2), cc.contextNumberOf(m1)))
+    private static void outputMethodContext(ScalerModel model, int analysis) {
+        System.out.println("Method context, analysis: " + model.analysisName(analysis));
+        IntStream.range(0, model.methodCount()).boxed()
+                .sorted((m1, m2) -> Long.compare(model.contextNumberOf(analysis, m2), model.contextNumberOf(analysis, m1)))
                 .forEach(m -> {
-                    System.out.printf("%s\t%ld\tcontexts\t%ld ",
-                            m.toString(), cc.contextNumberOf(m),
-                            cc.contextNumberOf(m)
-                                    * scaler.getAccumulativePTSSizeOf(m));
+                    System.out.printf("%s\t%d\tcontexts\t%d ",
+                            model.methodOf(m), model.contextNumberOf(analysis, m),
+                            model.contextNumberOf(analysis, m)
+                                    * model.accumulativePTSSizeOf(m));
                     if (Global.isListContext()) {
-                        System.out.print(cc.contextNumberOf(m));
+                        System.out.print(model.contextNumberOf(analysis, m));
                     }
                     System.out.println();
                 });
     }
 
-    private static void outputContextByType(PointsToAnalysis pta, ContextComputer cc) {
-        System.out.println("Type context, analysis: " + cc.getAnalysisName());
-        Map<Type, List<Method>> group = pta.reachableMethods().stream()
-                .collect(Collectors.groupingBy(pta::declaringTypeOf));
-        Map<Type, Long> typeContext = new HashMap<>();
-        group.forEach((type, methods) -> {
-            long contextSum = methods.stream()
-                    .mapToLong(cc::contextNumberOf)
-                    .sum();
-            typeContext.put(type, contextSum);
-        });
+    private static void outputContextByType(ScalerModel model, int analysis) {
+        System.out.println("Type context, analysis: " + model.analysisName(analysis));
+        Map<String, Long> typeContext = IntStream.range(0, model.methodCount()).boxed()
+                .collect(Collectors.groupingBy(model::declaringTypeOf,
+                        Collectors.summingLong(m -> model.contextNumberOf(analysis, m))));
         typeContext.entrySet()
                 .stream()
                 .sorted((e1, e2) -> Long.compare(e2.getValue(), e1.getValue()))
-                .forEach(e -> System.out.printf("%s: %ld contexts\n",
+                .forEach(e -> System.out.printf("%s: %d contexts\n",
                         e.getKey(), e.getValue()));
     }
 
+    private static void writeSweep(List<Scaler.Selection> selections, File outputFile) throws FileNotFoundException {
+        PrintWriter writer = new PrintWriter(outputFile);
+        for (Scaler.Selection selection : selections) {
+            writer.print(selection.getTST());
+            writer.write(SEP);
+            writer.print(selection.getST());
+            writer.write(SEP);
+            writer.print(selection.getWorstCaseVPT());
+            writer.write(SEP);
+            writer.write("tst-" + selection.getTST());
+            writer.write(EOL);
+        }
+        writer.close();
+    }
+
     private static void writeScalerResults(Map<Method, String> results, File outputFile) throws FileNotFoundException {
         PrintWriter writer = new PrintWriter(outputFile);
         String[] CS = { "context-insensitive", "1-type", "2-type", "2-object" };
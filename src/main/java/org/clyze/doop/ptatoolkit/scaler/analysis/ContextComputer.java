@@ -6,16 +6,19 @@ import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
 
 import java.io.FileNotFoundException;
 import java.io.PrintWriter;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 public abstract class ContextComputer {
 
     protected final DoopPointsToAnalysis pta;
     final ObjectAllocationGraph oag;
-    private Map<Method, Long> method2ctxNumber = new HashMap<>();
+    /** Context numbers indexed by method id, -1 if not computed. */
+    private long[] method2ctxNumber = new long[0];
     ContextComputer worstCaseContextComputer;
     PrintWriter writer = null;
 
@@ -31,21 +34,72 @@ public abstract class ContextComputer {
     }
 
     public long contextNumberOf(Method method) {
-        Long contextNumber = method2ctxNumber.get(method);
-        if (contextNumber == null) {
+        int id = method.getID();
+        if (id >= method2ctxNumber.length || method2ctxNumber[id] < 0) {
             System.out.println("Method has null context number!!!!");
             return 0;
         }
-        return contextNumber;
+        return method2ctxNumber[id];
     }
 
     public abstract String getAnalysisName();
 
     protected abstract long computeContextNumberOf(Method method);
 
+    /**
+     * Whether computeContextNumberOf() may run for several methods at the
+     * same time. Computers that cache contexts across methods or write
+     * them out are not.
+     */
+    protected boolean isThreadSafe() {
+        return false;
+    }
+
     void computeContext() {
-        for (Method method : pta.reachableMethods()) {
-            method2ctxNumber.put(method, computeContextNumberOf(method));
+        computeContext(isThreadSafe());
+    }
+
+    /**
+     * @param parallel   if true, the methods are computed in parallel (only
+     *                   for thread-safe computers)
+     */
+    void computeContext(boolean parallel) {
+        Set<Method> methods = pta.reachableMethods();
+        long[] ctxNumbers = new long[methods.stream().mapToInt(Method::getID).max().orElse(0) + 1];
+        Arrays.fill(ctxNumbers, -1L);
+        if (parallel) {
+            // Every method writes its own slot.
+            methods.parallelStream().forEach(method ->
+                    ctxNumbers[method.getID()] = computeContextNumberOf(method));
+        } else {
+            for (Method method : methods) {
+                ctxNumbers[method.getID()] = computeContextNumberOf(method);
+            }
+        }
+        method2ctxNumber = ctxNumbers;
+    }
+
+    /**
+     * Computes the contexts of several computers concurrently. A computer
+     * starts after its worst-case computer (if any) has finished, and
+     * computers that are not thread-safe (they share the element
+     * factories) run one after the other.
+     */
+    static void computeContexts(ContextComputer... computers) {
+        Map<ContextComputer, CompletableFuture<Void>> done = new IdentityHashMap<>();
+        CompletableFuture<Void> lastUnsafe = CompletableFuture.completedFuture(null);
+        for (ContextComputer cc : computers) {
+            CompletableFuture<Void> after = CompletableFuture.completedFuture(null);
+            if (cc.worstCaseContextComputer != null && done.containsKey(cc.worstCaseContextComputer))
+                after = done.get(cc.worstCaseContextComputer);
+            if (!cc.isThreadSafe())
+                after = CompletableFuture.allOf(after, lastUnsafe);
+            CompletableFuture<Void> computed = after.thenRunAsync(cc::computeContext);
+            if (!cc.isThreadSafe())
+                lastUnsafe = computed;
+            done.put(cc, computed);
         }
+        CompletableFuture<?>[] all = done.values().toArray(new CompletableFuture<?>[0]);
+        CompletableFuture.allOf(all).join();
     }
 }
@@ -2,9 +2,11 @@ package org.clyze.doop.ptatoolkit.scaler.analysis;
 
 import org.clyze.doop.ptatoolkit.scaler.pta.PointsToAnalysis;
 import org.clyze.doop.ptatoolkit.util.graph.DirectedGraph;
+import org.clyze.doop.ptatoolkit.util.graph.SCCFinder;
 import org.clyze.doop.ptatoolkit.pta.basic.Method;
 import org.clyze.doop.ptatoolkit.pta.basic.Obj;
 import java.util.*;
+import java.util.stream.Collectors;
 
 public class ObjectAllocationGraph implements DirectedGraph<Obj> {
 
@@ -33,34 +35,181 @@ public class ObjectAllocationGraph implements DirectedGraph<Obj> {
         return obj.getAttributeSet(SUCCS);
     }
 
+    /**
+     * An object allocates the objects that are allocated in the methods
+     * invoked on it, and in the static methods these (transitively) call.
+     */
     private void init() {
-        Map<Obj, Set<Method>> invokedMethods = computeInvokedMethods();
-        invokedMethods.forEach((obj, methods) -> methods.stream()
-                .map(pta::objectsAllocatedIn)
-                .flatMap(Collection::stream)
-                .forEach(o -> {
-                    obj.addToAttributeSet(SUCCS, o);
-                    o.addToAttributeSet(PREDS, obj);
-                }));
+        Map<Method, Set<Obj>> allocated = computeAllocatedObjects();
+        List<Obj> objs = new ArrayList<>(pta.allObjects());
+        List<Set<Obj>> succs = objs.parallelStream()
+                .map(obj -> {
+                    Set<Obj> objSuccs = new HashSet<>();
+                    pta.methodsInvokedOn(obj).forEach(m -> objSuccs.addAll(allocated.get(m)));
+                    return objSuccs;
+                })
+                .collect(Collectors.toList());
+        // Successor sets have no duplicates, so predecessors can be listed.
+        Map<Obj, List<Obj>> preds = new HashMap<>();
+        for (int i = 0; i < objs.size(); i++) {
+            Obj obj = objs.get(i);
+            for (Obj o : succs.get(i)) {
+                preds.computeIfAbsent(o, k -> new ArrayList<>()).add(obj);
+            }
+        }
+        for (int i = 0; i < objs.size(); i++) {
+            addToAttributeSet(objs.get(i), SUCCS, succs.get(i));
+        }
+        preds.forEach((o, objPreds) -> addToAttributeSet(o, PREDS, new HashSet<>(objPreds)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void addToAttributeSet(Obj obj, String name, Set<Obj> objs) {
+        if (objs.isEmpty()) {
+            return;
+        }
+        if (obj.hasAttribute(name)) {
+            ((Set<Obj>) obj.getAttribute(name)).addAll(objs);
+        } else {
+            obj.setAttribute(name, objs);
+        }
+    }
+
+    /**
+     * Computes, for every method invoked on an object, the objects allocated
+     * in it and in the static methods it transitively calls. The graph of
+     * static calls is condensed into strongly connected components, whose
+     * objects are propagated from callees to callers, one level of the
+     * component DAG at a time (in parallel within a level). Only the
+     * components of the methods invoked on objects and their callees get
+     * sets, and a component without allocations of its own and with a
+     * single callee component shares the set of its callee.
+     */
+    private Map<Method, Set<Obj>> computeAllocatedObjects() {
+        StaticCallGraph staticCalls = new StaticCallGraph();
+        SCCFinder<Method> sccs = new SCCFinder<>(staticCalls);
+        List<Set<Method>> components = sccs.getComponents();
+        int n = components.size();
+        // Callee components, and levels (callee components come first).
+        List<Set<Integer>> calleeComps = new ArrayList<>(n);
+        int[] level = new int[n];
+        int maxLevel = 0;
+        for (int c = 0; c < n; c++) {
+            Set<Integer> callees = new HashSet<>();
+            for (Method method : components.get(c)) {
+                for (Method callee : staticCalls.succsOf(method)) {
+                    int cc = sccs.componentOf(callee);
+                    if (cc != c) {
+                        callees.add(cc);
+                        level[c] = Math.max(level[c], level[cc] + 1);
+                    }
+                }
+            }
+            calleeComps.add(callees);
+            maxLevel = Math.max(maxLevel, level[c]);
+        }
+        boolean[] needed = new boolean[n];
+        Deque<Integer> pending = new ArrayDeque<>();
+        for (Method method : staticCalls.invokedMethods) {
+            int c = sccs.componentOf(method);
+            if (!needed[c]) {
+                needed[c] = true;
+                pending.push(c);
+            }
+        }
+        while (!pending.isEmpty()) {
+            for (int cc : calleeComps.get(pending.pop())) {
+                if (!needed[cc]) {
+                    needed[cc] = true;
+                    pending.push(cc);
+                }
+            }
+        }
+        List<List<Integer>> levels = new ArrayList<>();
+        for (int l = 0; l <= maxLevel; l++) {
+            levels.add(new ArrayList<>());
+        }
+        for (int c = 0; c < n; c++) {
+            if (needed[c]) {
+                levels.get(level[c]).add(c);
+            }
+        }
+
+        List<Set<Obj>> compObjs = new ArrayList<>(Collections.nCopies(n, null));
+        for (List<Integer> comps : levels) {
+            comps.parallelStream().forEach(c -> {
+                Set<Obj> own = new HashSet<>();
+                components.get(c).forEach(m -> own.addAll(pta.objectsAllocatedIn(m)));
+                Set<Integer> callees = calleeComps.get(c);
+                Set<Obj> objs;
+                if (own.isEmpty() && callees.size() == 1) {
+                    objs = compObjs.get(callees.iterator().next());
+                } else {
+                    callees.forEach(cc -> own.addAll(compObjs.get(cc)));
+                    objs = own.isEmpty() ? Collections.emptySet() : own;
+                }
+                compObjs.set(c, objs);
+            });
+        }
+
+        Map<Method, Set<Obj>> allocated = new HashMap<>();
+        for (Method method : staticCalls.invokedMethods) {
+            allocated.put(method, compObjs.get(sccs.componentOf(method)));
+        }
+        return allocated;
+    }
+
+    private Collection<Method> staticCalleesOf(Method method) {
+        return pta.calleesOf(method).stream()
+                .filter(Method::isStatic)
+                .collect(Collectors.toList());
     }
 
-    private Map<Obj, Set<Method>> computeInvokedMethods() {
-        Map<Obj, Set<Method>> invokedMethods = new HashMap<>();
-        pta.allObjects().forEach(obj -> {
-            Set<Method> methods = new HashSet<>();
-            Queue<Method> queue = new LinkedList<>(pta.methodsInvokedOn(obj));
+    /**
+     * The reachable methods (and the methods invoked on objects), with
+     * edges to the static methods they call. The edges are computed once,
+     * for these methods and the static methods they transitively call.
+     */
+    private class StaticCallGraph implements DirectedGraph<Method> {
 
-            while (!queue.isEmpty()) {
-                Method method = queue.poll();
-                methods.add(method);
+        /** The methods invoked on objects. */
+        private final Set<Method> invokedMethods = new HashSet<>();
+        private final Set<Method> nodes;
+        private final Map<Method, Collection<Method>> succs = new HashMap<>();
+        private final Map<Method, Collection<Method>> preds = new HashMap<>();
 
-                /* Propagate to all static methods called by method invoked on obj */
-                pta.calleesOf(method).stream()
-                        .filter(m -> m.isStatic() && !methods.contains(m))
-                        .forEach(queue::offer);
+        StaticCallGraph() {
+            pta.allObjects().forEach(obj -> invokedMethods.addAll(pta.methodsInvokedOn(obj)));
+            nodes = new HashSet<>(pta.reachableMethods());
+            nodes.addAll(invokedMethods);
+            Deque<Method> pending = new ArrayDeque<>(nodes);
+            while (!pending.isEmpty()) {
+                Method method = pending.pop();
+                if (succs.containsKey(method)) {
+                    continue;
+                }
+                Collection<Method> callees = staticCalleesOf(method);
+                succs.put(method, callees);
+                for (Method callee : callees) {
+                    preds.computeIfAbsent(callee, k -> new ArrayList<>()).add(method);
+                    pending.push(callee);
+                }
             }
-            invokedMethods.put(obj, methods);
-        });
-        return invokedMethods;
+        }
+
+        @Override
+        public Collection<Method> allNodes() {
+            return nodes;
+        }
+
+        @Override
+        public Collection<Method> predsOf(Method method) {
+            return preds.getOrDefault(method, Collections.emptyList());
+        }
+
+        @Override
+        public Collection<Method> succsOf(Method method) {
+            return succs.getOrDefault(method, Collections.emptyList());
+        }
     }
 }
@@ -1,6 +1,5 @@
 package org.clyze.doop.ptatoolkit.scaler.analysis;
 
-import org.clyze.doop.ptatoolkit.pta.basic.Method;
 import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
 import org.clyze.doop.ptatoolkit.util.ANSIColor;
 import org.clyze.doop.ptatoolkit.util.Triple;
@@ -18,32 +17,50 @@ import java.util.stream.Collectors;
  */
 public class Scaler {
 
-    private final DoopPointsToAnalysis pta;
-    private final ObjectAllocationGraph oag;
-    private Set<Method> reachableMethods;
-    private ContextComputer[] ctxComputers;
-    private ContextComputer bottomLine;
-    private Map<Method, Integer> ptsSize = new HashMap<>();
+    private final ScalerModel model;
+    /** The index of the bottom line analysis in the model. */
+    private final int bottomLine;
     /** Total Scalability Threshold */
     private long tst = 500_000_000L;
-    private List<Triple<Method, String, Long>> results;
     private File scalerOutput;
+    /** The factors of the methods, built by the first ST search. */
+    private ThresholdIndex index;
+    private long maxFactor;
 
     public Scaler(DoopPointsToAnalysis pta, File scalerOutput) {
-        this.pta = pta;
-        this.oag = new ObjectAllocationGraph(pta);
+        this(ScalerModel.build(pta), scalerOutput);
+    }
+
+    /**
+     * Creates a Scaler for a model whose contexts have already been
+     * computed, e.g. one restored from a snapshot.
+     */
+    public Scaler(ScalerModel model, File scalerOutput) {
+        this.model = model;
+        this.bottomLine = model.analysisCount() - 1;
         this.scalerOutput = scalerOutput;
-        init();
     }
 
-    public Map<Method, String> selectContext() throws FileNotFoundException {
-        results = new ArrayList<>();
+    public Map<String, String> selectContext() throws FileNotFoundException {
+        return selectContext(tst, scalerOutput).getContexts();
+    }
+
+    /**
+     * Selects context-sensitivity for a TST and writes it to a file. The
+     * contexts and the object allocation graph are only computed once, so
+     * this can be called for several TST values.
+     *
+     * @param tst           Total Scalability Threshold
+     * @param scalerOutput  the SpecialContextSensitivityMethod file to write
+     */
+    public Selection selectContext(long tst, File scalerOutput) throws FileNotFoundException {
+        List<Triple<Integer, String, Long>> results = new ArrayList<>();
         System.out.println("Given TST value: " + ANSIColor.BOLD + ANSIColor.GREEN + tst + ANSIColor.RESET);
-        long st = binarySearch(reachableMethods, tst);
+        long st = binarySearch(tst);
         System.out.println("Selected ST value: " + ANSIColor.BOLD + ANSIColor.GREEN + st + ANSIColor.RESET);
-        Map<Method, String> analysisMap = new HashMap<>();
-        reachableMethods.forEach(method ->
-                analysisMap.put(method, selectContextFor(method, st)));
+        Map<String, String> analysisMap = new HashMap<>();
+        for (int method = 0; method < model.methodCount(); method++)
+            analysisMap.put(model.methodOf(method), selectContextFor(method, st, results));
         AtomicLong worstCaseVPT = new AtomicLong(0);
         AtomicLong numberOfMethods = new AtomicLong(0);
 
@@ -54,12 +71,12 @@ public class Scaler {
                 .collect(Collectors.toCollection(LinkedList::new))
                 .descendingIterator()
                 .forEachRemaining(triple -> {
-                    Method method = triple.getFirst();
+                    int method = triple.getFirst();
                     String context = triple.getSecond();
                     long nContexts = triple.getThird();
-                    long accumuPTSSize = getAccumulativePTSSizeOf(method);
+                    long accumuPTSSize = model.accumulativePTSSizeOf(method);
                     writer.printf("%s\t%s\t%d\t%d\n",
-                            method.toString(), context,
+                            model.methodOf(method), context,
                             nContexts, nContexts * accumuPTSSize);
                     worstCaseVPT.getAndAdd(nContexts * accumuPTSSize);
                     numberOfMethods.getAndIncrement();
@@ -67,11 +84,11 @@ public class Scaler {
         //}
         writer.close();
         System.out.println("Total worst case VPT: " + worstCaseVPT + " for " + numberOfMethods + " methods");
-        return analysisMap;
+        return new Selection(tst, st, worstCaseVPT.get(), analysisMap);
     }
 
-    public ContextComputer[] getContextComputers() {
-        return ctxComputers;
+    public ScalerModel getModel() {
+        return model;
     }
 
     public long getTST() {
@@ -82,70 +99,58 @@ public class Scaler {
         this.tst = tst;
     }
 
-    public long getAccumulativePTSSizeOf(Method method) {
-
-        return pta.getMethodTotalVPTMap().get(method);
-    }
-
-    private void init() {
-        reachableMethods = pta.reachableMethods();
-        System.out.println("Total Reachable Methods: " + reachableMethods.size());
-        // From the most precise analysis to the least precise analysis
-
-//        ContextComputer _2ObjectContextComputer = new _2ObjectContextComputer_ScalerPlus(pta, oag);
-//        ctxComputers = new ContextComputer[] {
-//                _2ObjectContextComputer,
-//                new _2TypeContextComputer_ScalerPlus(pta, oag, _2ObjectContextComputer),
-//                new _1TypeContextComputer_ScalerPlus(pta, oag, _2ObjectContextComputer),
-//        };
-        ContextComputer _2ObjectContextComputer = new _2ObjectContextComputer_Scaler(pta, oag);
-        ctxComputers = new ContextComputer[] {
-                _2ObjectContextComputer,
-                new _2TypeContextComputer_Scaler(pta, oag),
-                new _1TypeContextComputer_Scaler(pta, oag),
-        };
-        ctxComputers[0].computeContext();
-        ctxComputers[1].computeContext();
-        ctxComputers[2].computeContext();
-        bottomLine = new _InsensitiveContextComputer(pta);
-        bottomLine.computeContext();
-    }
-
     /**
      *
      * @param method
      * @param st Scalability Threshold
      * @return the analysis selected for method.
      */
-    private String selectContextFor(Method method, long st) {
-        ContextComputer ctxComp = selectContext(method, st);
+    private String selectContextFor(int method, long st,
+                                    List<Triple<Integer, String, Long>> results) {
+        int analysis = selectContext(method, st);
         //if (Global.isDebug()) {
             results.add(new Triple<>(method,
-                    ctxComp.getAnalysisName(),
-                    ctxComp.contextNumberOf(method)));
+                    model.analysisName(analysis),
+                    model.contextNumberOf(analysis, method)));
         //}
-        return ctxComp.getAnalysisName();
+        return model.analysisName(analysis);
     }
 
     /**
      * Search the suitable tst such that the accumulative size
-     * of context-sensitive points to sets of given reachableMethods is less
+     * of context-sensitive points to sets of the reachable methods is less
      * than given tst.
-     * @param methods
      * @param tst Total Scalability Threshold
      * @return the tst for every single method
      */
-    private long binarySearch(Set<Method> methods, long tst) {
-        // Select the max value and make it as end
-        long end = reachableMethods.stream()
-                .mapToLong(m -> getFactor(m, ctxComputers[0]))
-                .max()
-                .getAsLong();
+    private long binarySearch(long tst) {
+        if (index == null) {
+            // Select the max value and make it as end
+            maxFactor = 0;
+            for (int method = 0; method < model.methodCount(); method++)
+                maxFactor = Math.max(maxFactor, keyOf(method, 0));
+            List<long[]> keys = new ArrayList<>();
+            List<long[]> factors = new ArrayList<>();
+            for (int method = 0; method < model.methodCount(); method++) {
+                if (!isSpecialMethod(method)) {
+                    long[] k = new long[model.analysisCount()];
+                    long[] f = new long[model.analysisCount()];
+                    for (int analysis = 0; analysis < f.length; analysis++) {
+                        k[analysis] = keyOf(method, analysis);
+                        f[analysis] = getFactor(method, analysis);
+                    }
+                    keys.add(k);
+                    factors.add(f);
+                }
+            }
+            index = new ThresholdIndex(keys.toArray(new long[0][]), factors.toArray(new long[0][]));
+        }
+        long end = maxFactor;
         long start = 0;
         long mid, ret = 0;
         while (start <= end) {
             mid = (start + end) / 2;
-            long totalSize = getTotalAccumulativePTS(methods, mid);
+            long totalSize = index.totalAt(mid);
             if (totalSize < tst) {
                 ret = mid;
                 start = mid + 1;
@@ -159,45 +164,75 @@ public class Scaler {
         return ret;
     }
 
-    private long getFactor(Method method, ContextComputer cc) {
-        return cc.contextNumberOf(method) * getAccumulativePTSSizeOf(method);
+    protected long getFactor(int method, int analysis) {
+        return model.contextNumberOf(analysis, method) * model.accumulativePTSSizeOf(method);
     }
 
-    private long getTotalAccumulativePTS(Set<Method> methods,
-                                         long st) {
-        long total = 0;
-        for (Method method : methods) {
-            if (!isSpecialMethod(method)) {
-                ContextComputer cc = selectContext(method, st);
-                total += getFactor(method, cc);
-            }
-        }
-        return total;
+    /**
+     * The value compared with the ST to decide whether a method can be
+     * analyzed with an analysis: by default, its factor (contexts times
+     * accumulative points-to size).
+     */
+    protected long keyOf(int method, int analysis) {
+        return getFactor(method, analysis);
     }
 
     /**
      *
      * @param method
      * @param st Scalability Threshold
-     * @return the selected context computer for method according to tst
+     * @return the analysis selected for method according to tst
      */
-    private ContextComputer selectContext(Method method, long st) {
-        ContextComputer ctxComp;
+    private int selectContext(int method, long st) {
         if (isSpecialMethod(method)) {
-            ctxComp = ctxComputers[0]; // the most precise analysis
-        } else {
-            ctxComp = bottomLine;
-            for (ContextComputer cc : ctxComputers) {
-                if (getFactor(method, cc) <= st) {
-                    ctxComp = cc;
-                    break;
-                }
+            return 0; // the most precise analysis
+        }
+        for (int analysis = 0; analysis < bottomLine; analysis++) {
+            if (keyOf(method, analysis) <= st) {
+                return analysis;
             }
         }
-        return ctxComp;
+        return bottomLine;
     }
 
-    private boolean isSpecialMethod(Method method) {
-        return pta.declaringTypeOf(method).toString().startsWith("java.util.");
+    private boolean isSpecialMethod(int method) {
+        return model.declaringTypeOf(method).startsWith("java.util.");
+    }
+
+    /**
+     * The context-sensitivity selected for a TST.
+     */
+    public static class Selection {
+
+        private final long tst;
+        private final long st;
+        private final long worstCaseVPT;
+        private final Map<String, String> contexts;
+
+        Selection(long tst, long st, long worstCaseVPT, Map<String, String> contexts) {
+            this.tst = tst;
+            this.st = st;
+            this.worstCaseVPT = worstCaseVPT;
+            this.contexts = contexts;
+        }
+
+        public long getTST() {
+            return tst;
+        }
+
+        /** The selected Scalability Threshold. */
+        public long getST() {
+            return st;
+        }
+
+        /** The predicted total accumulative points-to size of the selection. */
+        public long getWorstCaseVPT() {
+            return worstCaseVPT;
+        }
+
+        /** The analysis selected for every method (by signature). */
+        public Map<String, String> getContexts() {
+            return contexts;
+        }
     }
 }
@@ -0,0 +1,294 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis;
+
+import org.clyze.doop.ptatoolkit.pta.basic.Method;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * What Scaler needs from the pre-analysis once the contexts have been
+ * computed: for every reachable method, its signature, declaring type,
+ * accumulative points-to size and number of contexts under every
+ * analysis, and the methods it is connected to (see
+ * {@link #neighborOf(int, int)}), for ranking. Methods are kept in the iteration order of the reachable
+ * methods, so that a Scaler restored from a model writes the same
+ * selection as the one that built it.
+ *
+ * A model can be saved as a versioned binary snapshot, keyed by a
+ * checksum of the pre-analysis database (see
+ * {@link DoopPointsToAnalysis#checksum(File)}), so that later Scaler runs
+ * with other thresholds can skip reading the database and computing the
+ * contexts.
+ */
+public final class ScalerModel {
+
+    private static final int MAGIC = 0x53434c52; // "SCLR"
+    /** Bump when the snapshot format or the model contents change. */
+    static final int VERSION = 3;
+
+    /** The analyses, from the most precise to the bottom line. */
+    private final String[] analyses;
+    private final String[] methods;
+    private final String[] declaringTypes;
+    private final long[] totalVPT;
+    /** contexts[a][m] is the number of contexts of method m under analysis a. */
+    private final long[][] contexts;
+    /**
+     * The method graph in compressed sparse row form: the neighbors of
+     * method m are neighbors[offsets[m]] to neighbors[offsets[m + 1] - 1].
+     */
+    private final int[] offsets;
+    private final int[] neighbors;
+
+    ScalerModel(String[] analyses, String[] methods, String[] declaringTypes,
+                long[] totalVPT, long[][] contexts, int[] offsets, int[] neighbors) {
+        this.analyses = analyses;
+        this.methods = methods;
+        this.declaringTypes = declaringTypes;
+        this.totalVPT = totalVPT;
+        this.contexts = contexts;
+        this.offsets = offsets;
+        this.neighbors = neighbors;
+    }
+
+    /**
+     * Computes the contexts of the reachable methods of a points-to
+     * analysis under every analysis Scaler chooses from.
+     */
+    public static ScalerModel build(DoopPointsToAnalysis pta) {
+        System.out.println("Total Reachable Methods: " + pta.reachableMethods().size());
+        ObjectAllocationGraph oag = new ObjectAllocationGraph(pta);
+        // From the most precise analysis to the least precise analysis
+
+//        ContextComputer _2ObjectContextComputer = new _2ObjectContextComputer_ScalerPlus(pta, oag);
+//        ctxComputers = new ContextComputer[] {
+//                _2ObjectContextComputer,
+//                new _2TypeContextComputer_ScalerPlus(pta, oag, _2ObjectContextComputer),
+//                new _1TypeContextComputer_ScalerPlus(pta, oag, _2ObjectContextComputer),
+//        };
+        ContextComputer _2ObjectContextComputer = new _2ObjectContextComputer_Scaler(pta, oag);
+        ContextComputer[] ctxComputers = new ContextComputer[] {
+                _2ObjectContextComputer,
+                new _2TypeContextComputer_Scaler(pta, oag),
+                new _1TypeContextComputer_Scaler(pta, oag),
+                // the bottom line
+                new _InsensitiveContextComputer(pta),
+        };
+        ContextComputer.computeContexts(ctxComputers);
+        return of(pta, ctxComputers);
+    }
+
+    /**
+     * Builds the model of a points-to analysis from computers whose
+     * contexts have been computed.
+     */
+    static ScalerModel of(DoopPointsToAnalysis pta, ContextComputer... computers) {
+        int n = pta.reachableMethods().size();
+        String[] analyses = new String[computers.length];
+        for (int a = 0; a < computers.length; a++)
+            analyses[a] = computers[a].getAnalysisName();
+        String[] methods = new String[n];
+        String[] declaringTypes = new String[n];
+        long[] totalVPT = new long[n];
+        long[][] contexts = new long[computers.length][n];
+        int m = 0;
+        for (Method method : pta.reachableMethods()) {
+            methods[m] = method.toString();
+            declaringTypes[m] = pta.declaringTypeOf(method).toString();
+            totalVPT[m] = pta.getMethodTotalVPTMap().get(method);
+            for (int a = 0; a < computers.length; a++)
+                contexts[a][m] = computers[a].contextNumberOf(method);
+            m++;
+        }
+        int[][] graph = buildGraph(pta);
+        return new ScalerModel(analyses, methods, declaringTypes, totalVPT, contexts, graph[0], graph[1]);
+    }
+
+    /**
+     * Connects every reachable method to its neighbors in relation
+     * Method_Neighbor of the pre-analysis (its callers and callees), when
+     * the points-to analysis has read it (option "scalerRank"). Edges are
+     * undirected, without self loops or duplicates.
+     */
+    private static int[][] buildGraph(DoopPointsToAnalysis pta) {
+        Map<Method, Integer> ids = new HashMap<>();
+        for (Method method : pta.reachableMethods())
+            ids.put(method, ids.size());
+        List<Set<Integer>> adjacent = new ArrayList<>(ids.size());
+        for (int m = 0; m < ids.size(); m++)
+            adjacent.add(new HashSet<>());
+        Map<Method, Set<Method>> neighborMap = pta.getMethodNeighborMap();
+        if (neighborMap != null) {
+            ids.forEach((method, m) -> {
+                for (Method neighbor : neighborMap.getOrDefault(method, Collections.emptySet()))
+                    connect(adjacent, m, ids.get(neighbor));
+            });
+        }
+        int[] offsets = new int[ids.size() + 1];
+        for (int m = 0; m < ids.size(); m++)
+            offsets[m + 1] = offsets[m] + adjacent.get(m).size();
+        int[] neighbors = new int[offsets[ids.size()]];
+        for (int m = 0; m < ids.size(); m++) {
+            int i = offsets[m];
+            for (int n : adjacent.get(m))
+                neighbors[i++] = n;
+            Arrays.sort(neighbors, offsets[m], offsets[m + 1]);
+        }
+        return new int[][] { offsets, neighbors };
+    }
+
+    private static void connect(List<Set<Integer>> adjacent, int m, Integer n) {
+        if (n != null && n != m) {
+            adjacent.get(m).add(n);
+            adjacent.get(n).add(m);
+        }
+    }
+
+    public int analysisCount() {
+        return analyses.length;
+    }
+
+    public String analysisName(int analysis) {
+        return analyses[analysis];
+    }
+
+    public int methodCount() {
+        return methods.length;
+    }
+
+    public String methodOf(int method) {
+        return methods[method];
+    }
+
+    public String declaringTypeOf(int method) {
+        return declaringTypes[method];
+    }
+
+    public long accumulativePTSSizeOf(int method) {
+        return totalVPT[method];
+    }
+
+    public long contextNumberOf(int analysis, int method) {
+        return contexts[analysis][method];
+    }
+
+    /** The number of methods connected to a method. */
+    public int degreeOf(int method) {
+        return offsets[method + 1] - offsets[method];
+    }
+
+    /** The i-th method connected to a method, for i below its degree. */
+    public int neighborOf(int method, int i) {
+        return neighbors[offsets[method] + i];
+    }
+
+    /**
+     * Writes the model as a snapshot. The snapshot is written next to the
+     * file and then moved in place, so that an interrupted run does not
+     * leave a truncated snapshot behind.
+     *
+     * @param file  the snapshot file
+     * @param key   the checksum of the database the model was built from
+     */
+    public void write(File file, long key) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(tmp), 1 << 16)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(key);
+            out.writeInt(analyses.length);
+            for (String analysis : analyses)
+                writeString(out, analysis);
+            // Declaring types are shared by many methods, write them once.
+            Map<String, Integer> typeIds = new HashMap<>();
+            int[] typeOf = new int[methods.length];
+            for (int m = 0; m < methods.length; m++)
+                typeOf[m] = typeIds.computeIfAbsent(declaringTypes[m], t -> typeIds.size());
+            String[] types = new String[typeIds.size()];
+            typeIds.forEach((t, id) -> types[id] = t);
+            out.writeInt(types.length);
+            for (String type : types)
+                writeString(out, type);
+            out.writeInt(methods.length);
+            for (int m = 0; m < methods.length; m++) {
+                writeString(out, methods[m]);
+                out.writeInt(typeOf[m]);
+                out.writeLong(totalVPT[m]);
+                for (long[] ctx : contexts)
+                    out.writeLong(ctx[m]);
+                out.writeInt(degreeOf(m));
+                for (int i = offsets[m]; i < offsets[m + 1]; i++)
+                    out.writeInt(neighbors[i]);
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file))
+                throw new IOException("Cannot move " + tmp + " to " + file);
+        }
+    }
+
+    /**
+     * Reads a snapshot.
+     *
+     * @param file  the snapshot file
+     * @param key   the checksum of the current database
+     * @return the model, or null if there is no snapshot or it was written
+     * by another version or for another database
+     */
+    public static ScalerModel read(File file, long key) throws IOException {
+        if (!file.isFile())
+            return null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != key)
+                return null;
+            String[] analyses = new String[in.readInt()];
+            for (int a = 0; a < analyses.length; a++)
+                analyses[a] = readString(in);
+            String[] types = new String[in.readInt()];
+            for (int t = 0; t < types.length; t++)
+                types[t] = readString(in);
+            int n = in.readInt();
+            String[] methods = new String[n];
+            String[] declaringTypes = new String[n];
+            long[] totalVPT = new long[n];
+            long[][] contexts = new long[analyses.length][n];
+            int[] offsets = new int[n + 1];
+            int[] neighbors = new int[16];
+            for (int m = 0; m < n; m++) {
+                methods[m] = readString(in);
+                declaringTypes[m] = types[in.readInt()];
+                totalVPT[m] = in.readLong();
+                for (long[] ctx : contexts)
+                    ctx[m] = in.readLong();
+                int degree = in.readInt();
+                offsets[m + 1] = offsets[m] + degree;
+                if (offsets[m + 1] > neighbors.length)
+                    neighbors = Arrays.copyOf(neighbors, Math.max(offsets[m + 1], 2 * neighbors.length));
+                for (int i = offsets[m]; i < offsets[m + 1]; i++)
+                    neighbors[i] = in.readInt();
+            }
+            return new ScalerModel(analyses, methods, declaringTypes, totalVPT, contexts,
+                    offsets, Arrays.copyOf(neighbors, offsets[n]));
+        }
+    }
+
+    // Signatures can exceed the 64K limit of writeUTF().
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
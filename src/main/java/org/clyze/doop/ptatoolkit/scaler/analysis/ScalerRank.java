@@ -1,258 +1,163 @@
 package org.clyze.doop.ptatoolkit.scaler.analysis;
 
-import org.clyze.doop.ptatoolkit.Global;
-import org.clyze.doop.ptatoolkit.pta.basic.Method;
-import org.clyze.doop.ptatoolkit.scaler.pta.PointsToAnalysis;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
 import org.clyze.doop.ptatoolkit.util.ANSIColor;
-import org.clyze.doop.ptatoolkit.util.Triple;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.io.File;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.stream.IntStream;
+
+/**
+ * Scaler with methods weighted by their rank in the method graph of the
+ * model (relation Method_Neighbor of the pre-analysis, which connects
+ * every method to its callers and callees, see
+ * {@link ScalerModel#neighborOf}). A central method
+ * passes its contexts to many others, so it costs more than its own
+ * factor: the value compared with the ST is the factor times the rank of
+ * the method relative to the average rank, and central methods are the
+ * first to lose precision. The selection is written in the format of
+ * {@link Scaler}.
+ *
+ * Ranks are computed by PageRank as a power iteration over the graph in
+ * compressed sparse row form. Every sweep runs in parallel over blocks of
+ * primitive arrays; sums are added up block by block in a fixed order, so
+ * that ranks (and selections) do not depend on the number of threads.
+ */
+public class ScalerRank extends Scaler {
 
-import static java.util.Map.Entry.comparingByValue;
-import static java.util.stream.Collectors.toMap;
-
-public class ScalerRank {
-	private final PointsToAnalysis pta;
-	private Map<Method, Double> scores;
 	/**
 	 * Default number of maximum iterations.
 	 */
 	private static final int MAX_ITERATIONS_DEFAULT = 1000;
 
 	/**
-	 * Default value for the tolerance. The calculation will stop if the difference of PageRank
-	 * values between iterations change less than this value.
+	 * Default value for the tolerance. The calculation will stop if the L1
+	 * norm of the difference of ranks between iterations is less than this
+	 * value.
 	 */
 	private static final double TOLERANCE_DEFAULT = 0.000000001;
 
 	/**
-	 * Damping factor default value.
+	 * Damping factor default value. The earlier ScalerRank defaulted to
+	 * 0.0, but with no damping no rank is ever passed along an edge: every
+	 * method gets the average rank, and the selection is that of Scaler.
+	 * 0.85 is the usual PageRank value.
 	 */
-	private static final double DAMPING_FACTOR_DEFAULT = 0.0d;
-	private final ObjectAllocationGraph oag;
-	private Set<Method> reachableMethods;
-	private ContextComputer[] ctxComputers;
-	private ContextComputer bottomLine;
-	private long tst = 900000000;
-	private List<Triple<Method, String, Long>> results;
+	static final double DAMPING_FACTOR_DEFAULT = 0.85d;
 
-	public ScalerRank(PointsToAnalysis pta) {
-		this.pta = pta;
-		this.oag = new ObjectAllocationGraph(pta);
-		init();
-	}
+	private static final int BLOCK = 4096;
 
-	private void init() {
+	/** Ranks times the number of methods (1 on average). */
+	private final double[] weights;
+	private int iterations;
 
-		// From the most precise analysis to the least precise analysis
-//		ctxComputers = new ContextComputer[] {
-//				new _2ObjectContextComputer(pta, oag),
-//				new _2TypeContextComputer(pta, oag),
-//				new _1TypeContextComputer(pta, oag),
-//		};
-//		bottomLine = new _InsensitiveContextComputer(pta);
-//		reachableMethods = rank().stream()
-//				.filter(Method::isInstance)
-//				.collect(Collectors.toSet());
+	public ScalerRank(DoopPointsToAnalysis pta, File scalerOutput) {
+		this(ScalerModel.build(pta), scalerOutput);
 	}
 
-	public static boolean ASC = true;
-	public static boolean DESC = false;
-
-	private Set<Method> rank() {
-		scores = new HashMap<>();
-		int max_iterations = MAX_ITERATIONS_DEFAULT;
-		// initialization
-		int totalMethods = pta.getMethodIdMap().keySet().size();
-		for (Method m : pta.getMethodIdMap().keySet()) {
-			double initScore = getFactor(m, ctxComputers[0]);
-			scores.put(m, initScore);
-
-		}
-
-		// run PageRank
-		Map<Method, Double> nextScores = new HashMap<>();
-		double maxChange = TOLERANCE_DEFAULT;
-
-		while (max_iterations > 0 && maxChange >= TOLERANCE_DEFAULT) {
-			// compute next iteration scores
-			double r = 0d;
-			for (Method m : pta.getMethodIdMap().keySet()) {
-				if (pta.getMethodNeighborMap().get(m) != null && pta.getMethodNeighborMap().get(m).size() > 0) {
-					r += (1d - DAMPING_FACTOR_DEFAULT) * scores.get(m);
-				} else {
-					r += scores.get(m);
-				}
-			}
-			r /= totalMethods;
-
-			maxChange = 0d;
-			for (Method v : pta.getMethodIdMap().keySet()) {
-				double contribution = 0d;
-				if (pta.getMethodNeighborMap().get(v) != null) {
-					for (Method m : pta.getMethodNeighborMap().get(v)) {
-						contribution += (DAMPING_FACTOR_DEFAULT * scores.get(m) * getFactor(m, ctxComputers[0]))/pta.getMethodNeighborMap().get(m).size();
-					}
-				}
-
-				double vOldValue = scores.get(v);
-				double vNewValue = r + contribution;
-				maxChange = Math.max(maxChange, Math.abs(vNewValue - vOldValue));
-				nextScores.put(v, vNewValue);
-			}
-
-			// swap scores
-			Map<Method, Double> tmp = scores;
-			scores = nextScores;
-			nextScores = tmp;
-
-			// progress
-			max_iterations--;
-		}
-		for (Method m : scores.keySet()) {
-			if (pta.getMethodTotalVPTMap().get(m) != 0) {
-				scores.put(m, scores.get(m)*getFactor(m, ctxComputers[0]));
-			}
-		}
-
-		System.out.println("After sorting ascending order......");
-		// above code can be cleaned a bit by using method reference
-		Map<Method, Double> sorted = scores
-				.entrySet()
-				.stream()
-				.sorted(comparingByValue())
-				.collect(toMap(Map.Entry::getKey, Map.Entry::getValue, (e1, e2) -> e2, LinkedHashMap::new));
-		for (Method m : sorted.keySet()) {
-			System.out.println("Method: " + m + " -> score: " + scores.get(m));
-		}
-
-		return sorted.keySet();
-	}
-
-	private int getAccumulativePTSSizeOf(Method method) {
-
-		return pta.getMethodTotalVPTMap().get(method);
-	}
-
-	public Map<Method, String> selectContext() {
-		if (Global.isDebug()) {
-			results = new ArrayList<>();
-		}
-		System.out.println("Given TST value: " +
-				ANSIColor.BOLD + ANSIColor.GREEN + tst + ANSIColor.RESET);
-		long st = binarySearch(reachableMethods, tst);
-		System.out.println("Selected ST value: " +
-				ANSIColor.BOLD + ANSIColor.GREEN + st + ANSIColor.RESET);
-		Map<Method, String> analysisMap = new HashMap<>();
-		reachableMethods.forEach(method ->
-				analysisMap.put(method, selectContextFor(method, st)));
-		if (Global.isDebug()) {
-			results.stream()
-					.sorted(Comparator.comparing(Triple::getThird))
-					.collect(Collectors.toCollection(LinkedList::new))
-					.descendingIterator()
-					.forEachRemaining(triple -> {
-						Method method = triple.getFirst();
-						String context = triple.getSecond();
-						long nContexts = triple.getThird();
-						long accumuPTSSize = getAccumulativePTSSizeOf(method);
-						System.out.printf("#\t%s\t{%s}\t%d\t%d\n",
-								method.toString(), context,
-								nContexts, nContexts * accumuPTSSize);
-					});
-		}
-		return analysisMap;
+	public ScalerRank(ScalerModel model, File scalerOutput) {
+		this(model, scalerOutput, DAMPING_FACTOR_DEFAULT, MAX_ITERATIONS_DEFAULT, TOLERANCE_DEFAULT);
 	}
 
 	/**
-	 *
-	 * @param method
-	 * @param st Scalability Threshold
-	 * @return the analysis selected for method.
+	 * @param damping        the probability of following an edge
+	 * @param maxIterations  the maximum number of sweeps
+	 * @param tolerance      the L1 residual at which ranks have converged
 	 */
-	private String selectContextFor(Method method, long st) {
-		ContextComputer ctxComp = selectContext(method, st);
-		if (Global.isDebug()) {
-			results.add(new Triple<>(method,
-					ctxComp.getAnalysisName(),
-					ctxComp.contextNumberOf(method)));
+	public ScalerRank(ScalerModel model, File scalerOutput,
+	                  double damping, int maxIterations, double tolerance) {
+		super(model, scalerOutput);
+		double[] ranks = rank(damping, maxIterations, tolerance);
+		int n = ranks.length;
+		weights = new double[n];
+		for (int m = 0; m < n; m++) {
+			weights[m] = ranks[m] * n;
 		}
-		return ctxComp.getAnalysisName();
 	}
 
 	/**
-	 * Search the suitable tst such that the accumulative size
-	 * of context-sensitive points to sets of given reachableMethods is less
-	 * than given tst.
-	 * @param methods
-	 * @param tst Total Scalability Threshold
-	 * @return the tst for every single method
+	 * @return the rank of a method, relative to the average rank.
 	 */
-	private long binarySearch(Set<Method> methods, long tst) {
-		// Select the max value and make it as end
-		long end = reachableMethods.stream()
-				.mapToLong(m -> getFactor(m, ctxComputers[0]))
-				.max()
-				.getAsLong();
-		long start = 0;
-		long mid, ret = 0;
-		while (start <= end) {
-			mid = (start + end) / 2;
-			long totalSize = getTotalAccumulativePTS(methods, mid);
-			if (totalSize < tst) {
-				ret = mid;
-				start = mid + 1;
-			} else if (totalSize > tst) {
-				end = mid - 1;
-			} else {
-				ret = mid;
-				break;
-			}
-		}
-		return ret;
+	public double weightOf(int method) {
+		return weights[method];
 	}
 
-	private long getFactor(Method method, ContextComputer cc) {
-		return ((long) cc.contextNumberOf(method))
-				* ((long) getAccumulativePTSSizeOf(method));
+	public int getIterations() {
+		return iterations;
 	}
 
-	private long getTotalAccumulativePTS(Set<Method> methods,
-	                                     long st) {
-		long total = 0;
-		for (Method method : methods) {
-			if (!isSpecialMethod(method)) {
-				ContextComputer cc = selectContext(method, st);
-				total += getFactor(method, cc);
-			}
+	@Override
+	protected long keyOf(int method, int analysis) {
+		// Math.round() saturates at Long.MAX_VALUE.
+		return Math.round(getFactor(method, analysis) * weights[method]);
+	}
+
+	private double[] rank(double damping, int maxIterations, double tolerance) {
+		ScalerModel model = getModel();
+		int n = model.methodCount();
+		double[] ranks = new double[n];
+		if (n == 0) {
+			return ranks;
 		}
-		return total;
+		double[] next = new double[n];
+		// Rank per edge of every method, for the pull sweep.
+		double[] share = new double[n];
+		double uniform = 1d / n;
+		parallel(n, m -> ranks[m] = uniform);
+
+		double residual = Double.MAX_VALUE;
+		iterations = 0;
+		while (iterations < maxIterations && residual >= tolerance) {
+			double[] current = iterations % 2 == 0 ? ranks : next;
+			double[] updated = iterations % 2 == 0 ? next : ranks;
+			parallel(n, m -> {
+				int degree = model.degreeOf(m);
+				share[m] = degree > 0 ? current[m] / degree : 0d;
+			});
+			// Methods without edges spread their rank over all methods.
+			double dangling = sum(n, m -> model.degreeOf(m) == 0 ? current[m] : 0d);
+			double base = (1d - damping) * uniform + damping * dangling * uniform;
+			parallel(n, v -> {
+				double pulled = 0d;
+				for (int i = 0, degree = model.degreeOf(v); i < degree; i++) {
+					pulled += share[model.neighborOf(v, i)];
+				}
+				updated[v] = base + damping * pulled;
+			});
+			residual = sum(n, m -> Math.abs(updated[m] - current[m]));
+			iterations++;
+		}
+		System.out.println("Ranked " + n + " methods in " +
+				ANSIColor.BOLD + ANSIColor.GREEN + iterations + ANSIColor.RESET +
+				" iterations, residual " + residual);
+		return iterations % 2 == 0 ? ranks : next;
+	}
+
+	private static void parallel(int n, IntConsumer action) {
+		IntStream.range(0, (n + BLOCK - 1) / BLOCK).parallel().forEach(b -> {
+			for (int i = b * BLOCK, end = Math.min(n, i + BLOCK); i < end; i++) {
+				action.accept(i);
+			}
+		});
 	}
 
 	/**
-	 *
-	 * @param method
-	 * @param st Scalability Threshold
-	 * @return the selected context computer for method according to tst
+	 * Sums up a function over [0, n), in parallel but deterministically.
 	 */
-	private ContextComputer selectContext(Method method, long st) {
-		ContextComputer ctxComp;
-		if (isSpecialMethod(method)) {
-			ctxComp = ctxComputers[0]; // the most precise analysis
-		} else {
-			ctxComp = bottomLine;
-			for (ContextComputer cc : ctxComputers) {
-				if (getFactor(method, cc) <= st) {
-					ctxComp = cc;
-					break;
-				}
+	private static double sum(int n, IntToDoubleFunction f) {
+		double[] partial = new double[(n + BLOCK - 1) / BLOCK];
+		IntStream.range(0, partial.length).parallel().forEach(b -> {
+			double s = 0d;
+			for (int i = b * BLOCK, end = Math.min(n, i + BLOCK); i < end; i++) {
+				s += f.applyAsDouble(i);
 			}
+			partial[b] = s;
+		});
+		double total = 0d;
+		for (double s : partial) {
+			total += s;
 		}
-		return ctxComp;
-	}
-
-	private boolean isSpecialMethod(Method method) {
-		return pta.declaringTypeOf(method).toString().startsWith("java.util.");
+		return total;
 	}
 }
@@ -0,0 +1,103 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
+
+/**
+ * Evaluates the total accumulative points-to size of a set of methods for
+ * a candidate ST (Scalability Threshold) in logarithmic time.
+ *
+ * Every method has a factor (context number times accumulative points-to
+ * size) per context computer, from the most precise to the least precise;
+ * the last one is the bottom line. For a given ST, a method selects the
+ * first computer whose factor is at most ST, or the bottom line. If T_i is
+ * the minimum of the first i+1 factors, the method selects computer i or
+ * an earlier one exactly when ST >= T_i, so its factor is
+ *
+ *   f_bottom + sum over i with ST >= T_i of (f_i - f_(i+1))
+ *
+ * The pairs (T_i, f_i - f_(i+1)) of all methods are sorted by T_i and
+ * summed up, so the total for an ST is a base plus a prefix sum found by
+ * binary search.
+ *
+ * The values compared with the ST (the keys) may differ from the factors
+ * that are summed up, e.g. when methods are ranked (see ScalerRank).
+ */
+class ThresholdIndex {
+
+    private final long base;
+    private final long[] thresholds;
+    /** prefix[k] is the sum of the first k deltas (in threshold order). */
+    private final long[] prefix;
+
+    /**
+     * @param factors   the factors of every method, from the most precise
+     *                  computer to the bottom line (the same number for
+     *                  every method)
+     */
+    ThresholdIndex(long[][] factors) {
+        this(factors, factors);
+    }
+
+    /**
+     * @param keys      the values compared with the ST, for every method
+     * @param factors   the factors summed up, for every method
+     */
+    ThresholdIndex(long[][] keys, long[][] factors) {
+        int computers = factors.length == 0 ? 0 : factors[0].length - 1;
+        int events = factors.length * computers;
+        long[] t = new long[events];
+        long[] d = new long[events];
+        long b = 0;
+        int e = 0;
+        for (int m = 0; m < factors.length; m++) {
+            long[] f = factors[m];
+            b += f[computers];
+            long min = Long.MAX_VALUE;
+            for (int i = 0; i < computers; i++) {
+                min = Math.min(min, keys[m][i]);
+                t[e] = min;
+                d[e] = f[i] - f[i + 1];
+                e++;
+            }
+        }
+        Integer[] order = IntStream.range(0, events).boxed().toArray(Integer[]::new);
+        Arrays.sort(order, Comparator.comparingLong(i -> t[i]));
+        this.base = b;
+        this.thresholds = new long[events];
+        this.prefix = new long[events + 1];
+        for (int k = 0; k < events; k++) {
+            thresholds[k] = t[order[k]];
+            prefix[k + 1] = prefix[k] + d[order[k]];
+        }
+    }
+
+    /**
+     * Returns the total accumulative points-to size if every method selects
+     * its context computer with the given ST.
+     */
+    long totalAt(long st) {
+        // The number of thresholds <= st.
+        int lo = 0, hi = thresholds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (thresholds[mid] <= st)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return base + prefix[lo];
+    }
+
+    /**
+     * Returns the computer that a method selects with the given ST (the
+     * index of its factor, the last one being the bottom line).
+     */
+    static int select(long[] factors, long st) {
+        for (int i = 0; i < factors.length - 1; i++)
+            if (factors[i] <= st)
+                return i;
+        return factors.length - 1;
+    }
+}
@@ -15,6 +15,11 @@ public class _1TypeContextComputer_Scaler extends ContextComputer {
         return "1-type";
     }
 
+    @Override
+    protected boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     protected long computeContextNumberOf(Method method) {
         if (pta.receiverObjectsOf(method).isEmpty()) {
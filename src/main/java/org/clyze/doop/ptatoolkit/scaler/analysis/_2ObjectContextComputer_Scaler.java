@@ -18,6 +18,11 @@ public class _2ObjectContextComputer_Scaler extends ContextComputer {
         return "2-object";
     }
 
+    @Override
+    protected boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     protected long computeContextNumberOf(Method method) {
         if (pta.receiverObjectsOf(method).isEmpty()) {
@@ -22,6 +22,11 @@ public class _2TypeContextComputer_Scaler extends ContextComputer {
         return "2-type";
     }
 
+    @Override
+    protected boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     protected long computeContextNumberOf(Method method) {
         if (pta.receiverObjectsOf(method).isEmpty()) {
@@ -19,6 +19,11 @@ public class _InsensitiveContextComputer extends ContextComputer {
         return "context-insensitive";
     }
 
+    @Override
+    protected boolean isThreadSafe() {
+        return true;
+    }
+
     @Override
     protected long computeContextNumberOf(Method method) {
         return 1;
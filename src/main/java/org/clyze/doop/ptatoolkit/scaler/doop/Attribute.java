@@ -31,4 +31,16 @@ public final class Attribute {
     static final String RECEIVER = "receiver";
 
     static final String DECLARING_ALLOC_TYPE = "Declaring allocation type";
+
+    static final String TYPE = "Type";
+
+    static final String DECLARING_METHOD = "Declaring method";
+
+    static final String LOCAL_ASSIGN = "Local assign";
+
+    static final String INTERPROCEDURAL_ASSIGN = "Interprocedural assign";
+
+    static final String STORE = "Store";
+
+    static final String LOAD = "Load";
 }
@@ -2,27 +2,69 @@ package org.clyze.doop.ptatoolkit.scaler.doop;
 
 import com.google.common.collect.BiMap;
 import com.google.common.collect.HashBiMap;
-import com.google.common.collect.Streams;
 import org.clyze.doop.ptatoolkit.Global;
 import org.clyze.doop.ptatoolkit.doop.DataBase;
 import org.clyze.doop.ptatoolkit.doop.Query;
+import org.clyze.doop.ptatoolkit.doop.RelationLoader;
+import org.clyze.doop.ptatoolkit.doop.SymbolTable;
+import org.clyze.doop.ptatoolkit.doop.factory.FieldFactory;
 import org.clyze.doop.ptatoolkit.doop.factory.TypeFactory;
 import org.clyze.doop.ptatoolkit.doop.factory.VariableFactory;
 import org.clyze.doop.ptatoolkit.pta.basic.*;
 import org.clyze.doop.ptatoolkit.scaler.pta.PointsToAnalysis;
 import org.clyze.doop.ptatoolkit.util.MutableLong;
+import org.clyze.doop.ptatoolkit.util.Pair;
 import org.clyze.doop.ptatoolkit.util.Timer;
 
 import java.io.File;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
 
 import static org.clyze.doop.ptatoolkit.scaler.doop.Attribute.*;
 
 public class DoopPointsToAnalysis implements PointsToAnalysis {
 
+    /**
+     * The relations joined by the Scaler post-processing. They are loaded
+     * concurrently, and joined in the order of the build methods (so that
+     * element ids do not depend on the load order).
+     */
+    private static final Query[] SCALER_QUERIES = {
+            Query.INST_METHODS, Query.VAR_POINTS_TO, Query.SPECIAL_OBJECTS,
+            Query.OBJECT_IN, Query.CALLSITEIN, Query.CALL_EDGE, Query.Reachable,
+            Query.DECLARING_CLASS_ALLOCATION, Query.VAR_IN, Query.Method_TotalVPT
+    };
+
+    /**
+     * The relations joined by the Zipper post-processing: points-to sets,
+     * object types and the flows between variables and object fields.
+     */
+    private static final Query[] ZIPPER_QUERIES = {
+            Query.VAR_POINTS_TO, Query.OBJ_TYPE, Query.SPECIAL_OBJECTS,
+            Query.OBJECT_IN, Query.OBJECT_ASSIGN, Query.CALLSITEIN, Query.CALL_EDGE, Query.Reachable,
+            Query.VAR_IN, Query.LOCAL_ASSIGN, Query.INTERPROCEDURAL_ASSIGN, Query.INSTANCE_LOAD,
+            Query.INSTANCE_STORE, Query.ARRAY_LOAD, Query.ARRAY_STORE, Query.CALL_RETURN_TO
+    };
+
+    /**
+     * The relations joined by the Mahjong post-processing: the types of
+     * objects and the field points-to graph.
+     */
+    private static final Query[] MAHJONG_QUERIES = {
+            Query.OBJ, Query.SPECIAL_OBJECTS, Query.OBJECT_IN, Query.IFPT, Query.APT
+    };
+
+    /** The field that stands for the elements of arrays. */
+    private static final String ARRAY_ELEMENT = "<array-element>";
+
+    /** The relations read besides SCALER_QUERIES (by the method factory). */
+    private static final Query[] METHOD_QUERIES = { Query.THIS_VAR, Query.IMPLICITREACHABLE };
+
+    /** The relations read besides SCALER_QUERIES by the ScalerRank post-processing. */
+    private static final Query[] RANK_QUERIES = { Query.Method_Neighbor };
+
     private final DataBase db;
+    private RelationLoader loader;
     private Set<Obj> allObjs;
     private Set<Method> reachableMethods;
     private Map<Method, Set<Method>> methodNeighborMap;
@@ -33,6 +75,7 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
     public ObjFactory objFactory;
     public TypeFactory typeFactory;
     private Set<String> specialObjects;
+    private Field arrayElement;
 
     public DoopPointsToAnalysis(File database, String option) {
         Timer ptaTimer = new Timer("Points-to Analysis Timer");
@@ -40,14 +83,43 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
         ptaTimer.start();
         this.db = new DataBase(database);
         if (option.equals("scaler")) {
-            initScalerPostProcessing();
+            initScalerPostProcessing(false);
+        } else if (option.equals("scalerRank")) {
+            initScalerPostProcessing(true);
+        } else if (option.equals("zipper")) {
+            initZipperPostProcessing();
+        } else if (option.equals("mahjong")) {
+            initMahjongPostProcessing();
         }
-//        else {
-//            initScalerRankPostProcessing();
-//        }
         ptaTimer.stop();
     }
 
+    /**
+     * Returns a checksum of the relations that the Scaler post-processing
+     * reads from a database.
+     */
+    public static long checksum(File database) {
+        return checksum(database, "scaler");
+    }
+
+    /**
+     * Returns a checksum of the relations that the post-processing of an
+     * option ("scaler" or "scalerRank") reads from a database.
+     */
+    public static long checksum(File database, String option) {
+        Query[] queries = concat(SCALER_QUERIES, METHOD_QUERIES);
+        if (option.equals("scalerRank")) {
+            queries = concat(queries, RANK_QUERIES);
+        }
+        return new DataBase(database).checksum(queries);
+    }
+
+    private static Query[] concat(Query[] first, Query[] second) {
+        Query[] queries = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, queries, first.length, second.length);
+        return queries;
+    }
+
     @Override
     public Set<Obj> allObjects() {
         return allObjs;
@@ -121,51 +193,224 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
         return (Type) method.getAttribute(DECLARING_TYPE);
     }
 
-    private void initScalerPostProcessing() {
-        typeFactory = new TypeFactory();
-        varFactory = new VariableFactory();
-        objFactory = new ObjFactory();
-        MethodFactory mtdFactory = new MethodFactory(db, varFactory);
+    /**
+     *
+     * @param obj
+     * @return the type of obj (only read by the Zipper post-processing)
+     */
+    public Type typeOf(Obj obj) {
+        return (Type) obj.getAttribute(TYPE);
+    }
 
-        // Set of variable names whose points-to sets may be needed
-        Set<String> interestingVarNames = new HashSet<>();
+    /**
+     *
+     * @param var
+     * @return the method that declares var (only read by the Zipper
+     * post-processing)
+     */
+    public Method declaringMethodOf(Variable var) {
+        return (Method) var.getAttribute(DECLARING_METHOD);
+    }
 
-        // obtain all reachable instance methods
-        db.query(Query.INST_METHODS).forEachRemaining(list -> {
-            String mtdSig = list.get(0);
-            InstanceMethod instMtd = (InstanceMethod) mtdFactory.get(mtdSig);
-            interestingVarNames.add(instMtd.getThis().toString());
-        });
+    /**
+     *
+     * @param obj
+     * @return the method that allocates obj
+     */
+    public Method allocatingMethodOf(Obj obj) {
+        return (Method) obj.getAttribute(ALLOCATED);
+    }
 
-        buildPointsToSet(varFactory, objFactory, interestingVarNames);
+    /**
+     *
+     * @param var
+     * @return the variables that var is assigned to in its method
+     */
+    public Set<Variable> localAssignmentsOf(Variable var) {
+        return var.getAttributeSet(LOCAL_ASSIGN);
+    }
 
-        // compute the objects allocated in each method
-        specialObjects = Streams.stream(db.query(Query.SPECIAL_OBJECTS))
-                .map(list -> list.get(0))
-                .collect(Collectors.toSet());
-        computeAllocatedObjects(objFactory, mtdFactory);
-        buildCalleesAndCallers(mtdFactory);
-        buildMethodsInvokedOnObjects(mtdFactory);
-        buildReceiverObjects();
-        buildDeclaringAllocationType(objFactory, typeFactory);
-        buildDeclaredVariables(mtdFactory, varFactory);
-        buildDeclaringType(mtdFactory, typeFactory);
-        buildMethodTotalVPTMap(mtdFactory);
+    /**
+     *
+     * @param var
+     * @return the variables that var is passed to (as an argument) or
+     * returned to (as a return variable)
+     */
+    public Set<Variable> interproceduralAssignmentsOf(Variable var) {
+        return var.getAttributeSet(INTERPROCEDURAL_ASSIGN);
+    }
+
+    /**
+     *
+     * @param var
+     * @return the fields of objects (or array elements) that var is stored to
+     */
+    public Set<Pair<Obj, Field>> storesOf(Variable var) {
+        return var.getAttributeSet(STORE);
+    }
+
+    /**
+     *
+     * @param obj
+     * @return the fields of obj (or its elements, if it is an array) and the
+     * variables they are loaded to
+     */
+    public Set<Pair<Field, Variable>> loadsOf(Obj obj) {
+        return obj.getAttributeSet(LOAD);
+    }
+
+    /**
+     *
+     * @param obj
+     * @return the variables that obj is assigned to when it is allocated
+     */
+    public Set<Variable> assignedVariablesOf(Obj obj) {
+        return obj.getAttributeSet(OBJECT_ASSIGNED);
+    }
+
+    /**
+     *
+     * @param recv
+     * @return the variables that the calls on receiver recv return to
+     */
+    public Set<Variable> returnToVariablesOf(Variable recv) {
+        return recv.getAttributeSet(RETURN_TO);
+    }
+
+    /**
+     *
+     * @param obj
+     * @return the fields of obj (or its elements, if it is an array) and the
+     * objects they point to (only read by the Mahjong post-processing)
+     */
+    public Set<Pair<Field, Obj>> fieldPointsToOf(Obj obj) {
+        return obj.getAttributeSet(FPTS);
+    }
+
+    /**
+     * @param rank whether to also read the method neighbors of ScalerRank
+     */
+    private void initScalerPostProcessing(boolean rank) {
+        int threads = Global.getThread() != Global.UNDEFINE ?
+                Global.getThread() : Runtime.getRuntime().availableProcessors();
+        Query[] queries = rank ? concat(SCALER_QUERIES, RANK_QUERIES) : SCALER_QUERIES;
+        try (RelationLoader loader = new RelationLoader(db, threads, queries)) {
+            this.loader = loader;
+            typeFactory = new TypeFactory();
+            varFactory = new VariableFactory();
+            objFactory = new ObjFactory();
+            MethodFactory mtdFactory = new MethodFactory(db, varFactory);
+
+            // Set of variables whose points-to sets may be needed
+            Set<Variable> interestingVars = new HashSet<>();
+
+            // obtain all reachable instance methods
+            RelationLoader.Table instMethods = loader.take(Query.INST_METHODS);
+            for (int i = 0; i < instMethods.size(); i++) {
+                InstanceMethod instMtd = (InstanceMethod) instMethods.get(i, 0, mtdFactory);
+                interestingVars.add(instMtd.getThis());
+            }
+
+            buildPointsToSet(varFactory, objFactory, interestingVars);
+
+            // compute the objects allocated in each method
+            specialObjects = new HashSet<>();
+            RelationLoader.Table special = loader.take(Query.SPECIAL_OBJECTS);
+            for (int i = 0; i < special.size(); i++)
+                specialObjects.add(special.get(i, 0));
+            computeAllocatedObjects(objFactory, mtdFactory);
+            buildCalleesAndCallers(mtdFactory);
+            buildMethodsInvokedOnObjects(mtdFactory);
+            buildReceiverObjects();
+            buildDeclaringAllocationType(objFactory, typeFactory);
+            buildDeclaredVariables(mtdFactory, varFactory, false);
+            buildDeclaringType(mtdFactory, typeFactory);
+            buildMethodTotalVPTMap(mtdFactory);
+            if (rank) {
+                buildMethodNeighborsMap(mtdFactory);
+            }
+        } finally {
+            this.loader = null;
+        }
+    }
+
+    private void initZipperPostProcessing() {
+        int threads = Global.getThread() != Global.UNDEFINE ?
+                Global.getThread() : Runtime.getRuntime().availableProcessors();
+        try (RelationLoader loader = new RelationLoader(db, threads, ZIPPER_QUERIES)) {
+            this.loader = loader;
+            typeFactory = new TypeFactory();
+            varFactory = new VariableFactory();
+            objFactory = new ObjFactory();
+            FieldFactory fieldFactory = new FieldFactory();
+            arrayElement = fieldFactory.get(ARRAY_ELEMENT);
+            MethodFactory mtdFactory = new MethodFactory(db, varFactory, true);
+
+            // Zipper follows the flows of all variables
+            buildPointsToSet(varFactory, objFactory, Collections.emptySet());
+
+            specialObjects = new HashSet<>();
+            RelationLoader.Table special = loader.take(Query.SPECIAL_OBJECTS);
+            for (int i = 0; i < special.size(); i++)
+                specialObjects.add(special.get(i, 0));
+            computeAllocatedObjects(objFactory, mtdFactory);
+            buildCalleesAndCallers(mtdFactory);
+            buildMethodsInvokedOnObjects(mtdFactory);
+            buildReceiverObjects();
+            buildDeclaredVariables(mtdFactory, varFactory, true);
+            buildDeclaringType(mtdFactory, typeFactory);
+            buildObjectTypes(objFactory, typeFactory);
+            buildFlows(varFactory, objFactory, fieldFactory);
+        } finally {
+            this.loader = null;
+        }
+    }
+
+    private void initMahjongPostProcessing() {
+        int threads = Global.getThread() != Global.UNDEFINE ?
+                Global.getThread() : Runtime.getRuntime().availableProcessors();
+        try (RelationLoader loader = new RelationLoader(db, threads, MAHJONG_QUERIES)) {
+            this.loader = loader;
+            typeFactory = new TypeFactory();
+            objFactory = new ObjFactory();
+            FieldFactory fieldFactory = new FieldFactory();
+            arrayElement = fieldFactory.get(ARRAY_ELEMENT);
+
+            specialObjects = new HashSet<>();
+            RelationLoader.Table special = loader.take(Query.SPECIAL_OBJECTS);
+            for (int i = 0; i < special.size(); i++)
+                specialObjects.add(special.get(i, 0));
+            // Mahjong only merges the objects allocated in reachable methods
+            allObjs = new HashSet<>();
+            RelationLoader.Table objectIn = loader.take(Query.OBJECT_IN);
+            for (int i = 0; i < objectIn.size(); i++) {
+                String objName = objectIn.get(i, 0);
+                if (isNormalObject(objName))
+                    allObjs.add(objectIn.get(i, 0, objFactory));
+            }
+            RelationLoader.Table objTypes = loader.take(Query.OBJ);
+            for (int i = 0; i < objTypes.size(); i++) {
+                Obj obj = objTypes.get(i, 0, objFactory);
+                obj.setAttribute(TYPE, objTypes.get(i, 1, typeFactory));
+            }
+            buildFieldPointsTo(objFactory, fieldFactory);
+        } finally {
+            this.loader = null;
+        }
     }
 
     /**
      * Build points-to sets of interesting variables. This method also computes
      * the size of points-to set for each variable (in instance method).
      */
-    private void buildPointsToSet(VariableFactory varFactory, ObjFactory objFactory, Set<String> interestingVarNames) {
+    private void buildPointsToSet(VariableFactory varFactory, ObjFactory objFactory, Set<Variable> interestingVars) {
         allObjs = new HashSet<>();
-        db.query(Query.Stats_Simple_InsensVarPointsTo).forEachRemaining(list -> {
-            String objName = list.get(0);
-            String varName = list.get(1);
-            Obj obj = objFactory.get(objName);
-            Variable var = varFactory.get(varName);
-            if (!interestingVarNames.isEmpty()) {
-                if (interestingVarNames.contains(varName)) {
+        RelationLoader.Table vpt = loader.take(Query.VAR_POINTS_TO);
+        for (int i = 0; i < vpt.size(); i++) {
+            Obj obj = vpt.get(i, 0, objFactory);
+            Variable var = vpt.get(i, 1, varFactory);
+            if (!interestingVars.isEmpty()) {
+                if (interestingVars.contains(var)) {
                     // add points-to set to var as its attribute
                     var.addToAttributeSet(PTS, obj);
                 }
@@ -175,7 +420,7 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
             }
             increasePointsToSetSizeOf(var);
             allObjs.add(obj);
-        });
+        }
     }
 
     private void increasePointsToSetSizeOf(Variable var) {
@@ -188,15 +433,16 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
     }
 
     private void computeAllocatedObjects(ObjFactory objFactory, MethodFactory mtdFactory) {
-        db.query(Query.OBJECT_IN).forEachRemaining(list -> {
-            String objName = list.get(0);
+        RelationLoader.Table objectIn = loader.take(Query.OBJECT_IN);
+        for (int i = 0; i < objectIn.size(); i++) {
+            String objName = objectIn.get(i, 0);
             if (isNormalObject(objName)) {
-                Obj obj = objFactory.get(objName);
-                Method method = mtdFactory.get(list.get(1));
+                Obj obj = objectIn.get(i, 0, objFactory);
+                Method method = objectIn.get(i, 1, mtdFactory);
                 method.addToAttributeSet(ALLOCATED, obj);
                 obj.setAttribute(ALLOCATED, method);
             }
-        });
+        }
     }
 
     private boolean isNormalObject(String objName) {
@@ -209,29 +455,29 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
      */
     private void buildCalleesAndCallers(MethodFactory mtdFactory) {
         reachableMethods = new HashSet<>();
-        Map<String, String> callIn = new HashMap<>();
-
-        db.query(Query.CALLSITEIN).forEachRemaining(list -> {
-            String call = list.get(0);
-            String methodSig = list.get(1);
-            callIn.put(call, methodSig);
-        });
-
-        db.query(Query.CALL_EDGE).forEachRemaining(list -> {
-            String callerSig = callIn.get(list.get(0));
-            if (callerSig != null) {
-                Method caller = mtdFactory.get(callerSig);
-                Method callee = mtdFactory.get(list.get(1));
+        // Call sites are only looked up, keep their bytes instead of strings.
+        SymbolTable<Integer> callIn = new SymbolTable<>();
+
+        RelationLoader.Table callSiteIn = loader.take(Query.CALLSITEIN);
+        for (int i = 0; i < callSiteIn.size(); i++)
+            callIn.put(callSiteIn.bytes(i, 0), i);
+
+        RelationLoader.Table callEdge = loader.take(Query.CALL_EDGE);
+        for (int i = 0; i < callEdge.size(); i++) {
+            Integer callSite = callIn.get(callEdge.bytes(i, 0));
+            if (callSite != null) {
+                Method caller = callSiteIn.get(callSite, 1, mtdFactory);
+                Method callee = callEdge.get(i, 1, mtdFactory);
                 caller.addToAttributeSet(CALLEE, callee);
                 callee.addToAttributeSet(CALLER, caller);
             } else if (Global.isDebug()) {
-                System.out.println("Null caller of: " + list.get(0));
+                System.out.println("Null caller of: " + callEdge.get(i, 0));
             }
-        });
+        }
 
-        db.query(Query.Reachable).forEachRemaining(list -> {
-           reachableMethods.add(mtdFactory.get(list.get(0)));
-        });
+        RelationLoader.Table reachable = loader.take(Query.Reachable);
+        for (int i = 0; i < reachable.size(); i++)
+            reachableMethods.add(reachable.get(i, 0, mtdFactory));
     }
 
     /**
@@ -257,11 +503,12 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
      * Map each object to the type which contains its allocation site.
      */
     private void buildDeclaringAllocationType(ObjFactory objFactory, TypeFactory typeFactory) {
-        db.query(Query.DECLARING_CLASS_ALLOCATION).forEachRemaining(list -> {
-            Obj obj = objFactory.get(list.get(0));
-            Type type = typeFactory.get(list.get(1));
+        RelationLoader.Table allocTypes = loader.take(Query.DECLARING_CLASS_ALLOCATION);
+        for (int i = 0; i < allocTypes.size(); i++) {
+            Obj obj = allocTypes.get(i, 0, objFactory);
+            Type type = allocTypes.get(i, 1, typeFactory);
             obj.setAttribute(DECLARING_ALLOC_TYPE, type);
-        });
+        }
     }
 
     /**
@@ -276,14 +523,99 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
     }
 
     /**
-     * Map each method to the variables declared in the method.
+     * Map each method to the variables declared in the method (and, if
+     * declaringMethods is true, each variable to its method).
      */
-    private void buildDeclaredVariables(MethodFactory mtdFactory, VariableFactory varFactory) {
-        db.query(Query.VAR_IN).forEachRemaining(list -> {
-            Variable var = varFactory.get(list.get(0));
-            Method inMethod = mtdFactory.get(list.get(1));
-                inMethod.addToAttributeSet(VARS_IN, var);
-        });
+    private void buildDeclaredVariables(MethodFactory mtdFactory, VariableFactory varFactory,
+                                        boolean declaringMethods) {
+        RelationLoader.Table varIn = loader.take(Query.VAR_IN);
+        for (int i = 0; i < varIn.size(); i++) {
+            Variable var = varIn.get(i, 0, varFactory);
+            Method inMethod = varIn.get(i, 1, mtdFactory);
+            inMethod.addToAttributeSet(VARS_IN, var);
+            if (declaringMethods) {
+                var.setAttribute(DECLARING_METHOD, inMethod);
+            }
+        }
+    }
+
+    /**
+     * Map each object to its type.
+     */
+    private void buildObjectTypes(ObjFactory objFactory, TypeFactory typeFactory) {
+        RelationLoader.Table objTypes = loader.take(Query.OBJ_TYPE);
+        for (int i = 0; i < objTypes.size(); i++) {
+            Obj obj = objTypes.get(i, 0, objFactory);
+            obj.setAttribute(TYPE, objTypes.get(i, 1, typeFactory));
+        }
+    }
+
+    /**
+     * Build the field points-to graph (array elements are treated as a
+     * field).
+     */
+    private void buildFieldPointsTo(ObjFactory objFactory, FieldFactory fieldFactory) {
+        RelationLoader.Table ifpt = loader.take(Query.IFPT);
+        for (int i = 0; i < ifpt.size(); i++) {
+            Obj base = ifpt.get(i, 0, objFactory);
+            Field field = ifpt.get(i, 1, fieldFactory);
+            base.addToAttributeSet(FPTS, new Pair<>(field, ifpt.get(i, 2, objFactory)));
+        }
+        RelationLoader.Table apt = loader.take(Query.APT);
+        for (int i = 0; i < apt.size(); i++) {
+            Obj array = apt.get(i, 0, objFactory);
+            array.addToAttributeSet(FPTS, new Pair<>(arrayElement, apt.get(i, 1, objFactory)));
+        }
+    }
+
+    /**
+     * Build the flows of the object flow graph: assignments, stores to and
+     * loads from the fields of objects (array elements are treated as a
+     * field), allocations and the variables that calls return to.
+     */
+    private void buildFlows(VariableFactory varFactory, ObjFactory objFactory, FieldFactory fieldFactory) {
+        RelationLoader.Table localAssign = loader.take(Query.LOCAL_ASSIGN);
+        for (int i = 0; i < localAssign.size(); i++) {
+            Variable to = localAssign.get(i, 0, varFactory);
+            localAssign.get(i, 1, varFactory).addToAttributeSet(LOCAL_ASSIGN, to);
+        }
+        RelationLoader.Table interAssign = loader.take(Query.INTERPROCEDURAL_ASSIGN);
+        for (int i = 0; i < interAssign.size(); i++) {
+            Variable to = interAssign.get(i, 0, varFactory);
+            interAssign.get(i, 1, varFactory).addToAttributeSet(INTERPROCEDURAL_ASSIGN, to);
+        }
+        RelationLoader.Table instanceStore = loader.take(Query.INSTANCE_STORE);
+        for (int i = 0; i < instanceStore.size(); i++) {
+            Obj base = instanceStore.get(i, 0, objFactory);
+            Field field = instanceStore.get(i, 1, fieldFactory);
+            instanceStore.get(i, 2, varFactory).addToAttributeSet(STORE, new Pair<>(base, field));
+        }
+        RelationLoader.Table instanceLoad = loader.take(Query.INSTANCE_LOAD);
+        for (int i = 0; i < instanceLoad.size(); i++) {
+            Variable to = instanceLoad.get(i, 0, varFactory);
+            Field field = instanceLoad.get(i, 2, fieldFactory);
+            instanceLoad.get(i, 1, objFactory).addToAttributeSet(LOAD, new Pair<>(field, to));
+        }
+        RelationLoader.Table arrayStore = loader.take(Query.ARRAY_STORE);
+        for (int i = 0; i < arrayStore.size(); i++) {
+            Obj array = arrayStore.get(i, 0, objFactory);
+            arrayStore.get(i, 1, varFactory).addToAttributeSet(STORE, new Pair<>(array, arrayElement));
+        }
+        RelationLoader.Table arrayLoad = loader.take(Query.ARRAY_LOAD);
+        for (int i = 0; i < arrayLoad.size(); i++) {
+            Variable to = arrayLoad.get(i, 0, varFactory);
+            arrayLoad.get(i, 1, objFactory).addToAttributeSet(LOAD, new Pair<>(arrayElement, to));
+        }
+        RelationLoader.Table objectAssign = loader.take(Query.OBJECT_ASSIGN);
+        for (int i = 0; i < objectAssign.size(); i++) {
+            Obj obj = objectAssign.get(i, 0, objFactory);
+            obj.addToAttributeSet(OBJECT_ASSIGNED, objectAssign.get(i, 1, varFactory));
+        }
+        RelationLoader.Table returnTo = loader.take(Query.CALL_RETURN_TO);
+        for (int i = 0; i < returnTo.size(); i++) {
+            Variable to = returnTo.get(i, 1, varFactory);
+            returnTo.get(i, 0, varFactory).addToAttributeSet(RETURN_TO, to);
+        }
     }
 
     /**
@@ -302,15 +634,15 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
     private void buildMethodNeighborsMap(MethodFactory mtdFactory) {
         methodNeighborMap = new HashMap<>();
 
-        db.query(Query.Method_Neighbor).forEachRemaining(list -> {
-            Method method = mtdFactory.get(list.get(0));
-            Method neighbor = mtdFactory.get(list.get(1));
+        RelationLoader.Table neighbors = loader.take(Query.Method_Neighbor);
+        for (int i = 0; i < neighbors.size(); i++) {
+            Method method = neighbors.get(i, 0, mtdFactory);
+            Method neighbor = neighbors.get(i, 1, mtdFactory);
             //System.out.println("Put (" + method + ", " + neighbor + ")");
             fillNeighborMap(method, neighbor, methodNeighborMap.get(method));
 
             fillNeighborMap(neighbor, method, methodNeighborMap.get(neighbor));
-
-        });
+        }
         System.out.println("Method neighbors map total size: " + methodNeighborMap.keySet().size());
     }
 
@@ -330,13 +662,14 @@ public class DoopPointsToAnalysis implements PointsToAnalysis {
         methodTotalVPTMap = new HashMap<>();
         AtomicInteger id = new AtomicInteger(0);
 
-        db.query(Query.Method_TotalVPT).forEachRemaining(list -> {
-            Method method = mtdFactory.get(list.get(0));
+        RelationLoader.Table totalVPTs = loader.take(Query.Method_TotalVPT);
+        for (int i = 0; i < totalVPTs.size(); i++) {
+            Method method = totalVPTs.get(i, 0, mtdFactory);
             methodIdMap.put(method, id.getAndAdd(1));
-            Integer totalVPT = Integer.parseInt(list.get(1));
+            Integer totalVPT = totalVPTs.getInt(i, 1);
             //System.out.println("Put (" + method + ", " + totalVPT + ")");
             methodTotalVPTMap.put(method, totalVPT);
-        });
+        }
     }
 
     public Map<Method, Integer> getMethodTotalVPTMap() {
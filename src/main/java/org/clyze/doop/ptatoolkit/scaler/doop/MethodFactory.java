@@ -9,8 +9,11 @@ import org.clyze.doop.ptatoolkit.doop.factory.VariableFactory;
 import org.clyze.doop.ptatoolkit.pta.basic.Method;
 import org.clyze.doop.ptatoolkit.pta.basic.Variable;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -21,30 +24,58 @@ public class MethodFactory extends ElementFactory<Method> {
 
     private final Map<String, Variable> sig2this = new HashMap<>();
     private final Set<String> implicitReachableMethods = new HashSet<>();
+    private final Map<String, List<Variable>> sig2params = new HashMap<>();
+    private final Map<String, List<Variable>> sig2rets = new HashMap<>();
+    private final boolean withParameters;
 
     MethodFactory(DataBase db, VariableFactory varFactory) {
-        db.query(Query.THIS_VAR).forEachRemaining(list -> {
-            String sig = list.get(0);
-            Variable thisVar = varFactory.get(list.get(1));
+        this(db, varFactory, false);
+    }
+
+    /**
+     * @param withParameters  if true, the parameters and return variables
+     *                        of the methods are also read (Zipper needs them)
+     */
+    MethodFactory(DataBase db, VariableFactory varFactory, boolean withParameters) {
+        this.withParameters = withParameters;
+        db.scan(Query.THIS_VAR, t -> {
+            String sig = t.get(0);
+            Variable thisVar = varFactory.get(t, 1);
             sig2this.put(sig, thisVar);
         });
 
-        db.query(Query.IMPLICITREACHABLE).forEachRemaining(list -> {
-            String sig = list.get(0);
+        db.scan(Query.IMPLICITREACHABLE, t -> {
+            String sig = t.get(0);
             implicitReachableMethods.add(sig);
         });
+
+        if (withParameters) {
+            db.scan(Query.PARAMS, t -> sig2params.computeIfAbsent(t.get(0), k -> new ArrayList<>())
+                    .add(varFactory.get(t, 1)));
+            db.scan(Query.RET_VARS, t -> sig2rets.computeIfAbsent(t.get(0), k -> new ArrayList<>())
+                    .add(varFactory.get(t, 1)));
+        }
     }
 
     @Override
     protected Method createElement(String sig) {
         // isPrivate does not matter in Scaler, so just set false
         Variable thisVar = sig2this.get(sig);
+        List<Variable> params = parametersOf(sig, sig2params);
+        List<Variable> retVars = parametersOf(sig, sig2rets);
         if (thisVar != null) { // sig represents an instance method
-            return new DoopInstanceMethod(sig, thisVar, null, null,
+            return new DoopInstanceMethod(sig, thisVar, params, retVars,
                     false, implicitReachableMethods.contains(sig), ++count);
         } else { // sig represents a static method
-            return new DoopStaticMethod(sig, null, null,
+            return new DoopStaticMethod(sig, params, retVars,
                     false, implicitReachableMethods.contains(sig), ++count);
         }
     }
+
+    private List<Variable> parametersOf(String sig, Map<String, List<Variable>> vars) {
+        if (!withParameters) {
+            return null;
+        }
+        return vars.getOrDefault(sig, Collections.emptyList());
+    }
 }
@@ -0,0 +1,89 @@
+package org.clyze.doop.ptatoolkit.util.graph;
+
+import java.util.*;
+
+/**
+ * Finds the strongly connected components of a directed graph (Tarjan's
+ * algorithm, without recursion so that long paths do not overflow the
+ * stack). Nodes that are only reachable through succsOf() are included.
+ *
+ * The components are listed in reverse topological order: every
+ * component comes after all the components it reaches.
+ */
+public class SCCFinder<N> {
+
+    private final List<Set<N>> components = new ArrayList<>();
+    private final Map<N, Integer> componentOf = new HashMap<>();
+
+    public SCCFinder(DirectedGraph<N> graph) {
+        Map<N, Integer> index = new HashMap<>();
+        Map<N, Integer> lowlink = new HashMap<>();
+        Deque<N> stack = new ArrayDeque<>();
+        Set<N> onStack = new HashSet<>();
+        Deque<N> path = new ArrayDeque<>();
+        Deque<Iterator<N>> succs = new ArrayDeque<>();
+        for (N root : graph.allNodes()) {
+            if (index.containsKey(root)) {
+                continue;
+            }
+            visit(root, index, lowlink, stack, onStack);
+            path.push(root);
+            succs.push(graph.succsOf(root).iterator());
+            while (!path.isEmpty()) {
+                N node = path.peek();
+                Iterator<N> it = succs.peek();
+                if (it.hasNext()) {
+                    N succ = it.next();
+                    if (!index.containsKey(succ)) {
+                        visit(succ, index, lowlink, stack, onStack);
+                        path.push(succ);
+                        succs.push(graph.succsOf(succ).iterator());
+                    } else if (onStack.contains(succ)) {
+                        lowlink.put(node, Math.min(lowlink.get(node), index.get(succ)));
+                    }
+                    continue;
+                }
+                path.pop();
+                succs.pop();
+                if (!path.isEmpty()) {
+                    N parent = path.peek();
+                    lowlink.put(parent, Math.min(lowlink.get(parent), lowlink.get(node)));
+                }
+                if (lowlink.get(node).equals(index.get(node))) {
+                    Set<N> component = new HashSet<>();
+                    N member;
+                    do {
+                        member = stack.pop();
+                        onStack.remove(member);
+                        component.add(member);
+                        componentOf.put(member, components.size());
+                    } while (member != node);
+                    components.add(component);
+                }
+            }
+        }
+    }
+
+    private void visit(N node, Map<N, Integer> index, Map<N, Integer> lowlink,
+                       Deque<N> stack, Set<N> onStack) {
+        int i = index.size();
+        index.put(node, i);
+        lowlink.put(node, i);
+        stack.push(node);
+        onStack.add(node);
+    }
+
+    /**
+     * @return the components, in reverse topological order.
+     */
+    public List<Set<N>> getComponents() {
+        return components;
+    }
+
+    /**
+     * @return the position of the component of node in getComponents().
+     */
+    public int componentOf(N node) {
+        return componentOf.get(node);
+    }
+}
@@ -0,0 +1,71 @@
+package org.clyze.doop.ptatoolkit.zipper;
+
+import org.clyze.doop.ptatoolkit.Global;
+import org.clyze.doop.ptatoolkit.pta.basic.Method;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+import org.clyze.doop.ptatoolkit.util.ANSIColor;
+import org.clyze.doop.ptatoolkit.util.Timer;
+import org.clyze.doop.ptatoolkit.zipper.analysis.Zipper;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.ObjectFlowGraph;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+public class Driver {
+
+    private static final char EOL = '\n';
+
+    public static List<String> runZipper(File factsDir, File database) throws FileNotFoundException {
+        synchronized (Global.RUN_LOCK) {
+            int threads = Global.getThread() != Global.UNDEFINE ?
+                    Global.getThread() : Runtime.getRuntime().availableProcessors();
+            return runZipper(factsDir, database, threads);
+        }
+    }
+
+    /**
+     * Runs Zipper on the results of a context-insensitive pre-analysis
+     * (run with --Xzipper-pre) and writes the precision-critical methods
+     * to ZipperPrecisionCriticalMethod.facts in factsDir, where the main
+     * analysis reads them (with X_ZIPPER).
+     *
+     * @param threads  the number of classes to analyze at the same time
+     * @return the signatures of the precision-critical methods, sorted
+     */
+    public static List<String> runZipper(File factsDir, File database, int threads) throws FileNotFoundException {
+        synchronized (Global.RUN_LOCK) {
+            DoopPointsToAnalysis pta = new DoopPointsToAnalysis(database, "zipper");
+
+            Timer zipperTimer = new Timer("Zipper Timer");
+            System.out.println(ANSIColor.BOLD + ANSIColor.YELLOW + "Zipper starts ..." + ANSIColor.RESET);
+            zipperTimer.start();
+            ObjectFlowGraph ofg = new ObjectFlowGraph(pta);
+            System.out.println("Object flow graph: " + ofg.nodeCount() + " nodes");
+            Set<Method> pcm = new Zipper(pta, ofg).analyze(threads);
+            zipperTimer.stop();
+            System.out.print(ANSIColor.BOLD + ANSIColor.YELLOW +
+                    "Zipper finishes, analysis time: " + ANSIColor.RESET);
+            System.out.print(ANSIColor.BOLD + ANSIColor.GREEN);
+            System.out.printf("%.2fs", zipperTimer.inSecond());
+            System.out.println(ANSIColor.RESET);
+
+            List<String> methods = pcm.stream()
+                    .map(Method::toString)
+                    .sorted()
+                    .collect(Collectors.toList());
+            File zipperOutput = new File(factsDir, "ZipperPrecisionCriticalMethod.facts");
+            System.out.printf("Writing Zipper precision-critical methods to %s...\n", zipperOutput.getPath());
+            PrintWriter writer = new PrintWriter(zipperOutput);
+            for (String method : methods) {
+                writer.write(method);
+                writer.write(EOL);
+            }
+            writer.close();
+            return methods;
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package org.clyze.doop.ptatoolkit.zipper.analysis;
+
+import org.clyze.doop.ptatoolkit.Global;
+import org.clyze.doop.ptatoolkit.pta.basic.Method;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+import org.clyze.doop.ptatoolkit.pta.basic.Type;
+import org.clyze.doop.ptatoolkit.pta.basic.Variable;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+import org.clyze.doop.ptatoolkit.util.graph.DirectedGraph;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.Edge;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.InstanceFieldNode;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.Kind;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.Node;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.ObjectFlowGraph;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.VarNode;
+
+import java.util.*;
+
+/**
+ * The flows of the values that enter the objects of a class (through the
+ * parameters of the methods invoked on them, the IN methods) and leave
+ * them (through the return variables of these methods, the OUT methods).
+ * The graph is the part of the object flow graph reachable from the IN
+ * parameters, where a flow ends when it returns from an OUT method to a
+ * method outside the class, plus:
+ * <ul>
+ *     <li>wrapped flows: from a field of an object allocated in a method
+ *     of the class to the variables the object is assigned to, and</li>
+ *     <li>unwrapped flows: from the receiver of a call to the variable
+ *     the call returns to, if the latter may point to a value that
+ *     entered the class.</li>
+ * </ul>
+ * Methods on a path from an IN parameter to an OUT return variable mix
+ * values that a context-insensitive analysis merges, so they are
+ * precision-critical.
+ */
+public class PrecisionFlowGraph implements DirectedGraph<Node> {
+
+    private final Type type;
+    private final Set<Method> methods;
+    private final DoopPointsToAnalysis pta;
+    private final ObjectFlowGraph ofg;
+    private final Set<Node> inNodes = new HashSet<>();
+    private final Set<Node> outNodes = new HashSet<>();
+    /** The objects that may enter the class. */
+    private final Set<Obj> inObjs = new HashSet<>();
+    private final Map<Node, List<Node>> succs = new HashMap<>();
+    private final Map<Node, List<Node>> preds = new HashMap<>();
+
+    PrecisionFlowGraph(Type type, Set<Method> methods,
+                       DoopPointsToAnalysis pta, ObjectFlowGraph ofg) {
+        this.type = type;
+        this.methods = methods;
+        this.pta = pta;
+        this.ofg = ofg;
+        for (Method method : methods) {
+            for (Variable param : method.getParameters()) {
+                inNodes.add(ofg.nodeOf(param));
+                inObjs.addAll(pta.pointsToSetOf(param));
+            }
+            for (Variable ret : method.getRetVars()) {
+                outNodes.add(ofg.nodeOf(ret));
+            }
+        }
+        build();
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    @Override
+    public Collection<Node> allNodes() {
+        return succs.keySet();
+    }
+
+    @Override
+    public Collection<Node> predsOf(Node node) {
+        return preds.getOrDefault(node, Collections.emptyList());
+    }
+
+    @Override
+    public Collection<Node> succsOf(Node node) {
+        return succs.getOrDefault(node, Collections.emptyList());
+    }
+
+    private void build() {
+        Deque<Node> worklist = new ArrayDeque<>(inNodes);
+        for (Node in : inNodes) {
+            succs.put(in, new ArrayList<>());
+        }
+        while (!worklist.isEmpty()) {
+            Node node = worklist.poll();
+            for (Edge edge : edgesOf(node)) {
+                Node target = edge.getTarget();
+                succs.get(node).add(target);
+                preds.computeIfAbsent(target, t -> new ArrayList<>()).add(node);
+                if (!succs.containsKey(target)) {
+                    succs.put(target, new ArrayList<>());
+                    worklist.add(target);
+                }
+            }
+        }
+    }
+
+    private List<Edge> edgesOf(Node node) {
+        List<Edge> edges = new ArrayList<>();
+        for (Edge edge : node.getOutEdges()) {
+            if (!leavesClass(edge)) {
+                edges.add(edge);
+            }
+        }
+        if (node instanceof InstanceFieldNode && Global.isEnableWrappedFlow()) {
+            Obj base = ((InstanceFieldNode) node).getBase();
+            if (methods.contains(pta.allocatingMethodOf(base))) {
+                for (Variable var : pta.assignedVariablesOf(base)) {
+                    edges.add(new Edge(Kind.WRAPPED_FLOW, node, ofg.nodeOf(var)));
+                }
+            }
+        }
+        if (node instanceof VarNode && Global.isEnableUnwrappedFlow()) {
+            for (Variable to : pta.returnToVariablesOf(((VarNode) node).getVar())) {
+                if (!Collections.disjoint(pta.pointsToSetOf(to), inObjs)) {
+                    edges.add(new Edge(Kind.UNWRAPPED_FLOW, node, ofg.nodeOf(to)));
+                }
+            }
+        }
+        return edges;
+    }
+
+    /**
+     * A value returned by an OUT method to a method outside the class has
+     * left the class.
+     */
+    private boolean leavesClass(Edge edge) {
+        return edge.getKind() == Kind.INTERPROCEDURAL_ASSIGN
+                && outNodes.contains(edge.getSource())
+                && !methods.contains(pta.declaringMethodOf(((VarNode) edge.getTarget()).getVar()));
+    }
+
+    /**
+     * @return the methods that declare the variables on the paths from
+     * the IN parameters to the OUT return variables.
+     */
+    public Set<Method> precisionCriticalMethods() {
+        Set<Node> onPath = new HashSet<>();
+        Deque<Node> worklist = new ArrayDeque<>();
+        for (Node out : outNodes) {
+            if (succs.containsKey(out)) {
+                onPath.add(out);
+                worklist.add(out);
+            }
+        }
+        while (!worklist.isEmpty()) {
+            for (Node pred : predsOf(worklist.poll())) {
+                if (onPath.add(pred)) {
+                    worklist.add(pred);
+                }
+            }
+        }
+        Set<Method> critical = new HashSet<>();
+        for (Node node : onPath) {
+            if (node instanceof VarNode) {
+                Method method = pta.declaringMethodOf(((VarNode) node).getVar());
+                if (method != null) {
+                    critical.add(method);
+                }
+            }
+        }
+        return critical;
+    }
+}
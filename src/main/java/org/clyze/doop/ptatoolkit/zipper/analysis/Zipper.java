@@ -0,0 +1,97 @@
+package org.clyze.doop.ptatoolkit.zipper.analysis;
+
+import org.clyze.doop.ptatoolkit.Global;
+import org.clyze.doop.ptatoolkit.pta.basic.Method;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+import org.clyze.doop.ptatoolkit.pta.basic.Type;
+import org.clyze.doop.ptatoolkit.pta.basic.Variable;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+import org.clyze.doop.ptatoolkit.util.ANSIColor;
+import org.clyze.doop.ptatoolkit.zipper.flowgraph.ObjectFlowGraph;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+/**
+ * Selects the precision-critical methods of a context-insensitive
+ * pre-analysis: for every class (type of objects), the methods on the
+ * paths of its precision flow graph (see {@link PrecisionFlowGraph}).
+ * The classes are independent, so their graphs are built in parallel.
+ */
+public class Zipper {
+
+    /**
+     * In express mode, methods whose accumulative points-to size exceeds
+     * this part of the total are not precision-critical: analyzing them
+     * context-sensitively would cost too much.
+     */
+    private static final double EXPRESS_THRESHOLD = 0.05d;
+
+    private final DoopPointsToAnalysis pta;
+    private final ObjectFlowGraph ofg;
+
+    public Zipper(DoopPointsToAnalysis pta, ObjectFlowGraph ofg) {
+        this.pta = pta;
+        this.ofg = ofg;
+    }
+
+    /**
+     * @param threads  the number of classes to analyze at the same time
+     * @return the precision-critical methods
+     */
+    public Set<Method> analyze(int threads) {
+        Map<Type, Set<Method>> typeMethods = new HashMap<>();
+        for (Obj obj : pta.allObjects()) {
+            Type type = pta.typeOf(obj);
+            Set<Method> invoked = pta.methodsInvokedOn(obj);
+            if (type != null && !invoked.isEmpty()) {
+                typeMethods.computeIfAbsent(type, t -> new HashSet<>()).addAll(invoked);
+            }
+        }
+        System.out.println("Building precision flow graphs for " + typeMethods.size() + " classes ...");
+        ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads));
+        Set<Method> critical;
+        try {
+            critical = pool.submit(() -> typeMethods.entrySet().parallelStream()
+                    .flatMap(e -> new PrecisionFlowGraph(e.getKey(), e.getValue(), pta, ofg)
+                            .precisionCriticalMethods().stream())
+                    .collect(Collectors.toSet())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Zipper was interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Zipper fails, caused by " + e.getCause(), e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+        if (Global.isExpress()) {
+            critical = express(critical);
+        }
+        System.out.println("#Precision-critical methods: " +
+                ANSIColor.BOLD + ANSIColor.GREEN + critical.size() + ANSIColor.RESET +
+                " of " + pta.reachableMethods().size() + " reachable methods");
+        return critical;
+    }
+
+    private Set<Method> express(Set<Method> critical) {
+        long total = 0;
+        Map<Method, Long> accumulativePTS = new HashMap<>();
+        for (Method method : pta.reachableMethods()) {
+            long size = 0;
+            for (Variable var : pta.variablesDeclaredIn(method)) {
+                size += pta.pointsToSetSizeOf(var);
+            }
+            accumulativePTS.put(method, size);
+            total += size;
+        }
+        long threshold = (long) (total * EXPRESS_THRESHOLD);
+        Set<Method> cheap = critical.stream()
+                .filter(m -> accumulativePTS.getOrDefault(m, 0L) <= threshold)
+                .collect(Collectors.toSet());
+        System.out.println("Express mode: excluded " + (critical.size() - cheap.size()) +
+                " methods with accumulative points-to size over " + threshold);
+        return cheap;
+    }
+}
@@ -0,0 +1,31 @@
+package org.clyze.doop.ptatoolkit.zipper.flowgraph;
+
+public class Edge {
+
+    private final Kind kind;
+    private final Node source;
+    private final Node target;
+
+    public Edge(Kind kind, Node source, Node target) {
+        this.kind = kind;
+        this.source = source;
+        this.target = target;
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public Node getSource() {
+        return source;
+    }
+
+    public Node getTarget() {
+        return target;
+    }
+
+    @Override
+    public String toString() {
+        return source + " -[" + kind + "]-> " + target;
+    }
+}
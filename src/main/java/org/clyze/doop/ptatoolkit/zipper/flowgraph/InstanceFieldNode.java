@@ -0,0 +1,28 @@
+package org.clyze.doop.ptatoolkit.zipper.flowgraph;
+
+import org.clyze.doop.ptatoolkit.pta.basic.Field;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+
+public class InstanceFieldNode extends Node {
+
+    private final Obj base;
+    private final Field field;
+
+    InstanceFieldNode(Obj base, Field field) {
+        this.base = base;
+        this.field = field;
+    }
+
+    public Obj getBase() {
+        return base;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    @Override
+    public String toString() {
+        return "InstanceFieldNode: " + base + "." + field;
+    }
+}
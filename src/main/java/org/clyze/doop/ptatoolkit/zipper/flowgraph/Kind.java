@@ -0,0 +1,15 @@
+package org.clyze.doop.ptatoolkit.zipper.flowgraph;
+
+/**
+ * The kinds of the edges of object and precision flow graphs.
+ */
+public enum Kind {
+    LOCAL_ASSIGN,
+    INTERPROCEDURAL_ASSIGN,
+    INSTANCE_LOAD,
+    INSTANCE_STORE,
+    /** A value stored in an object that is then passed on (Zipper only). */
+    WRAPPED_FLOW,
+    /** A value taken out of an object by a call on it (Zipper only). */
+    UNWRAPPED_FLOW,
+}
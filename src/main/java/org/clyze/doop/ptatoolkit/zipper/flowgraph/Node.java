@@ -0,0 +1,24 @@
+package org.clyze.doop.ptatoolkit.zipper.flowgraph;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A node of the object flow graph: a variable or a field of an object.
+ * Nodes are unique in their graph, so they are compared by identity.
+ */
+public abstract class Node {
+
+    private final List<Edge> outEdges = new ArrayList<>(4);
+
+    /**
+     * @return the edges of the object flow graph that leave this node.
+     */
+    public List<Edge> getOutEdges() {
+        return outEdges;
+    }
+
+    void addOutEdge(Edge edge) {
+        outEdges.add(edge);
+    }
+}
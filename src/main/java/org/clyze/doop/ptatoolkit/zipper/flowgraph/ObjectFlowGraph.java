@@ -0,0 +1,70 @@
+package org.clyze.doop.ptatoolkit.zipper.flowgraph;
+
+import org.clyze.doop.ptatoolkit.pta.basic.Field;
+import org.clyze.doop.ptatoolkit.pta.basic.Method;
+import org.clyze.doop.ptatoolkit.pta.basic.Obj;
+import org.clyze.doop.ptatoolkit.pta.basic.Variable;
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis;
+import org.clyze.doop.ptatoolkit.util.Pair;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The flows of values between the variables and the object fields of a
+ * (context-insensitive) points-to analysis. Every node only gets edges
+ * from the thread that handles it, so the variables and the objects are
+ * processed in parallel.
+ */
+public class ObjectFlowGraph {
+
+    private final Map<Variable, VarNode> varNodes = new ConcurrentHashMap<>();
+    private final Map<Obj, Map<Field, InstanceFieldNode>> fieldNodes = new ConcurrentHashMap<>();
+
+    public ObjectFlowGraph(DoopPointsToAnalysis pta) {
+        List<Variable> vars = new ArrayList<>();
+        for (Method method : pta.reachableMethods()) {
+            vars.addAll(pta.variablesDeclaredIn(method));
+        }
+        vars.parallelStream().forEach(var -> {
+            VarNode node = nodeOf(var);
+            for (Variable to : pta.localAssignmentsOf(var)) {
+                node.addOutEdge(new Edge(Kind.LOCAL_ASSIGN, node, nodeOf(to)));
+            }
+            for (Variable to : pta.interproceduralAssignmentsOf(var)) {
+                node.addOutEdge(new Edge(Kind.INTERPROCEDURAL_ASSIGN, node, nodeOf(to)));
+            }
+            for (Pair<Obj, Field> store : pta.storesOf(var)) {
+                node.addOutEdge(new Edge(Kind.INSTANCE_STORE, node,
+                        nodeOf(store.getFirst(), store.getSecond())));
+            }
+        });
+        pta.allObjects().parallelStream().forEach(obj -> {
+            for (Pair<Field, Variable> load : pta.loadsOf(obj)) {
+                InstanceFieldNode node = nodeOf(obj, load.getFirst());
+                node.addOutEdge(new Edge(Kind.INSTANCE_LOAD, node, nodeOf(load.getSecond())));
+            }
+        });
+    }
+
+    /**
+     * @return the node of a variable.
+     */
+    public VarNode nodeOf(Variable var) {
+        return varNodes.computeIfAbsent(var, VarNode::new);
+    }
+
+    /**
+     * @return the node of a field of an object.
+     */
+    public InstanceFieldNode nodeOf(Obj base, Field field) {
+        return fieldNodes.computeIfAbsent(base, b -> new ConcurrentHashMap<>())
+                .computeIfAbsent(field, f -> new InstanceFieldNode(base, f));
+    }
+
+    public int nodeCount() {
+        return varNodes.size() + fieldNodes.values().stream().mapToInt(Map::size).sum();
+    }
+}
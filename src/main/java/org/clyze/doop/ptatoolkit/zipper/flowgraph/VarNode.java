@@ -0,0 +1,21 @@
+package org.clyze.doop.ptatoolkit.zipper.flowgraph;
+
+import org.clyze.doop.ptatoolkit.pta.basic.Variable;
+
+public class VarNode extends Node {
+
+    private final Variable var;
+
+    VarNode(Variable var) {
+        this.var = var;
+    }
+
+    public Variable getVar() {
+        return var;
+    }
+
+    @Override
+    public String toString() {
+        return "VarNode: " + var;
+    }
+}
@@ -0,0 +1,89 @@
+package org.clyze.doop
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class BatchRunnerTest extends Specification {
+
+	def "Manifest entries are limited to the budget"() {
+		given:
+		File manifest = Files.createTempFile('batch', '.json').toFile()
+		manifest.text = '''{
+  "cores": 8, "memory": "16g",
+  "defaults": { "cores": 2, "memory": "4g", "options": ["--platform", "java_8"] },
+  "entries": [
+    { "id": "a", "analysis": "micro", "inputs": ["a.jar"] },
+    { "id": "b", "analysis": "context-insensitive", "inputs": ["b.jar"], "cores": 32, "memory": "64g",
+      "options": ["--cache", "--stats", "none"], "relations": ["Reachable"] }
+  ]
+}'''
+
+		when:
+		BatchRunner runner = BatchRunner.load(manifest)
+		BatchRunner.Entry a = runner.entries[0]
+		BatchRunner.Entry b = runner.entries[1]
+
+		then:
+		runner.cores == 8
+		runner.memory == 16L * 1024 * 1024 * 1024
+		a.cores == 2
+		a.memory == 4L * 1024 * 1024 * 1024
+		a.toArgs() as List == ['-a', 'micro', '--id', 'a', '-i', 'a.jar', '--souffle-jobs', '2',
+							   '--max-memory', '4096m', '--cache', '--platform', 'java_8']
+		b.cores == 8
+		b.memory == runner.memory
+		b.relations == ['Reachable']
+		(b.toArgs() as List).count('--cache') == 1
+
+		cleanup:
+		manifest.delete()
+	}
+
+	def "Duplicate ids are rejected"() {
+		given:
+		File manifest = Files.createTempFile('batch', '.json').toFile()
+		manifest.text = '{"entries": [{"id": "a", "analysis": "micro"}, {"id": "a", "analysis": "micro"}]}'
+
+		when:
+		BatchRunner.load(manifest)
+
+		then:
+		thrown(RuntimeException)
+
+		cleanup:
+		manifest.delete()
+	}
+
+	def "Jobs and memory given as options are not added again"() {
+		given:
+		File manifest = Files.createTempFile('batch', '.json').toFile()
+		manifest.text = '{"cores": 8, "memory": "16g", "entries": [{"id": "a", "analysis": "micro", "memory": "4g", "options": ["--souffle-jobs", "3", "--max-memory", "2048m"]}]}'
+
+		when:
+		BatchRunner.Entry a = BatchRunner.load(manifest).entries[0]
+		List<String> args = a.toArgs() as List
+
+		then:
+		a.cores == 3
+		args.count('--souffle-jobs') == 1
+		args.count('--max-memory') == 1
+		args[args.indexOf('--souffle-jobs') + 1] == '3'
+
+		cleanup:
+		manifest.delete()
+	}
+
+	def "Entries start in order when their budget is free"() {
+		given:
+		def big = new BatchRunner.Entry(id: 'big', cores: 6, memory: 10L)
+		def small = new BatchRunner.Entry(id: 'small', cores: 2, memory: 2L)
+
+		expect:
+		BatchRunner.nextEntry([big, small], 8, 16L, true).id == 'big'
+		// The small entry fits but does not overtake the big one.
+		BatchRunner.nextEntry([big, small], 4, 16L, true) == null
+		BatchRunner.nextEntry([small, big], 4, 16L, true).id == 'small'
+		BatchRunner.nextEntry([big, small], 8, 1L, true) == null
+		BatchRunner.nextEntry([big, small], 8, 0L, false).id == 'big'
+	}
+}
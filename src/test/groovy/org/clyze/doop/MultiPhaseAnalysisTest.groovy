@@ -0,0 +1,79 @@
+package org.clyze.doop
+
+import org.clyze.doop.command.CommandLineAnalysisFactory
+import org.clyze.doop.core.DoopAnalysis
+import org.clyze.doop.core.SouffleGenericsMultiPhaseAnalysis
+import org.clyze.doop.core.SouffleMahjongMultiPhaseAnalysis
+import org.clyze.doop.core.SouffleMultiPhaseAnalysis
+import org.clyze.doop.core.SouffleScalerMultiPhaseAnalysis
+import org.clyze.doop.core.SouffleZipperMultiPhaseAnalysis
+import org.clyze.doop.utils.CPreprocessor
+import spock.lang.Unroll
+
+/**
+ * Test that multi-phase analyses set up the logic of their main analysis
+ * before the pre-analysis exactly as it was set up after it.
+ */
+class MultiPhaseAnalysisTest extends DoopSpec {
+
+    @Unroll
+    def "The main logic of #analysisName is known before the pre-analysis"(String analysisName, List<String> extraArgs, Class<?> analysisClass) {
+        when:
+        List<String> args = ['-i', Artifacts.HELLO_JAR,
+                             '-a', analysisName,
+                             '--id', "main-logic-${analysisName}"] + extraArgs
+        DoopAnalysis doopAnalysis = Main.newAnalysis(args as String[], new CommandLineAnalysisFactory(), false)
+        // The generics analysis is not selected by any option.
+        SouffleMultiPhaseAnalysis analysis = analysisClass == SouffleGenericsMultiPhaseAnalysis ?
+                new SouffleGenericsMultiPhaseAnalysis(doopAnalysis.options, doopAnalysis.ctx, doopAnalysis.commandsEnvironment) :
+                doopAnalysis as SouffleMultiPhaseAnalysis
+        Map<String, Object> preOptions = analysis.preAnalysisOptions()
+        Map<String, Object> mainOptions = analysis.mainAnalysisOptions()
+
+        then:
+        analysis.class == analysisClass
+        mainLogicUpFront(analysis, preOptions, mainOptions) == mainLogicAfterPreAnalysis(analysis, mainOptions)
+
+        where:
+        analysisName                       | extraArgs            | analysisClass
+        'fully-guided-context-sensitive'   | []                   | SouffleScalerMultiPhaseAnalysis
+        '2-object-sensitive+heap'          | ['--Xzipper-guided'] | SouffleZipperMultiPhaseAnalysis
+        'mahjong-2-object-sensitive+heap'  | []                   | SouffleMahjongMultiPhaseAnalysis
+        'adaptive-2-object-sensitive+heap' | []                   | SouffleGenericsMultiPhaseAnalysis
+    }
+
+    /**
+     * Sets up the main logic as the analysis does, before the pre-analysis.
+     */
+    private static String mainLogicUpFront(SouffleMultiPhaseAnalysis analysis, Map<String, Object> preOptions,
+                                           Map<String, Object> mainOptions) {
+        File logic = newLogicFile(analysis, 'up-front')
+        analysis.applyOptions(preOptions)
+        analysis.cpp = new CPreprocessor(analysis, analysis.executor)
+        analysis.prepareMainAnalysis(logic, mainOptions)
+        return logic.text
+    }
+
+    /**
+     * Sets up the main logic after the pre-analysis, with the options of the
+     * main analysis applied.
+     */
+    private static String mainLogicAfterPreAnalysis(SouffleMultiPhaseAnalysis analysis, Map<String, Object> mainOptions) {
+        File logic = newLogicFile(analysis, 'after-pre-analysis')
+        analysis.applyOptions(mainOptions)
+        analysis.cpp = new CPreprocessor(analysis, analysis.executor)
+        analysis.initDatabase(logic)
+        analysis.runAnalysisAndProduceStats(logic)
+        return logic.text
+    }
+
+    // The logic is found by the name of its file, the name of the analysis.
+    private static File newLogicFile(SouffleMultiPhaseAnalysis analysis, String dir) {
+        File logicDir = new File(analysis.outDir, dir)
+        logicDir.mkdirs()
+        File logic = new File(logicDir, "${analysis.name}.dl")
+        logic.delete()
+        logic.createNewFile()
+        return logic
+    }
+}
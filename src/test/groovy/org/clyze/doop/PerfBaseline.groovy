@@ -0,0 +1,135 @@
+package org.clyze.doop
+
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.clyze.analysis.Analysis
+import org.clyze.doop.utils.Telemetry
+
+/**
+ * Measurements of analysis runs and their comparison against a stored
+ * baseline, used by the performance regression suite.
+ *
+ * Every run is identified by a key (program and configuration) and has a
+ * map of measurements, named by kind:
+ *
+ *   facts:      number of rows of the facts
+ *   metric:     values of Stats_Metrics
+ *   runtime:    values of Stats_Runtime (times, peak memory, disk footprint)
+ *   telemetry:  peak JVM heap and child process memory
+ *
+ * Facts and metrics regress when they move in either direction past the
+ * count tolerance (the analysis computes something else). Runtime and
+ * telemetry values regress when they grow past the resource tolerance.
+ */
+class PerfBaseline {
+
+	/** Key Stats_Metrics values to record. */
+	static final List<String> METRICS = [
+		'var points-to (INS)',
+		'var points-to (SENS)',
+		'call graph edges (INS)',
+		'call graph edges (SENS)',
+		'reachable methods (INS)',
+		'reachable methods (SENS)',
+		'polymorphic virtual call sites',
+		'reachable casts that may fail'
+	]
+
+	/** Differences in seconds below this are noise, whatever the tolerance. */
+	static final long TIME_SLACK_SEC = 2L
+
+	/**
+	 * Collects the measurements of an analysis that has run with
+	 * statistics and telemetry enabled.
+	 */
+	static Map<String, Long> measure(Analysis analysis) {
+		Map<String, Long> m = new TreeMap<>()
+
+		long facts = 0L
+		int factFiles = 0
+		new File(analysis.database as String).eachFileMatch(~/.*\.facts/) { File f ->
+			long rows = 0L
+			f.eachLine { rows++ }
+			facts += rows
+			factFiles++
+		}
+		m['facts: rows'] = facts
+		m['facts: files'] = factFiles as long
+
+		File metrics = new File("${analysis.database}/Stats_Metrics.csv")
+		if (metrics.exists()) {
+			metrics.eachLine { String line ->
+				String[] values = line.split('\t')
+				if (values.size() == 3 && values[1] in METRICS)
+					m['metric: ' + values[1]] = values[2] as long
+			}
+		}
+
+		File runtime = new File("${analysis.database}/Stats_Runtime.csv")
+		if (runtime.exists()) {
+			runtime.eachLine { String line ->
+				String[] values = line.split('\t')
+				if (values.size() == 2 && values[1].isLong())
+					m['runtime: ' + values[0]] = values[1] as long
+			}
+		}
+
+		File phases = new File("${analysis.outDir}/${Telemetry.PHASES_FILE}")
+		if (phases.exists()) {
+			List<String[]> rows = phases.readLines().drop(1).collect { it.split('\t') }
+			m['telemetry: peak heap (KB)'] = rows.collect { it[3] as long }.max() ?: 0L
+			m['telemetry: peak children rss (KB)'] = rows.collect { it[4] as long }.max() ?: 0L
+		}
+		return m
+	}
+
+	/**
+	 * Compares the measurements of a run against its baseline.
+	 *
+	 * @param baseline            the baseline measurements of the run
+	 * @param current             the current measurements of the run
+	 * @param countTolerance      the relative change allowed in facts and metrics
+	 * @param resourceTolerance   the relative growth allowed in times and memory
+	 * @return                    a description of every regression
+	 */
+	static List<String> regressions(Map<String, Long> baseline, Map<String, Long> current,
+									double countTolerance, double resourceTolerance) {
+		List<String> result = []
+		baseline.each { String name, Long base ->
+			Long value = current[name]
+			if (value == null) {
+				result << "${name}: missing (baseline ${base})".toString()
+				return
+			}
+			long delta = value - base
+			if (name.startsWith('facts: ') || name.startsWith('metric: ')) {
+				if (Math.abs(delta) > base * countTolerance)
+					result << "${name}: ${base} -> ${value}".toString()
+			} else {
+				long slack = name.endsWith('(sec)') ? TIME_SLACK_SEC : 0L
+				if (delta > base * resourceTolerance && delta > slack)
+					result << "${name}: ${base} -> ${value}".toString()
+			}
+		}
+		return result
+	}
+
+	/** Reads a baseline file (run key to measurements), or null if it does not exist. */
+	static Map<String, Map<String, Long>> read(File file) {
+		if (!file.exists())
+			return null
+		Map json = new JsonSlurper().parse(file) as Map
+		Map<String, Map<String, Long>> result = new TreeMap<>()
+		json.each { run, values ->
+			Map<String, Long> m = new TreeMap<>()
+			(values as Map).each { name, value -> m[name as String] = value as long }
+			result[run as String] = m
+		}
+		return result
+	}
+
+	static void write(File file, Map<String, Map<String, Long>> runs) {
+		file.parentFile?.mkdirs()
+		file.text = JsonOutput.prettyPrint(JsonOutput.toJson(runs))
+	}
+}
@@ -0,0 +1,114 @@
+package org.clyze.doop
+
+import org.clyze.analysis.Analysis
+import spock.lang.Requires
+import spock.lang.Shared
+import spock.lang.Unroll
+
+/**
+ * Performance regression suite: runs a fixed matrix of analyses over the
+ * test subprojects, records fact counts, times, peak memory and key
+ * metrics and compares them against a stored baseline.
+ *
+ * Only runs via 'gradle perfTest', which sets these system properties:
+ *
+ *   doop.perf                     enables the suite
+ *   doop.perf.baseline            the baseline (no comparison if missing)
+ *   doop.perf.results             where to write the measurements
+ *   doop.perf.tolerance           allowed change in facts and metrics (default 0.05)
+ *   doop.perf.resourceTolerance   allowed growth in times and memory (default 0.25)
+ *
+ * The results of a run become the new baseline with 'gradle perfBaseline'.
+ */
+class PerfRegressionTest extends DoopSpec {
+
+    static final List<String> PROGRAMS = [ '016-reflection', '104-method-references', '107-lambdas', '115-invokedynamic' ]
+
+    /** Configuration name to analysis and extra options. */
+    static final Map<String, List> CONFIGURATIONS = [
+        'insensitive': [ 'context-insensitive', [] ],
+        '2objH'      : [ '2-object-sensitive+heap', [] ],
+        'scaler'     : [ 'fully-guided-context-sensitive', [ '--Xscaler-pre' ] ]
+    ]
+
+    @Shared Map<String, Map<String, Long>> baseline
+    @Shared Map<String, Map<String, Long>> results = new TreeMap<>()
+
+    def setupSpec() {
+        String baselinePath = System.getProperty('doop.perf.baseline')
+        baseline = baselinePath ? PerfBaseline.read(new File(baselinePath)) : null
+        if (System.getProperty('doop.perf') && baseline == null)
+            System.err.println("WARNING: no performance baseline found at ${baselinePath}, measurements will only be recorded.")
+    }
+
+    def cleanupSpec() {
+        String resultsPath = System.getProperty('doop.perf.results')
+        if (resultsPath && results) {
+            PerfBaseline.write(new File(resultsPath), results)
+            println "Performance measurements written to ${resultsPath}"
+        }
+    }
+
+    @Requires({ sys['doop.perf'] })
+    @Unroll
+    def "Performance of #configuration on #program"(String program, String configuration) {
+        when:
+        String run = "${program}/${configuration}"
+        String analysisName = CONFIGURATIONS[configuration][0]
+        List<String> options = ['--platform', 'java_8', '--stats', 'default', '--telemetry'] + (CONFIGURATIONS[configuration][1] as List<String>)
+        Analysis analysis = analyzeBuiltinTest(program, options, analysisName, "perf-${program}-${configuration}")
+        Map<String, Long> measurements = PerfBaseline.measure(analysis)
+        results[run] = measurements
+        List<String> regressions = baseline?.get(run) ?
+            PerfBaseline.regressions(baseline[run], measurements, tolerance('doop.perf.tolerance', 0.05d), tolerance('doop.perf.resourceTolerance', 0.25d)) :
+            []
+
+        then:
+        regressions.isEmpty()
+
+        where:
+        [program, configuration] << [PROGRAMS, CONFIGURATIONS.keySet()].combinations()
+    }
+
+    def "Facts and metrics regress in both directions, resources only when growing"() {
+        given:
+        Map<String, Long> base = ['facts: rows': 1000L, 'metric: var points-to (INS)': 500L,
+                                  'runtime: analysis execution time (sec)': 10L, 'telemetry: peak heap (KB)': 100000L]
+
+        expect:
+        PerfBaseline.regressions(base, base, 0.05d, 0.25d).isEmpty()
+        PerfBaseline.regressions(base, base + ['facts: rows': 900L], 0.05d, 0.25d) == ['facts: rows: 1000 -> 900']
+        PerfBaseline.regressions(base, base + ['metric: var points-to (INS)': 600L], 0.05d, 0.25d).size() == 1
+        PerfBaseline.regressions(base, base + ['runtime: analysis execution time (sec)': 5L], 0.05d, 0.25d).isEmpty()
+        PerfBaseline.regressions(base, base + ['runtime: analysis execution time (sec)': 14L], 0.05d, 0.25d).size() == 1
+        PerfBaseline.regressions(base, base + ['telemetry: peak heap (KB)': 120000L], 0.05d, 0.25d).isEmpty()
+        PerfBaseline.regressions(base, base.findAll { it.key != 'facts: rows' }, 0.05d, 0.25d) == ['facts: rows: missing (baseline 1000)']
+    }
+
+    def "Short times are not compared"() {
+        expect:
+        PerfBaseline.regressions(['runtime: fact generation time (sec)': 1L],
+                                 ['runtime: fact generation time (sec)': 3L], 0.05d, 0.25d).isEmpty()
+    }
+
+    def "Baselines are written and read back"() {
+        given:
+        File file = File.createTempFile('perf-baseline', '.json')
+        Map<String, Map<String, Long>> runs = ['107-lambdas/insensitive': ['facts: rows': 1234L, 'runtime: analysis execution time (sec)': 3L]]
+
+        when:
+        PerfBaseline.write(file, runs)
+
+        then:
+        PerfBaseline.read(file) == runs
+        PerfBaseline.read(new File(file.parentFile, 'no-such-baseline.json')) == null
+
+        cleanup:
+        file.delete()
+    }
+
+    private static double tolerance(String property, double defaultValue) {
+        String value = System.getProperty(property)
+        return value ? value as double : defaultValue
+    }
+}
@@ -0,0 +1,65 @@
+package org.clyze.doop
+
+import java.nio.file.Files
+import org.clyze.analysis.Analysis
+import spock.lang.Unroll
+
+import static org.clyze.utils.Helper.forEachLineIn
+
+/**
+ * Test that the options read at runtime (DoopAnalysisFamily.RUNTIME_OPTIONS)
+ * reach the logic through RuntimeOption.facts.
+ */
+class TestRuntimeOptions extends DoopSpec {
+
+    // @spock.lang.Ignore
+    @Unroll
+    def "String constants are merged unless --distinguish-all-string-constants is given (#distinguish)"(boolean distinguish) {
+        when:
+        List<String> options = testExports + souffleInterpreter
+        if (distinguish)
+            options << '--distinguish-all-string-constants'
+        Analysis analysis = analyzeTest("006-hello-world-runtime-options", Artifacts.HELLO_JAR, options,
+                                        "context-insensitive", "test-runtime-options-${distinguish}")
+
+        then:
+        new File(analysis.factsDir, 'RuntimeOption.facts').readLines() == (distinguish ? ['DISTINGUISH_ALL_STRING_CONSTANTS'] : [])
+        pointsToMergedStringConstant(analysis) == !distinguish
+
+        where:
+        distinguish << [false, true]
+    }
+
+    // @spock.lang.Ignore
+    def "The runtime options of an analysis do not change the facts that it links to"() {
+        when:
+        Main.main((String[])
+                  ['-i', Artifacts.HELLO_JAR,
+                   '--id', 'test-runtime-options-facts',
+                   '--facts-only',
+                   '--distinguish-all-string-constants'])
+        Analysis facts = Main.analysis
+        Main.main2((String[])
+                   (['--input-id', 'test-runtime-options-facts',
+                     '--Xsymlink-cached-facts',
+                     '-a', 'context-insensitive',
+                     '--id', 'test-runtime-options-linked-facts',
+                     '--stats', 'none'] + souffleInterpreter))
+        Analysis analysis = Main.analysis
+        File runtimeOptions = new File(analysis.factsDir, 'RuntimeOption.facts')
+
+        then:
+        new File(facts.factsDir, 'RuntimeOption.facts').readLines() == ['DISTINGUISH_ALL_STRING_CONSTANTS']
+        !Files.isSymbolicLink(runtimeOptions.toPath())
+        runtimeOptions.readLines() == []
+    }
+
+    private static boolean pointsToMergedStringConstant(Analysis analysis) {
+        boolean found = false
+        forEachLineIn("${analysis.database}/mainAnalysis.VarPointsTo.csv", { String line ->
+            if (line.split('\t')[1] == '<<string-constant>>')
+                found = true
+        })
+        return found
+    }
+}
@@ -0,0 +1,27 @@
+package org.clyze.doop.ptatoolkit
+
+import spock.lang.Specification
+
+/**
+ * A specification with a pre-analysis database, whose relations the
+ * features write, and a facts directory for the output, both deleted
+ * after every feature.
+ */
+abstract class DatabaseSpecification extends Specification {
+
+	// Features get new instances, so every feature gets its own directories.
+	File database = File.createTempDir()
+	File facts = File.createTempDir()
+
+	def cleanup() {
+		database.deleteDir()
+		facts.deleteDir()
+	}
+
+	/**
+	 * Writes the tuples of a relation to the database.
+	 */
+	protected void write(String relation, List<String>... tuples) {
+		new File(database, "${relation}.csv").text = tuples.collect { it.join('\t') + '\n' }.join('')
+	}
+}
@@ -0,0 +1,131 @@
+package org.clyze.doop.ptatoolkit.doop
+
+import java.nio.file.Files
+import org.clyze.doop.ptatoolkit.doop.factory.TypeFactory
+import spock.lang.Specification
+
+class RelationLoaderTest extends Specification {
+
+	File dbDir
+	DataBase db
+
+	def setup() {
+		dbDir = Files.createTempDirectory('RelationLoader').toFile()
+		db = new DataBase(dbDir)
+	}
+
+	def cleanup() {
+		dbDir.deleteDir()
+	}
+
+	private void write(Query query, String text) {
+		new File(dbDir, "${query.name()}.csv").text = text
+	}
+
+	private static List<List<String>> rows(RelationLoader.Table table) {
+		(0..<table.size()).collect { int i -> (0..<2).collect { int j -> table.get(i, j) } }
+	}
+
+	def "Loaded tables have the rows of the relations, in file order"() {
+		given:
+		write(Query.OBJECT_IN, (0..<500).collect { "<m${it % 7}>/new T/${it}\t<m${it % 7}>" }.join('\n'))
+		write(Query.VAR_IN, "v1\tm1\nv2\tm1\n")
+		write(Query.CALL_EDGE, '')
+		List<List<String>> objectIn = []
+		Relation.scan(db.getResultFile(Query.OBJECT_IN)) { Relation.Tuple t -> objectIn << t.toList() }
+
+		when:
+		RelationLoader loader = new RelationLoader(db, 2, Query.OBJECT_IN, Query.VAR_IN, Query.CALL_EDGE)
+		RelationLoader.Table varIn = loader.take(Query.VAR_IN)
+		RelationLoader.Table objects = loader.take(Query.OBJECT_IN)
+		RelationLoader.Table callEdge = loader.take(Query.CALL_EDGE)
+		loader.close()
+
+		then:
+		rows(objects) == objectIn
+		rows(varIn) == [['v1', 'm1'], ['v2', 'm1']]
+		callEdge.size() == 0
+	}
+
+	def "Equal symbols of a column share one id, bytes and string"() {
+		given:
+		write(Query.VAR_IN, "v1\tm1\nv2\tm2\nv3\tm1\nm1\tv1\n")
+
+		when:
+		RelationLoader loader = new RelationLoader(db, 1, Query.VAR_IN)
+		RelationLoader.Table varIn = loader.take(Query.VAR_IN)
+		loader.close()
+
+		then:
+		(0..<4).collect { varIn.symbol(it, 1) } == [0, 1, 0, 2]
+		(0..<4).collect { varIn.symbol(it, 0) } == [0, 1, 2, 3]
+		varIn.bytes(0, 1).is(varIn.bytes(2, 1))
+		varIn.get(0, 1).is(varIn.get(2, 1))
+		new String(varIn.bytes(3, 0), 'UTF-8') == 'm1'
+	}
+
+	def "Elements are created once per symbol, in row order"() {
+		given:
+		write(Query.OBJ_TYPE, "o1\tB\no2\tA\no3\tB\no4\tC\n")
+		TypeFactory types = new TypeFactory()
+		List<String> created = []
+
+		when:
+		RelationLoader loader = new RelationLoader(db, 1, Query.OBJ_TYPE)
+		RelationLoader.Table objTypes = loader.take(Query.OBJ_TYPE)
+		loader.close()
+		(0..<objTypes.size()).each { created << objTypes.get(it, 1, types).toString() }
+
+		then:
+		created == ['B', 'A', 'B', 'C']
+		types.getAllElements().size() == 3
+		objTypes.get(0, 1, types).is(objTypes.get(2, 1, types))
+		objTypes.get(0, 1, types).is(types.get('B'))
+	}
+
+	def "Numbers are parsed"() {
+		given:
+		write(Query.Method_TotalVPT, "m1\t12\nm2\t-3\n")
+
+		when:
+		RelationLoader loader = new RelationLoader(db, 1, Query.Method_TotalVPT)
+		RelationLoader.Table totalVPTs = loader.take(Query.Method_TotalVPT)
+		loader.close()
+
+		then:
+		totalVPTs.getInt(0, 1) == 12
+		totalVPTs.getInt(1, 1) == -3
+	}
+
+	def "A relation can only be taken once"() {
+		given:
+		write(Query.VAR_IN, "v1\tm1\n")
+		RelationLoader loader = new RelationLoader(db, 1, Query.VAR_IN)
+		loader.take(Query.VAR_IN)
+
+		when:
+		loader.take(Query.VAR_IN)
+
+		then:
+		thrown(IllegalArgumentException)
+
+		cleanup:
+		loader.close()
+	}
+
+	def "Rows of different arity fail the relation"() {
+		given:
+		write(Query.VAR_IN, "v1\tm1\nv2\n")
+		RelationLoader loader = new RelationLoader(db, 1, Query.VAR_IN)
+
+		when:
+		loader.take(Query.VAR_IN)
+
+		then:
+		RuntimeException e = thrown()
+		e.message.contains('VAR_IN')
+
+		cleanup:
+		loader.close()
+	}
+}
@@ -0,0 +1,113 @@
+package org.clyze.doop.ptatoolkit.doop
+
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class RelationTest extends Specification {
+
+	File relation
+
+	def setup() {
+		relation = File.createTempFile('Relation', '.csv')
+	}
+
+	def cleanup() {
+		relation.delete()
+	}
+
+	private List<List<String>> scanned() {
+		List<List<String>> rows = []
+		Relation.scan(relation) { Relation.Tuple t -> rows << t.toList() }
+		return rows
+	}
+
+	private List<List<String>> scanned(int chunkSize) {
+		List<List<String>> rows = []
+		new Relation(relation, chunkSize).withCloseable { it.forEach { Relation.Tuple t -> rows << t.toList() } }
+		return rows
+	}
+
+	private List<List<String>> iterated() {
+		List<List<String>> rows = []
+		new QueryResultItr(Query.OBJ, relation).forEachRemaining { rows << it }
+		return rows
+	}
+
+	def "Lines are trimmed and split at tabs"() {
+		when:
+		relation.setText('<a>/new B/0\t<a>/$v\n  padded\tline \r\n\nx\t\ty\né\t-42', 'UTF-8')
+
+		then:
+		scanned() == [['<a>/new B/0', '<a>/$v'], ['padded', 'line'], [''], ['x', '', 'y'], ['é', '-42']]
+	}
+
+	def "Tuples match the query iterator"() {
+		when:
+		relation.text = (0..<500).collect { "  <m${it % 7}>/new T/${it}\t<m${it % 7}>/v${it % 13}\t\t${it} \r" }.join('\n')
+
+		then:
+		scanned() == iterated()
+	}
+
+	@Unroll
+	def "Rows straddling chunks of #chunkSize bytes are read whole"(int chunkSize) {
+		when:
+		// Lines of different lengths, one longer than all chunks, no final newline.
+		relation.text = (0..<200).collect { "<m${it % 7}>/new T/${it}\t${'x' * (it % 11)}\t${it}" }.join('\n') +
+				"\n${'y' * 300}\tlong\nlast\t-1"
+
+		then:
+		scanned(chunkSize) == iterated()
+		scanned(chunkSize).size() == 202
+
+		where:
+		chunkSize << [1, 3, 16, 37, 256, Relation.CHUNK_SIZE]
+	}
+
+	def "Chunk sizes must be positive"() {
+		when:
+		new Relation(relation, 0)
+
+		then:
+		thrown(IllegalArgumentException)
+	}
+
+	def "Empty relations have no tuples"() {
+		expect:
+		scanned() == []
+	}
+
+	def "Numeric columns are parsed without decoding"() {
+		given:
+		relation.text = 'm\t123\nn\t-7\n'
+		List<Long> values = []
+
+		when:
+		Relation.scan(relation) { Relation.Tuple t -> values << t.getLong(1) }
+
+		then:
+		values == [123L, -7L]
+	}
+
+	def "Symbols are interned by their bytes"() {
+		given:
+		relation.text = (0..<1000).collect { "v${it % 100}\t${it}" }.join('\n')
+		SymbolTable<String> symbols = new SymbolTable<>()
+		int hits = 0
+
+		when:
+		Relation.scan(relation) { Relation.Tuple t ->
+			String s = symbols.get(t, 0)
+			if (s == null)
+				symbols.put(t, 0, t.get(0))
+			else {
+				assert s == t.get(0)
+				hits++
+			}
+		}
+
+		then:
+		symbols.size() == 100
+		hits == 900
+	}
+}
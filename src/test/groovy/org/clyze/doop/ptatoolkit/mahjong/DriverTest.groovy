@@ -0,0 +1,32 @@
+package org.clyze.doop.ptatoolkit.mahjong
+
+import org.clyze.doop.ptatoolkit.DatabaseSpecification
+
+class DriverTest extends DatabaseSpecification {
+
+	static final String MAIN = '<Main: void main()>'
+
+	def setup() {
+		// Three lists of arrays: list1 and list2 hold objects of A,
+		// list3 holds an object of B and list4 has no array.
+		write('OBJECT_IN', ['list1', MAIN], ['list2', MAIN], ['list3', MAIN], ['list4', MAIN],
+				['arr1', MAIN], ['arr2', MAIN], ['arr3', MAIN], ['a1', MAIN], ['a2', MAIN], ['b1', MAIN],
+				['str1', MAIN], ['str2', MAIN])
+		write('OBJ', ['list1', 'List'], ['list2', 'List'], ['list3', 'List'], ['list4', 'List'],
+				['arr1', 'java.lang.Object[]'], ['arr2', 'java.lang.Object[]'], ['arr3', 'java.lang.Object[]'],
+				['a1', 'A'], ['a2', 'A'], ['b1', 'B'], ['str1', 'java.lang.String'], ['str2', 'java.lang.String'])
+		write('IFPT', ['list1', 'elems', 'arr1'], ['list2', 'elems', 'arr2'], ['list3', 'elems', 'arr3'])
+		write('APT', ['arr1', 'a1'], ['arr2', 'a2'], ['arr3', 'b1'])
+		write('SPECIAL_OBJECTS', ['str1'], ['str2'])
+	}
+
+	def "Type-consistent objects are merged"() {
+		when:
+		Map<String, String> merged = Driver.runMahjong(facts, database, 2)
+
+		then:
+		// list3 reaches a B, list4 reaches null through its field.
+		merged == [a2: 'a1', arr2: 'arr1', list2: 'list1']
+		new File(facts, 'MahjongHeapRepresentative.facts').readLines() == ['a2\ta1', 'arr2\tarr1', 'list2\tlist1']
+	}
+}
@@ -0,0 +1,58 @@
+package org.clyze.doop.ptatoolkit.scaler
+
+import org.clyze.doop.ptatoolkit.scaler.analysis.GeneratedDatabase
+import org.clyze.doop.ptatoolkit.scaler.analysis.Scaler
+import spock.lang.Specification
+
+class DriverTest extends Specification {
+
+	File database
+	File facts
+
+	def setup() {
+		database = GeneratedDatabase.write(File.createTempDir(), 40, 1L)
+		facts = File.createTempDir()
+	}
+
+	def cleanup() {
+		database.deleteDir()
+		facts.deleteDir()
+	}
+
+	def "A sweep selects for every TST what a single run selects"() {
+		given:
+		List<Long> tsts = [100L, 1000L, 100000L]
+
+		when:
+		List<Scaler.Selection> sweep = Driver.runScaler(facts, database, tsts)
+		List<String> listed = new File(facts, 'ScalerSweep.csv').readLines()
+
+		then:
+		sweep*.TST == tsts
+		listed == sweep.collect { "${it.TST}\t${it.ST}\t${it.worstCaseVPT}\ttst-${it.TST}".toString() }
+		tsts.every { long tst ->
+			File single = File.createTempDir()
+			try {
+				Driver.runScaler(single, database, [tst])
+				new File(facts, "tst-${tst}/SpecialContextSensitivityMethod.facts").readLines() ==
+						new File(single, 'SpecialContextSensitivityMethod.facts').readLines()
+			} finally {
+				single.deleteDir()
+			}
+		}
+		// Larger budgets never select less precise contexts.
+		sweep*.worstCaseVPT == sweep*.worstCaseVPT.sort(false)
+	}
+
+	def "ScalerRank writes its selection and keeps its own snapshot"() {
+		when:
+		Scaler.Selection ranked = Driver.runScalerRank(facts, database, [1000L])[0]
+		Scaler.Selection restored = Driver.runScalerRank(facts, database, [1000L])[0]
+
+		then:
+		new File(database, 'ScalerRankModel.snapshot').isFile()
+		!new File(database, 'ScalerModel.snapshot').exists()
+		new File(facts, 'SpecialContextSensitivityMethod.facts').readLines().size() == ranked.contexts.size()
+		restored.contexts == ranked.contexts
+	}
+}
@@ -0,0 +1,48 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis
+
+import org.clyze.doop.ptatoolkit.pta.basic.Method
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ContextComputerTest extends Specification {
+
+	File database
+
+	def setup() {
+		database = File.createTempDir()
+	}
+
+	def cleanup() {
+		database.deleteDir()
+	}
+
+	private static ContextComputer[] computers(DoopPointsToAnalysis pta, ObjectAllocationGraph oag) {
+		ContextComputer _2Object = new _2ObjectContextComputer_Scaler(pta, oag)
+		return [_2Object, new _2TypeContextComputer_Scaler(pta, oag), new _1TypeContextComputer_Scaler(pta, oag),
+				new _InsensitiveContextComputer(pta)] as ContextComputer[]
+	}
+
+	@Unroll
+	def "Contexts computed concurrently equal the sequential ones (program #seed)"(long seed) {
+		given:
+		DoopPointsToAnalysis pta = new DoopPointsToAnalysis(GeneratedDatabase.write(database, 40, seed), 'scaler')
+		ObjectAllocationGraph oag = new ObjectAllocationGraph(pta)
+
+		when:
+		ContextComputer[] concurrent = computers(pta, oag)
+		ContextComputer.computeContexts(concurrent)
+		ContextComputer[] sequential = computers(pta, oag)
+		sequential.each { it.computeContext(false) }
+
+		then:
+		(0..<concurrent.length).every { int a ->
+			pta.reachableMethods().every { Method m -> concurrent[a].contextNumberOf(m) == sequential[a].contextNumberOf(m) }
+		}
+		// The program is not trivial: some method has several 2-object contexts.
+		pta.reachableMethods().any { Method m -> sequential[0].contextNumberOf(m) > 1 }
+
+		where:
+		seed << [1L, 2L, 3L]
+	}
+}
@@ -0,0 +1,76 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis
+
+/**
+ * A random program, written as the relations that the Scaler (and
+ * ScalerRank) post-processing reads. Classes C0..Cn-1 have an instance method m(),
+ * whose receivers are the objects of the class; static methods S0..Sn-1
+ * call each other (with cycles). All methods allocate objects and call
+ * static methods, and main() allocates the first objects.
+ */
+class GeneratedDatabase {
+
+	static final String MAIN = '<Main: void main()>'
+
+	static String instanceMethod(int c) { "<C${c}: void m()>" }
+
+	static String staticMethod(int s) { "<S${s}: void s()>" }
+
+	static String thisVar(String method) { "${method}/@this" }
+
+	/**
+	 * Writes the relations of a program to a directory.
+	 *
+	 * @param dir       the database directory
+	 * @param classes   the number of classes (and of static methods)
+	 * @param seed      the seed of the program
+	 * @return          the directory
+	 */
+	static File write(File dir, int classes, long seed) {
+		Random random = new Random(seed)
+		List<String> instanceMethods = (0..<classes).collect { instanceMethod(it) }
+		List<String> staticMethods = (0..<classes).collect { staticMethod(it) }
+		List<String> methods = [MAIN] + instanceMethods + staticMethods
+		Map<String, String> declaringClass = [(MAIN): 'Main']
+		(0..<classes).each { declaringClass[instanceMethod(it)] = "C${it}".toString(); declaringClass[staticMethod(it)] = "S${it}".toString() }
+
+		List<List<String>> objectIn = [], allocType = [], vpt = [], varIn = [], callSiteIn = [], callEdge = [], neighbors = []
+		int sites = 0
+		methods.each { String method ->
+			int allocations = method == MAIN ? 3 : random.nextInt(3)
+			allocations.times { int k ->
+				int c = random.nextInt(classes)
+				String obj = "${method}/new C${c}/${k}"
+				objectIn << [obj, method]
+				allocType << [obj, declaringClass[method]]
+				vpt << [obj, thisVar(instanceMethod(c))]
+			}
+			random.nextInt(3).times {
+				String invocation = "${method}/invoke/${sites++}"
+				callSiteIn << [invocation, method]
+				String callee = staticMethods[random.nextInt(classes)]
+				callEdge << [invocation, callee]
+				neighbors << [method, callee] << [callee, method]
+			}
+		}
+		instanceMethods.each { varIn << [thisVar(it), it] }
+
+		writeRelation(dir, 'Reachable', methods.collect { [it] })
+		writeRelation(dir, 'INST_METHODS', instanceMethods.collect { [it] })
+		writeRelation(dir, 'THIS_VAR', instanceMethods.collect { [it, thisVar(it)] })
+		writeRelation(dir, 'VAR_IN', varIn)
+		writeRelation(dir, 'OBJECT_IN', objectIn)
+		writeRelation(dir, 'DECLARING_CLASS_ALLOCATION', allocType)
+		writeRelation(dir, 'VAR_POINTS_TO', vpt)
+		writeRelation(dir, 'CALLSITEIN', callSiteIn)
+		writeRelation(dir, 'CALL_EDGE', callEdge)
+		writeRelation(dir, 'Method_Neighbor', neighbors)
+		writeRelation(dir, 'Method_TotalVPT', methods.collect { [it, random.nextInt(100).toString()] })
+		writeRelation(dir, 'IMPLICITREACHABLE', [])
+		writeRelation(dir, 'SPECIAL_OBJECTS', [])
+		return dir
+	}
+
+	private static void writeRelation(File dir, String relation, List<List<String>> tuples) {
+		new File(dir, "${relation}.csv").text = tuples.collect { it.join('\t') + '\n' }.join('')
+	}
+}
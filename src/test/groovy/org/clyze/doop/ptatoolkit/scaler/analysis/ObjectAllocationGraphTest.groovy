@@ -0,0 +1,70 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis
+
+import org.clyze.doop.ptatoolkit.pta.basic.Method
+import org.clyze.doop.ptatoolkit.pta.basic.Obj
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class ObjectAllocationGraphTest extends Specification {
+
+	File database
+
+	def setup() {
+		database = File.createTempDir()
+	}
+
+	def cleanup() {
+		database.deleteDir()
+	}
+
+	/**
+	 * The successors of every object, as computed by a breadth-first
+	 * search from the methods invoked on it through their static callees.
+	 */
+	private static Map<Obj, Set<Obj>> bfsSuccs(DoopPointsToAnalysis pta) {
+		Map<Obj, Set<Obj>> succs = [:]
+		pta.allObjects().each { Obj obj ->
+			Set<Method> visited = new HashSet<>(pta.methodsInvokedOn(obj))
+			Deque<Method> queue = new ArrayDeque<>(visited)
+			while (!queue.isEmpty()) {
+				pta.calleesOf(queue.poll()).each { Method callee ->
+					if (callee.isStatic() && visited.add(callee)) {
+						queue.add(callee)
+					}
+				}
+			}
+			Set<Obj> objs = new HashSet<>()
+			visited.each { Method m -> objs.addAll(pta.objectsAllocatedIn(m)) }
+			succs[obj] = objs
+		}
+		return succs
+	}
+
+	@Unroll
+	def "The graph matches a per-object search (program #seed)"(long seed) {
+		given:
+		DoopPointsToAnalysis pta = new DoopPointsToAnalysis(GeneratedDatabase.write(database, 40, seed), 'scaler')
+		Map<Obj, Set<Obj>> succs = bfsSuccs(pta)
+		Map<Obj, Set<Obj>> preds = [:].withDefault { new HashSet<Obj>() }
+		succs.each { Obj obj, Set<Obj> objs -> objs.each { Obj o -> preds[o] << obj } }
+
+		when:
+		ObjectAllocationGraph oag = new ObjectAllocationGraph(pta)
+		ContextComputer _2Object = new _2ObjectContextComputer_Scaler(pta, oag)
+		_2Object.computeContext(false)
+
+		then:
+		pta.allObjects().every { Obj obj -> oag.succsOf(obj) == succs[obj] && oag.predsOf(obj) == preds[obj] }
+		pta.reachableMethods().every { Method m ->
+			long expected = pta.receiverObjectsOf(m).isEmpty() ? 1 :
+					pta.receiverObjectsOf(m).sum { Obj recv -> Math.max(1, preds[recv].size()) } as long
+			_2Object.contextNumberOf(m) == expected
+		}
+		// The program is not trivial: some object allocates others.
+		succs.values().any { !it.isEmpty() }
+
+		where:
+		seed << [1L, 2L, 3L]
+	}
+}
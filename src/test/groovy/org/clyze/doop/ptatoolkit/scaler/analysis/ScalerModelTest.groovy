@@ -0,0 +1,103 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis
+
+import org.clyze.doop.ptatoolkit.scaler.doop.DoopPointsToAnalysis
+import spock.lang.Specification
+
+class ScalerModelTest extends Specification {
+
+	File snapshot
+
+	def setup() {
+		snapshot = File.createTempFile('ScalerModel', '.snapshot')
+	}
+
+	def cleanup() {
+		snapshot.delete()
+	}
+
+	private static ScalerModel model() {
+		String[] analyses = ['2-object', '2-type', '1-type', 'context-insensitive']
+		String[] methods = ['<A: void m()>', '<java.util.B: void n()>', '<A: int o(int)>']
+		String[] types = ['A', 'java.util.B', 'A']
+		long[] vpt = [10, 20, 3_000_000_000L]
+		long[][] contexts = [[5, 8, 2], [4, 6, 2], [2, 3, 1], [1, 1, 1]]
+		// 0 - 1, 0 - 2
+		int[] offsets = [0, 2, 3, 4]
+		int[] neighbors = [1, 2, 0, 0]
+		return new ScalerModel(analyses, methods, types, vpt, contexts, offsets, neighbors)
+	}
+
+	private static List dump(ScalerModel m) {
+		(0..<m.methodCount()).collect { int i ->
+			[m.methodOf(i), m.declaringTypeOf(i), m.accumulativePTSSizeOf(i)] +
+					(0..<m.analysisCount()).collect { int a -> m.contextNumberOf(a, i) } +
+					(0..<m.degreeOf(i)).collect { int n -> m.neighborOf(i, n) }
+		} + [(0..<m.analysisCount()).collect { m.analysisName(it) }]
+	}
+
+	def "Snapshots restore the model"() {
+		when:
+		model().write(snapshot, 42L)
+
+		then:
+		dump(ScalerModel.read(snapshot, 42L)) == dump(model())
+	}
+
+	def "Snapshots of another database are ignored"() {
+		when:
+		model().write(snapshot, 42L)
+
+		then:
+		ScalerModel.read(snapshot, 43L) == null
+	}
+
+	def "Missing snapshots are ignored"() {
+		when:
+		snapshot.delete()
+
+		then:
+		ScalerModel.read(snapshot, 42L) == null
+	}
+
+	def "The method graph is relation Method_Neighbor, read for ScalerRank only"() {
+		given:
+		File database = GeneratedDatabase.write(File.createTempDir(), 40, 1L)
+		Set<List<String>> pairs = new File(database, 'Method_Neighbor.csv').readLines()
+				.collect { it.split('\t') as List<String> }.findAll { it[0] != it[1] } as Set
+
+		when:
+		ScalerModel ranked = ScalerModel.build(new DoopPointsToAnalysis(database, 'scalerRank'))
+		ScalerModel plain = ScalerModel.build(new DoopPointsToAnalysis(database, 'scaler'))
+		Set<List<String>> edges = (0..<ranked.methodCount()).collectMany { int m ->
+			(0..<ranked.degreeOf(m)).collect { int i -> [ranked.methodOf(m), ranked.methodOf(ranked.neighborOf(m, i))] }
+		} as Set
+
+		then:
+		!pairs.isEmpty()
+		edges == pairs
+		(0..<plain.methodCount()).every { plain.degreeOf(it) == 0 }
+
+		cleanup:
+		database.deleteDir()
+	}
+
+	def "Restored models select the same contexts"() {
+		given:
+		File a = File.createTempFile('Selection', '.facts')
+		File b = File.createTempFile('Selection', '.facts')
+		model().write(snapshot, 1L)
+
+		when:
+		def built = new Scaler(model(), a).selectContext(50, a)
+		def restored = new Scaler(ScalerModel.read(snapshot, 1L), b).selectContext(50, b)
+
+		then:
+		restored.ST == built.ST
+		restored.contexts == built.contexts
+		b.text == a.text
+
+		cleanup:
+		a.delete()
+		b.delete()
+	}
+}
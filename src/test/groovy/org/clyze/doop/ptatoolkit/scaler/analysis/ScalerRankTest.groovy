@@ -0,0 +1,79 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis
+
+import spock.lang.Specification
+
+class ScalerRankTest extends Specification {
+
+	File output
+
+	def setup() {
+		output = File.createTempFile('SpecialContextSensitivityMethod', '.facts')
+	}
+
+	def cleanup() {
+		output.delete()
+	}
+
+	/** Methods with the same factors, connected by the given undirected edges. */
+	private static ScalerModel model(int n, List<List<Integer>> edges) {
+		List<Set<Integer>> adjacent = (0..<n).collect { new TreeSet<Integer>() }
+		edges.each { e -> adjacent[e[0]] << e[1]; adjacent[e[1]] << e[0] }
+		int[] offsets = (0..n).collect { int m -> adjacent.take(m).sum(0) { it.size() } }
+		int[] neighbors = adjacent.collectMany { it as List }
+		return new ScalerModel(['2-object', '2-type', '1-type', 'context-insensitive'] as String[],
+				(0..<n).collect { "<A: void m${it}()>" } as String[],
+				(0..<n).collect { 'A' } as String[],
+				(0..<n).collect { 10L } as long[],
+				[(0..<n).collect { 8L }, (0..<n).collect { 4L }, (0..<n).collect { 2L }, (0..<n).collect { 1L }] as long[][],
+				offsets, neighbors)
+	}
+
+	def "Central methods weigh more"() {
+		when:
+		// A star: 0 is connected to every other method.
+		def rank = new ScalerRank(model(9, (1..<9).collect { [0, it] }), output)
+
+		then:
+		rank.weightOf(0) > 1
+		(1..<9).every { rank.weightOf(it) < 1 && Math.abs(rank.weightOf(it) - rank.weightOf(1)) < 1e-12 }
+		Math.abs((0..<9).sum { rank.weightOf(it) } - 9) < 1e-6
+	}
+
+	def "Methods without edges keep their factors"() {
+		when:
+		def rank = new ScalerRank(model(4, []), output)
+
+		then:
+		(0..<4).every { Math.abs(rank.weightOf(it) - 1) < 1e-12 }
+		rank.selectContext(400, output).contexts == new Scaler(model(4, []), output).selectContext(400, output).contexts
+	}
+
+	def "Central methods lose precision first"() {
+		given:
+		def rank = new ScalerRank(model(9, (1..<9).collect { [0, it] }), output)
+
+		when:
+		// Enough for all but one method with 2-object contexts.
+		def selection = rank.selectContext(8 * 80 + 40, output)
+
+		then:
+		selection.contexts['<A: void m0()>'] != '2-object'
+		(1..<9).every { selection.contexts["<A: void m${it}()>".toString()] == '2-object' }
+		output.readLines().size() == 9
+	}
+
+	def "Without damping every method weighs the same and the selection is that of Scaler"() {
+		given:
+		ScalerModel star = model(9, (1..<9).collect { [0, it] })
+
+		when:
+		def rank = new ScalerRank(star, output, 0d, 1000, 1e-9)
+		def ranked = rank.selectContext(8 * 80 + 40, output)
+
+		then:
+		(0..<9).every { Math.abs(rank.weightOf(it) - 1) < 1e-12 }
+		ranked.contexts == new Scaler(star, output).selectContext(8 * 80 + 40, output).contexts
+		// The default damping does pass ranks along the edges.
+		new ScalerRank(star, output).selectContext(8 * 80 + 40, output).contexts != ranked.contexts
+	}
+}
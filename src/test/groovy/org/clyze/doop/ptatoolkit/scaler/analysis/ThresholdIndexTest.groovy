@@ -0,0 +1,57 @@
+package org.clyze.doop.ptatoolkit.scaler.analysis
+
+import spock.lang.Specification
+
+class ThresholdIndexTest extends Specification {
+
+	/** The total of the per-method selection, as Scaler computed it for every ST. */
+	private static long bruteForce(long[][] factors, long st) {
+		long total = 0
+		for (long[] f : factors)
+			total += f[ThresholdIndex.select(f, st)]
+		return total
+	}
+
+	private static long[][] randomFactors(long seed, int methods, long bound) {
+		Random random = new Random(seed)
+		return (0..<methods).collect {
+			// Factors shrink, but not strictly, from 2obj down to the bottom line.
+			long ctx2 = (long) random.nextInt((int) bound)
+			long ctx1 = random.nextInt(4) == 0 ? ctx2 + random.nextInt(50) : (long) random.nextInt((int) bound)
+			long ctx0 = (long) random.nextInt((int) bound)
+			long bottom = (long) random.nextInt(20)
+			[ctx0, ctx1, ctx2, bottom] as long[]
+		} as long[][]
+	}
+
+	def "Totals match the per-method selection for every ST"() {
+		given:
+		long[][] factors = randomFactors(seed, 300, 1000)
+		ThresholdIndex index = new ThresholdIndex(factors)
+
+		expect:
+		(-1L..1001L).every { long st -> index.totalAt(st) == bruteForce(factors, st) }
+
+		where:
+		seed << [1L, 7L, 42L, 2024L]
+	}
+
+	def "Methods select the first computer within the ST"() {
+		expect:
+		ThresholdIndex.select([50, 20, 30, 5] as long[], st) == selected
+
+		where:
+		st  | selected
+		100 | 0
+		50  | 0
+		49  | 1
+		20  | 1
+		19  | 3
+		0   | 3
+	}
+
+	def "An empty index has no total"() {
+		expect:
+		new ThresholdIndex(new long[0][]).totalAt(100) == 0
+	}
+}
@@ -0,0 +1,35 @@
+package org.clyze.doop.ptatoolkit.util.graph
+
+import spock.lang.Specification
+
+class SCCFinderTest extends Specification {
+
+	private static DirectedGraph<Integer> graph(Map<Integer, List<Integer>> edges) {
+		return [
+				allNodes: { -> edges.keySet() },
+				predsOf : { Integer n -> edges.findAll { n in it.value }.keySet() },
+				succsOf : { Integer n -> edges.getOrDefault(n, []) }
+		] as DirectedGraph<Integer>
+	}
+
+	def "Components come after the components they reach"() {
+		given:
+		// 1 -> {2, 3} -> 4 -> 5 -> 4, 6 reached only through 5
+		def sccs = new SCCFinder<Integer>(graph([1: [2], 2: [3], 3: [2, 4], 4: [5], 5: [4, 6]]))
+
+		expect:
+		sccs.components == [[6] as Set, [4, 5] as Set, [2, 3] as Set, [1] as Set]
+		sccs.componentOf(3) == sccs.componentOf(2)
+		sccs.componentOf(6) == 0
+	}
+
+	def "Long paths do not overflow the stack"() {
+		given:
+		int n = 200_000
+		def sccs = new SCCFinder<Integer>(graph((0..<n).collectEntries { [(it): [(it + 1) % n]] }))
+
+		expect:
+		sccs.components.size() == 1
+		sccs.components[0].size() == n
+	}
+}
@@ -0,0 +1,51 @@
+package org.clyze.doop.ptatoolkit.zipper
+
+import org.clyze.doop.ptatoolkit.DatabaseSpecification
+
+class DriverTest extends DatabaseSpecification {
+
+	static final String MAIN = '<Main: void main()>'
+	static final String SET = '<Box: void set(java.lang.Object)>'
+	static final String GET = '<Box: java.lang.Object get()>'
+	static final String WRAP = '<Box: Cell wrap(java.lang.Object)>'
+	static final String NAME = '<Box: java.lang.String name()>'
+
+	def setup() {
+		// main: b1 = new Box(); b2 = new Box(); b1.set(a1); b2.set(a2);
+		//       x1 = b1.get(); x2 = b2.get(); c = b1.wrap(a1); n = b1.name()
+		write('Reachable', [MAIN], [SET], [GET], [WRAP], [NAME])
+		write('THIS_VAR', [SET, 'set/this'], [GET, 'get/this'], [WRAP, 'wrap/this'], [NAME, 'name/this'])
+		write('IMPLICITREACHABLE')
+		write('PARAMS', [SET, 'set/p'], [WRAP, 'wrap/q'])
+		write('RET_VARS', [GET, 'get/r'], [WRAP, 'wrap/c'], [NAME, 'name/s'])
+		write('VAR_IN', ['b1', MAIN], ['b2', MAIN], ['a1', MAIN], ['a2', MAIN], ['x1', MAIN], ['x2', MAIN],
+				['c', MAIN], ['n', MAIN], ['set/this', SET], ['set/p', SET], ['get/this', GET], ['get/r', GET],
+				['wrap/this', WRAP], ['wrap/q', WRAP], ['wrap/c', WRAP], ['name/this', NAME], ['name/s', NAME])
+		write('OBJ_TYPE', ['box1', 'Box'], ['box2', 'Box'], ['a1', 'A'], ['a2', 'A'], ['cell', 'Cell'],
+				['str', 'java.lang.String'])
+		write('OBJECT_IN', ['box1', MAIN], ['box2', MAIN], ['a1', MAIN], ['a2', MAIN], ['cell', WRAP], ['str', NAME])
+		write('OBJECT_ASSIGN', ['box1', 'b1'], ['box2', 'b2'], ['a1', 'a1'], ['a2', 'a2'], ['cell', 'wrap/c'],
+				['str', 'name/s'])
+		write('VAR_POINTS_TO', ['box1', 'b1'], ['box2', 'b2'], ['a1', 'a1'], ['a2', 'a2'],
+				['box1', 'set/this'], ['box2', 'set/this'], ['box1', 'get/this'], ['box2', 'get/this'],
+				['box1', 'wrap/this'], ['box1', 'name/this'], ['a1', 'set/p'], ['a2', 'set/p'],
+				['a1', 'get/r'], ['a2', 'get/r'], ['a1', 'x1'], ['a2', 'x1'], ['a1', 'x2'], ['a2', 'x2'],
+				['a1', 'wrap/q'], ['cell', 'wrap/c'], ['cell', 'c'], ['str', 'name/s'], ['str', 'n'])
+		write('INTERPROCEDURAL_ASSIGN', ['set/p', 'a1'], ['set/p', 'a2'], ['x1', 'get/r'], ['x2', 'get/r'],
+				['wrap/q', 'a1'], ['c', 'wrap/c'], ['n', 'name/s'])
+		write('INSTANCE_STORE', ['box1', 'f', 'set/p'], ['box2', 'f', 'set/p'], ['cell', 'v', 'wrap/q'])
+		write('INSTANCE_LOAD', ['get/r', 'box1', 'f'], ['get/r', 'box2', 'f'])
+		['SPECIAL_OBJECTS', 'CALLSITEIN', 'CALL_EDGE', 'LOCAL_ASSIGN', 'ARRAY_LOAD', 'ARRAY_STORE',
+		 'CALL_RETURN_TO'].each { write(it) }
+	}
+
+	def "Methods on flows from IN to OUT methods are precision-critical"() {
+		when:
+		List<String> methods = Driver.runZipper(facts, database, 2)
+
+		then:
+		// name() returns an object it allocates, no value flows through it.
+		methods == [WRAP, GET, SET]
+		new File(facts, 'ZipperPrecisionCriticalMethod.facts').readLines() == methods
+	}
+}
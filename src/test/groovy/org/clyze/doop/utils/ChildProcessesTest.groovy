@@ -0,0 +1,62 @@
+package org.clyze.doop.utils
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class ChildProcessesTest extends Specification {
+
+	def "Only the processes of an analysis are killed"() {
+		given:
+		File outDir = Files.createTempDirectory('processes').toFile()
+		File otherDir = Files.createTempDirectory('processes').toFile()
+		// The process of the analysis starts a process of its own.
+		Process own = ['sh', '-c', 'sleep 60 & wait', new File(outDir, 'database').path].execute()
+		Process other = ['sh', '-c', 'sleep 60 & wait', new File(otherDir, 'database').path].execute()
+		Thread.sleep(200)
+
+		when:
+		int killed = ChildProcesses.kill(outDir)
+
+		then:
+		killed == 1
+		!own.alive
+		other.alive
+		ChildProcesses.refersTo("souffle -D${outDir.canonicalPath}/database", outDir)
+		!ChildProcesses.refersTo("souffle -D${otherDir.canonicalPath}/database", outDir)
+
+		cleanup:
+		ChildProcesses.kill(otherDir)
+		outDir.deleteDir()
+		otherDir.deleteDir()
+	}
+
+	def "Directories that share a prefix are told apart"() {
+		given:
+		File parent = Files.createTempDirectory('processes').toFile()
+		File outDir = new File(parent, 'app')
+		File siblingDir = new File(parent, 'app-2')
+		outDir.mkdirs()
+		siblingDir.mkdirs()
+		Process own = ['sh', '-c', 'sleep 60 & wait', outDir.path].execute()
+		Process sibling = ['sh', '-c', 'sleep 60 & wait', new File(siblingDir, 'database').path].execute()
+		Thread.sleep(200)
+
+		when:
+		int killed = ChildProcesses.kill(outDir)
+
+		then:
+		killed == 1
+		!own.alive
+		sibling.alive
+		ChildProcesses.refersTo("souffle -F${outDir.canonicalPath}/facts", outDir)
+		ChildProcesses.refersTo("souffle -F\"${outDir.canonicalPath}\"", outDir)
+		ChildProcesses.refersTo("souffle ${outDir.canonicalPath} -j4", outDir)
+		ChildProcesses.refersTo("souffle ${outDir.canonicalPath}", outDir)
+		!ChildProcesses.refersTo("souffle -F${siblingDir.canonicalPath}/facts", outDir)
+		!ChildProcesses.refersTo("souffle ${outDir.canonicalPath}.dl", outDir)
+
+		cleanup:
+		ChildProcesses.kill(siblingDir)
+		parent.deleteDir()
+	}
+}
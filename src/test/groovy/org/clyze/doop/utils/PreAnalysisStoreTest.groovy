@@ -0,0 +1,145 @@
+package org.clyze.doop.utils
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class PreAnalysisStoreTest extends Specification {
+
+	private static File dir(Map<String, String> files) {
+		File d = Files.createTempDirectory('pre-analysis-store').toFile()
+		files.each { String name, String content -> new File(d, name).text = content }
+		return d
+	}
+
+	def "The facts checksum depends on the names and contents of the facts"() {
+		given:
+		String checksum = PreAnalysisStore.factsChecksum(dir(['A.facts': 'a\tb\n', 'B.facts': 'c\n']))
+
+		expect:
+		PreAnalysisStore.factsChecksum(dir(['B.facts': 'c\n', 'A.facts': 'a\tb\n'])) == checksum
+		PreAnalysisStore.factsChecksum(dir(['A.facts': 'a\tb\n', 'B.facts': 'd\n'])) != checksum
+		PreAnalysisStore.factsChecksum(dir(['A.facts': 'a\tb\n', 'C.facts': 'c\n'])) != checksum
+	}
+
+	def "Stored databases are copied to the databases of later analyses"() {
+		given:
+		PreAnalysisStore store = new PreAnalysisStore(dir([:]))
+		File database = dir(['Method_TotalVPT.csv': 'm\t1\n', 'Stats_Runtime.csv': 'time\t1\n', 'Reachable.facts': 'm\n'])
+		File other = dir([:])
+
+		when:
+		store.store('facts', 'logic', database)
+		new File(other, 'Stats_Runtime.csv') << 'time\t2\n'
+
+		then:
+		!store.attach(PreAnalysisStore.key('facts', 'other-logic'), other)
+		store.attach(PreAnalysisStore.key('facts', 'logic'), other)
+		new File(other, 'Method_TotalVPT.csv').text == 'm\t1\n'
+		new File(other, 'Stats_Runtime.csv').text == 'time\t1\n'
+		!new File(other, PreAnalysisStore.INFO).exists()
+		!new File(other, 'Reachable.facts').exists()
+
+		when: "the attached database is written to"
+		new File(other, 'Method_TotalVPT.csv') << 'n\t2\n'
+
+		then: "the stored database is unchanged"
+		new File(store.find(PreAnalysisStore.key('facts', 'logic')), 'Method_TotalVPT.csv').text == 'm\t1\n'
+	}
+
+	def "Model snapshots are stored with the database and restored"() {
+		given:
+		PreAnalysisStore store = new PreAnalysisStore(dir([:]))
+		String key = PreAnalysisStore.key('facts', 'logic')
+		File database = dir(['Method_TotalVPT.csv': 'm\t1\n', 'ScalerModel.snapshot': 'model'])
+
+		when: "a snapshot is built after the database is stored"
+		store.store('facts', 'logic', database)
+		new File(database, 'ScalerRankModel.snapshot').text = 'rank model'
+		new File(database, 'ScalerModel.snapshot').text = 'changed model'
+		store.update(key, database)
+		File other = dir([:])
+
+		then: "the new snapshot is added, the stored one is kept"
+		store.attach(key, other)
+		new File(other, 'ScalerModel.snapshot').text == 'model'
+		new File(other, 'ScalerRankModel.snapshot').text == 'rank model'
+		other.list().toList().sort() == ['Method_TotalVPT.csv', 'ScalerModel.snapshot', 'ScalerRankModel.snapshot']
+	}
+
+	def "A database evicted while it is attached is not used"() {
+		given:
+		File storeDir = dir([:])
+		String key = PreAnalysisStore.key('facts', 'logic')
+		int finds = 0
+		PreAnalysisStore store = new PreAnalysisStore(storeDir) {
+			@Override
+			File find(String k) {
+				// Another analysis evicts the database while it is copied.
+				if (++finds == 2)
+					new File(storeDir, k).deleteDir()
+				return super.find(k)
+			}
+		}
+		store.store('facts', 'logic', dir(['A.csv': 'a\n']))
+		finds = 0
+		File database = dir(['B.csv': 'b\n'])
+
+		expect:
+		!store.attach(key, database)
+		database.list().toList() == ['B.csv']
+	}
+
+	def "The latest database of some facts with a relation is found"() {
+		given:
+		PreAnalysisStore store = new PreAnalysisStore(dir([:]))
+		store.store('facts', 'zipper', dir(['Zipper.csv': '']))
+		store.store('facts', 'scaler', dir(['Method_TotalVPT.csv': '']))
+		store.store('other-facts', 'scaler', dir(['Method_TotalVPT.csv': '']))
+
+		expect:
+		store.latest('facts', 'Method_TotalVPT') == store.find(PreAnalysisStore.key('facts', 'scaler'))
+		store.latest('facts', 'Reachable') == null
+		store.latest('unknown-facts', 'Method_TotalVPT') == null
+	}
+
+	def "The least recently used databases are evicted"() {
+		given:
+		PreAnalysisStore store = new PreAnalysisStore(dir([:]))
+		List<String> keys = (0..PreAnalysisStore.MAX_ENTRIES).collect { int i ->
+			store.store("facts${i}", 'logic', dir(['A.csv': "${i}\n"]))
+			File stored = store.find(PreAnalysisStore.key("facts${i}", 'logic'))
+			stored.setLastModified(1000000L * (i + 1))
+			return PreAnalysisStore.key("facts${i}", 'logic')
+		}
+
+		when:
+		store.store('facts', 'logic', dir(['A.csv': '\n']))
+
+		then:
+		store.find(keys[0]) == null
+		store.find(keys[1]) == null
+		keys.drop(2).every { String key -> store.find(key) != null }
+		store.find(PreAnalysisStore.key('facts', 'logic')) != null
+	}
+
+	def "Databases are evicted when the store is too large"() {
+		given:
+		PreAnalysisStore store = new PreAnalysisStore(dir([:]), 10)
+		store.store('facts1', 'logic', dir(['A.csv': '1234\n']))
+		store.find(PreAnalysisStore.key('facts1', 'logic')).setLastModified(1000000L)
+		store.store('facts2', 'logic', dir(['A.csv': '5678\n']))
+		store.find(PreAnalysisStore.key('facts2', 'logic')).setLastModified(2000000L)
+
+		when:
+		store.store('facts3', 'logic', dir(['A.csv': '9\n']))
+		store.store('facts4', 'logic', dir(['A.csv': '0123456789\n']))
+
+		then: "the least recently used database no longer fits"
+		store.find(PreAnalysisStore.key('facts1', 'logic')) == null
+		store.find(PreAnalysisStore.key('facts2', 'logic')) != null
+		store.find(PreAnalysisStore.key('facts3', 'logic')) != null
+
+		and: "databases larger than the store are not stored"
+		store.find(PreAnalysisStore.key('facts4', 'logic')) == null
+	}
+}
@@ -0,0 +1,51 @@
+package org.clyze.doop.utils
+
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+import static org.clyze.doop.utils.SouffleJobTuner.*
+import static org.clyze.doop.utils.SouffleModePlanner.FACTS_SIZE
+import static org.clyze.doop.utils.SouffleModePlanner.INTERPRETED
+
+class SouffleJobTunerTest extends Specification {
+
+	// A single run charges all its memory to its jobs.
+	@Shared List<Map<String, Long>> single = [
+		[(JOBS): 4L, (PEAK_MEMORY): 400000L, (FACTS_SIZE): 1000L, (INTERPRETED): 0L]]
+
+	// 1 GB base, 100 MB per job.
+	@Shared List<Map<String, Long>> fitted = [
+		[(JOBS): 2L, (PEAK_MEMORY): 1200000L, (FACTS_SIZE): 1000L, (INTERPRETED): 0L],
+		[(JOBS): 4L, (PEAK_MEMORY): 1400000L, (FACTS_SIZE): 1000L, (INTERPRETED): 0L]]
+
+	@Unroll
+	def "#cores cores, #factsKB KB of facts and a budget of #budgetKB KB give #jobs jobs"(List<Map<String, Long>> history, int cores, long factsKB, Long budgetKB, boolean interpreted, int jobs) {
+		expect:
+		new SouffleJobTuner(history, cores).jobs(factsKB, budgetKB, interpreted) == jobs
+
+		where:
+		history | cores | factsKB | budgetKB | interpreted | jobs
+		[]      | 8     | 1000L   | null     | false       | 8
+		[]      | 8     | 1000L   | 1000000L | false       | 8
+		single  | 8     | 1000L   | null     | false       | 8
+		single  | 16    | 1000L   | 1000000L | false       | 8
+		// (2 GB * 0.85 - 1 GB) / 100 MB = 7
+		fitted  | 16    | 1000L   | 2000000L | false       | 7
+		fitted  | 4     | 1000L   | 2000000L | false       | 4
+		// Twice the facts: (1.7 GB - 2 GB) leaves no room.
+		fitted  | 16    | 2000L   | 2000000L | false       | 1
+		// Only interpreted runs count for interpretation.
+		fitted  | 16    | 1000L   | 2000000L | true        | 16
+	}
+
+	def "ParsePeakMemory"(String line, Long peakKB) {
+		expect:
+		parsePeakMemory(line) == peakKB
+
+		where:
+		line                                                                                 | peakKB
+		'3.10user 0.20system 0:01.50elapsed 220%CPU (0avgtext+0avgdata 123456maxresident)k' | 123456L
+		'FINISHED CPU 1.20 MEM 1000 MAXMEM 2000 STALE 0 MAXMEM_RSS 654321'                   | 654321L
+		'Running analysis'                                                                   | null
+	}
+}
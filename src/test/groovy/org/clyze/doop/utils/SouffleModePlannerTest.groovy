@@ -0,0 +1,42 @@
+package org.clyze.doop.utils
+
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+import static org.clyze.doop.utils.SouffleModePlanner.*
+
+class SouffleModePlannerTest extends Specification {
+
+	// Compilation dominates: 300 + 10 sec compiled, 40 sec interpreted.
+	@Shared List<Map<String, Long>> compilationBound = [
+		[(FACTS_SIZE): 100_000L, (COMPILATION_TIME): 300L, (EXECUTION_TIME): 10L, (INTERPRETED): 0L],
+		[(FACTS_SIZE): 100_000L, (EXECUTION_TIME): 40L, (INTERPRETED): 1L]]
+
+	// Execution dominates: 300 + 600 sec compiled.
+	@Shared List<Map<String, Long>> executionBound = [
+		[(FACTS_SIZE): 100_000L, (COMPILATION_TIME): 300L, (EXECUTION_TIME): 600L, (INTERPRETED): 0L]]
+
+	// Close estimates: 100 + 100 sec compiled, 200 sec interpreted.
+	@Shared List<Map<String, Long>> balanced = [
+		[(FACTS_SIZE): 100_000L, (COMPILATION_TIME): 100L, (EXECUTION_TIME): 100L, (INTERPRETED): 0L],
+		[(FACTS_SIZE): 100_000L, (EXECUTION_TIME): 200L, (INTERPRETED): 1L]]
+
+	// A cached binary does not count as a compilation.
+	@Shared List<Map<String, Long>> cached = [
+		[(FACTS_SIZE): 100_000L, (COMPILATION_TIME): 0L, (EXECUTION_TIME): 10L, (INTERPRETED): 0L]]
+
+	@Unroll
+	def "Plan for #factsKB KB of facts"(List<Map<String, Long>> history, long factsKB, Mode mode) {
+		expect:
+		new SouffleModePlanner(history).plan(factsKB, 0L) == mode
+
+		where:
+		history          | factsKB        | mode
+		[]               | 1024L          | Mode.RACE
+		[]               | LARGE_FACTS_KB | Mode.COMPILED
+		compilationBound | 10_000L        | Mode.INTERPRETED
+		executionBound   | 1_000_000L     | Mode.COMPILED
+		balanced         | 100_000L       | Mode.RACE
+		cached           | 10_000L        | Mode.RACE
+	}
+}
@@ -0,0 +1,43 @@
+package org.clyze.doop.utils
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class SoufflePlansTest extends Specification {
+
+	def "Plans are attached to the rules of their original location"() {
+		given:
+		File dir = Files.createTempDirectory('plans').toFile()
+		File marked = new File(dir, 'analysis.dl')
+		marked.text = '# 1 "/doop/souffle-logic/main/a.dl"\n' +
+				'.decl A(x:number)\n' +
+				'A(x) :- B(x, "java.lang.String"), mainAnalysis.D(x).\n' +
+				'.plan 0:(1,2)\n' +
+				'E(x) :-\n' +
+				'  B(x, _),\n' +
+				'  D(x).\n'
+		File generated = new File(dir, 'gen.dl')
+		generated.text = marked.readLines().drop(1).join('\n') + '\n'
+		def plans = new SoufflePlans(['main/a.dl:2': '0:(2,1)', 'main/a.dl:4': '0:(2,1)'])
+
+		when:
+		int applied = plans.apply(generated, new CppLineMap(generated, marked, '/doop/souffle-logic'))
+		String text = generated.text
+
+		then:
+		applied == 2
+		text.count('.plan') == 2
+		!text.contains('0:(1,2)')
+		text.contains('D(x).\n.plan 0:(2,1)')
+
+		cleanup:
+		dir.deleteDir()
+	}
+
+	def "Candidate join orders"() {
+		expect:
+		SoufflePlanTuner.countAtoms('R(x) :- A(x,y), !B(y), C(y,z), x != z.') == 2
+		SoufflePlanTuner.candidatePlans(3) == ['0:(2,1,3)', '0:(3,1,2)', '0:(3,2,1)']
+		SoufflePlanTuner.candidatePlans(1) == []
+	}
+}
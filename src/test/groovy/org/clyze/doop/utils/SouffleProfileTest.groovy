@@ -0,0 +1,74 @@
+package org.clyze.doop.utils
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class SouffleProfileTest extends Specification {
+
+	def "Rank profiled rules and map them to the original logic"() {
+		given:
+		File dir = Files.createTempDirectory('profile').toFile()
+		File marked = new File(dir, 'analysis.dl')
+		marked.text = '# 1 "/doop/souffle-logic/main/a.dl"\n' +
+				'.decl A(x:number)\n' +
+				'\n' +
+				'A(1).\n' +
+				'# 10 "/doop/souffle-logic/main/b.dl" 1\n' +
+				'B(x) :- A(x).\n'
+		File generated = new File(dir, 'gen.dl')
+		generated.text = '.decl A(x:number)\nA(1).\nB(x) :- A(x).\n'
+		File profileFile = new File(dir, 'profile.txt')
+		profileFile.text = '''{"root": {"program": {"relation": {
+			"A": {"source-locator": "gen.dl [2:1-2:6]", "runtime": {"start": 0, "end": 5000}, "num-tuples": 1},
+			"B": {"source-locator": "gen.dl [3:1-3:13]", "runtime": {"start": 0, "end": 1000}, "num-tuples": 1,
+				"non-recursive-rule": {"B(x) :- A(x).": {"runtime": {"start": 0, "end": 900}, "num-tuples": 1, "source-locator": "gen.dl [3:1-3:13]"}},
+				"iteration": {"0": {"runtime": {"start": 0, "end": 9000}, "num-tuples": 5,
+					"recursive-rule": {"B(x) :- B(x).": {"B(x) :- B(x).": {"runtime": {"start": 0, "end": 7000}, "num-tuples": 5, "source-locator": "gen.dl [3:1-3:13]"}}}}}}
+		}}}}'''
+
+		when:
+		SouffleProfile profile = SouffleProfile.parse(profileFile)
+		profile.mapSources(new CppLineMap(generated, marked, '/doop/souffle-logic'))
+
+		then:
+		profile.relations*.relation == ['B', 'A']
+		profile.relations[0].timeMillis == 10
+		profile.relations[1].source == 'main/a.dl:3'
+		profile.rules*.rule == ['B(x) :- B(x).', 'B(x) :- A(x).']
+		profile.rules[0].tuples == 5
+		profile.rules[0].source == 'main/b.dl:10'
+
+		cleanup:
+		dir.deleteDir()
+	}
+
+	def "Profiled rules are mapped to the original logic after plans are applied"() {
+		given:
+		File dir = Files.createTempDirectory('profile').toFile()
+		File marked = new File(dir, 'analysis.dl')
+		marked.text = '# 1 "/doop/souffle-logic/main/a.dl"\n' +
+				'.decl A(x:number)\n' +
+				'A(x) :- B(x), C(x).\n' +
+				'B(x) :- A(x).\n'
+		File generated = new File(dir, 'gen.dl')
+		generated.text = marked.readLines().drop(1).join('\n') + '\n'
+		new SoufflePlans(['main/a.dl:2': '0:(2,1)']).apply(generated, new CppLineMap(generated, marked, '/doop/souffle-logic'))
+		File profileFile = new File(dir, 'profile.txt')
+		profileFile.text = '''{"root": {"program": {"relation": {
+			"B": {"source-locator": "gen.dl [4:1-4:13]", "runtime": {"start": 0, "end": 1000}, "num-tuples": 1,
+				"non-recursive-rule": {"B(x) :- A(x).": {"runtime": {"start": 0, "end": 900}, "num-tuples": 1, "source-locator": "gen.dl [4:1-4:13]"}}}
+		}}}}'''
+
+		when:
+		SouffleProfile profile = SouffleProfile.parse(profileFile)
+		profile.mapSources(new CppLineMap(generated, marked, '/doop/souffle-logic'))
+
+		then:
+		generated.readLines()[2] == '.plan 0:(2,1)'
+		profile.relations[0].source == 'main/a.dl:3'
+		profile.rules[0].source == 'main/a.dl:3'
+
+		cleanup:
+		dir.deleteDir()
+	}
+}
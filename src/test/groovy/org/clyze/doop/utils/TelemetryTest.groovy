@@ -0,0 +1,74 @@
+package org.clyze.doop.utils
+
+import java.nio.file.Files
+import spock.lang.Specification
+
+class TelemetryTest extends Specification {
+
+	def "Phases run without telemetry"() {
+		expect:
+		Telemetry.phase(null, 'facts') { 42 } == 42
+	}
+
+	def "The sampling interval must be positive"() {
+		when:
+		new Telemetry(new File('.'), 0L)
+
+		then:
+		thrown(IllegalArgumentException)
+	}
+
+	def "Samples and phases are written on stop"() {
+		given:
+		File outDir = Files.createTempDirectory('telemetry').toFile()
+		Telemetry telemetry = new Telemetry(outDir, 10L)
+
+		when:
+		telemetry.start()
+		String result = Telemetry.phase(telemetry, 'facts') {
+			Telemetry.phase(telemetry, 'compile') { Thread.sleep(100) }
+			'done'
+		}
+		telemetry.stop()
+		List<String> samples = new File(outDir, Telemetry.SAMPLES_FILE).readLines()
+		List<String> phases = new File(outDir, Telemetry.PHASES_FILE).readLines()
+
+		then:
+		result == 'done'
+		samples.size() > 2
+		samples.any { it.split('\t')[1] == 'facts+compile' }
+		phases.size() == 3
+		phases[1].startsWith('facts\t')
+		phases[2].startsWith('compile\t')
+		(phases[2].split('\t')[2] as long) >= 100L
+
+		cleanup:
+		outDir.deleteDir()
+	}
+
+	def "Only the child processes of the analysis are sampled"() {
+		given:
+		File outDir = Files.createTempDirectory('telemetry').toFile()
+		File otherDir = Files.createTempDirectory('telemetry').toFile()
+		// Two processes (sh and sleep) per analysis.
+		Process own = ['sh', '-c', 'sleep 60 & wait', new File(outDir, 'database').path].execute()
+		Process other = ['sh', '-c', 'sleep 60 & wait', new File(otherDir, 'database').path].execute()
+		Thread.sleep(100)
+		Telemetry telemetry = new Telemetry(outDir, 10L)
+
+		when:
+		telemetry.start()
+		Thread.sleep(100)
+		telemetry.stop()
+		List<String> samples = new File(outDir, Telemetry.SAMPLES_FILE).readLines().drop(1)
+
+		then:
+		samples.every { it.split('\t')[9] == '2' }
+
+		cleanup:
+		ChildProcesses.kill(outDir)
+		ChildProcesses.kill(otherDir)
+		outDir.deleteDir()
+		otherDir.deleteDir()
+	}
+}
@@ -0,0 +1,76 @@
+package org.clyze.doop.utils.scaler
+
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+import static org.clyze.doop.utils.SouffleJobTuner.PEAK_MEMORY
+import static org.clyze.doop.utils.SouffleModePlanner.EXECUTION_TIME
+import static org.clyze.doop.utils.scaler.ScalerCostModel.WORST_CASE_VPT
+
+class ScalerCostModelTest extends Specification {
+
+	// Memory grows linearly with the VPT, time quadratically.
+	@Shared ScalerCostModel fitted = new ScalerCostModel([
+		[(WORST_CASE_VPT): 1000000L, (PEAK_MEMORY): 100000L, (EXECUTION_TIME): 10L],
+		[(WORST_CASE_VPT): 4000000L, (PEAK_MEMORY): 400000L, (EXECUTION_TIME): 160L],
+		[(WORST_CASE_VPT): 16000000L, (PEAK_MEMORY): 1600000L, (EXECUTION_TIME): 2560L]])
+
+	// A single VPT is scaled proportionally to its most expensive run: 0.2 KB per unit.
+	@Shared ScalerCostModel proportional = new ScalerCostModel([
+		[(WORST_CASE_VPT): 1000000L, (PEAK_MEMORY): 100000L, (EXECUTION_TIME): 10L],
+		[(WORST_CASE_VPT): 1000000L, (PEAK_MEMORY): 200000L, (EXECUTION_TIME): 20L]])
+
+	@Shared ScalerCostModel single = new ScalerCostModel([
+		[(WORST_CASE_VPT): 1000L, (PEAK_MEMORY): 1000L, (EXECUTION_TIME): 10L]])
+
+	@Shared ScalerCostModel empty = new ScalerCostModel([])
+
+	@Unroll
+	def "The worst case VPT that fits #memoryKB KB and #timeSec sec"(ScalerCostModel model, Long memoryKB, Long timeSec, Long vpt) {
+		expect:
+		vpt == null ? model.maxWorstCaseVPT(memoryKB, timeSec) == null : Math.abs(model.maxWorstCaseVPT(memoryKB, timeSec) - vpt) <= 1L
+
+		where:
+		model                                                  | memoryKB | timeSec | vpt
+		empty                                                  | 1000000L | 3600L   | null
+		new ScalerCostModel([[(PEAK_MEMORY): 1000L]])          | 1000000L | null    | null
+		single                                                 | null     | null    | null
+		// 850000 KB of 1000000 KB fit 8.5M.
+		fitted                                                 | 1000000L | null    | 8500000L
+		// 85 of 100 sec fit sqrt(8.5) * 1M; the tighter budget wins.
+		fitted                                                 | null     | 100L    | 2915475L
+		fitted                                                 | 1000000L | 100L    | 2915475L
+		// 4.25M would fit, but no run went beyond 1M.
+		proportional                                           | 1000000L | null    | 1000000L
+		// Budgets beyond every run fit the largest run only.
+		fitted                                                 | 9000000L | 100000L | 16000000L
+	}
+
+	@Unroll
+	def "Budgets of #memoryKB KB and #timeSec sec fit beyond the measurements: #beyond"(ScalerCostModel model, Long memoryKB, Long timeSec, boolean beyond) {
+		expect:
+		model.fitsBeyondMeasurements(memoryKB, timeSec) == beyond
+
+		where:
+		model        | memoryKB | timeSec | beyond
+		empty        | 1000000L | 3600L   | false
+		fitted       | 1000000L | null    | false
+		fitted       | 9000000L | 100000L | true
+		// The time budget is the tighter one.
+		fitted       | 9000000L | 100L    | false
+		proportional | 1000000L | null    | true
+	}
+
+	def "PeakMemoryKB and ExecutionTime"(ScalerCostModel model, long vpt, Long memoryKB, Long timeSec) {
+		expect:
+		model.peakMemoryKB(vpt) == memoryKB
+		model.executionTime(vpt) == timeSec
+
+		where:
+		model        | vpt      | memoryKB | timeSec
+		single       | 1000L    | 1000L    | 10L
+		empty        | 1000L    | null     | null
+		fitted       | 2000000L | 200000L  | 40L
+		proportional | 2000000L | 400000L  | 40L
+	}
+}